@@ -39,6 +39,19 @@ val jarFilename = "qana.jar"
 
 //----------------------------------------------------------------------
 
+// Dependencies
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+}
+
+//----------------------------------------------------------------------
+
 // Compile
 
 tasks.compileJava {
@@ -47,6 +60,14 @@ tasks.compileJava {
 
 //----------------------------------------------------------------------
 
+// Test
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+//----------------------------------------------------------------------
+
 // Create executable JAR
 
 tasks.jar {
@@ -18,6 +18,11 @@ package uk.blankaspect.common.crypto;
 // IMPORTS
 
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import java.nio.ByteOrder;
+
 import java.nio.charset.StandardCharsets;
 
 import java.security.MessageDigest;
@@ -93,6 +98,16 @@ public class ChaCha20
 	/** The name of the hash function. */
 	private static final	String	HASH_NAME	= "SHA-256";
 
+	/** The minimum number of blocks that are generated in one pass of {@link #getBlocks(long, int, byte[], int)}. */
+	private static final	int		MIN_NUM_LANES	= 4;
+
+	/** The maximum number of blocks that are generated in one pass of {@link #getBlocks(long, int, byte[], int)}. */
+	private static final	int		MAX_NUM_LANES	= 32;
+
+	/** A view of a byte array as an array of little-endian 32-bit words, which may be accessed at any byte offset. */
+	private static final	VarHandle	WORD_VIEW	=
+			MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
@@ -109,6 +124,9 @@ public class ChaCha20
 	/** The output block. */
 	private	int[]	outBlock;
 
+	/** The state of the blocks that are generated in one pass, indexed by word and then by block. */
+	private	int[][]	laneState;
+
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
 ////////////////////////////////////////////////////////////////////////
@@ -128,6 +146,7 @@ public class ChaCha20
 		this.numRounds = numRounds;
 		inBlock = new int[BLOCK_SIZE_WORDS];
 		outBlock = new int[BLOCK_SIZE_WORDS];
+		laneState = new int[BLOCK_SIZE_WORDS][MAX_NUM_LANES];
 	}
 
 	//------------------------------------------------------------------
@@ -501,6 +520,55 @@ public class ChaCha20
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Performs a quarter-round of the ChaCha20 core hash function on the specified words of several blocks at once.
+	 * Each array holds one word of the state of each block, so the blocks are processed by the same sequence of
+	 * operations, which the JIT compiler can map onto vector instructions.
+	 *
+	 * @param a
+	 *          the first word of each block.
+	 * @param b
+	 *          the second word of each block.
+	 * @param c
+	 *          the third word of each block.
+	 * @param d
+	 *          the fourth word of each block.
+	 * @param numLanes
+	 *          the number of blocks.
+	 */
+
+	private static void quarterRound(
+		int[]	a,
+		int[]	b,
+		int[]	c,
+		int[]	d,
+		int		numLanes)
+	{
+		for (int i = 0; i < numLanes; i++)
+		{
+			int va = a[i];
+			int vb = b[i];
+			int vc = c[i];
+			int vd = d[i];
+
+			va += vb;
+			vd = Integer.rotateLeft(vd ^ va, 16);
+			vc += vd;
+			vb = Integer.rotateLeft(vb ^ vc, 12);
+			va += vb;
+			vd = Integer.rotateLeft(vd ^ va, 8);
+			vc += vd;
+			vb = Integer.rotateLeft(vb ^ vc, 7);
+
+			a[i] = va;
+			b[i] = vb;
+			c[i] = vc;
+			d[i] = vd;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods : overriding methods
 ////////////////////////////////////////////////////////////////////////
@@ -779,18 +847,150 @@ public class ChaCha20
 		byte[]	buffer,
 		int		offset)
 	{
-		// Set block counter in input block
-		inBlock[COUNTER_OFFSET] = (int)blockCounter;
+		getBlocks(blockCounter, 1, buffer, offset);
+	}
 
-		// Perform hash
-		hash(inBlock, outBlock, numRounds);
+	//------------------------------------------------------------------
 
-		// Copy output block to buffer
-		for (int i = 0; i < BLOCK_SIZE_WORDS; i++)
+	/**
+	 * Generates the specified number of consecutive blocks of data, starting with the specified counter value, and
+	 * stores the resulting data as a contiguous sequence of bytes in the specified buffer.
+	 * <p>
+	 * The blocks are generated in passes of up to {@link #MAX_NUM_LANES} blocks.  In each pass, the state of every
+	 * block is transformed by the same sequence of operations, with one array for each word of the state, so that
+	 * the blocks are processed side by side.  A remainder of fewer than {@link #MIN_NUM_LANES} blocks is generated
+	 * one block at a time.  The result is the same as that of calling {@link #getBlock(long, byte[], int)} for each
+	 * block in turn.
+	 * </p>
+	 *
+	 * @param blockCounter
+	 *          the value of the block counter that will be used for generating the first block.
+	 * @param numBlocks
+	 *          the number of blocks that will be generated.
+	 * @param buffer
+	 *          the buffer in which the generated data will be stored.
+	 * @param offset
+	 *          the offset in {@code buffer} at which the first byte of the generated data will be stored.
+	 * @see   #getBlock(long, byte[], int)
+	 */
+
+	public void getBlocks(
+		long	blockCounter,
+		int		numBlocks,
+		byte[]	buffer,
+		int		offset)
+	{
+		// Generate blocks in passes of several blocks
+		int[][] x = laneState;
+		while (numBlocks >= MIN_NUM_LANES)
 		{
-			wordToBytes(outBlock[i], buffer, offset);
-			offset += BYTES_PER_WORD;
+			// Generate blocks
+			int numLanes = Math.min(numBlocks, MAX_NUM_LANES);
+			hashLanes(blockCounter, numLanes);
+
+			// Copy output blocks to buffer
+			for (int i = 0; i < numLanes; i++)
+			{
+				for (int w = 0; w < BLOCK_SIZE_WORDS; w++)
+				{
+					WORD_VIEW.set(buffer, offset, x[w][i]);
+					offset += BYTES_PER_WORD;
+				}
+			}
+
+			// Advance to next pass
+			blockCounter += numLanes;
+			numBlocks -= numLanes;
+		}
+
+		// Generate remaining blocks one at a time
+		int[] in = inBlock;
+		int[] out = outBlock;
+		long endCounter = blockCounter + numBlocks;
+		for (long counter = blockCounter; counter != endCounter; counter++)
+		{
+			// Set block counter in input block
+			in[COUNTER_OFFSET] = (int)counter;
+
+			// Perform hash
+			hash(in, out, numRounds);
+
+			// Copy output block to buffer
+			WORD_VIEW.set(buffer, offset,      out[0]);
+			WORD_VIEW.set(buffer, offset +  4, out[1]);
+			WORD_VIEW.set(buffer, offset +  8, out[2]);
+			WORD_VIEW.set(buffer, offset + 12, out[3]);
+			WORD_VIEW.set(buffer, offset + 16, out[4]);
+			WORD_VIEW.set(buffer, offset + 20, out[5]);
+			WORD_VIEW.set(buffer, offset + 24, out[6]);
+			WORD_VIEW.set(buffer, offset + 28, out[7]);
+			WORD_VIEW.set(buffer, offset + 32, out[8]);
+			WORD_VIEW.set(buffer, offset + 36, out[9]);
+			WORD_VIEW.set(buffer, offset + 40, out[10]);
+			WORD_VIEW.set(buffer, offset + 44, out[11]);
+			WORD_VIEW.set(buffer, offset + 48, out[12]);
+			WORD_VIEW.set(buffer, offset + 52, out[13]);
+			WORD_VIEW.set(buffer, offset + 56, out[14]);
+			WORD_VIEW.set(buffer, offset + 60, out[15]);
+			offset += BLOCK_SIZE;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Applies the core hash function to the specified number of consecutive blocks, starting with the specified counter
+	 * value, and leaves the output blocks in the lane state of this cipher.
+	 *
+	 * @param blockCounter
+	 *          the value of the block counter of the first block.
+	 * @param numLanes
+	 *          the number of blocks, which must not be greater than {@link #MAX_NUM_LANES}.
+	 */
+
+	private void hashLanes(
+		long	blockCounter,
+		int		numLanes)
+	{
+		// Initialise state of each lane from input block
+		int[][] x = laneState;
+		for (int w = 0; w < BLOCK_SIZE_WORDS; w++)
+			Arrays.fill(x[w], 0, numLanes, inBlock[w]);
+
+		// Set block counter of each lane
+		int[] counterWords = x[COUNTER_OFFSET];
+		for (int i = 0; i < numLanes; i++)
+			counterWords[i] = (int)(blockCounter + i);
+
+		// Transform state
+		for (int i = numRounds >> 1; i > 0; i--)
+		{
+			// Column round
+			quarterRound(x[0], x[4], x[8],  x[12], numLanes);
+			quarterRound(x[1], x[5], x[9],  x[13], numLanes);
+			quarterRound(x[2], x[6], x[10], x[14], numLanes);
+			quarterRound(x[3], x[7], x[11], x[15], numLanes);
+
+			// Diagonal round
+			quarterRound(x[0], x[5], x[10], x[15], numLanes);
+			quarterRound(x[1], x[6], x[11], x[12], numLanes);
+			quarterRound(x[2], x[7], x[8],  x[13], numLanes);
+			quarterRound(x[3], x[4], x[9],  x[14], numLanes);
+		}
+
+		// Set output to the sum of the input and the transformed state
+		for (int w = 0; w < BLOCK_SIZE_WORDS; w++)
+		{
+			if ((w == COUNTER_OFFSET))
+				continue;
+			int[] words = x[w];
+			int inWord = inBlock[w];
+			for (int i = 0; i < numLanes; i++)
+				words[i] += inWord;
 		}
+		// Add block counter of each lane to its transformed counter word
+		for (int i = 0; i < numLanes; i++)
+			counterWords[i] += (int)(blockCounter + i);
 	}
 
 	//------------------------------------------------------------------
@@ -18,6 +18,12 @@ package uk.blankaspect.common.crypto;
 // IMPORTS
 
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import java.nio.charset.StandardCharsets;
 
 import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
@@ -674,6 +680,39 @@ public abstract class Fortuna
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Encrypts the specified number of successive values of the block counter with this PRNG's cipher, incrementing
+	 * the counter after each value, and stores the results contiguously in the specified buffer.
+	 * <p>
+	 * This implementation calls {@link #encryptCounter(byte[], int)} and {@link #incrementCounter()} for each block.
+	 * Subclasses whose cipher can process several blocks more efficiently than one block at a time may override this
+	 * method, provided that the result is the same.
+	 * </p>
+	 *
+	 * @param buffer
+	 *          the buffer in which the encrypted data will be stored.
+	 * @param offset
+	 *          the offset in {@code buffer} at which the first byte of encrypted data will be stored.
+	 * @param numBlocks
+	 *          the number of blocks that will be generated.
+	 */
+
+	protected void encryptCounters(
+		byte[]	buffer,
+		int		offset,
+		int		numBlocks)
+	{
+		int blockSize = blockBuffer.length;
+		for (int i = 0; i < numBlocks; i++)
+		{
+			encryptCounter(buffer, offset);
+			incrementCounter();
+			offset += blockSize;
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private void reseed()
 	{
 		lastReseedTime = System.currentTimeMillis();
@@ -709,19 +748,18 @@ public abstract class Fortuna
 		int		offset,
 		int		length)
 	{
-		int endOffset = offset + length;
-		while (offset < endOffset)
+		// Generate whole blocks directly in buffer
+		int numBlocks = length / blockBuffer.length;
+		if (numBlocks > 0)
+			encryptCounters(buffer, offset, numBlocks);
+
+		// Generate final partial block
+		int remainingLength = length - numBlocks * blockBuffer.length;
+		if (remainingLength > 0)
 		{
-			int blockLength = Math.min(endOffset - offset, blockBuffer.length);
-			if (blockLength < blockBuffer.length)
-			{
-				encryptCounter(blockBuffer, 0);
-				System.arraycopy(blockBuffer, 0, buffer, offset, blockLength);
-			}
-			else
-				encryptCounter(buffer, offset);
+			encryptCounter(blockBuffer, 0);
+			System.arraycopy(blockBuffer, 0, buffer, offset + numBlocks * blockBuffer.length, remainingLength);
 			incrementCounter();
-			offset += blockLength;
 		}
 	}
 
@@ -738,11 +776,24 @@ public abstract class Fortuna
 	/**
 	 * This class implements a means of combining a stream of byte data and random data generated by a PRNG with an
 	 * exclusive-OR operation.
+	 * <p>
+	 * The random data is generated in blocks, each of which is extracted from the PRNG with a single request.  The
+	 * exclusive-OR operation is applied to the data eight bytes at a time where possible, so the cost of combining a
+	 * large amount of data is dominated by the generation of random data.
+	 * </p>
 	 */
 
 	public static class XorCombiner
 	{
 
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/** A view of a byte array as an array of {@code long}s, which may be accessed at any byte offset. */
+		private static final	VarHandle	LONG_VIEW	=
+				MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
 	////////////////////////////////////////////////////////////////////
 	//  Instance variables
 	////////////////////////////////////////////////////////////////////
@@ -787,6 +838,43 @@ public abstract class Fortuna
 
 		//--------------------------------------------------------------
 
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Applies an exclusive-OR operation to the specified data with the specified random data, eight bytes at a
+		 * time where possible.  The exclusive-OR operation is applied to {@code data} in place.
+		 *
+		 * @param data
+		 *          the data to which the exclusive-OR operation will be applied.
+		 * @param offset
+		 *          the start offset of the data in {@code data}.
+		 * @param random
+		 *          the random data.
+		 * @param randomOffset
+		 *          the start offset of the random data in {@code random}.
+		 * @param length
+		 *          the number of bytes to which the exclusive-OR operation will be applied.
+		 */
+
+		private static void xor(
+			byte[]	data,
+			int		offset,
+			byte[]	random,
+			int		randomOffset,
+			int		length)
+		{
+			int i = offset;
+			int j = randomOffset;
+			for (int end = offset + (length & ~7); i < end; i += 8, j += 8)
+				LONG_VIEW.set(data, i, (long)LONG_VIEW.get(data, i) ^ (long)LONG_VIEW.get(random, j));
+			for (int end = offset + length; i < end; i++, j++)
+				data[i] ^= random[j];
+		}
+
+		//--------------------------------------------------------------
+
 	////////////////////////////////////////////////////////////////////
 	//  Instance methods
 	////////////////////////////////////////////////////////////////////
@@ -861,13 +949,78 @@ public abstract class Fortuna
 				throw new IllegalArgumentException();
 
 			int endOffset = offset + length;
-			for (int i = offset; i < endOffset; i++)
+			while (offset < endOffset)
+			{
+				// If buffer is exhausted, refill it with a block of random data
+				if (index == 0)
+					prng.getRandomBytes(buffer);
+
+				// Combine data with random data from buffer
+				int blockLength = Math.min(endOffset - offset, buffer.length - index);
+				xor(data, offset, buffer, index, blockLength);
+
+				// Increment offset and index
+				offset += blockLength;
+				index = (index + blockLength) & indexMask;
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Combines the remaining data in the specified buffer and random data generated by this object's PRNG with an
+		 * exclusive-OR operation.
+		 * <p>
+		 * The exclusive-OR operation is applied in place to the data between the position and the limit of {@code
+		 * data}.  On return, the position of {@code data} is equal to its limit.
+		 * </p>
+		 *
+		 * @param  data
+		 *           the buffer that contains the data to which the exclusive-OR operation will be applied.
+		 * @throws IllegalArgumentException
+		 *           if {@code data} is {@code null}.
+		 * @throws java.nio.ReadOnlyBufferException
+		 *           if {@code data} is read-only.
+		 */
+
+		public void combine(
+			ByteBuffer	data)
+		{
+			if (data == null)
+				throw new IllegalArgumentException();
+
+			// If buffer is backed by an accessible array, combine the array
+			int offset = data.position();
+			int endOffset = data.limit();
+			if (data.hasArray())
 			{
+				combine(data.array(), data.arrayOffset() + offset, endOffset - offset);
+				data.position(endOffset);
+				return;
+			}
+
+			// Combine data in buffer, eight bytes at a time where possible
+			ByteBuffer buf = data.duplicate().order(ByteOrder.nativeOrder());
+			while (offset < endOffset)
+			{
+				// If buffer is exhausted, refill it with a block of random data
 				if (index == 0)
 					prng.getRandomBytes(buffer);
-				data[i] ^= buffer[index++];
-				index &= indexMask;
+
+				// Combine data with random data from buffer
+				int blockLength = Math.min(endOffset - offset, buffer.length - index);
+				int i = offset;
+				int j = index;
+				for (int end = offset + (blockLength & ~7); i < end; i += 8, j += 8)
+					buf.putLong(i, buf.getLong(i) ^ (long)LONG_VIEW.get(buffer, j));
+				for (int end = offset + blockLength; i < end; i++, j++)
+					buf.put(i, (byte)(buf.get(i) ^ buffer[j]));
+
+				// Increment offset and index
+				offset += blockLength;
+				index = (index + blockLength) & indexMask;
 			}
+			data.position(endOffset);
 		}
 
 		//--------------------------------------------------------------
@@ -18,7 +18,16 @@ package uk.blankaspect.common.crypto;
 // IMPORTS
 
 
+import java.security.GeneralSecurityException;
+
 import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
 
 //----------------------------------------------------------------------
 
@@ -29,6 +38,13 @@ import java.util.Arrays;
 /**
  * This class implements the Fortuna pseudo-random number generator (PRNG) algorithm, using an AES-256 block cipher
  * running in counter mode as the underlying generator.
+ * <p>
+ * The AES-256 cipher is provided by one of two {@linkplain Backend backends}: the software implementation of {@link
+ * Aes256}, or the AES cipher of the Java Cryptography Architecture, which the JVM may implement with the AES
+ * instructions of the processor.  Both backends generate the same random data.  Unless a backend has been selected
+ * with {@link #setDefaultBackend(Backend)}, the JCA backend is used if it passes a self-test against the software
+ * implementation.
+ * </p>
  */
 
 public class FortunaAes256
@@ -43,11 +59,33 @@ public class FortunaAes256
 	/** The size (in bytes) of the PRNG's key, which is the key size of the AES-256 cipher. */
 	public static final	int	KEY_SIZE	= Aes256.KEY_SIZE;
 
+	/** The name of the JCA transformation that is used by the JCA backend. */
+	private static final	String	JCA_TRANSFORMATION	= "AES/ECB/NoPadding";
+
+	/** The name of the JCA key algorithm that is used by the JCA backend. */
+	private static final	String	JCA_KEY_ALGORITHM	= "AES";
+
+	/** The number of blocks that are generated by each backend in the self-test. */
+	private static final	int		SELF_TEST_NUM_BLOCKS	= 64;
+
+	/** The number of keys with which the backends are compared in the self-test. */
+	private static final	int		SELF_TEST_NUM_KEYS	= 4;
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static volatile	Backend	defaultBackend;
+	private static volatile	Backend	autoBackend;
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
 
+	private	Backend	backend;
 	private	Aes256	cipher;
+	private	Cipher	jcaCipher;
+	private	byte[]	jcaKey;
 	private	byte[]	counter;
 
 ////////////////////////////////////////////////////////////////////////
@@ -144,6 +182,125 @@ public class FortunaAes256
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns the backend that provides the AES-256 cipher of instances of this class that are created subsequently.
+	 * <p>
+	 * If no backend has been selected with {@link #setDefaultBackend(Backend)}, the first call to this method runs a
+	 * self-test that compares the output of the {@linkplain Backend#JCA JCA backend} with that of the {@linkplain
+	 * Backend#SOFTWARE software backend}, and the JCA backend is chosen if its output is the same.
+	 * </p>
+	 *
+	 * @return the backend that provides the AES-256 cipher of new instances of this class.
+	 * @see    #setDefaultBackend(Backend)
+	 */
+
+	public static Backend getDefaultBackend()
+	{
+		Backend backend = defaultBackend;
+		if (backend == null)
+		{
+			backend = autoBackend;
+			if (backend == null)
+			{
+				backend = testJcaBackend() ? Backend.JCA : Backend.SOFTWARE;
+				autoBackend = backend;
+			}
+		}
+		return backend;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the backend that will provide the AES-256 cipher of instances of this class that are created subsequently.
+	 * Existing instances are not affected.
+	 *
+	 * @param backend
+	 *          the backend that will provide the AES-256 cipher.  If {@code backend} is {@code null}, the backend will
+	 *          be chosen automatically (see {@link #getDefaultBackend()}).
+	 * @see   #getDefaultBackend()
+	 */
+
+	public static void setDefaultBackend(
+		Backend	backend)
+	{
+		defaultBackend = backend;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns {@code true} if the {@linkplain Backend#JCA JCA backend} is available and generates the same blocks as
+	 * the {@linkplain Backend#SOFTWARE software backend} for some test keys and counter values.
+	 *
+	 * @return {@code true} if the JCA backend is available and its output is the same as that of the software
+	 *         backend.
+	 */
+
+	private static boolean testJcaBackend()
+	{
+		try
+		{
+			Random prng = new Random();
+			Aes256 softwareCipher = new Aes256();
+			Cipher jcaCipher = Cipher.getInstance(JCA_TRANSFORMATION);
+			byte[] key = new byte[Aes256.KEY_SIZE];
+			byte[] counters = new byte[SELF_TEST_NUM_BLOCKS * Aes256.BLOCK_SIZE];
+			byte[] softwareOutput = new byte[counters.length];
+			for (int i = 0; i < SELF_TEST_NUM_KEYS; i++)
+			{
+				// Generate test key and counter values
+				prng.nextBytes(key);
+				prng.nextBytes(counters);
+
+				// Encrypt counter values with software backend
+				softwareCipher.setEncryptionKey(key);
+				for (int offset = 0; offset < counters.length; offset += Aes256.BLOCK_SIZE)
+					softwareCipher.encryptBlock(counters, offset, softwareOutput, offset);
+
+				// Encrypt counter values with JCA backend and compare output
+				jcaCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, JCA_KEY_ALGORITHM));
+				if (!Arrays.equals(jcaCipher.doFinal(counters), softwareOutput))
+					return false;
+			}
+			return true;
+		}
+		catch (GeneralSecurityException | RuntimeException e)
+		{
+			return false;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and initialises a JCA AES cipher for encryption with the specified key.
+	 *
+	 * @param  key
+	 *           the encryption key.
+	 * @return a JCA AES cipher that has been initialised for encryption with {@code key}.
+	 * @throws UnexpectedRuntimeException
+	 *           if the cipher could not be created or initialised.
+	 */
+
+	private static Cipher createJcaCipher(
+		byte[]	key)
+	{
+		try
+		{
+			Cipher cipher = Cipher.getInstance(JCA_TRANSFORMATION);
+			if (key != null)
+				cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, JCA_KEY_ALGORITHM));
+			return cipher;
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods : overriding methods
 ////////////////////////////////////////////////////////////////////////
@@ -162,7 +319,13 @@ public class FortunaAes256
 	public FortunaAes256 clone()
 	{
 		FortunaAes256 copy = (FortunaAes256)super.clone();
-		copy.cipher = cipher.clone();
+		if (cipher != null)
+			copy.cipher = cipher.clone();
+		if (jcaCipher != null)
+		{
+			copy.jcaKey = (jcaKey == null) ? null : jcaKey.clone();
+			copy.jcaCipher = createJcaCipher(copy.jcaKey);
+		}
 		copy.counter = counter.clone();
 		return copy;
 	}
@@ -176,7 +339,17 @@ public class FortunaAes256
 	@Override
 	protected void initCipher()
 	{
-		cipher = new Aes256();
+		backend = getDefaultBackend();
+		switch (backend)
+		{
+			case SOFTWARE:
+				cipher = new Aes256();
+				break;
+
+			case JCA:
+				jcaCipher = createJcaCipher(null);
+				break;
+		}
 		counter = new byte[Aes256.BLOCK_SIZE];
 	}
 
@@ -189,7 +362,13 @@ public class FortunaAes256
 	@Override
 	protected void resetCipher()
 	{
-		cipher.reset();
+		if (cipher != null)
+			cipher.reset();
+		if (jcaCipher != null)
+		{
+			jcaKey = null;
+			jcaCipher = createJcaCipher(null);
+		}
 		Arrays.fill(counter, (byte)0);
 	}
 
@@ -206,7 +385,20 @@ public class FortunaAes256
 	protected void setCipherKey(
 		byte[]	key)
 	{
-		cipher.setEncryptionKey(key);
+		if (cipher != null)
+			cipher.setEncryptionKey(key);
+		if (jcaCipher != null)
+		{
+			jcaKey = key.clone();
+			try
+			{
+				jcaCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(jcaKey, JCA_KEY_ALGORITHM));
+			}
+			catch (GeneralSecurityException e)
+			{
+				throw new UnexpectedRuntimeException(e);
+			}
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -241,11 +433,139 @@ public class FortunaAes256
 		byte[]	buffer,
 		int		offset)
 	{
-		cipher.encryptBlock(counter, 0, buffer, offset);
+		if (cipher != null)
+			cipher.encryptBlock(counter, 0, buffer, offset);
+		else
+			encryptJca(buffer, offset, Aes256.BLOCK_SIZE, counter);
 	}
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Encrypts the specified number of successive values of the block counter with this PRNG's cipher, incrementing
+	 * the counter after each value, and stores the results contiguously in the specified buffer.
+	 * <p>
+	 * If the cipher is provided by the JCA backend, the counter values are written to {@code buffer} and encrypted in
+	 * place with a single call to the cipher.
+	 * </p>
+	 *
+	 * @param buffer
+	 *          the buffer in which the encrypted data will be stored.
+	 * @param offset
+	 *          the offset in {@code buffer} at which the first byte of encrypted data will be stored.
+	 * @param numBlocks
+	 *          the number of blocks that will be generated.
+	 */
+
+	@Override
+	protected void encryptCounters(
+		byte[]	buffer,
+		int		offset,
+		int		numBlocks)
+	{
+		// Software backend
+		if (cipher != null)
+		{
+			super.encryptCounters(buffer, offset, numBlocks);
+			return;
+		}
+
+		// JCA backend: write counter values to buffer and encrypt them in place
+		int length = numBlocks * Aes256.BLOCK_SIZE;
+		for (int i = offset; i < offset + length; i += Aes256.BLOCK_SIZE)
+		{
+			System.arraycopy(counter, 0, buffer, i, Aes256.BLOCK_SIZE);
+			incrementCounter();
+		}
+		encryptJca(buffer, offset, length, null);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the backend that provides the AES-256 cipher of this PRNG.
+	 *
+	 * @return the backend that provides the AES-256 cipher of this PRNG.
+	 */
+
+	public Backend getBackend()
+	{
+		return backend;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encrypts the specified data with the JCA cipher of this PRNG.
+	 *
+	 * @param buffer
+	 *          the buffer in which the encrypted data will be stored.  If {@code input} is {@code null}, {@code
+	 *          buffer} also contains the data that will be encrypted, and the data will be encrypted in place.
+	 * @param offset
+	 *          the offset in {@code buffer} at which the first byte of encrypted data will be stored.
+	 * @param length
+	 *          the length of the data, which must be a multiple of the block size of the cipher.
+	 * @param input
+	 *          the data that will be encrypted, or {@code null} if the data is in {@code buffer}.
+	 */
+
+	private void encryptJca(
+		byte[]	buffer,
+		int		offset,
+		int		length,
+		byte[]	input)
+	{
+		try
+		{
+			if (input == null)
+				jcaCipher.doFinal(buffer, offset, length, buffer, offset);
+			else
+				jcaCipher.doFinal(input, 0, length, buffer, offset);
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Enumerated types
+////////////////////////////////////////////////////////////////////////
+
+
+	// ENUMERATION: BACKEND OF AES-256 CIPHER
+
+
+	/**
+	 * This is an enumeration of the implementations of the AES-256 cipher that may be used by a {@link FortunaAes256}
+	 * PRNG.
+	 */
+
+	public enum Backend
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * The software implementation of the cipher, {@link Aes256}.
+		 */
+
+		SOFTWARE,
+
+		/**
+		 * The AES cipher of the Java Cryptography Architecture.
+		 */
+
+		JCA
+
+	}
+
+	//==================================================================
+
 }
 
 //----------------------------------------------------------------------
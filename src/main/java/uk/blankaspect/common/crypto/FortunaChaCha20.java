@@ -248,6 +248,30 @@ public class FortunaChaCha20
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Encrypts the specified number of successive values of the block counter with this PRNG's cipher, incrementing
+	 * the counter after each value, and stores the results contiguously in the specified buffer.
+	 *
+	 * @param buffer
+	 *          the buffer in which the encrypted data will be stored.
+	 * @param offset
+	 *          the offset in {@code buffer} at which the first byte of encrypted data will be stored.
+	 * @param numBlocks
+	 *          the number of blocks that will be generated.
+	 */
+
+	@Override
+	protected void encryptCounters(
+		byte[]	buffer,
+		int		offset,
+		int		numBlocks)
+	{
+		cipher.getBlocks(counter, numBlocks, buffer, offset);
+		counter += numBlocks;
+	}
+
+	//------------------------------------------------------------------
+
 }
 
 //----------------------------------------------------------------------
@@ -117,6 +117,83 @@ public class HmacSha256
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Extracts a pseudo-random key from the specified input keying material and salt with the <i>extract</i> step of
+	 * the HMAC-based key-derivation function HKDF-SHA256.
+	 * <p>
+	 * HKDF is specified in <a href="https://tools.ietf.org/html/rfc5869">IETF RFC 5869</a>.
+	 * </p>
+	 *
+	 * @param  salt
+	 *           the salt, which may be {@code null}.
+	 * @param  inputKey
+	 *           the input keying material.
+	 * @return a pseudo-random key of {@link #HASH_VALUE_SIZE} bytes.
+	 * @see    #hkdfExpand(byte[], byte[], int)
+	 */
+
+	public static byte[] hkdfExtract(
+		byte[]	salt,
+		byte[]	inputKey)
+	{
+		return new HmacSha256((salt == null) ? new byte[HASH_VALUE_SIZE] : salt).getValue(inputKey);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Expands the specified pseudo-random key and context information to a key of the specified length with the
+	 * <i>expand</i> step of the HMAC-based key-derivation function HKDF-SHA256.
+	 * <p>
+	 * HKDF is specified in <a href="https://tools.ietf.org/html/rfc5869">IETF RFC 5869</a>.
+	 * </p>
+	 *
+	 * @param  key
+	 *           the pseudo-random key, which should be at least {@link #HASH_VALUE_SIZE} bytes long.
+	 * @param  info
+	 *           the context information, which may be {@code null}.
+	 * @param  length
+	 *           the length (in bytes) of the output key.
+	 * @return an output key of length {@code length}.
+	 * @throws IllegalArgumentException
+	 *           if {@code length} is negative or greater than 255 times {@link #HASH_VALUE_SIZE}.
+	 * @see    #hkdfExtract(byte[], byte[])
+	 */
+
+	public static byte[] hkdfExpand(
+		byte[]	key,
+		byte[]	info,
+		int		length)
+	{
+		final	int	MAX_NUM_BLOCKS	= 255;
+
+		// Validate arguments
+		if ((length < 0) || (length > MAX_NUM_BLOCKS * HASH_VALUE_SIZE))
+			throw new IllegalArgumentException();
+
+		// Generate output key as the concatenation of T(1), T(2), ..., where T(i) = HMAC(key, T(i - 1) | info | i)
+		byte[] outKey = new byte[length];
+		HmacSha256 hmac = new HmacSha256(key);
+		byte[] block = new byte[0];
+		int index = 0;
+		for (int offset = 0; offset < length; offset += HASH_VALUE_SIZE)
+		{
+			hmac.reset();
+			hmac.update(block);
+			if (info != null)
+				hmac.update(info);
+			block = hmac.getValue(new byte[] { (byte)++index });
+			System.arraycopy(block, 0, outKey, offset, Math.min(length - offset, HASH_VALUE_SIZE));
+		}
+		return outKey;
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods
 ////////////////////////////////////////////////////////////////////////
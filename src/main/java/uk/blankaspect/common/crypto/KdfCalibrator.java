@@ -0,0 +1,426 @@
+/*====================================================================*\
+
+KdfCalibrator.java
+
+Class: calibrator of the parameters of the scrypt key-derivation function.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.EnumMap;
+import java.util.Map;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: CALIBRATOR OF THE PARAMETERS OF THE SCRYPT KEY-DERIVATION FUNCTION
+
+
+/**
+ * This class measures the speed of the {@linkplain ScryptSalsa20 scrypt key-derivation function} on the current
+ * machine, and uses the measurements to predict the time and memory that a derivation with a given set of {@linkplain
+ * StreamEncrypter.KdfParams KDF parameters} will take, and to select parameters that meet a target derivation time
+ * within a memory budget.
+ * <p>
+ * The work of the KDF is proportional to the product of <i>N</i> (2 raised to the power of the CPU/memory cost) and
+ * <i>r</i> (the number of blocks) for each superblock; the superblocks are mixed in waves, each of which has as many
+ * superblocks as there are threads.  The speed of the KDF is measured once with a single thread and once with a thread
+ * for each available processor, so that the prediction allows for the contention between threads for the memory bus.
+ * The speed is measured separately for each number of rounds of the core hash function.
+ * </p>
+ */
+
+public class KdfCalibrator
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The fraction of the free heap memory that is used as the default memory budget of a derivation. */
+	public static final		double	DEFAULT_MEMORY_BUDGET_FRACTION	= 0.5;
+
+	/** The size (in bytes) of a block of the scrypt algorithm. */
+	private static final	int		BLOCK_SIZE	= 128;
+
+	/** The number of blocks of a superblock that are allocated in addition to the costly <i>V</i> array. */
+	private static final	int		NUM_SCRATCH_BLOCKS	= 3;
+
+	/** The CPU/memory cost of a benchmark derivation. */
+	private static final	int		BENCHMARK_COST	= 14;
+
+	/** The number of blocks of a benchmark derivation. */
+	private static final	int		BENCHMARK_NUM_BLOCKS	= 8;
+
+	/** The number of derivations that are performed to warm up the KDF before each measurement. */
+	private static final	int		NUM_WARM_UP_RUNS	= 1;
+
+	/** The number of derivations from which the fastest is taken as the measurement. */
+	private static final	int		NUM_TRIALS	= 2;
+
+	/** The length (in bytes) of the key and salt of a benchmark derivation. */
+	private static final	int		BENCHMARK_KEY_LENGTH	= 32;
+
+	/** The length (in bytes) of the key that is derived by a benchmark derivation. */
+	private static final	int		BENCHMARK_OUT_KEY_LENGTH	= 32;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	/** The speeds of the KDF that have been measured, keyed by the number of rounds of the core hash function. */
+	private	Map<Scrypt.CoreHashNumRounds, Speed>	speeds;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a calibrator of the parameters of the scrypt key-derivation function.  The speed of the
+	 * KDF is not measured until it is needed.
+	 */
+
+	public KdfCalibrator()
+	{
+		// Initialise instance variables
+		speeds = new EnumMap<>(Scrypt.CoreHashNumRounds.class);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the number of bytes of heap memory that a derivation with the specified parameters will allocate at the
+	 * same time.
+	 *
+	 * @param  params
+	 *           the parameters of the KDF.
+	 * @return the number of bytes of heap memory that a derivation with {@code params} will allocate at the same time.
+	 */
+
+	public static long getMemoryUsage(
+		StreamEncrypter.KdfParams	params)
+	{
+		long superblockSize = (long)params.getNumBlocks() * BLOCK_SIZE;
+		int numConcurrentSuperblocks = Math.min(params.getNumSuperblocks(), params.getNumThreads());
+		return numConcurrentSuperblocks * ((1L << params.getCost()) + NUM_SCRATCH_BLOCKS) * superblockSize
+				+ params.getNumSuperblocks() * superblockSize;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the default memory budget of a derivation, which is a fixed fraction of the heap memory that is currently
+	 * free or that can still be allocated to the Java virtual machine.
+	 *
+	 * @return the default memory budget (in bytes) of a derivation.
+	 * @see    #DEFAULT_MEMORY_BUDGET_FRACTION
+	 */
+
+	public static long getDefaultMemoryBudget()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		long freeMemory = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		return (long)((double)freeMemory * DEFAULT_MEMORY_BUDGET_FRACTION);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the time (in nanoseconds) that the specified KDF takes to derive a key with the specified parameters.
+	 *
+	 * @param  kdf
+	 *           the KDF.
+	 * @param  numSuperblocks
+	 *           the number of parallel superblocks.
+	 * @param  numThreads
+	 *           the number of threads.
+	 * @return the time (in nanoseconds) that {@code kdf} takes to derive a key.
+	 */
+
+	private static long measure(
+		Scrypt	kdf,
+		int		numSuperblocks,
+		int		numThreads)
+	{
+		byte[] key = new byte[BENCHMARK_KEY_LENGTH];
+		byte[] salt = new byte[BENCHMARK_KEY_LENGTH];
+
+		// Warm up KDF
+		for (int i = 0; i < NUM_WARM_UP_RUNS; i++)
+		{
+			kdf.deriveKey(key, salt, BENCHMARK_COST, BENCHMARK_NUM_BLOCKS, numSuperblocks, numThreads,
+						  BENCHMARK_OUT_KEY_LENGTH);
+		}
+
+		// Take the fastest of several derivations
+		long minTime = Long.MAX_VALUE;
+		for (int i = 0; i < NUM_TRIALS; i++)
+		{
+			long startTime = System.nanoTime();
+			kdf.deriveKey(key, salt, BENCHMARK_COST, BENCHMARK_NUM_BLOCKS, numSuperblocks, numThreads,
+						  BENCHMARK_OUT_KEY_LENGTH);
+			minTime = Math.min(minTime, System.nanoTime() - startTime);
+		}
+		return minTime;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns {@code true} if the speed of the KDF with the specified number of rounds of the core hash function has
+	 * been measured.
+	 *
+	 * @param  numRounds
+	 *           the number of rounds of the core hash function.
+	 * @return {@code true} if the speed of the KDF with {@code numRounds} has been measured.
+	 */
+
+	public synchronized boolean isBenchmarked(
+		Scrypt.CoreHashNumRounds	numRounds)
+	{
+		return speeds.containsKey(numRounds);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Measures the speed of the KDF with the specified number of rounds of the core hash function on the current
+	 * machine, if it has not already been measured.  The measurement takes a fraction of a second on a typical machine,
+	 * so this method should not be called on the event dispatching thread.
+	 *
+	 * @param numRounds
+	 *          the number of rounds of the core hash function.
+	 */
+
+	public synchronized void benchmark(
+		Scrypt.CoreHashNumRounds	numRounds)
+	{
+		if (!speeds.containsKey(numRounds))
+		{
+			Scrypt kdf = new ScryptSalsa20(numRounds);
+			double numUnits = (double)((1 << BENCHMARK_COST) * BENCHMARK_NUM_BLOCKS);
+			long superblockMemory = ((1L << BENCHMARK_COST) + NUM_SCRATCH_BLOCKS) * BENCHMARK_NUM_BLOCKS * BLOCK_SIZE;
+			int numThreads = (int)Math.min(Math.min(Runtime.getRuntime().availableProcessors(), Scrypt.MAX_NUM_THREADS),
+										   Math.max(1, getDefaultMemoryBudget() / superblockMemory));
+			double singleThreadUnitTime = (double)measure(kdf, 1, 1) / numUnits;
+			double allThreadsUnitTime = (numThreads > 1) ? (double)measure(kdf, numThreads, numThreads) / numUnits
+														 : singleThreadUnitTime;
+			speeds.put(numRounds, new Speed(singleThreadUnitTime, allThreadsUnitTime, numThreads));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the speed of the KDF with the specified number of rounds of the core hash function instead of measuring it,
+	 * so that the predictions and selections of this calibrator do not depend on the speed of the current machine.
+	 *
+	 * @param numRounds
+	 *          the number of rounds of the core hash function.
+	 * @param singleThreadUnitTime
+	 *          the time (in nanoseconds) that a thread that runs alone takes to process one block for one iteration of
+	 *          the CPU/memory cost.
+	 * @param allThreadsUnitTime
+	 *          the time (in nanoseconds) that a thread takes to process one block for one iteration of the CPU/memory
+	 *          cost when {@code maxNumThreads} threads run at the same time.
+	 * @param maxNumThreads
+	 *          the number of threads with which {@code allThreadsUnitTime} applies.
+	 */
+
+	synchronized void setSpeed(
+		Scrypt.CoreHashNumRounds	numRounds,
+		double						singleThreadUnitTime,
+		double						allThreadsUnitTime,
+		int							maxNumThreads)
+	{
+		speeds.put(numRounds, new Speed(singleThreadUnitTime, allThreadsUnitTime, maxNumThreads));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the predicted time (in milliseconds) of a derivation with the specified parameters.  If the speed of the
+	 * KDF with the number of rounds of {@code params} has not been measured, it is measured first.
+	 *
+	 * @param  params
+	 *           the parameters of the KDF.
+	 * @return the predicted time (in milliseconds) of a derivation with {@code params}.
+	 */
+
+	public long getPredictedTime(
+		StreamEncrypter.KdfParams	params)
+	{
+		return Math.round(predictTime(params) * 1.0e-6);
+	}
+
+	//------------------------------------------------------------------
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Selects the parameters of the KDF that make the most use of the specified target time and memory budget.  The
+	 * number of rounds, number of blocks and maximum number of threads of the specified parameters are retained; the
+	 * CPU/memory cost is set to the highest value for which a wave of superblocks, one for each thread, can be mixed
+	 * within both the target time and the memory budget, and the number of superblocks is set to the number of such
+	 * waves that fit in the target time, as far as the memory budget allows.  If no value of the cost meets the target
+	 * time and memory budget, the cost and number of superblocks are set to their minimum values.
+	 *
+	 * @param  params
+	 *           the parameters of the KDF whose number of rounds, number of blocks and maximum number of threads will
+	 *           be retained.
+	 * @param  targetTime
+	 *           the target time (in milliseconds) of a derivation.
+	 * @param  memoryBudget
+	 *           the maximum number of bytes of heap memory that a derivation may allocate at the same time.
+	 * @return the selected parameters of the KDF.
+	 */
+
+	public StreamEncrypter.KdfParams calibrate(
+		StreamEncrypter.KdfParams	params,
+		long						targetTime,
+		long						memoryBudget)
+	{
+		int numThreads = Math.min(params.getNumThreads(), StreamEncrypter.KdfParams.MAX_NUM_SUPERBLOCKS);
+		long superblockSize = (long)params.getNumBlocks() * BLOCK_SIZE;
+		double targetTimeNs = (double)targetTime * 1.0e6;
+		for (int cost = StreamEncrypter.KdfParams.MAX_COST; cost >= StreamEncrypter.KdfParams.MIN_COST; cost--)
+		{
+			// Test whether a single wave of superblocks meets the target time and memory budget.  The time is not
+			// rounded, so that the waves that fill the target time do not exceed it in total.
+			StreamEncrypter.KdfParams waveParams = createParams(params, cost, numThreads);
+			long waveMemory = getMemoryUsage(waveParams);
+			if (waveMemory > memoryBudget)
+				continue;
+			double waveTime = predictTime(waveParams);
+			if (waveTime > targetTimeNs)
+				continue;
+
+			// Fill the target time with further waves of superblocks.  The number of waves is clamped before it is
+			// multiplied by the number of threads, so that the product cannot overflow for a large target time.  Each
+			// further superblock also allocates memory for its output, so the number of superblocks is limited by the
+			// memory that remains after the first wave.
+			long numWaves = StreamEncrypter.KdfParams.MAX_NUM_SUPERBLOCKS;
+			if (waveTime > 0.0)
+				numWaves = (long)Math.min(targetTimeNs / waveTime, (double)numWaves);
+			long maxNumSuperblocks = numThreads + (memoryBudget - waveMemory) / superblockSize;
+			int numSuperblocks = (int)Math.min(Math.min((long)numThreads * numWaves, maxNumSuperblocks),
+											   StreamEncrypter.KdfParams.MAX_NUM_SUPERBLOCKS);
+			return createParams(params, cost, numSuperblocks);
+		}
+		return createParams(params, StreamEncrypter.KdfParams.MIN_COST, StreamEncrypter.KdfParams.MIN_NUM_SUPERBLOCKS);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the predicted time (in nanoseconds) of a derivation with the specified parameters.  If the speed of the
+	 * KDF with the number of rounds of {@code params} has not been measured, it is measured first.
+	 *
+	 * @param  params
+	 *           the parameters of the KDF.
+	 * @return the predicted time (in nanoseconds) of a derivation with {@code params}.
+	 */
+
+	private double predictTime(
+		StreamEncrypter.KdfParams	params)
+	{
+		// Get speed of KDF
+		Speed speed = null;
+		synchronized (this)
+		{
+			benchmark(params.numRounds);
+			speed = speeds.get(params.numRounds);
+		}
+
+		// Calculate time from the number of waves of superblocks and the work of each superblock
+		int numSuperblocks = params.getNumSuperblocks();
+		int numThreads = Math.min(numSuperblocks, params.getNumThreads());
+		int numWaves = (numSuperblocks + numThreads - 1) / numThreads;
+		double numUnits = (double)(1L << params.getCost()) * (double)params.getNumBlocks() * (double)numWaves;
+		return speed.getUnitTime(numThreads) * numUnits;
+	}
+
+	//------------------------------------------------------------------
+
+	private StreamEncrypter.KdfParams createParams(
+		StreamEncrypter.KdfParams	params,
+		int							cost,
+		int							numSuperblocks)
+	{
+		return new StreamEncrypter.KdfParams(params.numRounds, cost, params.getNumBlocks(), numSuperblocks,
+											 params.maxNumThreads);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: SPEED OF KDF
+
+
+	/**
+	 * This record encapsulates the measured speed of the KDF: the time (in nanoseconds) that a thread takes to process
+	 * one block for one iteration of the CPU/memory cost, when the thread runs alone and when it runs alongside the
+	 * largest number of other threads with which the speed was measured.
+	 */
+
+	private record Speed(
+		double	singleThreadUnitTime,
+		double	allThreadsUnitTime,
+		int		maxNumThreads)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns the time (in nanoseconds) that a thread takes to process one block for one iteration of the
+		 * CPU/memory cost when the specified number of threads run at the same time.  The time is interpolated linearly
+		 * between the two measured times.
+		 *
+		 * @param  numThreads
+		 *           the number of threads that run at the same time.
+		 * @return the time (in nanoseconds) that a thread takes to process one block for one iteration.
+		 */
+
+		private double getUnitTime(
+			int	numThreads)
+		{
+			if ((numThreads <= 1) || (maxNumThreads <= 1))
+				return singleThreadUnitTime;
+			double fraction = (double)(Math.min(numThreads, maxNumThreads) - 1) / (double)(maxNumThreads - 1);
+			return singleThreadUnitTime + fraction * (allThreadsUnitTime - singleThreadUnitTime);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
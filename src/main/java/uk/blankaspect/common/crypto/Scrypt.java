@@ -96,6 +96,9 @@ public class Scrypt
 	/** The size (in ints) of a block. */
 	private static final	int	BLOCK_SIZE_INTS	= BLOCK_SIZE / Integer.BYTES;
 
+	/** The maximum length (in ints) of a segment of the V array of the highest level of mixing. */
+	private static final	int	MAX_V_SEGMENT_LENGTH	= 1 << 26;
+
 ////////////////////////////////////////////////////////////////////////
 //  Class variables
 ////////////////////////////////////////////////////////////////////////
@@ -392,50 +395,50 @@ public class Scrypt
 
 	/**
 	 * Mixes the specified block of data at the intermediate level of the scrypt KDF.
+	 * <p>
+	 * The input and output arrays must be distinct.  The scratch arrays are supplied by the caller so that they can be
+	 * reused across successive calls without allocation.
+	 * </p>
 	 *
 	 * @param in
 	 *          the data that will be mixed.
 	 * @param out
 	 *          the buffer in which the mixed output data will be stored.
+	 * @param x
+	 *          a scratch array whose length is the size (in 32-bit words) of the block of the core hash function.
+	 * @param z
+	 *          a scratch array whose length is the size (in 32-bit words) of the block of the core hash function.
 	 */
 
 	protected void blockMix(
 		int[]	in,
-		int[]	out)
+		int[]	out,
+		int[]	x,
+		int[]	z)
 	{
 		final	int	BLOCK_LENGTH	= CORE_HASH_BLOCK_SIZE / Integer.BYTES;
 
 		// Copy the last block of input data to the X array
 		int length = in.length;
-		int[] x = new int[BLOCK_LENGTH];
-		System.arraycopy(in, in.length - BLOCK_LENGTH, x, 0, BLOCK_LENGTH);
-
-		// Hash the input data with the core hash function
-		int[] y = new int[length];
-		int[] z = new int[BLOCK_LENGTH];
-		int j = 0;
-		for (int offset = 0; offset < length; offset += BLOCK_LENGTH)
-		{
-			for (int i = 0; i < BLOCK_LENGTH; i++)
-				z[i] = x[i] ^ in[j++];
-
-			coreHashFunction.hash(z, x, coreHashNumRounds.value);
-
-			System.arraycopy(x, 0, y, offset, BLOCK_LENGTH);
-		}
+		System.arraycopy(in, length - BLOCK_LENGTH, x, 0, BLOCK_LENGTH);
 
-		// Move the processed input data to the output array
-		int offset = 0;
+		// Hash the input data with the core hash function, storing the even-numbered output blocks in the first half
+		// of the output array and the odd-numbered output blocks in the second half
+		int numRounds = coreHashNumRounds.value;
 		int offset0 = 0;
 		int offset1 = length / 2;
-		while (offset < length)
+		for (int offset = 0; offset < length; )
 		{
-			System.arraycopy(y, offset, out, offset0, BLOCK_LENGTH);
-			offset += BLOCK_LENGTH;
+			for (int i = 0; i < BLOCK_LENGTH; i++)
+				z[i] = x[i] ^ in[offset++];
+			coreHashFunction.hash(z, x, numRounds);
+			System.arraycopy(x, 0, out, offset0, BLOCK_LENGTH);
 			offset0 += BLOCK_LENGTH;
 
-			System.arraycopy(y, offset, out, offset1, BLOCK_LENGTH);
-			offset += BLOCK_LENGTH;
+			for (int i = 0; i < BLOCK_LENGTH; i++)
+				z[i] = x[i] ^ in[offset++];
+			coreHashFunction.hash(z, x, numRounds);
+			System.arraycopy(x, 0, out, offset1, BLOCK_LENGTH);
 			offset1 += BLOCK_LENGTH;
 		}
 	}
@@ -444,6 +447,11 @@ public class Scrypt
 
 	/**
 	 * Mixes the specified superblock of data at the highest level of the scrypt KDF.
+	 * <p>
+	 * The costly V array is stored contiguously in a single {@code int} array if it is small enough; otherwise, it is
+	 * divided into a minimal number of equal segments, each of which is a contiguous array of a power-of-two number of
+	 * rows.  No other memory is allocated after the V array and a few scratch arrays have been allocated.
+	 * </p>
 	 *
 	 * @param in
 	 *          the data that will be mixed.
@@ -458,31 +466,47 @@ public class Scrypt
 		int[]	out,
 		int		cost)
 	{
-		// Copy the input data to the X array
+		final	int	BLOCK_LENGTH	= CORE_HASH_BLOCK_SIZE / Integer.BYTES;
+
+		// Allocate scratch arrays
 		int length = in.length;
-		int[] x = new int[length];
-		System.arraycopy(in, 0, x, 0, length);
+		int[] x = in.clone();
+		int[] y = new int[length];
+		int[] hashX = new int[BLOCK_LENGTH];
+		int[] hashZ = new int[BLOCK_LENGTH];
 
-		// Mix the data in the costly V array
+		// Allocate the costly V array as one or more segments, each of which has a power-of-two number of rows
 		int numIterations = 1 << cost;
-		int[][] v = new int[numIterations][length];
+		int segmentNumRowsShift = Math.min(cost, Integer.numberOfTrailingZeros(
+				Integer.highestOneBit(MAX_V_SEGMENT_LENGTH / length)));
+		int segmentRowMask = (1 << segmentNumRowsShift) - 1;
+		int[][] v = new int[numIterations >>> segmentNumRowsShift][length << segmentNumRowsShift];
+
+		// Mix the data in the costly V array
 		for (int i = 0; i < numIterations; i++)
 		{
-			System.arraycopy(x, 0, v[i], 0, length);
+			System.arraycopy(x, 0, v[i >>> segmentNumRowsShift], (i & segmentRowMask) * length, length);
 
-			blockMix(x, x);
+			blockMix(x, y, hashX, hashZ);
+			int[] temp = x;
+			x = y;
+			y = temp;
 		}
 
 		// Perform further mixing
 		int mask = numIterations - 1;
-		int[] t = new int[length];
 		for (int i = 0; i < numIterations; i++)
 		{
-			int[] u = v[x[length - (BLOCK_SIZE_INTS / 2)] & mask];
+			int index = x[length - BLOCK_LENGTH] & mask;
+			int[] segment = v[index >>> segmentNumRowsShift];
+			int offset = (index & segmentRowMask) * length;
 			for (int j = 0; j < length; j++)
-				t[j] = x[j] ^ u[j];
+				x[j] ^= segment[offset++];
 
-			blockMix(t, x);
+			blockMix(x, y, hashX, hashZ);
+			int[] temp = x;
+			x = y;
+			y = temp;
 		}
 
 		// Copy the mixed data to the output array
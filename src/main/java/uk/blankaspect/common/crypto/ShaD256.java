@@ -54,9 +54,6 @@ public class ShaD256
 	/** The name of the hash function. */
 	private static final	String	HASH_NAME	= "SHA-256";
 
-	/** The outer hash function. */
-	private static final	MessageDigest	OUTER_HASH;
-
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
@@ -64,22 +61,9 @@ public class ShaD256
 	/** The inner hash function. */
 	private	MessageDigest	hash;
 
-////////////////////////////////////////////////////////////////////////
-//  Static initialiser
-////////////////////////////////////////////////////////////////////////
-
-	static
-	{
-		// Initialise the outer SHA-256 hash function
-		try
-		{
-			OUTER_HASH = MessageDigest.getInstance(HASH_NAME);
-		}
-		catch (NoSuchAlgorithmException e)
-		{
-			throw new UnexpectedRuntimeException(e);
-		}
-	}
+	/** The outer hash function.  Each instance has its own outer hash function so that instances may be used
+		concurrently on different threads. */
+	private	MessageDigest	outerHash;
 
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
@@ -98,6 +82,7 @@ public class ShaD256
 		try
 		{
 			hash = MessageDigest.getInstance(HASH_NAME);
+			outerHash = MessageDigest.getInstance(HASH_NAME);
 		}
 		catch (NoSuchAlgorithmException e)
 		{
@@ -125,6 +110,7 @@ public class ShaD256
 	{
 		ShaD256 copy = (ShaD256)super.clone();
 		copy.hash = (MessageDigest)hash.clone();
+		copy.outerHash = (MessageDigest)outerHash.clone();
 		return copy;
 	}
 
@@ -193,8 +179,7 @@ public class ShaD256
 
 	public byte[] digest()
 	{
-		OUTER_HASH.reset();
-		return OUTER_HASH.digest(hash.digest());
+		return outerHash.digest(hash.digest());
 	}
 
 	//------------------------------------------------------------------
@@ -22,10 +22,18 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
@@ -36,14 +44,20 @@ import uk.blankaspect.common.bitarray.BitUtils;
 import uk.blankaspect.common.exception.AppException;
 import uk.blankaspect.common.exception.TaskCancelledException;
 
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
 import uk.blankaspect.common.exception2.ValueOutOfBoundsException;
 
 import uk.blankaspect.common.function.IProcedure1;
 
 import uk.blankaspect.common.misc.IProgressListener;
+import uk.blankaspect.common.misc.ParallelDeflater;
+import uk.blankaspect.common.misc.Task;
+import uk.blankaspect.common.misc.TaskContext;
 
 import uk.blankaspect.common.number.NumberCodec;
 
+import uk.blankaspect.common.thread.BlockPipeline;
+
 //----------------------------------------------------------------------
 
 
@@ -128,6 +142,38 @@ import uk.blankaspect.common.number.NumberCodec;
  *     </tr>
  *   </tbody>
  * </table>
+ * <p>
+ * If the header of the stream has a version number that is designated as <i>chunked</i> (see {@link
+ * Header#setMinChunkedVersion(int)}), the payload is divided into chunks of {@link #CHUNK_SIZE} bytes (the last chunk
+ * may be shorter), each of which is compressed independently and encrypted with its own key stream.  The key of each
+ * chunk is derived from the CEK and the index of the chunk.  Each chunk is written as the length of its compressed
+ * data, the compressed data and an HMAC-SHA256 authentication tag of the index and plaintext of the chunk, all of which
+ * are encrypted with the key stream of the chunk.  Because the chunks are independent of each other, they are
+ * compressed and encrypted, or decrypted and decompressed, concurrently in a {@link ForkJoinPool}.  In a chunked
+ * stream, the HMAC-SHA256 hash value that follows the payload is generated from the timestamp and the authentication
+ * tags of the chunks, so that the removal or reordering of chunks is detected.
+ * </p>
+ * <p>
+ * If the header of the stream has a version number that is designated as <i>framed</i> (see {@link
+ * Header#setMinFramedVersion(int)}), the payload is encrypted in chunks as described above, but the last chunk, which
+ * may be empty, is marked as the final frame of the payload by a flag in its length field.  The flag is authenticated
+ * by the tag of the chunk, which is generated from the index of the chunk with its most significant bit set.  Because
+ * the end of the payload is found from the final frame rather than from the length of the stream, a framed payload
+ * may be encrypted from an input whose length is not known in advance, such as a pipe, and it is encrypted and
+ * decrypted with a fixed amount of memory.  The hash value that follows a framed payload is also generated from the
+ * index of the final frame and the lengths of the paddings that follow the payload, and the last padding is read
+ * when the stream is decrypted, so that the truncation of the stream is detected.
+ * </p>
+ * <p>
+ * A payload that is not encrypted in chunks may optionally be processed by a {@linkplain #setPipelined(boolean)
+ * pipeline} in which reading, compression, encryption and writing run concurrently on separate threads.  The pipeline
+ * does not affect the format of the encrypted stream.
+ * </p>
+ * <p>
+ * Alternatively, the payload of an encryption operation that is not encrypted in chunks may be {@linkplain
+ * #setParallelCompression(boolean) compressed in parallel} by a {@link ParallelDeflater}.  The compressed payload is
+ * still a single DEFLATE stream, so it is decrypted in the same way as a payload that is compressed sequentially.
+ * </p>
  */
 
 public class StreamEncrypter
@@ -152,6 +198,13 @@ public class StreamEncrypter
 		an encryption operation. */
 	public static final		int		MAX_COMPRESSION_LEVEL	= Deflater.BEST_COMPRESSION;
 
+	/** The size (in bytes) of the plaintext of a chunk of the payload of a stream that is encrypted in chunks. */
+	public static final		int		CHUNK_SIZE	= 1 << 20;  // 1048576
+
+	/** The length of the payload of an encryption operation whose length is not known in advance, which is allowed
+		only if the payload is encrypted in frames. */
+	public static final		long	UNKNOWN_LENGTH	= -1;
+
 	private static final	int		NUM_PADDINGS	= 3;
 	private static final	int		PADDING_SIZE	= 255;
 	private static final	int		MIN_LENGTH		= 512;
@@ -164,6 +217,8 @@ public class StreamEncrypter
 	private static final	int		PADDING_LENGTH_FIELD_SIZE	= 1;
 	private static final	int		TIMESTAMP_FIELD_SIZE		= TIMESTAMP_NUM_BITS / Byte.SIZE;
 	private static final	int		HASH_VALUE_FIELD_SIZE		= HmacSha256.HASH_VALUE_SIZE;
+	private static final	int		CHUNK_LENGTH_FIELD_SIZE		= 4;
+	private static final	int		CHUNK_INDEX_FIELD_SIZE		= 8;
 
 	private static final	int		METADATA1_SIZE	=
 			CIPHER_FIELD_SIZE + 3 * PADDING_LENGTH_FIELD_SIZE + TIMESTAMP_FIELD_SIZE + HASH_VALUE_FIELD_SIZE;
@@ -173,8 +228,24 @@ public class StreamEncrypter
 
 	private static final	int		COMBINER_BLOCK_SIZE	= 1 << 12;  // 4096
 
+	private static final	int		CHUNK_OVERHEAD_SIZE	= CHUNK_LENGTH_FIELD_SIZE + HASH_VALUE_FIELD_SIZE;
+
+	private static final	int		FINAL_FRAME_FLAG		= 1 << 31;
+	private static final	long	FINAL_FRAME_INDEX_FLAG	= 1L << 63;
+
+	private static final	int		MAX_COMPRESSED_CHUNK_LENGTH	= CHUNK_SIZE + (CHUNK_SIZE >>> 8) + 64;
+
+	private static final	int		MAX_NUM_PENDING_CHUNKS_FACTOR	= 2;
+
+	private static final	int		NUM_PIPELINE_BLOCKS	= 4;
+
+	private static final	byte[]	CHUNK_KEY_LABEL	= "chunk".getBytes(StandardCharsets.US_ASCII);
+
 	private static final	String	DATA_STR	= "data";
 
+	private static final	String	ENCRYPTION_PIPELINE_NAME	= "StreamEncrypter-encrypt";
+	private static final	String	DECRYPTION_PIPELINE_NAME	= "StreamEncrypter-decrypt";
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
@@ -184,6 +255,9 @@ public class StreamEncrypter
 	private	Header					header;
 	private	int						compressionLevel;
 	private	byte[]					hashValue;
+	private	ForkJoinPool			chunkPool;
+	private	boolean					pipelined;
+	private	boolean					parallelCompression;
 	private	List<IProgressListener>	progressListeners;
 
 ////////////////////////////////////////////////////////////////////////
@@ -362,6 +436,44 @@ public class StreamEncrypter
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Reads data from the specified input until the specified buffer is full or the end of the input is reached.
+	 *
+	 * @param  input
+	 *           the input object from which data will be read.
+	 * @param  buffer
+	 *           the buffer in which the data will be stored.
+	 * @return the number of bytes that were read from the input.  If it is less than the length of {@code buffer}, the
+	 *         end of the input has been reached.
+	 * @throws InputException
+	 *           if an error occurs when reading from the input.
+	 */
+
+	private static int readAvailable(
+		IInput	input,
+		byte[]	buffer)
+		throws InputException
+	{
+		try
+		{
+			int offset = 0;
+			while (offset < buffer.length)
+			{
+				int readLength = input.read(buffer, offset, buffer.length - offset);
+				if (readLength < 0)
+					break;
+				offset += readLength;
+			}
+			return offset;
+		}
+		catch (IOException e)
+		{
+			throw new InputException(ErrorId.ERROR_READING_DATA, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Writes data from an array of bytes to the specified output.
 	 *
@@ -441,6 +553,47 @@ public class StreamEncrypter
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Derives a content-encryption key of {@link #DERIVED_KEY_SIZE} bytes from the specified key and salt with the
+	 * scrypt key-derivation function and the specified KDF parameters, and returns the derived key.
+	 * <p>
+	 * This is the derivation that is performed by an encryption or decryption operation of an encrypter that has KDF
+	 * parameters.  It allows a caller to derive a key once and use it as the content-encryption key of several streams
+	 * that are encrypted or decrypted by encrypters that have no KDF parameters.
+	 * </p>
+	 *
+	 * @param  key
+	 *           the key from which the content-encryption key will be derived.
+	 * @param  salt
+	 *           the salt from which the content-encryption key will be derived.
+	 * @param  kdfParams
+	 *           the parameters of the function that will derive the content-encryption key.
+	 * @param  kdfExecutor
+	 *           the executor of the key-derivation function, which is ignored if it is {@code null}.
+	 * @return the derived content-encryption key, or {@code null} if the KDF parameters are invalid.
+	 * @throws AppException
+	 *           if there was not enough memory for the key-derivation function to generate the content-encryption key.
+	 */
+
+	public static byte[] deriveKey(
+		byte[]					key,
+		byte[]					salt,
+		KdfParams				kdfParams,
+		IProcedure1<Runnable>	kdfExecutor)
+		throws AppException
+	{
+		Scrypt.KeyGenerator keyGenerator = createKeyGenerator(key, salt, kdfParams);
+		if (kdfExecutor == null)
+			keyGenerator.run();
+		else
+			kdfExecutor.invoke(keyGenerator);
+		if (keyGenerator.isOutOfMemory())
+			throw new AppException(ErrorId.NOT_ENOUGH_MEMORY);
+		return keyGenerator.getDerivedKey();
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Returns an array of the specified number of zero-based indices, which have been permuted using the specified
 	 * pseudo-random number generator.
@@ -468,6 +621,161 @@ public class StreamEncrypter
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Derives the key of a chunk of a payload that is encrypted in chunks from the specified content-encryption key and
+	 * index of the chunk.
+	 *
+	 * @param  key
+	 *           the content-encryption key.
+	 * @param  index
+	 *           the index of the chunk.
+	 * @return the key of the chunk whose index is {@code index}.
+	 */
+
+	private static byte[] deriveChunkKey(
+		byte[]	key,
+		long	index)
+	{
+		HmacSha256 hash = new HmacSha256(key);
+		hash.update(CHUNK_KEY_LABEL);
+		hash.update(chunkIndexToBytes(index));
+		return hash.getValue();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the HMAC-SHA256 authentication tag of the specified index and plaintext of a chunk.
+	 *
+	 * @param  chunkKey
+	 *           the key of the chunk.
+	 * @param  index
+	 *           the index of the chunk.
+	 * @param  data
+	 *           an array that contains the plaintext of the chunk.
+	 * @param  length
+	 *           the length of the plaintext of the chunk.
+	 * @return the authentication tag of the chunk.
+	 */
+
+	private static byte[] getChunkTag(
+		byte[]	chunkKey,
+		long	index,
+		byte[]	data,
+		int		length)
+	{
+		HmacSha256 hash = new HmacSha256(chunkKey);
+		hash.update(chunkIndexToBytes(index));
+		return hash.getValue(data, 0, length);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Encodes the specified index of a chunk as an array of bytes in little-endian order.
+	 *
+	 * @param  index
+	 *           the index of the chunk.
+	 * @return the encoded index.
+	 */
+
+	private static byte[] chunkIndexToBytes(
+		long	index)
+	{
+		byte[] buffer = new byte[CHUNK_INDEX_FIELD_SIZE];
+		NumberCodec.uLongToBytesLE(index, buffer);
+		return buffer;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Updates the specified hash with the end of a payload that is encrypted in frames: the index of the final frame
+	 * and the lengths of the paddings that follow the payload.  The end of a framed payload is found from its final
+	 * frame rather than from the length of the stream, so the paddings would otherwise be unauthenticated.
+	 *
+	 * @param  hash
+	 *           the HMAC that will be updated.
+	 * @param  numFrames
+	 *           the number of frames of the payload.
+	 * @param  paddingLengths
+	 *           the lengths of the paddings of the stream.
+	 */
+
+	private static void updateEndHash(
+		HmacSha256	hash,
+		long		numFrames,
+		int[]		paddingLengths)
+	{
+		hash.update(chunkIndexToBytes((numFrames - 1) | FINAL_FRAME_INDEX_FLAG));
+		for (int i = 1; i < NUM_PADDINGS; i++)
+			hash.update(new byte[] { (byte)paddingLengths[i] });
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for the specified pending chunk to be processed, and returns the result.
+	 *
+	 * @param  pendingChunk
+	 *           the chunk whose processing will be awaited.
+	 * @return the processed chunk.
+	 * @throws InputException
+	 *           if the chunk could not be decrypted.
+	 * @throws TaskCancelledException
+	 *           if the current thread was interrupted while waiting.
+	 */
+
+	private static Chunk awaitChunk(
+		Future<Chunk>	pendingChunk)
+		throws InputException, TaskCancelledException
+	{
+		try
+		{
+			return pendingChunk.get();
+		}
+		catch (InterruptedException e)
+		{
+			throw new TaskCancelledException();
+		}
+		catch (ExecutionException e)
+		{
+			// A ForkJoinPool wraps a checked exception that is thrown by a callable in a RuntimeException, and it may
+			// wrap it again when it rethrows it on the waiting thread, so search the chain of causes for the original
+			// exception
+			Throwable cause = e.getCause();
+			for (Throwable t = cause; t != null; t = t.getCause())
+			{
+				if (t instanceof InputException inputException)
+					throw inputException;
+			}
+			if (cause instanceof RuntimeException runtimeException)
+				throw runtimeException;
+			if (cause instanceof Error error)
+				throw error;
+			throw new UnexpectedRuntimeException(cause);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Cancels the processing of the specified pending chunks.
+	 *
+	 * @param pendingChunks
+	 *          the chunks whose processing will be cancelled.
+	 */
+
+	private static void cancelChunks(
+		Deque<Future<Chunk>>	pendingChunks)
+	{
+		for (Future<Chunk> pendingChunk : pendingChunks)
+			pendingChunk.cancel(true);
+		pendingChunks.clear();
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods
 ////////////////////////////////////////////////////////////////////////
@@ -577,6 +885,119 @@ public class StreamEncrypter
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns the fork-join pool in which the chunks of a payload that is encrypted in chunks are processed.  The pool
+	 * is also used for the {@linkplain #setParallelCompression(boolean) parallel compression} of a payload.
+	 *
+	 * @return the fork-join pool in which chunks are processed, or {@code null} if chunks are processed in the
+	 *         {@linkplain ForkJoinPool#commonPool() common pool}.
+	 * @see    #setChunkPool(ForkJoinPool)
+	 */
+
+	public ForkJoinPool getChunkPool()
+	{
+		return chunkPool;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the fork-join pool in which the chunks of a payload that is encrypted in chunks will be processed.  The pool
+	 * is also used for the {@linkplain #setParallelCompression(boolean) parallel compression} of a payload.
+	 *
+	 * @param pool
+	 *          the fork-join pool in which chunks will be processed.  If {@code pool} is {@code null}, chunks will be
+	 *          processed in the {@linkplain ForkJoinPool#commonPool() common pool}.
+	 * @see   #getChunkPool()
+	 */
+
+	public void setChunkPool(
+		ForkJoinPool	pool)
+	{
+		chunkPool = pool;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns {@code true} if a payload that is not encrypted in chunks is processed by a pipeline of concurrent
+	 * stages.
+	 *
+	 * @return {@code true} if a payload that is not encrypted in chunks is processed by a pipeline.
+	 * @see    #setPipelined(boolean)
+	 */
+
+	public boolean isPipelined()
+	{
+		return pipelined;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the flag that determines whether a payload that is not encrypted in chunks will be processed by a pipeline
+	 * of concurrent stages.
+	 * <p>
+	 * In an encryption operation, the pipeline reads the payload, compresses it, encrypts it and writes it on separate
+	 * threads; in a decryption operation, it reads the payload, decrypts it, decompresses it and writes it on separate
+	 * threads.  Adjacent stages are connected by bounded queues of reusable blocks.  The output of an operation is the
+	 * same whether or not the payload is processed by a pipeline.
+	 * </p>
+	 *
+	 * @param pipelined
+	 *          if {@code true}, a payload that is not encrypted in chunks will be processed by a pipeline.
+	 * @see   #isPipelined()
+	 */
+
+	public void setPipelined(
+		boolean	pipelined)
+	{
+		this.pipelined = pipelined;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns {@code true} if the payload of an encryption operation that is not encrypted in chunks is compressed in
+	 * parallel.
+	 *
+	 * @return {@code true} if a payload that is not encrypted in chunks is compressed in parallel.
+	 * @see    #setParallelCompression(boolean)
+	 */
+
+	public boolean isParallelCompression()
+	{
+		return parallelCompression;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the flag that determines whether the payload of an encryption operation that is not encrypted in chunks
+	 * will be compressed in parallel.
+	 * <p>
+	 * A payload that is compressed in parallel is divided into blocks that are compressed concurrently by a {@link
+	 * ParallelDeflater} in the {@linkplain #setChunkPool(ForkJoinPool) chunk pool}.  The compressed blocks are joined
+	 * to form a single DEFLATE stream that is decompressed in the usual way, so the encrypted stream can be decrypted
+	 * by any version of this class.  Because each block is compressed with a dictionary of only the last 32 KiB of the
+	 * preceding block, the compressed payload may be slightly larger than one that is compressed sequentially.  The
+	 * payload is hashed and encrypted sequentially.  If this flag is set, the {@linkplain #setPipelined(boolean)
+	 * pipelined} flag is ignored in an encryption operation.
+	 * </p>
+	 *
+	 * @param parallelCompression
+	 *          if {@code true}, a payload that is not encrypted in chunks will be compressed in parallel.
+	 * @see   #isParallelCompression()
+	 */
+
+	public void setParallelCompression(
+		boolean	parallelCompression)
+	{
+		this.parallelCompression = parallelCompression;
+	}
+
+	//------------------------------------------------------------------
+
 	/**
 	 * Adds the specified progress listener to this encrypter's list of listeners.
 	 * <p>
@@ -646,7 +1067,8 @@ public class StreamEncrypter
 	 *           the output stream to which the ciphertext will be written, along with metadata and blocks of random
 	 *           padding.
 	 * @param  length
-	 *           the length of the data to be encrypted.
+	 *           the length of the data to be encrypted, or {@link #UNKNOWN_LENGTH} if the payload is encrypted in
+	 *           frames and its length is not known in advance.
 	 * @param  timestamp
 	 *           a timestamp that will be encrypted and written to the output stream.
 	 * @param  key
@@ -666,6 +1088,8 @@ public class StreamEncrypter
 	 *           if an error occurs when writing to the output stream.
 	 * @throws TaskCancelledException
 	 *           if the encryption operation was cancelled by the user.
+	 * @throws IllegalArgumentException
+	 *           if {@code length} is {@link #UNKNOWN_LENGTH} and the payload is not encrypted in frames.
 	 * @see    #encrypt(IInput, IOutput, long, long, byte[], byte[], IProcedure1)
 	 * @see    #decrypt(IInput, IOutput, long, byte[], IProcedure1))
 	 * @see    #decrypt(InputStream, OutputStream, long, byte[], IProcedure1)
@@ -699,7 +1123,8 @@ public class StreamEncrypter
 	 * @param  output
 	 *           the output to which the ciphertext will be written, along with metadata and blocks of random padding.
 	 * @param  length
-	 *           the length of the data to be encrypted.
+	 *           the length of the data to be encrypted, or {@link #UNKNOWN_LENGTH} if the payload is encrypted in
+	 *           frames and its length is not known in advance.
 	 * @param  timestamp
 	 *           a timestamp that will be encrypted and written to the output.
 	 * @param  key
@@ -719,6 +1144,8 @@ public class StreamEncrypter
 	 *           if an error occurs when writing to the output.
 	 * @throws TaskCancelledException
 	 *           if the encryption operation was cancelled by the user.
+	 * @throws IllegalArgumentException
+	 *           if {@code length} is {@link #UNKNOWN_LENGTH} and the payload is not encrypted in frames.
 	 * @see    #encrypt(InputStream, OutputStream, long, long, byte[], byte[], IProcedure1)
 	 * @see    #decrypt(IInput, IOutput, long, byte[], IProcedure1)
 	 * @see    #decrypt(InputStream, OutputStream, long, byte[], IProcedure1)
@@ -736,7 +1163,13 @@ public class StreamEncrypter
 	{
 		final	int	RANDOM_DATA_POOL_LENGTH	= 256;
 
-		// Generate random padding lengths
+		// Test whether payload is encrypted in frames; validate length
+		boolean framed = (header != null) && header.isFramedVersion(header.version);
+		if ((length < 0) && ((length != UNKNOWN_LENGTH) || !framed))
+			throw new IllegalArgumentException();
+
+		// Generate random padding lengths.  If the length of the payload is not known, the padding alone must provide
+		// the minimum length of the stream.
 		byte[] randomDataPool = new byte[RANDOM_DATA_POOL_LENGTH];
 		int randomDataPoolIndex = 0;
 		Fortuna prng = cipher.prng(randomKey);
@@ -748,7 +1181,7 @@ public class StreamEncrypter
 			int paddingLength = 0;
 			for (int i = 0; i < NUM_PADDINGS; i++)
 				paddingLength += paddingLengths[i];
-			if ((paddingLength >= PADDING_SIZE) && (paddingLength + length >= MIN_LENGTH))
+			if ((paddingLength >= PADDING_SIZE) && (paddingLength + Math.max(length, 0) >= MIN_LENGTH))
 				break;
 
 			// Fill pool of random data
@@ -818,14 +1251,7 @@ public class StreamEncrypter
 			write(output, paramData);
 
 			// Generate encryption key
-			Scrypt.KeyGenerator keyGenerator = createKeyGenerator(key, salt, kdfParams);
-			if (kdfExecutor == null)
-				keyGenerator.run();
-			else
-				kdfExecutor.invoke(keyGenerator);
-			if (keyGenerator.isOutOfMemory())
-				throw new AppException(ErrorId.NOT_ENOUGH_MEMORY);
-			encryptionKey = keyGenerator.getDerivedKey();
+			encryptionKey = deriveKey(key, salt, kdfParams, kdfExecutor);
 		}
 
 		// Write cipher ID
@@ -867,7 +1293,69 @@ public class StreamEncrypter
 		NumberCodec.uLongToBytesLE(timestamp, timestampData, 0, timestampData.length);
 		hash.update(timestampData);
 
-		// Compress and encrypt data from input stream
+		// Compress and encrypt data from input stream.  The end of a framed payload is authenticated by the number of
+		// frames and the lengths of the paddings that follow the payload.
+		if (framed)
+		{
+			long numFrames = encryptChunks(input, output, length, encryptionKey, hash, true);
+			updateEndHash(hash, numFrames, paddingLengths);
+		}
+		else if ((header != null) && header.isChunkedVersion(header.version))
+			encryptChunks(input, output, length, encryptionKey, hash, false);
+		else if (parallelCompression)
+			encryptPayloadParallel(input, output, length, combiner, hash);
+		else if (pipelined)
+			encryptPayloadPipelined(input, output, length, combiner, hash);
+		else
+			encryptPayload(input, output, length, combiner, hash);
+
+		// Write second padding
+		write(output, padding, paddingIndex * PADDING_SIZE, paddingLengths[paddingIndex]);
+		++paddingIndex;
+
+		// Encrypt and write hash value
+		hashValue = hash.getValue();
+		byte[] hashValueData = hashValue.clone();
+		combiner.combine(hashValueData);
+		write(output, hashValueData);
+
+		// Write third padding
+		write(output, padding, paddingIndex * PADDING_SIZE, paddingLengths[paddingIndex]);
+		++paddingIndex;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses and encrypts the payload of an encryption operation as a single stream, and writes the resulting
+	 * ciphertext to the specified output.
+	 *
+	 * @param  input
+	 *           the input from which the payload will be read.
+	 * @param  output
+	 *           the output to which the ciphertext will be written.
+	 * @param  length
+	 *           the length of the payload.
+	 * @param  combiner
+	 *           the combiner that will encrypt the compressed payload.
+	 * @param  hash
+	 *           the HMAC that will be updated with the payload.
+	 * @throws InputException
+	 *           if an error occurs when reading from the input.
+	 * @throws OutputException
+	 *           if an error occurs when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the encryption operation was cancelled by the user.
+	 */
+
+	private void encryptPayload(
+		IInput				input,
+		IOutput				output,
+		long				length,
+		Fortuna.XorCombiner	combiner,
+		HmacSha256			hash)
+		throws InputException, OutputException, TaskCancelledException
+	{
 		Deflater compressor = new Deflater(compressionLevel, true);
 		byte[] inBuffer = new byte[BUFFER_LENGTH];
 		byte[] outBuffer = new byte[BUFFER_LENGTH];
@@ -881,61 +1369,777 @@ public class StreamEncrypter
 					throw new TaskCancelledException();
 			}
 
-			// Read block of data from input stream
-			int blockLength = (int)Math.min(length - offset, BUFFER_LENGTH);
-			read(input, inBuffer, 0, blockLength);
-			hash.update(inBuffer, 0, blockLength);
+			// Read block of data from input stream
+			int blockLength = (int)Math.min(length - offset, BUFFER_LENGTH);
+			read(input, inBuffer, 0, blockLength);
+			hash.update(inBuffer, 0, blockLength);
+
+			// Compress and encrypt input data and write it to output stream
+			compressor.setInput(inBuffer, 0, blockLength);
+			while (true)
+			{
+				int outLength = compressor.deflate(outBuffer);
+				if (outLength == 0)
+				{
+					if (compressor.needsInput())
+						break;
+				}
+				else
+				{
+					combiner.combine(outBuffer, 0, outLength);
+					write(output, outBuffer, 0, outLength);
+				}
+			}
+
+			// Increment offset
+			offset += blockLength;
+
+			// Update progress of task
+			double progress = (double)offset / (double)length;
+			for (IProgressListener listener : progressListeners)
+				listener.setProgress(progress);
+		}
+		compressor.finish();
+
+		// Write remaining compressed data
+		while (true)
+		{
+			int outLength = compressor.deflate(outBuffer);
+			if (outLength == 0)
+				break;
+			combiner.combine(outBuffer, 0, outLength);
+			write(output, outBuffer, 0, outLength);
+		}
+		compressor.end();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses the payload of an encryption operation as a single stream whose blocks are compressed concurrently,
+	 * encrypts the compressed payload and writes the resulting ciphertext to the specified output.
+	 *
+	 * @param  input
+	 *           the input from which the payload will be read.
+	 * @param  output
+	 *           the output to which the ciphertext will be written.
+	 * @param  length
+	 *           the length of the payload.
+	 * @param  combiner
+	 *           the combiner that will encrypt the compressed payload.
+	 * @param  hash
+	 *           the HMAC that will be updated with the payload.
+	 * @throws AppException
+	 *           if an error occurs when reading from the input or writing to the output, or if the encryption
+	 *           operation was cancelled by the user.
+	 */
+
+	private void encryptPayloadParallel(
+		IInput				input,
+		IOutput				output,
+		long				length,
+		Fortuna.XorCombiner	combiner,
+		HmacSha256			hash)
+		throws AppException
+	{
+		ParallelDeflater compressor = new ParallelDeflater(compressionLevel, chunkPool, (data, offset, dataLength) ->
+		{
+			combiner.combine(data, offset, dataLength);
+			write(output, data, offset, dataLength);
+		});
+		try
+		{
+			byte[] buffer = new byte[BUFFER_LENGTH];
+			long offset = 0;
+			while (offset < length)
+			{
+				// Test whether task has been cancelled by a monitor
+				for (IProgressListener listener : progressListeners)
+				{
+					if (listener.isTaskCancelled())
+						throw new TaskCancelledException();
+				}
+
+				// Read block of data from input stream
+				int blockLength = (int)Math.min(length - offset, BUFFER_LENGTH);
+				read(input, buffer, 0, blockLength);
+				hash.update(buffer, 0, blockLength);
+
+				// Compress data; encrypt and write any blocks that have been compressed
+				compressor.deflate(buffer, 0, blockLength);
+
+				// Increment offset
+				offset += blockLength;
+
+				// Update progress of task
+				double progress = (double)offset / (double)length;
+				for (IProgressListener listener : progressListeners)
+					listener.setProgress(progress);
+			}
+
+			// Encrypt and write remaining compressed data
+			compressor.finish();
+		}
+		finally
+		{
+			compressor.cancel();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses and encrypts the payload of an encryption operation as a single stream in a pipeline of concurrent
+	 * stages, and writes the resulting ciphertext to the specified output.  The payload is read, encrypted and written
+	 * on separate threads; it is compressed on the current thread.
+	 *
+	 * @param  input
+	 *           the input from which the payload will be read.
+	 * @param  output
+	 *           the output to which the ciphertext will be written.
+	 * @param  length
+	 *           the length of the payload.
+	 * @param  combiner
+	 *           the combiner that will encrypt the compressed payload.
+	 * @param  hash
+	 *           the HMAC that will be updated with the payload.
+	 * @throws AppException
+	 *           if an error occurs when reading from the input or writing to the output, or if the encryption
+	 *           operation was cancelled by the user.
+	 */
+
+	private void encryptPayloadPipelined(
+		IInput				input,
+		IOutput				output,
+		long				length,
+		Fortuna.XorCombiner	combiner,
+		HmacSha256			hash)
+		throws AppException
+	{
+		BlockPipeline.Pool inPool = new BlockPipeline.Pool(NUM_PIPELINE_BLOCKS, BUFFER_LENGTH);
+		BlockPipeline.Pool outPool = new BlockPipeline.Pool(NUM_PIPELINE_BLOCKS, BUFFER_LENGTH);
+		BlockPipeline.Queue readQueue = new BlockPipeline.Queue(NUM_PIPELINE_BLOCKS);
+		BlockPipeline.Queue compressQueue = new BlockPipeline.Queue(NUM_PIPELINE_BLOCKS);
+		BlockPipeline.Queue encryptQueue = new BlockPipeline.Queue(NUM_PIPELINE_BLOCKS);
+
+		new BlockPipeline(ENCRYPTION_PIPELINE_NAME)
+				// Stage: read blocks of data from input
+				.addStage(() ->
+				{
+					long offset = 0;
+					while (offset < length)
+					{
+						BlockPipeline.Block block = inPool.acquire();
+						block.length = (int)Math.min(length - offset, BUFFER_LENGTH);
+						read(input, block.data, 0, block.length);
+						readQueue.put(block);
+						offset += block.length;
+					}
+					readQueue.putEnd();
+				})
+				// Stage: encrypt compressed data
+				.addStage(() ->
+				{
+					while (true)
+					{
+						BlockPipeline.Block block = compressQueue.take();
+						if (block.isEnd())
+							break;
+						combiner.combine(block.data, 0, block.length);
+						encryptQueue.put(block);
+					}
+					encryptQueue.putEnd();
+				})
+				// Stage: write encrypted data to output
+				.addStage(() ->
+				{
+					while (true)
+					{
+						BlockPipeline.Block block = encryptQueue.take();
+						if (block.isEnd())
+							break;
+						write(output, block.data, 0, block.length);
+						outPool.release(block);
+					}
+				})
+				// Stage: compress data on current thread
+				.run(() ->
+				{
+					Deflater compressor = new Deflater(compressionLevel, true);
+					try
+					{
+						long offset = 0;
+						while (true)
+						{
+							// Test whether task has been cancelled by a monitor
+							for (IProgressListener listener : progressListeners)
+							{
+								if (listener.isTaskCancelled())
+									throw new TaskCancelledException();
+							}
+
+							// Get next block of data from input
+							BlockPipeline.Block inBlock = readQueue.take();
+							if (inBlock.isEnd())
+								compressor.finish();
+							else
+							{
+								hash.update(inBlock.data, 0, inBlock.length);
+								compressor.setInput(inBlock.data, 0, inBlock.length);
+							}
+
+							// Compress data and pass it to next stage
+							while (true)
+							{
+								BlockPipeline.Block outBlock = outPool.acquire();
+								outBlock.length = compressor.deflate(outBlock.data);
+								if (outBlock.length > 0)
+									compressQueue.put(outBlock);
+								else
+								{
+									outPool.release(outBlock);
+									if (compressor.finished() || (!inBlock.isEnd() && compressor.needsInput()))
+										break;
+								}
+							}
+
+							// Test for end of data
+							if (inBlock.isEnd())
+								break;
+
+							// Increment offset
+							offset += inBlock.length;
+							inPool.release(inBlock);
+
+							// Update progress of task
+							double progress = (double)offset / (double)length;
+							for (IProgressListener listener : progressListeners)
+								listener.setProgress(progress);
+						}
+						compressQueue.putEnd();
+					}
+					finally
+					{
+						compressor.end();
+					}
+				});
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Divides the payload of an encryption operation into chunks, compresses and encrypts the chunks concurrently, and
+	 * writes the resulting ciphertext to the specified output in the order of the chunks.
+	 * <p>
+	 * If the payload is encrypted in frames, the last chunk is marked as the final frame.  If the length of the payload
+	 * is known, the final frame is the chunk that reaches that length; otherwise, the payload is read until the end of
+	 * the input is reached.
+	 * </p>
+	 *
+	 * @param  input
+	 *           the input from which the payload will be read.
+	 * @param  output
+	 *           the output to which the encrypted chunks will be written.
+	 * @param  length
+	 *           the length of the payload.  It may be {@link #UNKNOWN_LENGTH} if the payload is encrypted in frames.
+	 * @param  key
+	 *           the content-encryption key from which the key of each chunk will be derived.
+	 * @param  hash
+	 *           the HMAC that will be updated with the authentication tag of each chunk.
+	 * @param  framed
+	 *           if {@code true}, the payload will be encrypted in frames.
+	 * @return the number of chunks of the payload.
+	 * @throws InputException
+	 *           if an error occurs when reading from the input.
+	 * @throws OutputException
+	 *           if an error occurs when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the encryption operation was cancelled by the user.
+	 */
+
+	private long encryptChunks(
+		IInput		input,
+		IOutput		output,
+		long		length,
+		byte[]		key,
+		HmacSha256	hash,
+		boolean		framed)
+		throws InputException, OutputException, TaskCancelledException
+	{
+		ForkJoinPool pool = (chunkPool == null) ? ForkJoinPool.commonPool() : chunkPool;
+
+		// Bind the task context of this thread to each chunk job, because a pooled thread has the context of the
+		// thread that created it
+		TaskContext context = Task.getContext();
+
+		int maxNumPendingChunks = MAX_NUM_PENDING_CHUNKS_FACTOR * pool.getParallelism();
+		Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+		try
+		{
+			long inOffset = 0;
+			long outOffset = 0;
+			long index = 0;
+			boolean endOfInput = !framed && (length == 0);
+			while (!endOfInput || !pendingChunks.isEmpty())
+			{
+				// Test whether task has been cancelled by a monitor
+				for (IProgressListener listener : progressListeners)
+				{
+					if (listener.isTaskCancelled())
+						throw new TaskCancelledException();
+				}
+
+				// Read next chunk of data from input stream and submit it for compression and encryption.  If the
+				// length of a framed payload is not known, a chunk that is shorter than the maximum length is the final
+				// frame.
+				if (!endOfInput && (pendingChunks.size() < maxNumPendingChunks))
+				{
+					byte[] data = null;
+					if (length == UNKNOWN_LENGTH)
+					{
+						data = new byte[CHUNK_SIZE];
+						int chunkLength = readAvailable(input, data);
+						if (chunkLength < CHUNK_SIZE)
+						{
+							data = Arrays.copyOf(data, chunkLength);
+							endOfInput = true;
+						}
+					}
+					else
+					{
+						data = new byte[(int)Math.min(length - inOffset, CHUNK_SIZE)];
+						read(input, data);
+						endOfInput = (inOffset + data.length >= length);
+					}
+					byte[] chunkData = data;
+					long chunkIndex = index++;
+					boolean finalFrame = framed && endOfInput;
+					pendingChunks.addLast(pool.submit(() ->
+							context.call(() -> encryptChunk(chunkIndex, chunkData, key, finalFrame))));
+					inOffset += data.length;
+				}
+
+				// Write the oldest chunk when it is ready
+				else
+				{
+					Chunk chunk = awaitChunk(pendingChunks.removeFirst());
+					hash.update(chunk.tag);
+					write(output, chunk.data, 0, chunk.length);
+
+					// Update progress of task
+					outOffset += chunk.plaintextLength;
+					if (length > 0)
+					{
+						double progress = Math.min((double)outOffset / (double)length, 1.0);
+						for (IProgressListener listener : progressListeners)
+							listener.setProgress(progress);
+					}
+				}
+			}
+
+			// Return number of chunks
+			return index;
+		}
+		finally
+		{
+			cancelChunks(pendingChunks);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses and encrypts the specified chunk of a payload.
+	 *
+	 * @param  index
+	 *           the index of the chunk.
+	 * @param  data
+	 *           the plaintext of the chunk.
+	 * @param  key
+	 *           the content-encryption key from which the key of the chunk will be derived.
+	 * @param  finalFrame
+	 *           if {@code true}, the chunk will be marked as the final frame of a payload that is encrypted in frames.
+	 * @return the encrypted chunk.
+	 */
+
+	private Chunk encryptChunk(
+		long	index,
+		byte[]	data,
+		byte[]	key,
+		boolean	finalFrame)
+	{
+		// Derive key of chunk and create combiner from it
+		byte[] chunkKey = deriveChunkKey(key, index);
+		Fortuna.XorCombiner combiner = cipher.combiner(chunkKey, COMBINER_BLOCK_SIZE);
+
+		// Compress data into buffer, leaving room for length field and authentication tag
+		Deflater compressor = new Deflater(compressionLevel, true);
+		byte[] buffer = new byte[CHUNK_OVERHEAD_SIZE + data.length + (data.length >>> 8) + 64];
+		int offset = CHUNK_LENGTH_FIELD_SIZE;
+		compressor.setInput(data);
+		compressor.finish();
+		while (!compressor.finished())
+		{
+			if (offset + HASH_VALUE_FIELD_SIZE >= buffer.length)
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			offset += compressor.deflate(buffer, offset, buffer.length - HASH_VALUE_FIELD_SIZE - offset);
+		}
+		compressor.end();
+
+		// Set length of compressed data and flag of final frame
+		int dataLength = offset - CHUNK_LENGTH_FIELD_SIZE;
+		NumberCodec.uIntToBytesLE(finalFrame ? dataLength | FINAL_FRAME_FLAG : dataLength, buffer, 0,
+								  CHUNK_LENGTH_FIELD_SIZE);
+
+		// Append authentication tag.  The tag of the final frame is generated from a modified index so that the flag
+		// of the final frame is authenticated.
+		byte[] tag = getChunkTag(chunkKey, finalFrame ? index | FINAL_FRAME_INDEX_FLAG : index, data, data.length);
+		System.arraycopy(tag, 0, buffer, offset, tag.length);
+		offset += tag.length;
+
+		// Encrypt chunk
+		combiner.combine(buffer, 0, offset);
+
+		return new Chunk(buffer, offset, data.length, tag);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the payload of a decryption operation from the specified input as a single stream, decrypts and
+	 * decompresses it in a pipeline of concurrent stages, and writes the resulting plaintext to the specified output.
+	 * The payload is read, decrypted and written on separate threads; it is decompressed on the current thread.
+	 *
+	 * @param  input
+	 *           the input from which the encrypted payload will be read.
+	 * @param  output
+	 *           the output to which the plaintext will be written.
+	 * @param  length
+	 *           the length of the encrypted payload.
+	 * @param  combiner
+	 *           the combiner that will decrypt the payload.
+	 * @param  hash
+	 *           the HMAC that will be updated with the plaintext.
+	 * @throws AppException
+	 *           if an error occurs when reading from the input or writing to the output, if the payload cannot be
+	 *           decompressed, or if the decryption operation was cancelled by the user.
+	 */
+
+	private void decryptPayloadPipelined(
+		IInput				input,
+		IOutput				output,
+		long				length,
+		Fortuna.XorCombiner	combiner,
+		HmacSha256			hash)
+		throws AppException
+	{
+		BlockPipeline.Pool inPool = new BlockPipeline.Pool(NUM_PIPELINE_BLOCKS, BUFFER_LENGTH);
+		BlockPipeline.Pool outPool = new BlockPipeline.Pool(NUM_PIPELINE_BLOCKS, BUFFER_LENGTH);
+		BlockPipeline.Queue readQueue = new BlockPipeline.Queue(NUM_PIPELINE_BLOCKS);
+		BlockPipeline.Queue decryptQueue = new BlockPipeline.Queue(NUM_PIPELINE_BLOCKS);
+		BlockPipeline.Queue decompressQueue = new BlockPipeline.Queue(NUM_PIPELINE_BLOCKS);
+
+		new BlockPipeline(DECRYPTION_PIPELINE_NAME)
+				// Stage: read blocks of data from input
+				.addStage(() ->
+				{
+					long offset = 0;
+					while (offset < length)
+					{
+						BlockPipeline.Block block = inPool.acquire();
+						block.length = (int)Math.min(length - offset, BUFFER_LENGTH);
+						read(input, block.data, 0, block.length);
+						readQueue.put(block);
+						offset += block.length;
+					}
+					readQueue.putEnd();
+				})
+				// Stage: decrypt data
+				.addStage(() ->
+				{
+					while (true)
+					{
+						BlockPipeline.Block block = readQueue.take();
+						if (block.isEnd())
+							break;
+						combiner.combine(block.data, 0, block.length);
+						decryptQueue.put(block);
+					}
+					decryptQueue.putEnd();
+				})
+				// Stage: write decompressed data to output
+				.addStage(() ->
+				{
+					while (true)
+					{
+						BlockPipeline.Block block = decompressQueue.take();
+						if (block.isEnd())
+							break;
+						write(output, block.data, 0, block.length);
+						outPool.release(block);
+					}
+				})
+				// Stage: decompress data on current thread
+				.run(() ->
+				{
+					Inflater decompressor = new Inflater(true);
+					try
+					{
+						long offset = 0;
+						while (true)
+						{
+							// Test whether task has been cancelled by a monitor
+							for (IProgressListener listener : progressListeners)
+							{
+								if (listener.isTaskCancelled())
+									throw new TaskCancelledException();
+							}
+
+							// Get next block of decrypted data
+							BlockPipeline.Block inBlock = decryptQueue.take();
+							if (inBlock.isEnd())
+								break;
+
+							// Decompress data and pass it to next stage
+							decompressor.setInput(inBlock.data, 0, inBlock.length);
+							try
+							{
+								while (true)
+								{
+									BlockPipeline.Block outBlock = outPool.acquire();
+									outBlock.length = decompressor.inflate(outBlock.data);
+									if (outBlock.length == 0)
+									{
+										outPool.release(outBlock);
+										if (decompressor.needsInput())
+											break;
+									}
+									else
+									{
+										hash.update(outBlock.data, 0, outBlock.length);
+										decompressQueue.put(outBlock);
+									}
+								}
+							}
+							catch (DataFormatException e)
+							{
+								throw new InputException(ErrorId.INCORRECT_KEY);
+							}
+
+							// Increment offset
+							offset += inBlock.length;
+							inPool.release(inBlock);
+
+							// Update progress of task
+							double progress = (double)offset / (double)length;
+							for (IProgressListener listener : progressListeners)
+								listener.setProgress(progress);
+						}
+						decompressQueue.putEnd();
+					}
+					finally
+					{
+						decompressor.end();
+					}
+				});
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the chunks of the payload of a decryption operation from the specified input, decrypts and decompresses
+	 * the chunks concurrently, and writes the resulting plaintext to the specified output in the order of the chunks.
+	 *
+	 * @param  input
+	 *           the input from which the encrypted chunks will be read.
+	 * @param  output
+	 *           the output to which the plaintext will be written.
+	 * @param  length
+	 *           the length of the encrypted chunks.  If the payload is encrypted in frames, the length may be {@link
+	 *           #UNKNOWN_LENGTH}; if it is known, the final frame must end at that length.
+	 * @param  cipher
+	 *           the kind of cipher with which the chunks were encrypted.
+	 * @param  key
+	 *           the content-encryption key from which the key of each chunk will be derived.
+	 * @param  hash
+	 *           the HMAC that will be updated with the authentication tag of each chunk.
+	 * @param  framed
+	 *           if {@code true}, the payload was encrypted in frames, and chunks will be read until the final frame has
+	 *           been read.
+	 * @return the number of chunks of the payload.
+	 * @throws InputException
+	 *           if an error occurs when reading from the input, or if a chunk is malformed or its authentication tag
+	 *           is incorrect.
+	 * @throws OutputException
+	 *           if an error occurs when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the decryption operation was cancelled by the user.
+	 */
+
+	private long decryptChunks(
+		IInput			input,
+		IOutput			output,
+		long			length,
+		FortunaCipher	cipher,
+		byte[]			key,
+		HmacSha256		hash,
+		boolean			framed)
+		throws InputException, OutputException, TaskCancelledException
+	{
+		ForkJoinPool pool = (chunkPool == null) ? ForkJoinPool.commonPool() : chunkPool;
+
+		// Bind the task context of this thread to each chunk job, because a pooled thread has the context of the
+		// thread that created it
+		TaskContext context = Task.getContext();
 
-			// Compress and encrypt input data and write it to output stream
-			compressor.setInput(inBuffer, 0, blockLength);
-			while (true)
+		int maxNumPendingChunks = MAX_NUM_PENDING_CHUNKS_FACTOR * pool.getParallelism();
+		Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+		try
+		{
+			long inOffset = 0;
+			long index = 0;
+			byte[] lengthData = new byte[CHUNK_LENGTH_FIELD_SIZE];
+			boolean endOfInput = !framed && (length == 0);
+			while (!endOfInput || !pendingChunks.isEmpty())
 			{
-				int outLength = compressor.deflate(outBuffer);
-				if (outLength == 0)
+				// Test whether task has been cancelled by a monitor
+				for (IProgressListener listener : progressListeners)
 				{
-					if (compressor.needsInput())
-						break;
+					if (listener.isTaskCancelled())
+						throw new TaskCancelledException();
+				}
+
+				// Read next chunk from input stream and submit it for decryption and decompression
+				if (!endOfInput && (pendingChunks.size() < maxNumPendingChunks))
+				{
+					// Create combiner from key of chunk
+					long chunkIndex = index++;
+					byte[] chunkKey = deriveChunkKey(key, chunkIndex);
+					Fortuna.XorCombiner combiner = cipher.combiner(chunkKey, COMBINER_BLOCK_SIZE);
+
+					// Read and decrypt length of compressed data.  The end of a framed payload is marked by a flag in
+					// the length field of the final frame.
+					if (!framed && (length - inOffset < CHUNK_OVERHEAD_SIZE))
+						throw new InputException(ErrorId.INCORRECT_KEY);
+					read(input, lengthData);
+					combiner.combine(lengthData);
+					int dataLength = NumberCodec.bytesToUIntLE(lengthData);
+					boolean finalFrame = framed && ((dataLength & FINAL_FRAME_FLAG) != 0);
+					if (finalFrame)
+						dataLength &= ~FINAL_FRAME_FLAG;
+					if ((dataLength < 0) || (dataLength > MAX_COMPRESSED_CHUNK_LENGTH)
+							|| (!framed && (dataLength > length - inOffset - CHUNK_OVERHEAD_SIZE)))
+						throw new InputException(ErrorId.INCORRECT_KEY);
+
+					// Read compressed data and authentication tag
+					byte[] data = new byte[dataLength + HASH_VALUE_FIELD_SIZE];
+					read(input, data);
+					pendingChunks.addLast(pool.submit(() ->
+							context.call(() -> decryptChunk(chunkIndex, data, chunkKey, combiner, finalFrame))));
+					inOffset += CHUNK_LENGTH_FIELD_SIZE + data.length;
+					endOfInput = framed ? finalFrame : (inOffset >= length);
+
+					// If the length of a framed payload is known, test that the final frame ends at that length
+					if (framed && (length != UNKNOWN_LENGTH)
+							&& (finalFrame ? (inOffset != length) : (inOffset >= length)))
+						throw new InputException(ErrorId.INCORRECT_KEY);
 				}
+
+				// Write the oldest chunk when it is ready
 				else
 				{
-					combiner.combine(outBuffer, 0, outLength);
-					write(output, outBuffer, 0, outLength);
+					Chunk chunk = awaitChunk(pendingChunks.removeFirst());
+					hash.update(chunk.tag);
+					write(output, chunk.data, 0, chunk.length);
+
+					// Update progress of task
+					if (length > 0)
+					{
+						long processedLength = inOffset - CHUNK_OVERHEAD_SIZE * pendingChunks.size();
+						double progress = (double)processedLength / (double)length;
+						for (IProgressListener listener : progressListeners)
+							listener.setProgress(Math.min(Math.max(0.0, progress), 1.0));
+					}
 				}
 			}
 
-			// Increment offset
-			offset += blockLength;
-
-			// Update progress of task
-			double progress = (double)offset / (double)length;
-			for (IProgressListener listener : progressListeners)
-				listener.setProgress(progress);
+			// Return number of chunks
+			return index;
 		}
-		compressor.finish();
-
-		// Write remaining compressed data
-		while (true)
+		finally
 		{
-			int outLength = compressor.deflate(outBuffer);
-			if (outLength == 0)
-				break;
-			combiner.combine(outBuffer, 0, outLength);
-			write(output, outBuffer, 0, outLength);
+			cancelChunks(pendingChunks);
 		}
+	}
 
-		// Write second padding
-		write(output, padding, paddingIndex * PADDING_SIZE, paddingLengths[paddingIndex]);
-		++paddingIndex;
+	//------------------------------------------------------------------
 
-		// Encrypt and write hash value
-		hashValue = hash.getValue();
-		byte[] hashValueData = hashValue.clone();
-		combiner.combine(hashValueData);
-		write(output, hashValueData);
+	/**
+	 * Decrypts and decompresses the specified chunk of a payload, and verifies its authentication tag.
+	 *
+	 * @param  index
+	 *           the index of the chunk.
+	 * @param  data
+	 *           the encrypted compressed data and authentication tag of the chunk.
+	 * @param  chunkKey
+	 *           the key of the chunk.
+	 * @param  combiner
+	 *           the combiner that will decrypt the chunk.
+	 * @param  finalFrame
+	 *           if {@code true}, the chunk is marked as the final frame of a payload that is encrypted in frames.
+	 * @return the decrypted chunk.
+	 * @throws InputException
+	 *           if the chunk is malformed or its authentication tag is incorrect.
+	 */
 
-		// Write third padding
-		write(output, padding, paddingIndex * PADDING_SIZE, paddingLengths[paddingIndex]);
-		++paddingIndex;
+	private Chunk decryptChunk(
+		long				index,
+		byte[]				data,
+		byte[]				chunkKey,
+		Fortuna.XorCombiner	combiner,
+		boolean				finalFrame)
+		throws InputException
+	{
+		// Decrypt chunk
+		combiner.combine(data);
+
+		// Decompress data
+		int dataLength = data.length - HASH_VALUE_FIELD_SIZE;
+		byte[] buffer = new byte[CHUNK_SIZE + 1];
+		int length = 0;
+		Inflater decompressor = new Inflater(true);
+		try
+		{
+			decompressor.setInput(data, 0, dataLength);
+			while (!decompressor.finished())
+			{
+				if (length >= buffer.length)
+					throw new InputException(ErrorId.INCORRECT_KEY);
+				int outLength = decompressor.inflate(buffer, length, buffer.length - length);
+				if ((outLength == 0) && !decompressor.finished()
+						&& (decompressor.needsInput() || decompressor.needsDictionary()))
+					throw new InputException(ErrorId.INCORRECT_KEY);
+				length += outLength;
+			}
+			if (length > CHUNK_SIZE)
+				throw new InputException(ErrorId.INCORRECT_KEY);
+		}
+		catch (DataFormatException e)
+		{
+			throw new InputException(ErrorId.INCORRECT_KEY);
+		}
+		finally
+		{
+			decompressor.end();
+		}
+
+		// Verify authentication tag
+		byte[] tag = Arrays.copyOfRange(data, dataLength, data.length);
+		if (!Arrays.equals(tag, getChunkTag(chunkKey, finalFrame ? index | FINAL_FRAME_INDEX_FLAG : index, buffer,
+											length)))
+			throw new InputException(ErrorId.INCORRECT_KEY);
+
+		return new Chunk(buffer, length, length, tag);
 	}
 
 	//------------------------------------------------------------------
@@ -951,7 +2155,8 @@ public class StreamEncrypter
 	 * @param  outStream
 	 *           the output stream to which the plaintext will be written.
 	 * @param  length
-	 *           the length of the data to be decrypted.
+	 *           the length of the data to be decrypted, or {@link #UNKNOWN_LENGTH} if the payload was encrypted in
+	 *           frames and the length of the data is not known in advance.
 	 * @param  key
 	 *           if parameters of the key-derivation function were specified when this encrypter was created, the key
 	 *           from which the content-encryption key will be derived; otherwise, the key that will be used as the
@@ -996,7 +2201,8 @@ public class StreamEncrypter
 	 * @param  output
 	 *           the output to which the plaintext will be written.
 	 * @param  length
-	 *           the length of the data to be decrypted.
+	 *           the length of the data to be decrypted, or {@link #UNKNOWN_LENGTH} if the payload was encrypted in
+	 *           frames and the length of the data is not known in advance.
 	 * @param  key
 	 *           if parameters of the key-derivation function were specified when this encrypter was created, the key
 	 *           from which the content-encryption key will be derived; otherwise, the key that will be used as the
@@ -1026,6 +2232,8 @@ public class StreamEncrypter
 		throws AppException, InputException, OutputException, TaskCancelledException
 	{
 		// Process header
+		boolean chunked = false;
+		boolean framed = false;
 		if (header != null)
 		{
 			// Read and test format identifier
@@ -1042,15 +2250,22 @@ public class StreamEncrypter
 			int version = NumberCodec.bytesToUIntLE(versionNum);
 			if (!header.isSupportedVersion(version))
 				throw new InputException(ErrorId.UNSUPPORTED_DATA_VERSION, Integer.toString(version));
+			chunked = header.isChunkedVersion(version);
+			framed = header.isFramedVersion(version);
 
 			// Read supplementary data
 			if (header.supplementaryData != null)
 				read(input, header.supplementaryData);
 
 			// Decrement length
-			length -= header.getSize();
+			if (length != UNKNOWN_LENGTH)
+				length -= header.getSize();
 		}
 
+		// The length of the data may be unknown only if the payload was encrypted in frames
+		if ((length < 0) && ((length != UNKNOWN_LENGTH) || !framed))
+			throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
+
 		// Read salt and KDF parameters; generate encryption key
 		byte[] encryptionKey = key;
 		if (kdfParams != null)
@@ -1068,14 +2283,7 @@ public class StreamEncrypter
 			params.maxNumThreads = kdfParams.maxNumThreads;
 
 			// Generate encryption key
-			Scrypt.KeyGenerator keyGenerator = createKeyGenerator(key, salt, params);
-			if (kdfExecutor == null)
-				keyGenerator.run();
-			else
-				kdfExecutor.invoke(keyGenerator);
-			if (keyGenerator.isOutOfMemory())
-				throw new AppException(ErrorId.NOT_ENOUGH_MEMORY);
-			encryptionKey = keyGenerator.getDerivedKey();
+			encryptionKey = deriveKey(key, salt, params, kdfExecutor);
 			if (encryptionKey == null)
 				throw new InputException(ErrorId.UNEXPECTED_DATA_FORMAT);
 		}
@@ -1131,16 +2339,91 @@ public class StreamEncrypter
 		hash.update(timestampData);
 
 		// Read and decrypt payload
-		Inflater decompressor = new Inflater(true);
-		try
+		if (length != UNKNOWN_LENGTH)
 		{
-			byte[] inBuffer = new byte[BUFFER_LENGTH];
-			byte[] outBuffer = new byte[BUFFER_LENGTH];
 			length -= METADATA1_SIZE;
 			if (kdfParams != null)
 				length -= METADATA2_SIZE;
 			for (int i = 0; i < NUM_PADDINGS; i++)
 				length -= paddingLengths[i];
+		}
+		if (framed)
+		{
+			long numFrames = decryptChunks(input, output, length, cipher, encryptionKey, hash, true);
+			updateEndHash(hash, numFrames, paddingLengths);
+		}
+		else if (chunked)
+			decryptChunks(input, output, length, cipher, encryptionKey, hash, false);
+		else if (pipelined)
+			decryptPayloadPipelined(input, output, length, combiner, hash);
+		else
+			decryptPayload(input, output, length, combiner, hash);
+
+		// Skip second padding
+		padding = new byte[paddingLengths[paddingIndex++]];
+		read(input, padding);
+
+		// Read and decrypt hash value
+		byte[] hashValueData = new byte[HASH_VALUE_FIELD_SIZE];
+		read(input, hashValueData);
+		combiner.combine(hashValueData);
+
+		// Compare actual hash value with value from input stream
+		if (!Arrays.equals(hashValueData, hash.getValue()))
+			throw new InputException(ErrorId.INCORRECT_KEY);
+
+		// Skip third padding of framed payload.  The end of a framed payload is found from its final frame rather than
+		// from the length of the stream, so the padding is read to detect its truncation.
+		if (framed)
+		{
+			padding = new byte[paddingLengths[paddingIndex++]];
+			read(input, padding);
+		}
+
+		// Update instance variables
+		hashValue = hashValueData;
+
+		// Return timestamp
+		return timestamp;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the payload of a decryption operation from the specified input as a single stream, decrypts and
+	 * decompresses it, and writes the resulting plaintext to the specified output.
+	 *
+	 * @param  input
+	 *           the input from which the encrypted payload will be read.
+	 * @param  output
+	 *           the output to which the plaintext will be written.
+	 * @param  length
+	 *           the length of the encrypted payload.
+	 * @param  combiner
+	 *           the combiner that will decrypt the payload.
+	 * @param  hash
+	 *           the HMAC that will be updated with the plaintext.
+	 * @throws InputException
+	 *           if an error occurs when reading from the input, or if the payload cannot be decompressed.
+	 * @throws OutputException
+	 *           if an error occurs when writing to the output.
+	 * @throws TaskCancelledException
+	 *           if the decryption operation was cancelled by the user.
+	 */
+
+	private void decryptPayload(
+		IInput				input,
+		IOutput				output,
+		long				length,
+		Fortuna.XorCombiner	combiner,
+		HmacSha256			hash)
+		throws InputException, OutputException, TaskCancelledException
+	{
+		Inflater decompressor = new Inflater(true);
+		try
+		{
+			byte[] inBuffer = new byte[BUFFER_LENGTH];
+			byte[] outBuffer = new byte[BUFFER_LENGTH];
 			long offset = 0;
 			while (offset < length)
 			{
@@ -1193,25 +2476,6 @@ public class StreamEncrypter
 		{
 			decompressor.end();
 		}
-
-		// Skip second padding
-		padding = new byte[paddingLengths[paddingIndex++]];
-		read(input, padding);
-
-		// Read and decrypt hash value
-		byte[] hashValueData = new byte[HASH_VALUE_FIELD_SIZE];
-		read(input, hashValueData);
-		combiner.combine(hashValueData);
-
-		// Compare actual hash value with value from input stream
-		if (!Arrays.equals(hashValueData, hash.getValue()))
-			throw new InputException(ErrorId.INCORRECT_KEY);
-
-		// Update instance variables
-		hashValue = hashValueData;
-
-		// Return timestamp
-		return timestamp;
 	}
 
 	//------------------------------------------------------------------
@@ -1436,6 +2700,8 @@ public class StreamEncrypter
 		private	int		version;
 		private	int		minSupportedVersion;
 		private	int		maxSupportedVersion;
+		private	int		minChunkedVersion;
+		private	int		minFramedVersion;
 		private	byte[]	supplementaryData;
 
 	////////////////////////////////////////////////////////////////////
@@ -1597,6 +2863,8 @@ public class StreamEncrypter
 			this.minSupportedVersion = minSupportedVersion;
 			this.maxSupportedVersion = maxSupportedVersion;
 			this.supplementaryData = supplementaryData;
+			minChunkedVersion = Integer.MAX_VALUE;
+			minFramedVersion = Integer.MAX_VALUE;
 		}
 
 		//--------------------------------------------------------------
@@ -1704,6 +2972,125 @@ public class StreamEncrypter
 
 		//--------------------------------------------------------------
 
+		/**
+		 * Returns the minimum version number of the payload that is encrypted in chunks.
+		 *
+		 * @return the minimum version number of the payload that is encrypted in chunks.  {@link Integer#MAX_VALUE}
+		 *         denotes that no version is encrypted in chunks.
+		 * @see    #setMinChunkedVersion(int)
+		 * @see    #isChunkedVersion(int)
+		 */
+
+		public int getMinChunkedVersion()
+		{
+			return minChunkedVersion;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Sets the minimum version number of the payload that is encrypted in chunks.  A payload whose version number
+		 * is greater than or equal to the specified value is divided into independently compressed and encrypted
+		 * chunks, as described in the class comment for {@link StreamEncrypter}.
+		 * <p>
+		 * By default, no version of the payload is encrypted in chunks.
+		 * </p>
+		 *
+		 * @param  version
+		 *           the minimum version number of the payload that is encrypted in chunks.
+		 * @return this header.
+		 * @see    #getMinChunkedVersion()
+		 * @see    #isChunkedVersion(int)
+		 */
+
+		public Header setMinChunkedVersion(
+			int	version)
+		{
+			minChunkedVersion = version;
+			return this;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns {@code true} if a payload with the specified version number is encrypted in chunks.
+		 *
+		 * @param  version
+		 *           the version number that will be tested.
+		 * @return {@code true} if a payload whose version number is {@code version} is encrypted in chunks; {@code
+		 *         false} otherwise.
+		 * @see    #getMinChunkedVersion()
+		 * @see    #setMinChunkedVersion(int)
+		 */
+
+		public boolean isChunkedVersion(
+			int	version)
+		{
+			return (version >= minChunkedVersion);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the minimum version number of the payload that is encrypted in frames.
+		 *
+		 * @return the minimum version number of the payload that is encrypted in frames.  {@link Integer#MAX_VALUE}
+		 *         denotes that no version is encrypted in frames.
+		 * @see    #setMinFramedVersion(int)
+		 * @see    #isFramedVersion(int)
+		 */
+
+		public int getMinFramedVersion()
+		{
+			return minFramedVersion;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Sets the minimum version number of the payload that is encrypted in frames.  A payload whose version number
+		 * is greater than or equal to the specified value is divided into chunks whose last chunk is marked as the
+		 * final frame, as described in the class comment for {@link StreamEncrypter}.  Such a payload may be encrypted
+		 * from an input whose length is not known in advance.
+		 * <p>
+		 * By default, no version of the payload is encrypted in frames.
+		 * </p>
+		 *
+		 * @param  version
+		 *           the minimum version number of the payload that is encrypted in frames.
+		 * @return this header.
+		 * @see    #getMinFramedVersion()
+		 * @see    #isFramedVersion(int)
+		 */
+
+		public Header setMinFramedVersion(
+			int	version)
+		{
+			minFramedVersion = version;
+			return this;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns {@code true} if a payload with the specified version number is encrypted in frames.
+		 *
+		 * @param  version
+		 *           the version number that will be tested.
+		 * @return {@code true} if a payload whose version number is {@code version} is encrypted in frames; {@code
+		 *         false} otherwise.
+		 * @see    #getMinFramedVersion()
+		 * @see    #setMinFramedVersion(int)
+		 */
+
+		public boolean isFramedVersion(
+			int	version)
+		{
+			return (version >= minFramedVersion);
+		}
+
+		//--------------------------------------------------------------
+
 		/**
 		 * Returns this header as an array of bytes.
 		 *
@@ -2347,6 +3734,63 @@ public class StreamEncrypter
 	//==================================================================
 
 
+	// CLASS: CHUNK
+
+
+	/**
+	 * This class encapsulates a chunk of a payload that is encrypted in chunks, after it has been processed by a worker
+	 * thread.
+	 */
+
+	private static class Chunk
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	byte[]	data;
+		private	int		length;
+		private	int		plaintextLength;
+		private	byte[]	tag;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a processed chunk.
+		 *
+		 * @param data
+		 *          an array that contains the data that will be written to the output.
+		 * @param length
+		 *          the length of the data that will be written to the output.
+		 * @param plaintextLength
+		 *          the length of the plaintext of the chunk.
+		 * @param tag
+		 *          the authentication tag of the chunk.
+		 */
+
+		private Chunk(
+			byte[]	data,
+			int		length,
+			int		plaintextLength,
+			byte[]	tag)
+		{
+			// Initialise instance variables
+			this.data = data;
+			this.length = length;
+			this.plaintextLength = plaintextLength;
+			this.tag = tag;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
 	// CLASS: INPUT STREAM ADAPTER
 
 
@@ -0,0 +1,420 @@
+/*====================================================================*\
+
+ParallelDeflater.java
+
+Class: parallel DEFLATE compressor.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import java.util.zip.Deflater;
+
+import uk.blankaspect.common.exception.AppException;
+import uk.blankaspect.common.exception.TaskCancelledException;
+
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: PARALLEL DEFLATE COMPRESSOR
+
+
+/**
+ * This class compresses data with the DEFLATE algorithm by dividing the data into blocks and compressing the blocks
+ * concurrently in a {@link ForkJoinPool}.
+ * <p>
+ * The output is a single raw DEFLATE stream (ie, a stream without a zlib header or checksum) that can be decompressed
+ * by an {@link java.util.zip.Inflater Inflater} in the usual way.  Each block except the last is compressed with the
+ * last 32 KiB of the preceding block as a preset dictionary, and is terminated with a {@linkplain Deflater#SYNC_FLUSH
+ * sync flush} so that it ends on a byte boundary; the last block is terminated with the final block of the stream.
+ * The compressed blocks are passed to the {@linkplain IConsumer consumer} in the order of the input, on the thread
+ * that calls {@link #deflate(byte[], int, int)} or {@link #finish()}.
+ * </p>
+ */
+
+public class ParallelDeflater
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The default size (in bytes) of a block of input data. */
+	public static final		int		DEFAULT_BLOCK_SIZE	= 1 << 17;  // 131072
+
+	/** The size (in bytes) of the DEFLATE window, which is the maximum size of a preset dictionary. */
+	private static final	int		DICTIONARY_SIZE	= 1 << 15;  // 32768
+
+	private static final	int		MAX_NUM_PENDING_BLOCKS_FACTOR	= 2;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	int						level;
+	private	ForkJoinPool			pool;
+	private	IConsumer				consumer;
+	private	byte[]					block;
+	private	int						blockLength;
+	private	byte[]					dictionary;
+	private	Deque<Future<byte[]>>	pendingBlocks;
+	private	int						maxNumPendingBlocks;
+	private	boolean					finished;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a parallel DEFLATE compressor with the default block size.
+	 *
+	 * @param level
+	 *          the compression level, in the range [0..9].
+	 * @param pool
+	 *          the fork-join pool in which the blocks will be compressed.  If {@code pool} is {@code null}, the
+	 *          {@linkplain ForkJoinPool#commonPool() common pool} will be used.
+	 * @param consumer
+	 *          the consumer to which the compressed data will be passed.
+	 */
+
+	public ParallelDeflater(
+		int				level,
+		ForkJoinPool	pool,
+		IConsumer		consumer)
+	{
+		this(level, DEFAULT_BLOCK_SIZE, pool, consumer);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates a new instance of a parallel DEFLATE compressor.
+	 *
+	 * @param level
+	 *          the compression level, in the range [0..9].
+	 * @param blockSize
+	 *          the size (in bytes) of a block of input data that will be compressed as a unit.
+	 * @param pool
+	 *          the fork-join pool in which the blocks will be compressed.  If {@code pool} is {@code null}, the
+	 *          {@linkplain ForkJoinPool#commonPool() common pool} will be used.
+	 * @param consumer
+	 *          the consumer to which the compressed data will be passed.
+	 * @throws IllegalArgumentException
+	 *           if {@code level} is out of bounds or {@code blockSize} is less than the size of the DEFLATE window
+	 *           (32768).
+	 */
+
+	public ParallelDeflater(
+		int				level,
+		int				blockSize,
+		ForkJoinPool	pool,
+		IConsumer		consumer)
+	{
+		// Validate arguments
+		if ((level < Deflater.NO_COMPRESSION) || (level > Deflater.BEST_COMPRESSION))
+			throw new IllegalArgumentException();
+		if (blockSize < DICTIONARY_SIZE)
+			throw new IllegalArgumentException();
+
+		// Initialise instance variables
+		this.level = level;
+		this.pool = (pool == null) ? ForkJoinPool.commonPool() : pool;
+		this.consumer = consumer;
+		block = new byte[blockSize];
+		pendingBlocks = new ArrayDeque<>();
+		maxNumPendingBlocks = MAX_NUM_PENDING_BLOCKS_FACTOR * this.pool.getParallelism();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Compresses the specified block of data and returns the compressed data.
+	 *
+	 * @param  level
+	 *           the compression level.
+	 * @param  dictionary
+	 *           the preset dictionary, which may be {@code null}.
+	 * @param  data
+	 *           the data that will be compressed.
+	 * @param  last
+	 *           if {@code true}, {@code data} is the last block of the stream, which will be terminated with the
+	 *           final block; otherwise, the compressed data will be terminated with a sync flush.
+	 * @return the compressed data.
+	 */
+
+	private static byte[] deflateBlock(
+		int		level,
+		byte[]	dictionary,
+		byte[]	data,
+		boolean	last)
+	{
+		Deflater compressor = new Deflater(level, true);
+		try
+		{
+			// Set preset dictionary
+			if (dictionary != null)
+				compressor.setDictionary(dictionary);
+
+			// Compress data
+			compressor.setInput(data);
+			if (last)
+				compressor.finish();
+			byte[] buffer = new byte[data.length + (data.length >>> 8) + 64];
+			int length = 0;
+			while (true)
+			{
+				if (length == buffer.length)
+					buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+				int outLength = buffer.length - length;
+				int deflatedLength = last ? compressor.deflate(buffer, length, outLength)
+										  : compressor.deflate(buffer, length, outLength, Deflater.SYNC_FLUSH);
+				length += deflatedLength;
+				if (last ? compressor.finished() : (deflatedLength < outLength))
+					break;
+			}
+			return (length == buffer.length) ? buffer : Arrays.copyOf(buffer, length);
+		}
+		finally
+		{
+			compressor.end();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Adds the specified data to the input of this compressor.  Each time that a block of input has been filled, it is
+	 * submitted for compression, and any blocks that have been compressed are passed to the consumer in order.
+	 *
+	 * @param  data
+	 *           an array that contains the data that will be compressed.
+	 * @param  offset
+	 *           the start offset of the data in {@code data}.
+	 * @param  length
+	 *           the length of the data.
+	 * @throws IllegalStateException
+	 *           if {@link #finish()} has been called.
+	 * @throws AppException
+	 *           if an error occurs when the consumer processes the compressed data.
+	 * @throws TaskCancelledException
+	 *           if the current thread was interrupted while waiting for a block to be compressed.
+	 */
+
+	public void deflate(
+		byte[]	data,
+		int		offset,
+		int		length)
+		throws AppException
+	{
+		if (finished)
+			throw new IllegalStateException();
+
+		int endOffset = offset + length;
+		while (offset < endOffset)
+		{
+			// Copy data to current block
+			int copyLength = Math.min(endOffset - offset, block.length - blockLength);
+			System.arraycopy(data, offset, block, blockLength, copyLength);
+			blockLength += copyLength;
+			offset += copyLength;
+
+			// If block is full, submit it for compression
+			if (blockLength == block.length)
+			{
+				submitBlock(false);
+				block = new byte[block.length];
+				blockLength = 0;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Submits any remaining input as the last block of the stream, waits for all the blocks to be compressed and
+	 * passes them to the consumer in order.
+	 *
+	 * @throws AppException
+	 *           if an error occurs when the consumer processes the compressed data.
+	 * @throws TaskCancelledException
+	 *           if the current thread was interrupted while waiting for a block to be compressed.
+	 */
+
+	public void finish()
+		throws AppException
+	{
+		if (!finished)
+		{
+			finished = true;
+			try
+			{
+				submitBlock(true);
+				while (!pendingBlocks.isEmpty())
+					writeBlock();
+			}
+			finally
+			{
+				cancel();
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Cancels the compression of any blocks that are pending.
+	 */
+
+	public void cancel()
+	{
+		for (Future<byte[]> pendingBlock : pendingBlocks)
+			pendingBlock.cancel(true);
+		pendingBlocks.clear();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Submits the current block of input for compression.  If the maximum number of blocks are pending, the oldest
+	 * block is first passed to the consumer.
+	 *
+	 * @param  last
+	 *           if {@code true}, the block is the last block of the stream.
+	 * @throws AppException
+	 *           if an error occurs when the consumer processes the compressed data.
+	 */
+
+	private void submitBlock(
+		boolean	last)
+		throws AppException
+	{
+		// Limit the number of pending blocks
+		while (pendingBlocks.size() >= maxNumPendingBlocks)
+			writeBlock();
+
+		// Submit block for compression
+		byte[] data = (blockLength == block.length) ? block : Arrays.copyOf(block, blockLength);
+		byte[] dict = dictionary;
+		pendingBlocks.addLast(pool.submit(() -> deflateBlock(level, dict, data, last)));
+
+		// Set dictionary for next block from end of this block
+		if (!last)
+			dictionary = Arrays.copyOfRange(data, data.length - DICTIONARY_SIZE, data.length);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for the oldest pending block to be compressed and passes the compressed data to the consumer.
+	 *
+	 * @throws AppException
+	 *           if an error occurs when the consumer processes the compressed data.
+	 * @throws TaskCancelledException
+	 *           if the current thread was interrupted while waiting.
+	 */
+
+	private void writeBlock()
+		throws AppException
+	{
+		byte[] data = null;
+		try
+		{
+			data = pendingBlocks.removeFirst().get();
+		}
+		catch (InterruptedException e)
+		{
+			cancel();
+			throw new TaskCancelledException();
+		}
+		catch (ExecutionException e)
+		{
+			cancel();
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException runtimeException)
+				throw runtimeException;
+			if (cause instanceof Error error)
+				throw error;
+			throw new UnexpectedRuntimeException(cause);
+		}
+		consumer.accept(data, 0, data.length);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// INTERFACE: CONSUMER OF COMPRESSED DATA
+
+
+	/**
+	 * This functional interface defines the method that must be implemented by the consumer of the compressed data
+	 * that is produced by a {@link ParallelDeflater}.
+	 */
+
+	@FunctionalInterface
+	public interface IConsumer
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Processes the specified compressed data.
+		 *
+		 * @param  data
+		 *           an array that contains the compressed data.
+		 * @param  offset
+		 *           the start offset of the compressed data in {@code data}.
+		 * @param  length
+		 *           the length of the compressed data.
+		 * @throws AppException
+		 *           if an error occurs when processing the data.
+		 */
+
+		void accept(
+			byte[]	data,
+			int		offset,
+			int		length)
+			throws AppException;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -18,9 +18,6 @@ package uk.blankaspect.common.misc;
 // IMPORTS
 
 
-import java.util.ArrayList;
-import java.util.List;
-
 import uk.blankaspect.common.exception.AppException;
 import uk.blankaspect.common.exception.TaskCancelledException;
 
@@ -40,11 +37,9 @@ public abstract class Task
 //  Class variables
 ////////////////////////////////////////////////////////////////////////
 
-	private static	AppException	exception;
-	private static	boolean			cancelled;
-	private static	IProgressView	progressView;
-	private static	int				threadId;
-	private static	List<Thread>	threads		= new ArrayList<>();
+	private static	TaskContext							defaultContext	= new TaskContext();
+	private static	InheritableThreadLocal<TaskContext>	currentContext	= new InheritableThreadLocal<>();
+	private static	int									threadId;
 
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
@@ -66,129 +61,160 @@ public abstract class Task
 //  Class methods
 ////////////////////////////////////////////////////////////////////////
 
-	public static synchronized boolean isException()
+	/**
+	 * Returns the context of the task that is performed by the current thread.  The context is the one that was bound
+	 * to the current thread or to the thread that created it; if no context was bound to either thread, the default
+	 * context, which is shared by all tasks that are not performed by a {@link TaskScheduler}, is returned.
+	 *
+	 * @return the context of the task that is performed by the current thread.
+	 */
+
+	public static TaskContext getContext()
 	{
-		return (exception != null);
+		TaskContext context = currentContext.get();
+		return (context == null) ? defaultContext : context;
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized AppException getException()
+	public static boolean isException()
 	{
-		return exception;
+		return getContext().isException();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized boolean isCancelled()
+	public static AppException getException()
 	{
-		return cancelled;
+		return getContext().getException();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized boolean isExceptionOrCancelled()
+	public static boolean isCancelled()
 	{
-		return (exception != null) || cancelled;
+		return getContext().isCancelled();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized IProgressView getProgressView()
+	public static boolean isExceptionOrCancelled()
 	{
-		return progressView;
+		return getContext().isExceptionOrCancelled();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void setException(
+	public static IProgressView getProgressView()
+	{
+		return getContext().getProgressView();
+	}
+
+	//------------------------------------------------------------------
+
+	public static void setException(
 		AppException	exception,
 		boolean			overwrite)
 	{
-		if (overwrite || (Task.exception == null))
-			Task.exception = exception;
+		getContext().setException(exception, overwrite);
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void setCancelled(
+	public static void setCancelled(
 		boolean	cancelled)
 	{
-		Task.cancelled = cancelled;
+		getContext().setCancelled(cancelled);
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void setProgressView(
+	public static void setProgressView(
 		IProgressView	progressView)
 	{
-		Task.progressView = progressView;
+		getContext().setProgressView(progressView);
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized int getNumThreads()
+	public static int getNumThreads()
 	{
-		return threads.size();
+		return getContext().getNumThreads();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized int addThread(
+	public static int addThread(
 		Thread	thread)
 	{
-		threads.add(thread);
-		return threads.size();
+		return getContext().addThread(thread);
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void removeThread()
+	public static void removeThread()
 	{
-		threads.remove(Thread.currentThread());
-		if (threads.isEmpty())
-		{
-			if (progressView != null)
-			{
-				progressView.close();
-				progressView = null;
-			}
-		}
+		getContext().removeThread();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void throwIfException()
+	public static void throwIfException()
 		throws AppException
 	{
-		if (exception != null)
-			throw exception;
+		getContext().throwIfException();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void throwIfCancelled()
+	public static void throwIfCancelled()
 		throws TaskCancelledException
 	{
-		if (cancelled)
-			throw new TaskCancelledException();
+		getContext().throwIfCancelled();
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void throwIfExceptionOrCancelled()
+	public static void throwIfExceptionOrCancelled()
 		throws AppException
 	{
-		throwIfException();
-		throwIfCancelled();
+		getContext().throwIfExceptionOrCancelled();
+	}
+
+	//------------------------------------------------------------------
+
+	public static void interrupt()
+	{
+		getContext().interrupt();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Binds the specified context to the current thread.  The context is inherited by the threads that the current
+	 * thread creates while the context is bound to it.
+	 *
+	 * @param  context
+	 *           the context that will be bound to the current thread, or {@code null} to unbind the current context.
+	 * @return the context that was previously bound to the current thread, which may be {@code null}.
+	 */
+
+	static TaskContext bindContext(
+		TaskContext	context)
+	{
+		TaskContext previousContext = currentContext.get();
+		if (context == null)
+			currentContext.remove();
+		else
+			currentContext.set(context);
+		return previousContext;
 	}
 
 	//------------------------------------------------------------------
 
-	public static synchronized void interrupt()
+	private static synchronized int nextThreadId()
 	{
-		for (Thread thread : threads)
-			thread.interrupt();
+		return threadId++;
 	}
 
 	//------------------------------------------------------------------
@@ -199,9 +225,9 @@ public abstract class Task
 
 	public boolean start()
 	{
-		if (cancelled)
+		if (isCancelled())
 			return false;
-		Thread thread = new Thread(this, "app-" + getClass().getName() + "-" + threadId++);
+		Thread thread = new Thread(this, "app-" + getClass().getName() + "-" + nextThreadId());
 		if (addThread(thread) == 1)
 			primary = true;
 		thread.start();
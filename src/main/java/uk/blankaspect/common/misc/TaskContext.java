@@ -0,0 +1,285 @@
+/*====================================================================*\
+
+TaskContext.java
+
+Class: task context.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+
+import uk.blankaspect.common.exception.AppException;
+import uk.blankaspect.common.exception.TaskCancelledException;
+
+import uk.blankaspect.common.ui.progress.IProgressView;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TASK CONTEXT
+
+
+/**
+ * This class holds the state of a task: the exception that it threw, whether it has been cancelled, the view of its
+ * progress and the threads that perform it.  The static methods of {@link Task} act on the context of the current
+ * thread, so that several tasks, each with its own context, can be performed at the same time.
+ */
+
+public class TaskContext
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	String			title;
+	private	AppException	exception;
+	private	boolean			cancelled;
+	private	IProgressView	progressView;
+	private	List<Thread>	threads;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	public TaskContext()
+	{
+		this(null);
+	}
+
+	//------------------------------------------------------------------
+
+	public TaskContext(
+		String	title)
+	{
+		this.title = title;
+		threads = new ArrayList<>();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	public String getTitle()
+	{
+		return title;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized boolean isException()
+	{
+		return (exception != null);
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized AppException getException()
+	{
+		return exception;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized boolean isExceptionOrCancelled()
+	{
+		return (exception != null) || cancelled;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized IProgressView getProgressView()
+	{
+		return progressView;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void setException(
+		AppException	exception,
+		boolean			overwrite)
+	{
+		if (overwrite || (this.exception == null))
+			this.exception = exception;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void setCancelled(
+		boolean	cancelled)
+	{
+		this.cancelled = cancelled;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void setProgressView(
+		IProgressView	progressView)
+	{
+		this.progressView = progressView;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Cancels the task.  Its threads will throw a {@link TaskCancelledException} the next time that they test whether
+	 * the task has been cancelled.
+	 */
+
+	public synchronized void cancel()
+	{
+		cancelled = true;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized int getNumThreads()
+	{
+		return threads.size();
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized int addThread(
+		Thread	thread)
+	{
+		threads.add(thread);
+		return threads.size();
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void removeThread()
+	{
+		threads.remove(Thread.currentThread());
+		if (threads.isEmpty())
+		{
+			if (progressView != null)
+			{
+				progressView.close();
+				progressView = null;
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void throwIfException()
+		throws AppException
+	{
+		if (exception != null)
+			throw exception;
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void throwIfCancelled()
+		throws TaskCancelledException
+	{
+		if (cancelled)
+			throw new TaskCancelledException();
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void throwIfExceptionOrCancelled()
+		throws AppException
+	{
+		throwIfException();
+		throwIfCancelled();
+	}
+
+	//------------------------------------------------------------------
+
+	public synchronized void interrupt()
+	{
+		for (Thread thread : threads)
+			thread.interrupt();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Performs the specified action on the current thread with this context bound to the thread, so that the static
+	 * methods of {@link Task} that the action calls act on this context.  The context that was previously bound to the
+	 * current thread is restored when the action ends.
+	 *
+	 * @param action
+	 *          the action that will be performed.
+	 */
+
+	public void run(
+		Runnable	action)
+	{
+		TaskContext previousContext = Task.bindContext(this);
+		try
+		{
+			action.run();
+		}
+		finally
+		{
+			Task.bindContext(previousContext);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Performs the specified action on the current thread with this context bound to the thread, and returns the
+	 * result of the action.  This method is the counterpart of {@link #run(Runnable)} for work that is submitted to a
+	 * pool of threads: a pooled thread inherits the context of the thread that created it, which is not necessarily
+	 * the context of the work.
+	 *
+	 * @param  <T>
+	 *           the type of the result of the action.
+	 * @param  action
+	 *           the action that will be performed.
+	 * @return the result of the action.
+	 * @throws Exception
+	 *           if the action throws an exception.
+	 */
+
+	public <T> T call(
+		Callable<T>	action)
+		throws Exception
+	{
+		TaskContext previousContext = Task.bindContext(this);
+		try
+		{
+			return action.call();
+		}
+		finally
+		{
+			Task.bindContext(previousContext);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
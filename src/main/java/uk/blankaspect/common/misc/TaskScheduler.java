@@ -0,0 +1,261 @@
+/*====================================================================*\
+
+TaskScheduler.java
+
+Class: task scheduler.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TASK SCHEDULER
+
+
+/**
+ * This class implements a scheduler that performs {@linkplain Task tasks} concurrently on a bounded pool of threads.
+ * Each task is performed with its own {@linkplain TaskContext context}, which is bound to the thread that performs the
+ * task and is inherited by the threads that the task creates, so the cancellation, exception and progress view of one
+ * task do not affect any other task.  Tasks that are submitted when all the threads of the pool are busy wait in a
+ * bounded queue until a thread becomes free; a task that is submitted when the queue is full is rejected.
+ */
+
+public class TaskScheduler
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	long	KEEP_ALIVE_TIME	= 60;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	ThreadPoolExecutor	executor;
+	private	List<TaskContext>	contexts;
+	private	int					threadIndex;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a task scheduler.
+	 *
+	 * @param name
+	 *          the name of the scheduler, which is used as the prefix of the names of its threads.
+	 * @param maxNumThreads
+	 *          the maximum number of tasks that will be performed at the same time.
+	 * @param maxQueueLength
+	 *          the maximum number of tasks that will wait for a thread to become free.
+	 * @throws IllegalArgumentException
+	 *           if {@code maxNumThreads} is less than 1 or {@code maxQueueLength} is less than 1.
+	 */
+
+	public TaskScheduler(
+		String	name,
+		int		maxNumThreads,
+		int		maxQueueLength)
+	{
+		if ((maxNumThreads < 1) || (maxQueueLength < 1))
+			throw new IllegalArgumentException();
+
+		contexts = new ArrayList<>();
+		executor = new ThreadPoolExecutor(maxNumThreads, maxNumThreads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+										  new LinkedBlockingQueue<>(maxQueueLength), runnable ->
+				DaemonFactory.create(name + "-" + nextThreadIndex(), runnable));
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Submits the specified task for execution with the specified context.  The task is performed when a thread of
+	 * the pool becomes free, unless it is cancelled before then.  If all the threads of the pool are busy and the queue
+	 * of waiting tasks is full, the task is rejected: it is not performed and the listener is not notified.
+	 *
+	 * @param  task
+	 *           the task that will be performed.
+	 * @param  context
+	 *           the context of the task, which acts as its cancellation token.
+	 * @param  listener
+	 *           the listener that will be notified on the thread that performed the task when the task has ended,
+	 *           whether it completed normally, threw an exception or was cancelled.  It may be {@code null}.
+	 * @return {@code true} if the task was accepted; {@code false} if it was rejected because the queue of waiting
+	 *         tasks is full.
+	 */
+
+	public boolean submit(
+		Task		task,
+		TaskContext	context,
+		IListener	listener)
+	{
+		synchronized (contexts)
+		{
+			contexts.add(context);
+		}
+		try
+		{
+			executor.execute(() ->
+			{
+				context.addThread(Thread.currentThread());
+				try
+				{
+					context.run(() ->
+					{
+						if (!context.isCancelled())
+							task.run();
+					});
+				}
+				finally
+				{
+					context.removeThread();
+					synchronized (contexts)
+					{
+						contexts.remove(context);
+					}
+					if (listener != null)
+						listener.taskEnded(context);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			synchronized (contexts)
+			{
+				contexts.remove(context);
+			}
+			return false;
+		}
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the contexts of the tasks that are waiting to be performed or are being performed.
+	 *
+	 * @return a list of the contexts of the tasks that have not ended, in the order in which the tasks were submitted.
+	 */
+
+	public List<TaskContext> getContexts()
+	{
+		synchronized (contexts)
+		{
+			return new ArrayList<>(contexts);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public int getNumTasks()
+	{
+		synchronized (contexts)
+		{
+			return contexts.size();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Cancels all the tasks that have not ended, and waits for them to end for no longer than the specified time.
+	 *
+	 * @param  timeout
+	 *           the maximum time, in milliseconds, for which to wait for the tasks to end.
+	 * @return {@code true} if all the tasks ended within the specified time.
+	 */
+
+	public boolean cancelAll(
+		long	timeout)
+	{
+		for (TaskContext context : getContexts())
+			context.cancel();
+
+		long endTime = System.currentTimeMillis() + timeout;
+		while (getNumTasks() > 0)
+		{
+			if (System.currentTimeMillis() >= endTime)
+				return false;
+			try
+			{
+				Thread.sleep(20);
+			}
+			catch (InterruptedException e)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+	private synchronized int nextThreadIndex()
+	{
+		return threadIndex++;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// INTERFACE: LISTENER
+
+
+	/**
+	 * This functional interface defines the method that is called when a task that was submitted to a {@link
+	 * TaskScheduler} has ended.
+	 */
+
+	@FunctionalInterface
+	public interface IListener
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		void taskEnded(
+			TaskContext	context);
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,533 @@
+/*====================================================================*\
+
+BlockPipeline.java
+
+Class: pipeline of stages that exchange blocks of data.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.thread;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import uk.blankaspect.common.exception.AppException;
+import uk.blankaspect.common.exception.TaskCancelledException;
+
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: PIPELINE OF STAGES THAT EXCHANGE BLOCKS OF DATA
+
+
+/**
+ * This class implements a pipeline of stages, each of which runs on its own thread.  Adjacent stages are connected by
+ * bounded {@linkplain Queue queues} of {@linkplain Block blocks} of data.  The blocks are drawn from bounded {@linkplain
+ * Pool pools} of reusable blocks, so the amount of memory that is used by a pipeline is fixed when it is created.
+ * <p>
+ * One of the stages runs on the thread that calls {@link #run(IStage)}; the other stages run on daemon threads that
+ * are created by that method.  If any stage throws an exception, the other stages are interrupted and the first
+ * exception is rethrown by {@link #run(IStage)} after all the stages have terminated.
+ * </p>
+ */
+
+public class BlockPipeline
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	String			name;
+	private	List<IStage>	stages;
+	private	List<Thread>	threads;
+	private	Throwable		exception;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of an empty pipeline.
+	 *
+	 * @param name
+	 *          the name of the pipeline, which is used as a prefix of the names of the threads of its stages.
+	 */
+
+	public BlockPipeline(
+		String	name)
+	{
+		// Initialise instance variables
+		this.name = name;
+		stages = new ArrayList<>();
+		threads = new ArrayList<>();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Adds the specified stage to this pipeline.  The stage will run on its own thread when {@link #run(IStage)} is
+	 * called.
+	 *
+	 * @param  stage
+	 *           the stage that will be added.
+	 * @return this pipeline.
+	 */
+
+	public BlockPipeline addStage(
+		IStage	stage)
+	{
+		stages.add(stage);
+		return this;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Runs the stages of this pipeline, running the specified stage on the current thread and each of the other stages
+	 * on its own daemon thread.  This method returns when all the stages have terminated.
+	 *
+	 * @param  stage
+	 *           the stage that will run on the current thread.
+	 * @throws AppException
+	 *           if a stage threw an {@link AppException}.  If a stage was interrupted because another stage failed,
+	 *           the exception of the stage that failed first is thrown.
+	 */
+
+	public void run(
+		IStage	stage)
+		throws AppException
+	{
+		// Create threads of stages
+		synchronized (this)
+		{
+			exception = null;
+			threads.clear();
+			threads.add(Thread.currentThread());
+			for (int i = 0; i < stages.size(); i++)
+			{
+				IStage threadStage = stages.get(i);
+				threads.add(DaemonFactory.create(name + "-" + i, () -> runStage(threadStage)));
+			}
+		}
+
+		// Start threads of stages
+		for (int i = 1; i < threads.size(); i++)
+			threads.get(i).start();
+
+		// Run stage on current thread
+		runStage(stage);
+
+		// Wait for threads of stages to terminate
+		for (int i = 1; i < threads.size(); i++)
+		{
+			Thread thread = threads.get(i);
+			while (thread.isAlive())
+			{
+				try
+				{
+					thread.join();
+				}
+				catch (InterruptedException e)
+				{
+					fail(e);
+				}
+			}
+		}
+
+		// Rethrow any exception
+		Throwable e = getException();
+		if (e != null)
+		{
+			// Clear any interrupt that was directed at the stage on the current thread
+			Thread.interrupted();
+
+			// Rethrow exception
+			if (e instanceof AppException appException)
+				throw appException;
+			if (e instanceof InterruptedException)
+				throw new TaskCancelledException();
+			if (e instanceof RuntimeException runtimeException)
+				throw runtimeException;
+			if (e instanceof Error error)
+				throw error;
+			throw new UnexpectedRuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Runs the specified stage and records any exception that it throws.
+	 *
+	 * @param stage
+	 *          the stage that will be run.
+	 */
+
+	private void runStage(
+		IStage	stage)
+	{
+		try
+		{
+			if (getException() == null)
+				stage.run();
+		}
+		catch (Throwable e)
+		{
+			fail(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Records the specified exception if no exception has been recorded already, and interrupts the threads of the
+	 * other stages of this pipeline, including the thread that called {@link #run(IStage)}.
+	 *
+	 * @param e
+	 *          the exception that will be recorded.
+	 */
+
+	private synchronized void fail(
+		Throwable	e)
+	{
+		if (exception == null)
+		{
+			exception = e;
+			for (Thread thread : threads)
+			{
+				if (thread != Thread.currentThread())
+					thread.interrupt();
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the first exception that was thrown by a stage of this pipeline.
+	 *
+	 * @return the first exception that was thrown by a stage, or {@code null} if no stage has thrown an exception.
+	 */
+
+	private synchronized Throwable getException()
+	{
+		return exception;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// INTERFACE: STAGE OF PIPELINE
+
+
+	/**
+	 * This functional interface defines the method that must be implemented by a stage of a {@link BlockPipeline}.
+	 */
+
+	@FunctionalInterface
+	public interface IStage
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Runs this stage until it has processed all its input or it is interrupted.
+		 *
+		 * @throws Exception
+		 *           if an error occurs in this stage.
+		 */
+
+		void run()
+			throws Exception;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: BLOCK OF DATA
+
+
+	/**
+	 * This class encapsulates a block of data that is passed between the stages of a {@link BlockPipeline}.
+	 */
+
+	public static class Block
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/** The block that marks the end of the data that is passed along a queue. */
+		public static final	Block	END	= new Block(0);
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The buffer of this block. */
+		public	byte[]	data;
+
+		/** The length of the valid data in the buffer of this block. */
+		public	int		length;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of an empty block with a buffer of the specified size.
+		 *
+		 * @param size
+		 *          the size (in bytes) of the buffer of the block.
+		 */
+
+		public Block(
+			int	size)
+		{
+			// Initialise instance variables
+			data = new byte[size];
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns {@code true} if this block marks the end of the data that is passed along a queue.
+		 *
+		 * @return {@code true} if this block is {@link #END}.
+		 */
+
+		public boolean isEnd()
+		{
+			return (this == END);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: POOL OF REUSABLE BLOCKS
+
+
+	/**
+	 * This class implements a bounded pool of reusable {@linkplain Block blocks}.  A stage of a pipeline {@linkplain
+	 * #acquire() acquires} a block from the pool, fills it and passes it downstream; the last stage that uses the block
+	 * {@linkplain #release(Block) releases} it to the pool.  A stage that acquires a block waits while the pool is
+	 * empty, so the number of blocks in the pool limits how far an upstream stage can run ahead of the downstream
+	 * stages.
+	 */
+
+	public static class Pool
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	BlockingQueue<Block>	blocks;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a pool of blocks.
+		 *
+		 * @param numBlocks
+		 *          the number of blocks in the pool.
+		 * @param blockSize
+		 *          the size (in bytes) of the buffer of each block.
+		 */
+
+		public Pool(
+			int	numBlocks,
+			int	blockSize)
+		{
+			// Initialise instance variables
+			blocks = new ArrayBlockingQueue<>(numBlocks);
+			for (int i = 0; i < numBlocks; i++)
+				blocks.add(new Block(blockSize));
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Removes a block from this pool and returns it, waiting if necessary until a block is available.
+		 *
+		 * @return a block from this pool.  The length of the block is reset to zero.
+		 * @throws InterruptedException
+		 *           if the current thread was interrupted while waiting.
+		 */
+
+		public Block acquire()
+			throws InterruptedException
+		{
+			Block block = blocks.take();
+			block.length = 0;
+			return block;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the specified block to this pool.
+		 *
+		 * @param block
+		 *          the block that will be returned to this pool.
+		 */
+
+		public void release(
+			Block	block)
+		{
+			if (!block.isEnd())
+				blocks.add(block);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: QUEUE OF BLOCKS
+
+
+	/**
+	 * This class implements a bounded first-in-first-out queue of {@linkplain Block blocks} that connects two stages
+	 * of a pipeline.  The end of the data is marked by {@link Block#END}.
+	 */
+
+	public static class Queue
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	BlockingQueue<Block>	blocks;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a queue of blocks with the specified capacity.
+		 *
+		 * @param capacity
+		 *          the maximum number of blocks in the queue, excluding the end marker.
+		 */
+
+		public Queue(
+			int	capacity)
+		{
+			// Initialise instance variables
+			blocks = new ArrayBlockingQueue<>(capacity + 1);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Appends the specified block to this queue, waiting if necessary until there is space in the queue.
+		 *
+		 * @param  block
+		 *           the block that will be appended.
+		 * @throws InterruptedException
+		 *           if the current thread was interrupted while waiting.
+		 */
+
+		public void put(
+			Block	block)
+			throws InterruptedException
+		{
+			blocks.put(block);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Appends the end marker, {@link Block#END}, to this queue.
+		 *
+		 * @throws InterruptedException
+		 *           if the current thread was interrupted while waiting for space in the queue.
+		 */
+
+		public void putEnd()
+			throws InterruptedException
+		{
+			blocks.put(Block.END);
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Removes the block at the head of this queue and returns it, waiting if necessary until a block is available.
+		 *
+		 * @return the block at the head of this queue.
+		 * @throws InterruptedException
+		 *           if the current thread was interrupted while waiting.
+		 */
+
+		public Block take()
+			throws InterruptedException
+		{
+			return blocks.take();
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
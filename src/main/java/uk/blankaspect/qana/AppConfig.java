@@ -126,6 +126,7 @@ class AppConfig
 		String	COLUMN_WIDTH							= "columnWidth";
 		String	CONFIGURATION							= QanaApp.NAME_KEY + "Configuration";
 		String	CRYPTO									= "crypto";
+		String	DEDUPLICATE								= "deduplicate";
 		String	DEFAULT_LINE_LENGTH						= "defaultLineLength";
 		String	ENCRYPTED_FILE_DRAG_AND_DROP_ACTION		= "encryptedFileDragAndDropAction";
 		String	END_OF_SENTENCE_PATTERN					= "endOfSentencePattern";
@@ -144,8 +145,10 @@ class AppConfig
 		String	MAIN_WINDOW_LOCATION					= "mainWindowLocation";
 		String	MAIN_WINDOW_SIZE						= "mainWindowSize";
 		String	MAX_EDIT_LIST_LENGTH					= "maxEditListLength";
+		String	MAX_PACKED_FILE_SIZE					= "maxPackedFileSize";
 		String	NUM_ROWS								= "numRows";
 		String	NUM_SPACES_BETWEEN_SENTENCES			= "numSpacesBetweenSentences";
+		String	NUM_THREADS								= "numThreads";
 		String	PATH									= "path";
 		String	PRNG_DEFAULT_CIPHER						= "prngDefaultCipher";
 		String	SAVE_FILE_SELECTION_PATHNAMES			= "saveFileSelectionPathnames";
@@ -154,6 +157,7 @@ class AppConfig
 		String	SELECT_TEXT_ON_FOCUS_GAINED				= "selectTextOnFocusGained";
 		String	SELECTION_BACKGROUND					= "selectionBackground";
 		String	SELECTION_TEXT							= "selectionText";
+		String	SHARDED_LAYOUT							= "shardedLayout";
 		String	SHOW_FULL_PATHNAMES						= "showFullPathnames";
 		String	SIZE									= "size";
 		String	SOURCE									= "source";
@@ -1773,6 +1777,208 @@ class AppConfig
 	//==================================================================
 
 
+	// PROPERTY CLASS: ARCHIVE NUMBER OF THREADS
+
+
+	private class CPArchiveNumThreads
+		extends Property.IntegerProperty
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private CPArchiveNumThreads()
+		{
+			super(concatenateKeys(Key.ARCHIVE, Key.NUM_THREADS),
+				  ArchiveDocument.MIN_NUM_THREADS, ArchiveDocument.MAX_NUM_THREADS);
+			value = ArchiveDocument.DEFAULT_NUM_THREADS;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance methods : associated methods in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	public int getArchiveNumThreads()
+	{
+		return cpArchiveNumThreads.getValue();
+	}
+
+	//------------------------------------------------------------------
+
+	public void setArchiveNumThreads(int value)
+	{
+		cpArchiveNumThreads.setValue(value);
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance variables : associated variables in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	private	CPArchiveNumThreads	cpArchiveNumThreads	= new CPArchiveNumThreads();
+
+	//==================================================================
+
+
+	// PROPERTY CLASS: ARCHIVE SHARDED LAYOUT
+
+
+	private class CPArchiveShardedLayout
+		extends Property.BooleanProperty
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private CPArchiveShardedLayout()
+		{
+			super(concatenateKeys(Key.ARCHIVE, Key.SHARDED_LAYOUT));
+			value = false;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance methods : associated methods in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	public boolean isArchiveShardedLayout()
+	{
+		return cpArchiveShardedLayout.getValue();
+	}
+
+	//------------------------------------------------------------------
+
+	public void setArchiveShardedLayout(boolean value)
+	{
+		cpArchiveShardedLayout.setValue(value);
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance variables : associated variables in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	private	CPArchiveShardedLayout	cpArchiveShardedLayout	= new CPArchiveShardedLayout();
+
+	//==================================================================
+
+
+	// PROPERTY CLASS: ARCHIVE MAXIMUM SIZE OF PACKED FILE
+
+
+	private class CPArchiveMaxPackedFileSize
+		extends Property.IntegerProperty
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private CPArchiveMaxPackedFileSize()
+		{
+			super(concatenateKeys(Key.ARCHIVE, Key.MAX_PACKED_FILE_SIZE),
+				  ArchiveDocument.MIN_MAX_PACKED_FILE_SIZE, ArchiveDocument.MAX_MAX_PACKED_FILE_SIZE);
+			value = ArchiveDocument.DEFAULT_MAX_PACKED_FILE_SIZE;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance methods : associated methods in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	public int getArchiveMaxPackedFileSize()
+	{
+		return cpArchiveMaxPackedFileSize.getValue();
+	}
+
+	//------------------------------------------------------------------
+
+	public void setArchiveMaxPackedFileSize(int value)
+	{
+		cpArchiveMaxPackedFileSize.setValue(value);
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance variables : associated variables in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	private	CPArchiveMaxPackedFileSize	cpArchiveMaxPackedFileSize	= new CPArchiveMaxPackedFileSize();
+
+	//==================================================================
+
+
+	// PROPERTY CLASS: ARCHIVE DEDUPLICATION
+
+
+	private class CPArchiveDeduplicate
+		extends Property.BooleanProperty
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private CPArchiveDeduplicate()
+		{
+			super(concatenateKeys(Key.ARCHIVE, Key.DEDUPLICATE));
+			value = false;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance methods : associated methods in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	public boolean isArchiveDeduplicate()
+	{
+		return cpArchiveDeduplicate.getValue();
+	}
+
+	//------------------------------------------------------------------
+
+	public void setArchiveDeduplicate(boolean value)
+	{
+		cpArchiveDeduplicate.setValue(value);
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance variables : associated variables in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	private	CPArchiveDeduplicate	cpArchiveDeduplicate	= new CPArchiveDeduplicate();
+
+	//==================================================================
+
+
 	// PROPERTY CLASS: TEXT VIEW SIZE
 
 
@@ -3158,6 +3364,57 @@ class AppConfig
 	//==================================================================
 
 
+	// PROPERTY CLASS: SPLIT NUMBER OF THREADS
+
+
+	private class CPSplitNumThreads
+		extends Property.IntegerProperty
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private CPSplitNumThreads()
+		{
+			super(concatenateKeys(Key.SPLIT, Key.NUM_THREADS),
+				  FileSplitter.MIN_NUM_THREADS, FileSplitter.MAX_NUM_THREADS);
+			value = FileSplitter.DEFAULT_NUM_THREADS;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance methods : associated methods in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	public int getSplitNumThreads()
+	{
+		return cpSplitNumThreads.getValue();
+	}
+
+	//------------------------------------------------------------------
+
+	public void setSplitNumThreads(int value)
+	{
+		cpSplitNumThreads.setValue(value);
+	}
+
+	//------------------------------------------------------------------
+
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+//  Instance variables : associated variables in enclosing class
+//::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::::
+
+	private	CPSplitNumThreads	cpSplitNumThreads	= new CPSplitNumThreads();
+
+	//==================================================================
+
+
 	// PROPERTY CLASS: FONTS
 
 
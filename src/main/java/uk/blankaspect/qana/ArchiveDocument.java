@@ -26,19 +26,53 @@ import java.awt.event.KeyEvent;
 
 import java.beans.PropertyChangeListener;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
 import java.nio.channels.OverlappingFileLockException;
 
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.function.IntBinaryOperator;
 
 import javax.swing.Action;
 import javax.swing.JOptionPane;
@@ -47,6 +81,7 @@ import javax.swing.ListSelectionModel;
 
 import javax.swing.table.AbstractTableModel;
 
+import uk.blankaspect.common.crypto.Fortuna;
 import uk.blankaspect.common.crypto.FortunaAes256;
 import uk.blankaspect.common.crypto.FortunaCipher;
 import uk.blankaspect.common.crypto.HmacSha256;
@@ -58,15 +93,21 @@ import uk.blankaspect.common.exception.FileException;
 import uk.blankaspect.common.exception.TaskCancelledException;
 import uk.blankaspect.common.exception.TempFileException;
 
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
+
 import uk.blankaspect.common.filesystem.FilenameUtils;
 
 import uk.blankaspect.common.misc.ByteBlockInputStream;
+import uk.blankaspect.common.misc.IProgressListener;
 import uk.blankaspect.common.misc.IStringKeyed;
 import uk.blankaspect.common.misc.NullOutputStream;
+import uk.blankaspect.common.misc.TaskContext;
 
 import uk.blankaspect.common.number.NumberCodec;
 import uk.blankaspect.common.number.NumberUtils;
 
+import uk.blankaspect.common.thread.DaemonFactory;
+
 import uk.blankaspect.common.time.CalendarTime;
 
 import uk.blankaspect.common.ui.progress.IProgressView;
@@ -99,13 +140,35 @@ class ArchiveDocument
 
 	private static final	int		FILE_HASH_VALUE_SIZE	= HmacSha256.HASH_VALUE_SIZE;
 
+	private static final	int		HASH_VALUE_STRING_LENGTH	= 2 * FILE_HASH_VALUE_SIZE;
+
 	private static final	int		MAX_NUM_ELEMENTS	= (1 << 24) - 1;
 
+	public static final		int		MIN_NUM_THREADS		= 1;
+	public static final		int		MAX_NUM_THREADS		= 64;
+	public static final		int		DEFAULT_NUM_THREADS	=
+			Math.min(Runtime.getRuntime().availableProcessors(), MAX_NUM_THREADS);
+
+	public static final		int		MIN_MAX_PACKED_FILE_SIZE		= 0;
+	public static final		int		MAX_MAX_PACKED_FILE_SIZE		= 1 << 20;
+	public static final		int		DEFAULT_MAX_PACKED_FILE_SIZE	= 0;
+
+	private static final	long	PACK_FILE_LENGTH	= 1L << 25;
+
 	private static final	int		ENCRYPTION_ID	= 0x35DC4EB9;
 
-	private static final	int		VERSION					= 0;
-	private static final	int		MIN_SUPPORTED_VERSION	= VERSION;
-	private static final	int		MAX_SUPPORTED_VERSION	= VERSION;
+	// The version number of an archive file is a combination of flags, each of which denotes an optional feature
+	private static final	int		BASE_VERSION			= 0;
+	private static final	int		SHARDED_LAYOUT_FLAG		= 1 << 0;
+	private static final	int		PACK_FIELDS_FLAG		= 1 << 1;
+	private static final	int		CHUNK_TABLE_FLAG		= 1 << 2;
+	private static final	int		JOURNAL_ANCHOR_FLAG		= 1 << 3;
+	private static final	int		MIN_SUPPORTED_VERSION	= BASE_VERSION;
+	private static final	int		MAX_SUPPORTED_VERSION	=
+			BASE_VERSION | SHARDED_LAYOUT_FLAG | PACK_FIELDS_FLAG | CHUNK_TABLE_FLAG | JOURNAL_ANCHOR_FLAG;
+
+	private static final	int		SHARD_NAME_LENGTH	= 2;
+	private static final	int		NUM_SHARD_LEVELS	= 2;
 
 	private static final	int		STRING_TABLE_OFFSET_FIELD_SIZE	= 4;
 	private static final	int		NUM_ELEMENTS_FIELD_SIZE			= 4;
@@ -114,6 +177,18 @@ class ArchiveDocument
 	private static final	int		HEADER_SIZE		= STRING_TABLE_OFFSET_FIELD_SIZE + NUM_ELEMENTS_FIELD_SIZE;
 	private static final	int		METADATA_SIZE	= HEADER_SIZE + HASH_VALUE_FIELD_SIZE;
 
+	private static final	long	MIN_JOURNAL_COMPACTION_LENGTH	= 1L << 20;
+	private static final	int		JOURNAL_COMPACTION_DIVISOR		= 2;
+
+	private static final	int		CHANGE_KIND_FIELD_SIZE	= 1;
+
+	private static final	int		CHANGE_KIND_DELETE	= 0;
+	private static final	int		CHANGE_KIND_PUT		= 1;
+	private static final	int		CHANGE_KIND_PUT_PACKED	= 2;
+	private static final	int		CHANGE_KIND_PUT_CHUNKED	= 3;
+
+	private static final	int		NUM_CHUNKS_FIELD_SIZE	= 4;
+
 	private static final	String	TEMP_FILENAME_PREFIX	= "qarc";
 	private static final	String	TEMP_FILENAME_EXTENSION	= ".$tmp";
 
@@ -129,9 +204,14 @@ class ArchiveDocument
 	private static final	String	OPEN_ARCHIVE_STR			= "Open archive";
 	private static final	String	SAVE_ARCHIVE_STR			= "Save archive";
 	private static final	String	ADD_FILES_STR				= "Add files to archive";
+	private static final	String	UPDATE_FILES_STR			= "Update files in archive";
 	private static final	String	VALIDATE_FILES_STR			= "Validate files";
 	private static final	String	EXTRACT_FILES_STR			= "Extract files from archive";
 	private static final	String	DELETE_FILES_STR			= "Delete files";
+	private static final	String	CHANGE_LAYOUT_STR			= "Change storage layout";
+	private static final	String	MOVING_STR					= "Moving";
+	private static final	String	REPACK_FILES_STR			= "Repack files";
+	private static final	String	REPACKING_STR				= "Repacking";
 	private static final	String	SKIP_THIS_STR				= "Skip this file";
 	private static final	String	SKIP_ALL_STR				= "Skip all conflicting files";
 	private static final	String	REPLACE_THIS_STR			= "Replace this file";
@@ -150,6 +230,29 @@ class ArchiveDocument
 	private static final	String	NONEXISTENT_FILES2_STR		= "Non-existent files removed from archive";
 	private static final	String	NOT_ALL_DELETED_STR			= "Not all the selected files were deleted.";
 	private static final	String	NOT_DELETED_STR				= "Files that were not deleted";
+	private static final	String	NOT_ALL_OLD_DELETED_STR		=
+			"Not all the encrypted files of the replaced files were deleted.";
+	private static final	String	FLAT_STR					= "flat";
+	private static final	String	SHARDED_STR					= "sharded";
+	private static final	String	CONFIRM_CHANGE_LAYOUT_STR	=
+			"The files of the archive will be moved to the %s layout, and the archive file must then be saved.\n"
+				+ "Do you want to move the files?";
+	private static final	String	NOT_ALL_MOVED_STR			= "Not all the files of the archive were moved.";
+	private static final	String	NOT_MOVED_STR				= "Files that were not moved";
+	private static final	String	CONFIRM_REPACK_STR			=
+			"The small files of the archive will be repacked, and the archive file will then be saved.\n"
+				+ "Do you want to repack the files?";
+	private static final	String	NOTHING_TO_REPACK_STR		= "There are no files to repack.";
+	private static final	String	NOTHING_TO_UPDATE_STR		= "All the files in the archive are up to date.";
+	private static final	String	JOURNAL_TRUNCATED_STR		=
+			"The end of the journal of the archive was incomplete or invalid, and it has been ignored.\n"
+				+ "Some of the changes that were last saved may have been lost.";
+	private static final	String	JOURNAL_STALE_STR			=
+			"The journal of the archive is missing, or it is older than the archive file expects.\n"
+				+ "Some of the changes that were last saved may have been lost.";
+	private static final	String	NUM_ERRORS_STR				=
+			"Number of files that could not be processed : %d\nThe errors will be listed.";
+	private static final	String	ERRORS_STR					= "Errors";
 	private static final	String	LIST_OF_FILES_STR			= "List of selected files";
 	private static final	String	MAP_OF_FILES_STR			= "Map of selected files";
 
@@ -168,20 +271,30 @@ class ArchiveDocument
 ////////////////////////////////////////////////////////////////////////
 
 	private static	SortingOrder	sortingOrder	= DEFAULT_SORTING_ORDER;
+	private static	AtomicInteger	threadIndex		= new AtomicInteger();
 
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
 
-	private	File			file;
-	private	File			archiveDirectory;
-	private	int				unnamedIndex;
-	private	boolean			executingCommand;
-	private	boolean			changed;
-	private	ArchiveView		view;
-	private	List<Element>	elements;
-	private	TableModel		tableModel;
-	private	ConflictOption	conflictOption;
+	private	File					file;
+	private	File					archiveDirectory;
+	private	int						unnamedIndex;
+	private	boolean					executingCommand;
+	private	boolean					changed;
+	private	ArchiveView				view;
+	private	boolean					sharded;
+	private	ElementList				elements;
+	private	ChunkTable				chunkTable;
+	private	ElementIndex			elementIndex;
+	private	KeyList.Key				indexKey;
+	private	byte[]					indexHashValue;
+	private	ArchiveJournal			journal;
+	private	boolean					journalAnchored;
+	private	Map<String, Element>	pendingChanges;
+	private	TableModel				tableModel;
+	private	ConflictOption			conflictOption;
+	private	volatile boolean		workersCancelled;
 
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
@@ -189,7 +302,10 @@ class ArchiveDocument
 
 	public ArchiveDocument()
 	{
-		elements = new ArrayList<>();
+		sharded = AppConfig.INSTANCE.isArchiveShardedLayout();
+		elements = new ElementList();
+		elementIndex = new ElementIndex(elements);
+		pendingChanges = new LinkedHashMap<>();
 		tableModel = new TableModel();
 	}
 
@@ -230,6 +346,275 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
+	// Returns the pathname, relative to the archive directory, of the directory that contains the file with the
+	// specified hash-value string in the sharded layout.  The name of each level of directory is the next two
+	// characters of the hash-value string (eg, "ab/cd" for "abcd...").
+	private static String getShardPathname(String hashValueStr)
+	{
+		StringBuilder buffer = new StringBuilder(NUM_SHARD_LEVELS * (SHARD_NAME_LENGTH + 1));
+		for (int i = 0; i < NUM_SHARD_LEVELS; i++)
+		{
+			if (i > 0)
+				buffer.append(File.separatorChar);
+			buffer.append(hashValueStr, i * SHARD_NAME_LENGTH, (i + 1) * SHARD_NAME_LENGTH);
+		}
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	// Adds the names of the files in the specified directory that have the length of a hash-value string to the
+	// specified set.  A directory that does not exist is treated as an empty directory.
+	private static void listHashValueFilenames(File        directory,
+											   Set<String> filenames)
+		throws IOException
+	{
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory.toPath()))
+		{
+			for (Path entry : entries)
+			{
+				String filename = entry.getFileName().toString();
+				if (filename.length() == HASH_VALUE_STRING_LENGTH)
+					filenames.add(filename);
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			// ignore
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the version number of an archive file whose archive directory has the specified layout, whose elements
+	// have the specified format, which has a table of chunks if chunkTable is true and which ends with the anchor of
+	// its journal if journalAnchor is true.
+	static int getVersion(boolean sharded,
+						  boolean packFields,
+						  boolean chunkTable,
+						  boolean journalAnchor)
+	{
+		int version = BASE_VERSION;
+		if (sharded)
+			version |= SHARDED_LAYOUT_FLAG;
+		if (packFields)
+			version |= PACK_FIELDS_FLAG;
+		if (chunkTable)
+			version |= CHUNK_TABLE_FLAG;
+		if (journalAnchor)
+			version |= JOURNAL_ANCHOR_FLAG;
+		return version;
+	}
+
+	//------------------------------------------------------------------
+
+	static boolean isShardedLayout(int version)
+	{
+		return ((version & SHARDED_LAYOUT_FLAG) != 0);
+	}
+
+	//------------------------------------------------------------------
+
+	static boolean hasPackFields(int version)
+	{
+		return ((version & PACK_FIELDS_FLAG) != 0);
+	}
+
+	//------------------------------------------------------------------
+
+	static boolean hasChunkTable(int version)
+	{
+		return ((version & CHUNK_TABLE_FLAG) != 0);
+	}
+
+	//------------------------------------------------------------------
+
+	static boolean hasJournalAnchor(int version)
+	{
+		return ((version & JOURNAL_ANCHOR_FLAG) != 0);
+	}
+
+	//------------------------------------------------------------------
+
+	static StreamEncrypter.Header getOuterHeader(int version)
+	{
+		return new StreamEncrypter.Header(ENCRYPTION_ID, version, MIN_SUPPORTED_VERSION, MAX_SUPPORTED_VERSION);
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the version number in the header of the specified archive file.  The header is read from the start of the
+	// file without changing the position of the input stream; the version number is validated when the file is
+	// decrypted.
+	static int readVersion(FileInputStream inStream,
+						   File            file)
+		throws AppException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(StreamEncrypter.Header.SIZE);
+		try
+		{
+			FileChannel channel = inStream.getChannel();
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer, buffer.position()) < 0)
+					throw new FileException(ErrorId.NOT_A_LIST_ARCHIVE_FILE, file);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+		}
+		return NumberCodec.bytesToUIntLE(buffer.array(), StreamEncrypter.Header.ID_FIELD_SIZE,
+										 StreamEncrypter.Header.VERSION_FIELD_SIZE);
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the anchor of the journal at the end of the specified archive file.  The anchor is read without changing
+	// the position of the input stream.
+	static byte[] readJournalAnchor(FileInputStream inStream,
+									File            file)
+		throws AppException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(ArchiveJournal.ANCHOR_SIZE);
+		try
+		{
+			FileChannel channel = inStream.getChannel();
+			long position = channel.size() - buffer.capacity();
+			while (buffer.hasRemaining())
+			{
+				if ((position < 0) || (channel.read(buffer, position + buffer.position()) < 0))
+					throw new FileException(ErrorId.NOT_A_LIST_ARCHIVE_FILE, file);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+		}
+		return buffer.array();
+	}
+
+	//------------------------------------------------------------------
+
+	// Replaces the anchor of the journal at the end of the specified archive file.
+	private static void writeJournalAnchor(File   file,
+										   byte[] anchor)
+		throws AppException
+	{
+		RandomAccessFile raFile = null;
+		try
+		{
+			// Open file
+			try
+			{
+				raFile = new RandomAccessFile(file, "rw");
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+			}
+
+			// Write anchor
+			try
+			{
+				raFile.seek(raFile.length() - anchor.length);
+				raFile.write(anchor);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_WRITING_FILE, file, e);
+			}
+
+			// Close file
+			try
+			{
+				raFile.close();
+				raFile = null;
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, file, e);
+			}
+		}
+		catch (AppException e)
+		{
+			// Close file
+			try
+			{
+				if (raFile != null)
+					raFile.close();
+			}
+			catch (IOException e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private static void setPosition(FileInputStream inStream,
+									long            position,
+									File            file)
+		throws AppException
+	{
+		try
+		{
+			inStream.getChannel().position(position);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	// Reads the part of the specified file that starts at the specified offset and has the specified length.
+	private static byte[] readFile(File file,
+								   long offset,
+								   long length)
+		throws AppException
+	{
+		// Test length
+		if (length > Integer.MAX_VALUE)
+			throw new FileException(ErrorId.FILE_IS_TOO_LONG, file);
+
+		// Read file
+		ByteBuffer buffer = ByteBuffer.allocate((int)length);
+		try (FileInputStream inStream = new FileInputStream(file))
+		{
+			FileChannel channel = inStream.getChannel();
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer, offset + buffer.position()) < 0)
+					throw new FileException(ErrorId.PREMATURE_END_OF_FILE, file);
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+		}
+		catch (SecurityException e)
+		{
+			throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+		}
+		return buffer.array();
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance methods : overriding methods
 ////////////////////////////////////////////////////////////////////////
@@ -290,9 +675,12 @@ class ArchiveDocument
 		Command.SELECT_ALL.setEnabled(numSelectedRows < numRows);
 		Command.INVERT_SELECTION.setEnabled(numRows > 0);
 		Command.ADD_FILES.setEnabled(isArchiveDirectory && (elements.size() < MAX_NUM_ELEMENTS));
+		Command.UPDATE_FILES.setEnabled(isArchiveDirectory);
 		Command.EXTRACT_FILES.setEnabled(isSelection && isArchiveDirectory);
 		Command.VALIDATE_FILES.setEnabled(isSelection && isArchiveDirectory);
 		Command.DELETE_FILES.setEnabled(isSelection && isArchiveDirectory);
+		Command.CHANGE_LAYOUT.setEnabled(isArchiveDirectory);
+		Command.REPACK_FILES.setEnabled((numRows > 0) && isArchiveDirectory);
 		Command.DISPLAY_FILE_LIST.setEnabled(isSelection);
 		Command.DISPLAY_FILE_MAP.setEnabled(isSelection);
 		Command.SET_KEY.setEnabled(true);
@@ -398,8 +786,8 @@ class ArchiveDocument
 		if (key == null)
 			throw new TaskCancelledException();
 
-		// Create decrypter
-		StreamEncrypter decrypter = key.getStreamEncrypter(null, getOuterHeader());
+		// Create decrypter.  The version number of the header is used only for encryption.
+		StreamEncrypter decrypter = key.getStreamEncrypter(null, getOuterHeader(BASE_VERSION));
 
 		// Test file length
 		if (file.length() < decrypter.getMinOverheadSize() + METADATA_SIZE)
@@ -407,7 +795,8 @@ class ArchiveDocument
 
 		// Read file
 		FileInputStream inStream = null;
-		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		IndexParser parser = null;
+		byte[] anchor = null;
 		try
 		{
 			// Open input stream on file
@@ -439,11 +828,27 @@ class ArchiveDocument
 				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
 			}
 
+			// Get layout of archive directory, format of elements and presence of table of chunks from version number
+			// of file
+			int version = readVersion(inStream, file);
+			sharded = isShardedLayout(version);
+			parser = new IndexParser(key.getKey(), hasPackFields(version), hasChunkTable(version));
+
+			// Read anchor of journal, which follows the encrypted data
+			long length = file.length();
+			if (hasJournalAnchor(version))
+			{
+				anchor = readJournalAnchor(inStream, file);
+				length -= anchor.length;
+				if (length < decrypter.getMinOverheadSize() + METADATA_SIZE)
+					throw new FileException(ErrorId.NOT_A_LIST_ARCHIVE_FILE, file);
+			}
+
 			// Decrypt file
 			try
 			{
 				decrypter.addProgressListener(progressView);
-				decrypter.decrypt(inStream, outStream, file.length(), key.getKey(), QanaApp.INSTANCE::generateKey);
+				decrypter.decrypt(inStream::read, parser, length, key.getKey(), QanaApp.INSTANCE::generateKey);
 			}
 			catch (StreamEncrypter.InputException e)
 			{
@@ -479,8 +884,34 @@ class ArchiveDocument
 			throw e;
 		}
 
-		// Parse data
-		parse(outStream.toByteArray(), key.getKey());
+		// Set elements and table of chunks from parsed data
+		elements = parser.finish();
+		chunkTable = parser.chunkTable;
+		elementIndex = new ElementIndex(elements);
+		indexKey = key;
+		indexHashValue = parser.hashValue;
+
+		// Apply changes from any journal that belongs to the archive file
+		journal = null;
+		boolean journalTruncated = false;
+		File journalFile = ArchiveJournal.getFile(file);
+		if (journalFile.isFile())
+		{
+			progressView.setInfo(READING_STR, journalFile);
+			List<byte[]> records = new ArrayList<>();
+			journal = ArchiveJournal.open(journalFile, key, indexHashValue, records);
+			if (journal != null)
+			{
+				applyChanges(records, journalFile);
+				journalTruncated = journal.isTruncated();
+			}
+		}
+		pendingChanges.clear();
+
+		// Test journal against its anchor in the archive file.  Changes are not appended to a journal that does not
+		// match its anchor, so that the archive file is rewritten when it is next saved.
+		boolean journalStale = (anchor != null) && !ArchiveJournal.matchesAnchor(journal, anchor, indexHashValue);
+		journalAnchored = (anchor != null) && !journalStale;
 
 		// Sort elements
 		progressView.setInfo(SORTING_STR);
@@ -494,13 +925,7 @@ class ArchiveDocument
 		changed = false;
 
 		// Check for existence of files in archive
-		List<Integer> indices = new ArrayList<>();
-		for (int i = 0; i < elements.size(); i++)
-		{
-			Element element = elements.get(i);
-			if (!new File(archiveDirectory, element.getHashValueString()).isFile())
-				indices.add(i);
-		}
+		List<Integer> indices = findNonexistentFiles();
 
 		// Remove non-existent files from list
 		if (!indices.isEmpty())
@@ -508,19 +933,18 @@ class ArchiveDocument
 			StringBuilder buffer = new StringBuilder(256);
 			for (int index : indices)
 			{
-				Element element = elements.get(index);
 				if (!buffer.isEmpty())
 					buffer.append('\n');
-				buffer.append(element.path);
+				buffer.append(elements.getPath(index));
 				buffer.append("  (");
-				buffer.append(element.getHashValueString());
+				buffer.append(elements.getHashValueString(index));
 				buffer.append(')');
 			}
 
 			for (int i = indices.size() - 1; i >= 0; i--)
 			{
 				int index = indices.get(i);
-				elements.remove(index);
+				removeElement(index);
 				tableModel.fireTableRowsDeleted(index, index);
 			}
 			changed = true;
@@ -528,6 +952,18 @@ class ArchiveDocument
 			QanaApp.INSTANCE.showErrorMessage(QanaApp.SHORT_NAME, NONEXISTENT_FILES1_STR);
 			TextAreaDialog.showDialog(getWindow(), NONEXISTENT_FILES2_STR, buffer.toString());
 		}
+
+		// Report missing, stale or truncated journal
+		if (journalStale)
+		{
+			changed = true;
+			QanaApp.INSTANCE.showWarningMessage(QanaApp.SHORT_NAME, JOURNAL_STALE_STR);
+		}
+		else if (journalTruncated)
+		{
+			changed = true;
+			QanaApp.INSTANCE.showWarningMessage(QanaApp.SHORT_NAME, JOURNAL_TRUNCATED_STR);
+		}
 	}
 
 	//------------------------------------------------------------------
@@ -550,6 +986,23 @@ class ArchiveDocument
 		FortunaCipher cipher = Utils.getCipher(key);
 		key.checkAllowedCipher(cipher);
 
+		// If the archive file has not changed since it was read or written and its journal has not reached the length
+		// at which it is compacted, append the changes to the journal instead of rewriting the archive file
+		if (canAppendToJournal(file, key))
+		{
+			appendToJournal(key);
+			changed = false;
+			return;
+		}
+
+		// Get version number of file from layout of archive directory, format of elements and presence of table of
+		// chunks.  Elements have pack fields only if there is a packed file in the archive; the table of chunks is
+		// present once the archive has a secret for deduplication.  A file is always written with the anchor of its
+		// journal.
+		boolean packFields = elements.hasPackedElements();
+		byte[] chunkTableData = (chunkTable == null) ? null : chunkTable.toByteArray(elements);
+		int version = getVersion(sharded, packFields, chunkTableData != null, true);
+
 		// Create hash-function object
 		HmacSha256 hash = new HmacSha256(key.getKey());
 
@@ -557,7 +1010,7 @@ class ArchiveDocument
 		ByteBlockInputStream inStream = new ByteBlockInputStream();
 
 		// Add header
-		inStream.addBlock(createHeader());
+		inStream.addBlock(createHeader(packFields, (chunkTableData == null) ? 0 : chunkTableData.length));
 
 		// Add placeholder for hash value
 		byte[] hashValue = new byte[HASH_VALUE_FIELD_SIZE];
@@ -567,11 +1020,18 @@ class ArchiveDocument
 		StringTable stringTable = new StringTable();
 		for (Element element : elements)
 		{
-			byte[] elementData = element.toByteArray(stringTable);
+			byte[] elementData = element.toByteArray(stringTable, packFields);
 			inStream.addBlock(elementData);
 			hash.update(elementData);
 		}
 
+		// Add table of chunks
+		if (chunkTableData != null)
+		{
+			inStream.addBlock(chunkTableData);
+			hash.update(chunkTableData);
+		}
+
 		// Add string table
 		byte[] stringTableData = stringTable.toByteArray();
 		inStream.addBlock(stringTableData);
@@ -642,7 +1102,7 @@ class ArchiveDocument
 			// Encrypt file
 			try
 			{
-				StreamEncrypter encrypter = key.getStreamEncrypter(cipher, getOuterHeader());
+				StreamEncrypter encrypter = key.getStreamEncrypter(cipher, getOuterHeader(version));
 				encrypter.addProgressListener(progressView);
 				encrypter.encrypt(inStream, outStream, inStream.getLength(), 0, key.getKey(),
 								  QanaApp.INSTANCE.getRandomKey(), QanaApp.INSTANCE::generateKey);
@@ -653,6 +1113,16 @@ class ArchiveDocument
 				throw new FileException(e, tempFile);
 			}
 
+			// Write anchor of journal.  The file has no journal until changes are appended to it.
+			try
+			{
+				outStream.write(ArchiveJournal.createAnchor(hashValue));
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_WRITING_FILE, tempFile, e);
+			}
+
 			// Close file
 			try
 			{
@@ -693,6 +1163,22 @@ class ArchiveDocument
 			// Set file and archive directory
 			this.file = file;
 			setArchiveDirectory(file.getAbsoluteFile().getParentFile());
+
+			// Reset journal.  Any existing journal file is deleted; if it cannot be deleted, it will be ignored when
+			// the archive file is read because it belongs to the previous content of the archive file.
+			indexKey = key;
+			indexHashValue = hashValue;
+			journal = null;
+			journalAnchored = true;
+			pendingChanges.clear();
+			try
+			{
+				ArchiveJournal.getFile(file).delete();
+			}
+			catch (SecurityException e)
+			{
+				// ignore
+			}
 		}
 		catch (AppException e)
 		{
@@ -732,92 +1218,234 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	public void encryptFiles(List<InputFile> files)
+	// Encrypts the specified files and adds them to this archive.  If update is true, a file whose size and timestamp
+	// match those of the element of the archive with the same path is skipped, and a file that replaces an existing
+	// element does not cause a conflict; otherwise, the user is prompted to resolve each conflict.
+	public void encryptFiles(List<InputFile> files,
+							 boolean         update)
 		throws AppException
 	{
+		// Get title of operation
+		String title = update ? UPDATE_FILES_STR : ADD_FILES_STR;
+
 		// Reset progress in progress view
-		IProgressView progressView = Task.getProgressView();
+		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
 		progressView.setProgress(0, 0.0);
 		progressView.setProgress(1, 0.0);
 
-		// Calculate total length of files
-		long totalFileLength = 0;
-		for (InputFile inputFile : files)
-			totalFileLength += inputFile.file.length();
-
-		// Encrypt files
+		// Resolve conflicts with existing elements and with other input files on this thread before any file is
+		// encrypted
 		conflictOption = null;
-		long fileOffset = 0;
-		for (InputFile inputFile : files)
+		List<InputFile> inputFiles = new ArrayList<>();
+		List<Integer> indices = new ArrayList<>();
+		Map<String, Integer> inputIndices = new HashMap<>();
+		int numUnchanged = 0;
+		try
 		{
-			File inFile = inputFile.file;
-			try
+			for (InputFile inputFile : files)
 			{
-				// Update progress view
-				progressView.setInfo(ENCRYPTING_STR, inFile);
-				progressView.setProgress(0, 0.0);
-				progressView.waitForIdle();
-
-				// Test for file
-				if (!inFile.exists())
-					throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, inFile);
-				if (!inFile.isFile())
-					throw new FileException(ErrorId.NOT_A_FILE, inFile);
-
 				// Find index of file
 				int index = findElement(inputFile.path);
-				if (index < 0)
-					index = elements.size();
+				Integer inputIndex = inputIndices.get(inputFile.path);
 
-				// Prompt for conflicting file
-				else
+				// In update mode, skip file if it has not changed since it was added to the archive
+				if (update && (index >= 0) && (inputIndex == null)
+						&& (inputFile.file.length() == elements.getSize(index))
+						&& (inputFile.file.lastModified() == elements.getTimestamp(index)))
 				{
-					String[] strs = { inputFile.path, ADD_CONFLICT_STR, DO_WHAT_STR };
-					if (!resolveConflict(ADD_FILES_STR, strs))
-						index = -1;
+					++numUnchanged;
+					continue;
 				}
 
-				// Encrypt file and add it to archive
-				if (index >= 0)
+				// Prompt for conflicting file
+				if ((!update && (index >= 0)) || (inputIndex != null))
 				{
-					byte[] key = QanaApp.INSTANCE.getRandomKey();
-					byte[] salt = new byte[Element.SALT_FIELD_SIZE];
-					byte[] hashValue = encryptFile(inFile, archiveDirectory, key, fileOffset, totalFileLength, salt);
-					Element element =
-							new Element(inputFile.path, inFile.length(), inFile.lastModified(), key, salt, hashValue);
-					if (index < elements.size())
-					{
-						elements.set(index, element);
-						tableModel.fireTableRowsUpdated(index, index);
-					}
-					else
-					{
-						elements.add(element);
-						tableModel.fireTableRowsInserted(index, index);
-					}
-					changed = true;
+					String[] strs = { inputFile.path, ADD_CONFLICT_STR, DO_WHAT_STR };
+					if (!resolveConflict(title, strs))
+						continue;
 				}
-			}
-			catch (TaskCancelledException e)
-			{
-				break;
-			}
-			catch (AppException e)
-			{
-				String[] optionStrs = Utils.getOptionStrings(AppConstants.CONTINUE_STR);
-				if (JOptionPane.showOptionDialog(getWindow(), e, QanaApp.SHORT_NAME + " : " + ADD_FILES_STR,
-												 JOptionPane.OK_CANCEL_OPTION, JOptionPane.ERROR_MESSAGE, null,
-												 optionStrs, optionStrs[0]) != JOptionPane.OK_OPTION)
-					break;
-			}
 
-			// Increment file offset
-			fileOffset += inFile.length();
+				// Replace any earlier input file with the same path
+				if (inputIndex != null)
+					inputFiles.set(inputIndex, null);
+
+				// Add file to list
+				inputIndices.put(inputFile.path, inputFiles.size());
+				inputFiles.add(inputFile);
+				indices.add(index);
+			}
+		}
+		catch (TaskCancelledException e)
+		{
+			return;
+		}
+
+		// Test for files to update
+		if (inputFiles.isEmpty() && (numUnchanged > 0))
+		{
+			QanaApp.INSTANCE.showInfoMessage(title, NOTHING_TO_UPDATE_STR);
+			return;
+		}
+
+		// Initialise progress of files
+		long[] lengths = new long[inputFiles.size()];
+		for (int i = 0; i < lengths.length; i++)
+		{
+			InputFile inputFile = inputFiles.get(i);
+			if (inputFile != null)
+				lengths[i] = inputFile.file.length();
+		}
+		progressView.initPartProgress(lengths);
+
+		// Create the tasks that will encrypt the files.
+		// The keys and the seeds of the PRNGs of the tasks are generated on this thread, so that the tasks do not share
+		// the application's PRNG.
+		Set<Long> hashValueKeys = getHashValueKeys();
+		Set<Long> newHashValueKeys = ConcurrentHashMap.newKeySet();
+		int maxPackedFileSize = AppConfig.INSTANCE.getArchiveMaxPackedFileSize();
+		boolean deduplicate = AppConfig.INSTANCE.isArchiveDeduplicate();
+		if (deduplicate && (chunkTable == null))
+		{
+			// Create table of chunks with a new secret.  The secret is recorded only in the archive file, so the file
+			// must be rewritten rather than have changes appended to its journal.
+			chunkTable = new ChunkTable(QanaApp.INSTANCE.getRandomKey());
+			indexHashValue = null;
+		}
+		PackWriter packWriter = ((maxPackedFileSize > 0) || deduplicate)
+									? new PackWriter(new FortunaAes256(QanaApp.INSTANCE.getRandomKey()),
+													 hashValueKeys, newHashValueKeys)
+									: null;
+		List<Callable<Element>> tasks = new ArrayList<>();
+		for (int i = 0; i < inputFiles.size(); i++)
+		{
+			InputFile inputFile = inputFiles.get(i);
+			if (inputFile == null)
+			{
+				tasks.add(() -> null);
+				continue;
+			}
+			byte[] key = QanaApp.INSTANCE.getRandomKey();
+			Fortuna prng = new FortunaAes256(QanaApp.INSTANCE.getRandomKey());
+			IProgressListener progressListener = new WorkerProgressListener(progressView, i);
+			tasks.add(() ->
+			{
+				// Update progress view
+				File inFile = inputFile.file;
+				progressView.setInfo(ENCRYPTING_STR, inFile);
+
+				// Test for file
+				if (!inFile.exists())
+					throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, inFile);
+				if (!inFile.isFile())
+					throw new FileException(ErrorId.NOT_A_FILE, inFile);
+
+				// Encrypt file as deduplicated chunks if deduplication is enabled ...
+				if (deduplicate)
+					return encryptChunkedFile(inputFile, key, prng, packWriter, progressListener);
+
+				// ... or encrypt file into a pack file if it is small enough ...
+				byte[] salt = new byte[Element.SALT_FIELD_SIZE];
+				if ((maxPackedFileSize > 0) && (inFile.length() <= maxPackedFileSize))
+				{
+					prng.getRandomBytes(salt, 0, salt.length);
+					PackLocation location = encryptPackedFile(inFile, key, prng, packWriter, progressListener);
+					return new Element(inputFile.path, inFile.length(), inFile.lastModified(), key, salt,
+									   location.hashValue, location.offset, location.length);
+				}
+
+				// ... otherwise, encrypt file into a file of its own
+				byte[] hashValue = encryptFile(inFile, archiveDirectory, key, prng, salt, hashValueKeys,
+											   newHashValueKeys, progressListener);
+				return new Element(inputFile.path, inFile.length(), inFile.lastModified(), key, salt, hashValue);
+			});
+		}
+
+		// Encrypt files concurrently
+		List<Element> results = new ArrayList<>();
+		List<AppException> errors = new ArrayList<>();
+		try
+		{
+			runConcurrently(tasks, results, errors);
+		}
+		finally
+		{
+			// Close last pack file
+			if (packWriter != null)
+				packWriter.close();
+		}
+
+		// Add encrypted files to archive in the order of the input files.  The encrypted file of an element that is
+		// replaced is deleted, as it is when the element is deleted; a pack file is deleted only after all the elements
+		// have been added, and only if it does not contain the file or a chunk of an element.
+		StringBuilder buffer = new StringBuilder(256);
+		Set<String> packHashValueStrs = new HashSet<>();
+		for (int i = 0; i < results.size(); i++)
+		{
+			Element element = results.get(i);
+			if (element != null)
+			{
+				int index = indices.get(i);
+				if (index >= 0)
+				{
+					// Get pack files that contain the chunks of a deduplicated file that is replaced
+					int[] chunkIndices = elements.getChunkIndices(index);
+					if (chunkIndices != null)
+					{
+						for (int chunkIndex : chunkIndices)
+							packHashValueStrs.add(chunkTable.get(chunkIndex).getHashValueString());
+					}
+
+					// Replace element
+					Element oldElement = setElement(index, element);
+					tableModel.fireTableRowsUpdated(index, index);
+
+					// Delete file of replaced element
+					if (oldElement.isPacked())
+						packHashValueStrs.add(oldElement.getHashValueString());
+					else if (!oldElement.isChunked())
+						deleteMemberFile(oldElement.getHashValueString(), buffer);
+				}
+				else
+				{
+					index = elements.size();
+					addElement(element);
+					tableModel.fireTableRowsInserted(index, index);
+				}
+				changed = true;
+			}
+		}
+
+		// Remove the chunks that were added for files that could not be encrypted, and delete any new pack file or
+		// pack file of a replaced element that does not contain a file or a chunk of an element
+		if (packWriter != null)
+		{
+			if (chunkTable != null)
+				chunkTable.removeUnreferenced();
+			packHashValueStrs.addAll(packWriter.getHashValueStrings());
+		}
+		if (!packHashValueStrs.isEmpty())
+		{
+			packHashValueStrs.removeAll(getMemberHashValueStrings());
+			for (String hashValueStr : packHashValueStrs)
+				deleteMemberFile(hashValueStr, buffer);
 		}
 
 		// Sort elements
 		progressView.setInfo(SORTING_STR);
 		sort();
+
+		// Display list of files that were not deleted
+		if (!buffer.isEmpty())
+		{
+			QanaApp.INSTANCE.showErrorMessage(title, NOT_ALL_OLD_DELETED_STR);
+			TextAreaDialog.showDialog(getWindow(), NOT_DELETED_STR, buffer.toString());
+		}
+
+		// Display errors
+		List<String> paths = new ArrayList<>();
+		for (InputFile inputFile : inputFiles)
+			paths.add((inputFile == null) ? null : inputFile.path);
+		showErrors(title, paths, errors);
 	}
 
 	//------------------------------------------------------------------
@@ -827,69 +1455,81 @@ class ArchiveDocument
 		throws AppException
 	{
 		// Reset progress in progress view
-		IProgressView progressView = Task.getProgressView();
+		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
 		progressView.setProgress(0, 0.0);
 		progressView.setProgress(1, 0.0);
 
-		// Calculate total length of files
-		long totalFileLength = 0;
-		for (int index : indices)
-			totalFileLength += new File(archiveDirectory, elements.get(index).getHashValueString()).length();
-
-		// Decrypt files
+		// Resolve conflicts with existing files on this thread before any file is decrypted
 		conflictOption = null;
-		long fileOffset = 0;
-		for (int index : indices)
+		List<File> outFiles = new ArrayList<>();
+		try
 		{
-			Element element = elements.get(index);
-			File inFile = new File(archiveDirectory, element.getHashValueString());
-			try
+			for (int index : indices)
 			{
-				// Update progress view
-				progressView.setInfo(DECRYPTING_STR, inFile);
-				progressView.setProgress(0, 0.0);
-
-				// Test for file
-				if (!inFile.exists())
-					throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, inFile);
-				if (!inFile.isFile())
-					throw new FileException(ErrorId.NOT_A_FILE, inFile);
-
-				// Prompt to replace file
-				File outFile = new File(outDirectory, element.path);
+				File outFile = new File(outDirectory, elements.get(index).path);
 				if (outFile.exists())
 				{
 					String[] strs = { Utils.getPathname(outFile), EXTRACT_CONFLICT_STR, DO_WHAT_STR };
 					if (!resolveConflict(EXTRACT_FILES_STR, strs))
 						outFile = null;
 				}
+				outFiles.add(outFile);
+			}
+		}
+		catch (TaskCancelledException e)
+		{
+			return;
+		}
+
+		// Initialise progress of files
+		long[] lengths = new long[indices.length];
+		for (int i = 0; i < indices.length; i++)
+			lengths[i] = getEncryptedLength(indices[i]);
+		progressView.initPartProgress(lengths);
+
+		// Create the tasks that will decrypt the files
+		List<Callable<Boolean>> tasks = new ArrayList<>();
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < indices.length; i++)
+		{
+			Element element = elements.get(indices[i]);
+			File inFile = element.isChunked() ? null : findMemberFile(element.getHashValueString());
+			File outFile = outFiles.get(i);
+			IProgressListener progressListener = new WorkerProgressListener(progressView, i);
+			paths.add(element.path);
+			tasks.add(() ->
+			{
+				// Update progress view and test for file.  A deduplicated file has no file of its own.
+				if (inFile == null)
+					progressView.setInfo(DECRYPTING_STR + " " + element.path);
+				else
+				{
+					progressView.setInfo(DECRYPTING_STR, inFile);
+					if (!inFile.exists())
+						throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, inFile);
+					if (!inFile.isFile())
+						throw new FileException(ErrorId.NOT_A_FILE, inFile);
+				}
 
 				// Decrypt file
 				if (outFile != null)
 				{
-					if (!decryptFile(inFile, outFile, element.key, element.salt, element.timestamp, fileOffset,
-									 totalFileLength))
+					if (!decryptFile(inFile, element.packOffset, element.packLength, element.chunkIndices, outFile,
+									 element.key, element.salt, element.timestamp, progressListener))
 						throw new FileException(ErrorId.INCORRECT_ENCRYPTION_KEY, inFile);
 					if (outFile.length() != element.size)
 						throw new FileException(ErrorId.INCORRECT_FILE_SIZE, outFile);
 				}
-			}
-			catch (TaskCancelledException e)
-			{
-				break;
-			}
-			catch (AppException e)
-			{
-				String[] optionStrs = Utils.getOptionStrings(AppConstants.CONTINUE_STR);
-				if (JOptionPane.showOptionDialog(getWindow(), e, QanaApp.SHORT_NAME + " : " + EXTRACT_FILES_STR,
-												 JOptionPane.OK_CANCEL_OPTION, JOptionPane.ERROR_MESSAGE, null,
-												 optionStrs, optionStrs[0]) != JOptionPane.OK_OPTION)
-					break;
-			}
-
-			// Increment file offset
-			fileOffset += inFile.length();
+				return Boolean.TRUE;
+			});
 		}
+
+		// Decrypt files concurrently
+		List<AppException> errors = new ArrayList<>();
+		runConcurrently(tasks, new ArrayList<>(), errors);
+
+		// Display errors
+		showErrors(EXTRACT_FILES_STR, paths, errors);
 	}
 
 	//------------------------------------------------------------------
@@ -898,60 +1538,65 @@ class ArchiveDocument
 		throws AppException
 	{
 		// Reset progress in progress view
-		IProgressView progressView = Task.getProgressView();
+		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
 		progressView.setProgress(0, 0.0);
 		progressView.setProgress(1, 0.0);
 
-		// Calculate total length of files
-		long totalFileLength = 0;
-		for (int index : indices)
-			totalFileLength += new File(archiveDirectory, elements.get(index).getHashValueString()).length();
+		// Initialise progress of files
+		long[] lengths = new long[indices.length];
+		for (int i = 0; i < indices.length; i++)
+			lengths[i] = getEncryptedLength(indices[i]);
+		progressView.initPartProgress(lengths);
 
-		// Validate files
-		List<Integer> invalidIndices = new ArrayList<>();
-		long fileOffset = 0;
-		int numValidated = 0;
-		for (int index : indices)
+		// Create the tasks that will validate the files
+		List<Callable<Boolean>> tasks = new ArrayList<>();
+		List<String> paths = new ArrayList<>();
+		for (int i = 0; i < indices.length; i++)
 		{
-			// Get element and input file
-			Element element = elements.get(index);
-			File inFile = new File(archiveDirectory, element.getHashValueString());
+			Element element = elements.get(indices[i]);
+			File inFile = element.isChunked() ? null : findMemberFile(element.getHashValueString());
+			IProgressListener progressListener = new WorkerProgressListener(progressView, i);
+			paths.add(element.path);
+			tasks.add(() ->
+			{
+				// Update progress view
+				progressView.setInfo(VALIDATING_STR + " " + element.path);
 
-			// Update progress view
-			progressView.setInfo(VALIDATING_STR + " " + element.path);
-			progressView.setProgress(0, 0.0);
+				// Test for input file.  A deduplicated file has no file of its own.
+				if (inFile != null)
+				{
+					if (!inFile.exists())
+						throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, inFile);
+					if (!inFile.isFile())
+						throw new FileException(ErrorId.NOT_A_FILE, inFile);
+				}
 
-			// Test for input file
-			if (!inFile.exists())
-				throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, inFile);
-			if (!inFile.isFile())
-				throw new FileException(ErrorId.NOT_A_FILE, inFile);
+				// Validate file
+				return validateFile(inFile, element.packOffset, element.packLength, element.chunkIndices, element.key,
+									element.salt, progressListener);
+			});
+		}
 
-			// Validate file
-			try
-			{
-				if (!validateFile(inFile, element.key, element.salt, fileOffset, totalFileLength))
-					invalidIndices.add(index);
-				++numValidated;
-			}
-			catch (TaskCancelledException e)
-			{
-				break;
-			}
-			catch (AppException e)
-			{
-				invalidIndices.add(index);
-				String[] optionStrs = Utils.getOptionStrings(AppConstants.CONTINUE_STR);
-				if (JOptionPane.showOptionDialog(getWindow(), e, QanaApp.SHORT_NAME + " : " + VALIDATE_FILES_STR,
-												 JOptionPane.OK_CANCEL_OPTION, JOptionPane.ERROR_MESSAGE, null,
-												 optionStrs, optionStrs[0]) != JOptionPane.OK_OPTION)
-					break;
-			}
+		// Validate files concurrently
+		List<Boolean> results = new ArrayList<>();
+		List<AppException> errors = new ArrayList<>();
+		runConcurrently(tasks, results, errors);
 
-			// Increment file offset
-			fileOffset += inFile.length();
+		// Collect invalid files
+		List<Integer> invalidIndices = new ArrayList<>();
+		int numValidated = 0;
+		for (int i = 0; i < indices.length; i++)
+		{
+			Boolean valid = results.get(i);
+			if (valid != null)
+				++numValidated;
+			if (Boolean.FALSE.equals(valid) || (errors.get(i) != null))
+				invalidIndices.add(indices[i]);
 		}
 
+		// Display errors
+		showErrors(VALIDATE_FILES_STR, paths, errors);
+
 		// Display result of validation
 		String numProcessedStr = String.format(NUM_PROCESSED_STR, indices.length);
 		if ((numValidated == indices.length) && invalidIndices.isEmpty())
@@ -982,40 +1627,276 @@ class ArchiveDocument
 		// Prepare indices for removal of elements
 		Arrays.sort(indices);
 
-		// Remove elements from list and delete files
+		// Remove elements from list and delete files.  A pack file is deleted only after all the elements have been
+		// removed, and only if it does not contain the file or a chunk of a remaining element.
 		StringBuilder buffer = new StringBuilder(256);
+		Set<String> packHashValueStrs = new HashSet<>();
 		for (int i = indices.length - 1; i >= 0; i--)
 		{
-			// Remove element from list
+			// Get pack files that contain the chunks of a deduplicated file
 			int index = indices[i];
-			Element element = elements.remove(index);
+			int[] chunkIndices = elements.getChunkIndices(index);
+			if (chunkIndices != null)
+			{
+				for (int chunkIndex : chunkIndices)
+					packHashValueStrs.add(chunkTable.get(chunkIndex).getHashValueString());
+			}
+
+			// Remove element from list
+			Element element = removeElement(index);
 			changed = true;
 
 			// Update table
 			tableModel.fireTableRowsDeleted(index, index);
 
+			// Delete file
+			if (element.isPacked())
+				packHashValueStrs.add(element.getHashValueString());
+			else if (!element.isChunked())
+				deleteMemberFile(element.getHashValueString(), buffer);
+
+			// Update progress in progress view
+			progressView.setProgress(0, (double)(i + 1) / (double)indices.length);
+		}
+
+		// Delete pack files that do not contain the file or a chunk of a remaining element
+		if (!packHashValueStrs.isEmpty())
+		{
+			packHashValueStrs.removeAll(getMemberHashValueStrings());
+			for (String hashValueStr : packHashValueStrs)
+				deleteMemberFile(hashValueStr, buffer);
+		}
+
+		// Display list of files that were not deleted
+		if (!buffer.isEmpty())
+		{
+			QanaApp.INSTANCE.showErrorMessage(DELETE_FILES_STR, NOT_ALL_DELETED_STR);
+			TextAreaDialog.showDialog(getWindow(), NOT_DELETED_STR, buffer.toString());
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public void changeLayout()
+		throws AppException
+	{
+		// Reset progress in progress view
+		IProgressView progressView = Task.getProgressView();
+		progressView.setProgress(0, 0.0);
+
+		// Move each file of the archive to its location in the other layout.  A file that is not moved remains in its
+		// current location, where it will still be found because the files of both layouts are read.
+		boolean newSharded = !sharded;
+		Set<File> shardDirectories = new HashSet<>();
+		StringBuilder buffer = new StringBuilder(256);
+		List<String> hashValueStrs = new ArrayList<>(getMemberHashValueStrings());
+		int numFiles = hashValueStrs.size();
+		for (int i = 0; i < numFiles; i++)
+		{
+			// Test whether task has been cancelled
+			Task.throwIfCancelled();
+
+			// Get source and target files
+			String hashValueStr = hashValueStrs.get(i);
+			File inFile = findMemberFile(hashValueStr);
+			File outFile = getMemberFile(hashValueStr, newSharded);
+			if (!newSharded)
+				shardDirectories.add(getMemberFile(hashValueStr, true).getParentFile());
+
 			// Update pathname in progress view
-			File file = new File(archiveDirectory, element.getHashValueString());
-			progressView.setInfo(DELETING_STR, file);
+			progressView.setInfo(MOVING_STR, inFile);
 
-			// Delete file
-			if (!file.delete())
+			// Move file
+			if (!inFile.equals(outFile))
 			{
-				if (!buffer.isEmpty())
-					buffer.append('\n');
-				buffer.append(Utils.getPathname(file));
+				boolean moved = false;
+				try
+				{
+					File directory = outFile.getParentFile();
+					moved = (directory.isDirectory() || directory.mkdirs()) && inFile.renameTo(outFile);
+				}
+				catch (SecurityException e)
+				{
+					// ignore
+				}
+				if (!moved)
+				{
+					if (!buffer.isEmpty())
+						buffer.append('\n');
+					buffer.append(Utils.getPathname(inFile));
+				}
 			}
 
 			// Update progress in progress view
-			progressView.setProgress(0, (double)(i + 1) / (double)indices.length);
+			progressView.setProgress(0, (double)(i + 1) / (double)numFiles);
+		}
+
+		// Delete shard directories that have become empty, together with any parent shard directories that have
+		// become empty
+		for (File directory : shardDirectories)
+		{
+			try
+			{
+				while (!directory.equals(archiveDirectory) && directory.delete())
+					directory = directory.getParentFile();
+			}
+			catch (SecurityException e)
+			{
+				// ignore
+			}
+		}
+
+		// Set layout.  The layout is recorded in the header of the archive file, so the file must be rewritten rather
+		// than have changes appended to its journal.
+		sharded = newSharded;
+		indexHashValue = null;
+		changed = true;
+
+		// Display list of files that were not moved
+		if (!buffer.isEmpty())
+		{
+			QanaApp.INSTANCE.showErrorMessage(CHANGE_LAYOUT_STR, NOT_ALL_MOVED_STR);
+			TextAreaDialog.showDialog(getWindow(), NOT_MOVED_STR, buffer.toString());
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public void repackFiles()
+		throws AppException
+	{
+		// Reset progress in progress view
+		IProgressView progressView = Task.getProgressView();
+		progressView.setProgress(0, 0.0);
+
+		// Find the pack files that contain unused space: the total length of the encrypted files and chunks that they
+		// contain is less than the length of the pack file
+		Map<String, Long> usedPackLengths = new HashMap<>();
+		for (int i = 0; i < elements.size(); i++)
+		{
+			long packLength = elements.getPackLength(i);
+			if (packLength > 0)
+				usedPackLengths.merge(elements.getHashValueString(i), packLength, Long::sum);
+		}
+		List<Chunk> chunks = (chunkTable == null) ? new ArrayList<>() : chunkTable.getChunks();
+		for (Chunk chunk : chunks)
+			usedPackLengths.merge(chunk.getHashValueString(), chunk.packLength, Long::sum);
+		Set<String> sparsePackHashValueStrs = new HashSet<>();
+		for (Map.Entry<String, Long> entry : usedPackLengths.entrySet())
+		{
+			if (findMemberFile(entry.getKey()).length() > entry.getValue())
+				sparsePackHashValueStrs.add(entry.getKey());
+		}
+
+		// Select the files and chunks that will be repacked: the files and chunks in pack files that contain unused
+		// space, and the files of their own that are small enough to be packed
+		int maxPackedFileSize = AppConfig.INSTANCE.getArchiveMaxPackedFileSize();
+		List<Integer> indices = new ArrayList<>();
+		for (int i = 0; i < elements.size(); i++)
+		{
+			if ((elements.getPackLength(i) > 0)
+					? sparsePackHashValueStrs.contains(elements.getHashValueString(i))
+					: (maxPackedFileSize > 0) && (elements.getChunkIndices(i) == null)
+							&& (elements.getSize(i) <= maxPackedFileSize))
+				indices.add(i);
+		}
+		chunks.removeIf(chunk -> !sparsePackHashValueStrs.contains(chunk.getHashValueString()));
+		int numItems = indices.size() + chunks.size();
+		if (numItems == 0)
+		{
+			QanaApp.INSTANCE.showInfoMessage(REPACK_FILES_STR, NOTHING_TO_REPACK_STR);
+			return;
+		}
+
+		// Copy the encrypted files and chunks to new pack files.  The encrypted files and chunks are copied as they
+		// are, without being decrypted.  If the operation is cancelled or fails, the files and chunks that have already
+		// been copied are kept.
+		PackWriter packWriter = new PackWriter(new FortunaAes256(QanaApp.INSTANCE.getRandomKey()), getHashValueKeys(),
+											   new HashSet<>());
+		Set<String> oldHashValueStrs = new HashSet<>();
+		AppException exception = null;
+		try
+		{
+			for (int i = 0; i < indices.size(); i++)
+			{
+				// Test whether task has been cancelled
+				Task.throwIfCancelled();
+
+				// Update information in progress view
+				int index = indices.get(i);
+				Element element = elements.get(index);
+				progressView.setInfo(REPACKING_STR + " " + element.path);
+
+				// Copy encrypted file to pack file
+				String hashValueStr = element.getHashValueString();
+				File inFile = findMemberFile(hashValueStr);
+				byte[] data = readFile(inFile, element.packOffset,
+									   element.isPacked() ? element.packLength : inFile.length());
+				PackLocation location = packWriter.append(data);
+
+				// Replace element
+				setElement(index, new Element(element.path, element.size, element.timestamp, element.key,
+											  element.salt, location.hashValue, location.offset, location.length));
+				oldHashValueStrs.add(hashValueStr);
+				changed = true;
+
+				// Update table
+				tableModel.fireTableRowsUpdated(index, index);
+
+				// Update progress in progress view
+				progressView.setProgress(0, (double)(i + 1) / (double)numItems);
+			}
+
+			for (int i = 0; i < chunks.size(); i++)
+			{
+				// Test whether task has been cancelled
+				Task.throwIfCancelled();
+
+				// Update information in progress view
+				Chunk chunk = chunks.get(i);
+				String hashValueStr = chunk.getHashValueString();
+				File inFile = findMemberFile(hashValueStr);
+				progressView.setInfo(REPACKING_STR, inFile);
+
+				// Copy encrypted chunk to pack file.  The locations of chunks are recorded only in the archive file, so
+				// the file must be rewritten rather than have changes appended to its journal.
+				chunk.setLocation(packWriter.append(readFile(inFile, chunk.packOffset, chunk.packLength)));
+				oldHashValueStrs.add(hashValueStr);
+				indexHashValue = null;
+				changed = true;
+
+				// Update progress in progress view
+				progressView.setProgress(0, (double)(indices.size() + i + 1) / (double)numItems);
+			}
 		}
+		catch (AppException e)
+		{
+			exception = e;
+		}
+
+		// Close last pack file
+		packWriter.close();
+
+		// Save archive, so that the archive file does not refer to the old files when they are deleted
+		if (file != null)
+			write(file);
+
+		// Delete the old files that do not contain the file or a chunk of an element
+		oldHashValueStrs.removeAll(getMemberHashValueStrings());
+		StringBuilder buffer = new StringBuilder(256);
+		for (String hashValueStr : oldHashValueStrs)
+			deleteMemberFile(hashValueStr, buffer);
 
 		// Display list of files that were not deleted
 		if (!buffer.isEmpty())
 		{
-			QanaApp.INSTANCE.showErrorMessage(DELETE_FILES_STR, NOT_ALL_DELETED_STR);
+			QanaApp.INSTANCE.showErrorMessage(REPACK_FILES_STR, NOT_ALL_DELETED_STR);
 			TextAreaDialog.showDialog(getWindow(), NOT_DELETED_STR, buffer.toString());
 		}
+
+		// Rethrow any exception from copying files
+		if (exception != null)
+			throw exception;
 	}
 
 	//------------------------------------------------------------------
@@ -1035,10 +1916,13 @@ class ArchiveDocument
 					case CHOOSE_ARCHIVE_DIRECTORY -> onChooseArchiveDirectory();
 					case SELECT_ALL               -> onSelectAll();
 					case INVERT_SELECTION         -> onInvertSelection();
-					case ADD_FILES                -> onAddFiles();
+					case ADD_FILES                -> onAddFiles(false);
+					case UPDATE_FILES             -> onAddFiles(true);
 					case EXTRACT_FILES            -> onExtractFiles();
 					case VALIDATE_FILES           -> onValidateFiles();
 					case DELETE_FILES             -> onDeleteFiles();
+					case CHANGE_LAYOUT            -> onChangeLayout();
+					case REPACK_FILES             -> onRepackFiles();
 					case DISPLAY_FILE_LIST        -> onDisplayFileList();
 					case DISPLAY_FILE_MAP         -> onDisplayFileMap();
 					case SET_KEY                  -> onSetKey();
@@ -1072,57 +1956,559 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	private StreamEncrypter.Header getOuterHeader()
+	// Returns the location in the archive directory of the file with the specified hash-value string in the specified
+	// layout.
+	private File getMemberFile(String  hashValueStr,
+							   boolean sharded)
 	{
-		return new StreamEncrypter.Header(ENCRYPTION_ID, VERSION, MIN_SUPPORTED_VERSION, MAX_SUPPORTED_VERSION);
+		return sharded ? new File(archiveDirectory, getShardPathname(hashValueStr) + File.separator + hashValueStr)
+					   : new File(archiveDirectory, hashValueStr);
 	}
 
 	//------------------------------------------------------------------
 
-	private void sort()
+	// Returns the file with the specified hash-value string in the archive directory.  If the file does not exist in
+	// the layout of the archive but exists in the other layout (for example, because a change of layout was interrupted
+	// or has not been saved), the file in the other layout is returned.
+	private File findMemberFile(String hashValueStr)
 	{
-		elements.sort((element1, element2) ->
+		File file = getMemberFile(hashValueStr, sharded);
+		if (!file.exists())
 		{
-			int result = 0;
-			switch (sortingOrder.key)
-			{
-				case PATH:
-					break;
-
-				case SIZE:
-					result = Long.compare(element1.size, element2.size);
-					break;
+			File otherFile = getMemberFile(hashValueStr, !sharded);
+			if (otherFile.exists())
+				file = otherFile;
+		}
+		return file;
+	}
 
-				case TIMESTAMP:
-					result = Long.compare(element1.timestamp, element2.timestamp);
-					break;
+	//------------------------------------------------------------------
 
-				case HASH_VALUE:
-					for (int i = 0; i < element1.hashValue.length; i++)
-					{
-						result = Long.compare(element1.hashValue[i] & 0xFFFFFFFFL,
-											  element2.hashValue[i] & 0xFFFFFFFFL);
-						if (result != 0)
-							break;
-					}
-					break;
-			}
-			if (result == 0)
-				result = element1.compareTo(element2);
-			return (sortingOrder.direction == ArchiveView.SortingDirection.ASCENDING) ? result : -result;
-		});
+	// Returns the length of the encrypted file of the element at the specified index, which is either a part of a pack
+	// file, the whole of a file of its own or, for a deduplicated file, the total length of its encrypted chunks.
+	private long getEncryptedLength(int index)
+	{
+		int[] chunkIndices = elements.getChunkIndices(index);
+		if (chunkIndices != null)
+		{
+			long length = 0;
+			for (int chunkIndex : chunkIndices)
+				length += chunkTable.get(chunkIndex).packLength;
+			return length;
+		}
+		long packLength = elements.getPackLength(index);
+		return (packLength > 0) ? packLength : findMemberFile(elements.getHashValueString(index)).length();
 	}
 
 	//------------------------------------------------------------------
 
-	private int findElement(String path)
+	// Returns the hash-value strings of the files in the archive directory that belong to the archive: the files of the
+	// elements that are not deduplicated, and the pack files that contain the chunks of deduplicated files.
+	private Set<String> getMemberHashValueStrings()
 	{
+		Set<String> hashValueStrs = new HashSet<>();
 		for (int i = 0; i < elements.size(); i++)
 		{
-			if (elements.get(i).path.equals(path))
-				return i;
+			if (elements.getChunkIndices(i) == null)
+				hashValueStrs.add(elements.getHashValueString(i));
+		}
+		if (chunkTable != null)
+		{
+			for (Chunk chunk : chunkTable.getChunks())
+				hashValueStrs.add(chunk.getHashValueString());
 		}
-		return -1;
+		return hashValueStrs;
+	}
+
+	//------------------------------------------------------------------
+
+	// Deletes the file with the specified hash-value string from the archive directory.  If the file cannot be deleted,
+	// its pathname is appended to the specified buffer.
+	private void deleteMemberFile(String        hashValueStr,
+								  StringBuilder buffer)
+	{
+		// Update pathname in progress view
+		File file = findMemberFile(hashValueStr);
+		Task.getProgressView().setInfo(DELETING_STR, file);
+
+		// Delete file
+		boolean deleted = false;
+		try
+		{
+			deleted = file.delete();
+		}
+		catch (SecurityException e)
+		{
+			// ignore
+		}
+		if (!deleted)
+		{
+			if (!buffer.isEmpty())
+				buffer.append('\n');
+			buffer.append(Utils.getPathname(file));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	// Creates the parent directory of the specified file in the archive directory if it does not exist.  The directory
+	// may be created concurrently by another task.
+	private void createParentDirectory(File file)
+		throws AppException
+	{
+		File directory = file.getParentFile();
+		try
+		{
+			if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory())
+				throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory);
+		}
+		catch (SecurityException e)
+		{
+			throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private void sort()
+	{
+		elements.sortByIndex((index1, index2) ->
+		{
+			int result = 0;
+			switch (sortingOrder.key)
+			{
+				case PATH:
+					break;
+
+				case SIZE:
+					result = Long.compare(elements.getSize(index1), elements.getSize(index2));
+					break;
+
+				case TIMESTAMP:
+					result = Long.compare(elements.getTimestamp(index1), elements.getTimestamp(index2));
+					break;
+
+				case HASH_VALUE:
+					result = elements.compareHashValues(index1, index2);
+					break;
+			}
+			if (result == 0)
+				result = Element.comparePaths(elements.getPath(index1), elements.getPath(index2));
+			return (sortingOrder.direction == ArchiveView.SortingDirection.ASCENDING) ? result : -result;
+		});
+
+		// Update index of elements
+		elementIndex.reordered();
+	}
+
+	//------------------------------------------------------------------
+
+	private int findElement(String path)
+	{
+		return elementIndex.find(path);
+	}
+
+	//------------------------------------------------------------------
+
+	private Set<Long> getHashValueKeys()
+	{
+		return elementIndex.getHashValueKeys();
+	}
+
+	//------------------------------------------------------------------
+
+	private void addElement(Element element)
+	{
+		if (element.isChunked())
+			chunkTable.addReferences(element.chunkIndices);
+		elements.add(element);
+		elementIndex.added(element.path, element.getHashValueKey());
+		addPendingChange(element.path, element);
+	}
+
+	//------------------------------------------------------------------
+
+	private Element setElement(int     index,
+							   Element element)
+	{
+		Element oldElement = elements.set(index, element);
+		elementIndex.replaced(index, oldElement.path, oldElement.getHashValueKey(), oldElement.isPacked(),
+							  element.path, element.getHashValueKey());
+
+		// Update references to chunks.  The references of the new element are added first, so that a chunk that is
+		// shared by the old and new elements is not removed from the table of chunks.
+		if (element.isChunked())
+			chunkTable.addReferences(element.chunkIndices);
+		if (oldElement.isChunked())
+			chunkTable.removeReferences(oldElement.chunkIndices);
+
+		addPendingChange(oldElement.path, null);
+		addPendingChange(element.path, element);
+
+		return oldElement;
+	}
+
+	//------------------------------------------------------------------
+
+	private Element removeElement(int index)
+	{
+		Element element = elements.remove(index);
+		elementIndex.removed(index, element.path, element.getHashValueKey(), element.isPacked());
+		if (element.isChunked())
+			chunkTable.removeReferences(element.chunkIndices);
+		addPendingChange(element.path, null);
+		return element;
+	}
+
+	//------------------------------------------------------------------
+
+	private void addPendingChange(String  path,
+								  Element element)
+	{
+		// Changes are recorded only if there is an archive file to which a journal can belong
+		if (indexHashValue != null)
+			pendingChanges.put(path, element);
+	}
+
+	//------------------------------------------------------------------
+
+	private boolean canAppendToJournal(File        file,
+									   KeyList.Key key)
+	{
+		if (!file.equals(this.file) || (indexHashValue == null) || !journalAnchored
+				|| !Arrays.equals(key.getKey(), indexKey.getKey()) || !file.isFile()
+				|| (file.lastModified() != getTimestamp()))
+			return false;
+		long maxJournalLength = Math.max(MIN_JOURNAL_COMPACTION_LENGTH, file.length() / JOURNAL_COMPACTION_DIVISOR);
+		return (journal == null) || (!journal.isTruncated() && (journal.getLength() < maxJournalLength));
+	}
+
+	//------------------------------------------------------------------
+
+	private void appendToJournal(KeyList.Key key)
+		throws AppException
+	{
+		// Append changes to journal
+		if (!pendingChanges.isEmpty())
+		{
+			// Create journal if there is none.  The master key of a journal is derived when it is created, so a journal
+			// is not created until there are changes to append to it.
+			if (journal == null)
+				journal = ArchiveJournal.create(ArchiveJournal.getFile(file), key, indexHashValue);
+
+			// Append changes to journal
+			List<byte[]> records = new ArrayList<>();
+			for (Map.Entry<String, Element> entry : pendingChanges.entrySet())
+				records.add(createChangeRecord(entry.getKey(), entry.getValue()));
+			journal.append(records);
+			pendingChanges.clear();
+
+			// Update anchor of journal in archive file, and set timestamp from the rewritten file
+			writeJournalAnchor(file, journal.getAnchor());
+			setTimestamp(file.lastModified());
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private byte[] createChangeRecord(String  path,
+									  Element element)
+	{
+		byte[] pathData = path.getBytes(StandardCharsets.UTF_8);
+		boolean packed = (element != null) && element.isPacked();
+		boolean chunked = (element != null) && element.isChunked();
+		int dataLength = (element == null) ? 0 : Element.getRecordSize(packed) - Element.PATH_OFFSET_FIELD_SIZE;
+		int chunksLength = chunked ? NUM_CHUNKS_FIELD_SIZE + element.chunkIndices.length * Chunk.SIZE : 0;
+		byte[] buffer = new byte[CHANGE_KIND_FIELD_SIZE + dataLength + chunksLength + pathData.length];
+		int offset = 0;
+
+		// Set field: kind of change
+		int length = CHANGE_KIND_FIELD_SIZE;
+		int kind = (element == null)
+							? CHANGE_KIND_DELETE
+							: packed
+									? CHANGE_KIND_PUT_PACKED
+									: chunked
+											? CHANGE_KIND_PUT_CHUNKED
+											: CHANGE_KIND_PUT;
+		NumberCodec.uIntToBytesLE(kind, buffer, offset, length);
+		offset += length;
+
+		// Set fields of element, omitting path offset
+		if (element != null)
+		{
+			System.arraycopy(element.toByteArray(null, packed), Element.PATH_OFFSET_FIELD_SIZE, buffer, offset,
+							 dataLength);
+			offset += dataLength;
+		}
+
+		// Set fields: chunks of deduplicated file.  The chunks are recorded in full, rather than by their indices in
+		// the chunk table, because the indices are not preserved when the archive file is written.
+		if (chunked)
+		{
+			length = NUM_CHUNKS_FIELD_SIZE;
+			NumberCodec.uIntToBytesLE(element.chunkIndices.length, buffer, offset, length);
+			offset += length;
+
+			for (int index : element.chunkIndices)
+			{
+				chunkTable.get(index).toByteArray(buffer, offset);
+				offset += Chunk.SIZE;
+			}
+		}
+
+		// Set field: path
+		System.arraycopy(pathData, 0, buffer, offset, pathData.length);
+
+		return buffer;
+	}
+
+	//------------------------------------------------------------------
+
+	private void applyChanges(List<byte[]> records,
+							  File         journalFile)
+		throws AppException
+	{
+		// Parse records.  Only the last change to each path is kept.
+		Map<String, Element> changes = new LinkedHashMap<>();
+		Map<String, Chunk[]> chunkChanges = new HashMap<>();
+		for (byte[] record : records)
+		{
+			// Parse field: kind of change
+			if (record.length < CHANGE_KIND_FIELD_SIZE)
+				throw new FileException(ErrorId.MALFORMED_ARCHIVE_JOURNAL, journalFile);
+			int kind = NumberCodec.bytesToUIntLE(record, 0, CHANGE_KIND_FIELD_SIZE);
+			int offset = CHANGE_KIND_FIELD_SIZE;
+
+			// Parse fields of element
+			long size = 0;
+			long timestamp = 0;
+			byte[] key = null;
+			byte[] salt = null;
+			byte[] hashValue = null;
+			long packOffset = 0;
+			long packLength = 0;
+			Chunk[] chunks = null;
+			switch (kind)
+			{
+				case CHANGE_KIND_DELETE:
+					break;
+
+				case CHANGE_KIND_PUT:
+				case CHANGE_KIND_PUT_PACKED:
+				case CHANGE_KIND_PUT_CHUNKED:
+				{
+					boolean packed = (kind == CHANGE_KIND_PUT_PACKED);
+					if (record.length - offset < Element.getRecordSize(packed) - Element.PATH_OFFSET_FIELD_SIZE)
+						throw new FileException(ErrorId.MALFORMED_ARCHIVE_JOURNAL, journalFile);
+
+					int length = Element.SIZE_FIELD_SIZE;
+					size = NumberCodec.bytesToULongLE(record, offset, length);
+					offset += length;
+
+					length = Element.TIMESTAMP_FIELD_SIZE;
+					timestamp = NumberCodec.bytesToULongLE(record, offset, length);
+					offset += length;
+
+					length = Element.KEY_FIELD_SIZE;
+					key = Arrays.copyOfRange(record, offset, offset + length);
+					offset += length;
+
+					length = Element.SALT_FIELD_SIZE;
+					salt = Arrays.copyOfRange(record, offset, offset + length);
+					offset += length;
+
+					length = Element.HASH_VALUE_FIELD_SIZE;
+					hashValue = Arrays.copyOfRange(record, offset, offset + length);
+					offset += length;
+
+					if (packed)
+					{
+						length = Element.PACK_OFFSET_FIELD_SIZE;
+						packOffset = NumberCodec.bytesToULongLE(record, offset, length);
+						offset += length;
+
+						length = Element.PACK_LENGTH_FIELD_SIZE;
+						packLength = NumberCodec.bytesToULongLE(record, offset, length);
+						offset += length;
+					}
+
+					// The chunks of a deduplicated file can be parsed only if the archive has a chunk table
+					if (kind == CHANGE_KIND_PUT_CHUNKED)
+					{
+						if ((chunkTable == null) || (record.length - offset < NUM_CHUNKS_FIELD_SIZE))
+							throw new FileException(ErrorId.MALFORMED_ARCHIVE_JOURNAL, journalFile);
+
+						length = NUM_CHUNKS_FIELD_SIZE;
+						long numChunks = NumberCodec.bytesToULongLE(record, offset, length);
+						offset += length;
+
+						if ((numChunks == 0) || (record.length - offset < numChunks * Chunk.SIZE))
+							throw new FileException(ErrorId.MALFORMED_ARCHIVE_JOURNAL, journalFile);
+
+						chunks = new Chunk[(int)numChunks];
+						for (int i = 0; i < chunks.length; i++)
+						{
+							chunks[i] = new Chunk(record, offset);
+							offset += Chunk.SIZE;
+						}
+					}
+					break;
+				}
+
+				default:
+					throw new FileException(ErrorId.MALFORMED_ARCHIVE_JOURNAL, journalFile);
+			}
+
+			// Parse field: path
+			String path = new String(record, offset, record.length - offset, StandardCharsets.UTF_8);
+			changes.put(path, (kind == CHANGE_KIND_DELETE)
+									? null
+									: new Element(path, size, timestamp, key, salt, hashValue, packOffset, packLength));
+			if (chunks == null)
+				chunkChanges.remove(path);
+			else
+				chunkChanges.put(path, chunks);
+		}
+
+		// Add and replace elements; find elements that will be deleted.  The chunks of a deduplicated file are added to
+		// the chunk table just before its element is added, so that their locations replace those in the table and
+		// they are not removed from the table by the replacement of an earlier element.
+		List<Integer> indices = new ArrayList<>();
+		for (Map.Entry<String, Element> entry : changes.entrySet())
+		{
+			int index = findElement(entry.getKey());
+			Element element = entry.getValue();
+			Chunk[] chunks = chunkChanges.get(entry.getKey());
+			if (chunks != null)
+			{
+				element.chunkIndices = new int[chunks.length];
+				for (int i = 0; i < chunks.length; i++)
+					element.chunkIndices[i] = chunkTable.add(chunks[i], true);
+			}
+			if (element == null)
+			{
+				if (index >= 0)
+					indices.add(index);
+			}
+			else if (index < 0)
+				addElement(element);
+			else
+				setElement(index, element);
+		}
+
+		// Delete elements, starting with the last one
+		indices.sort(null);
+		for (int i = indices.size() - 1; i >= 0; i--)
+			removeElement(indices.get(i));
+
+		// Remove chunks to which no element refers
+		if (chunkTable != null)
+			chunkTable.removeUnreferenced();
+	}
+
+	//------------------------------------------------------------------
+
+	private List<Integer> findNonexistentFiles()
+		throws AppException
+	{
+		// Get the hash-value strings of the files in the archive directory that belong to the archive
+		List<String> hashValueStrs = new ArrayList<>(getMemberHashValueStrings());
+
+		// Get the names of the files in the archive directory from a single listing of the directory or, in the sharded
+		// layout, of each shard directory that should contain a file of the archive.  Only names that have the length
+		// of a hash-value string are kept.
+		Set<String> filenames = new HashSet<>();
+		try
+		{
+			if (sharded)
+			{
+				Set<String> shardPathnames = new HashSet<>();
+				for (String hashValueStr : hashValueStrs)
+					shardPathnames.add(getShardPathname(hashValueStr));
+				for (String pathname : shardPathnames)
+					listHashValueFilenames(new File(archiveDirectory, pathname), filenames);
+			}
+			else
+				listHashValueFilenames(archiveDirectory, filenames);
+		}
+		catch (IOException | DirectoryIteratorException | SecurityException | InvalidPathException e)
+		{
+			filenames = null;
+		}
+
+		// If the directories were listed, look up each file of the archive, and test for a file that was not listed in
+		// its location in the other layout ...
+		Set<String> nonexistentHashValueStrs = new HashSet<>();
+		if (filenames != null)
+		{
+			for (String hashValueStr : hashValueStrs)
+			{
+				if (!filenames.contains(hashValueStr) && !getMemberFile(hashValueStr, !sharded).isFile())
+					nonexistentHashValueStrs.add(hashValueStr);
+			}
+		}
+
+		// ... otherwise, test for each file of the archive on worker threads, each of which tests a range of files
+		else
+		{
+			int numFiles = hashValueStrs.size();
+			int numThreads = AppConfig.INSTANCE.getArchiveNumThreads();
+			int rangeLength = Math.max(1, (numFiles + numThreads - 1) / numThreads);
+			List<Callable<List<String>>> tasks = new ArrayList<>();
+			for (int start = 0; start < numFiles; start += rangeLength)
+			{
+				int startIndex = start;
+				int endIndex = Math.min(start + rangeLength, numFiles);
+				tasks.add(() ->
+				{
+					List<String> rangeHashValueStrs = new ArrayList<>();
+					for (int i = startIndex; i < endIndex; i++)
+					{
+						String hashValueStr = hashValueStrs.get(i);
+						if (!findMemberFile(hashValueStr).isFile())
+							rangeHashValueStrs.add(hashValueStr);
+					}
+					return rangeHashValueStrs;
+				});
+			}
+			List<List<String>> results = new ArrayList<>();
+			runConcurrently(tasks, results, new ArrayList<>());
+			Task.throwIfCancelled();
+			for (List<String> rangeHashValueStrs : results)
+			{
+				if (rangeHashValueStrs != null)
+					nonexistentHashValueStrs.addAll(rangeHashValueStrs);
+			}
+		}
+
+		// Find the elements whose file, or a pack file that contains one of whose chunks, does not exist
+		List<Integer> indices = new ArrayList<>();
+		if (!nonexistentHashValueStrs.isEmpty())
+		{
+			for (int i = 0; i < elements.size(); i++)
+			{
+				int[] chunkIndices = elements.getChunkIndices(i);
+				if (chunkIndices == null)
+				{
+					if (nonexistentHashValueStrs.contains(elements.getHashValueString(i)))
+						indices.add(i);
+				}
+				else
+				{
+					for (int chunkIndex : chunkIndices)
+					{
+						if (nonexistentHashValueStrs.contains(chunkTable.get(chunkIndex).getHashValueString()))
+						{
+							indices.add(i);
+							break;
+						}
+					}
+				}
+			}
+		}
+
+		return indices;
 	}
 
 	//------------------------------------------------------------------
@@ -1151,53 +2537,123 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	private void parse(byte[] data,
-					   byte[] key)
+	// Performs the specified tasks on a bounded pool of worker threads.  The result of each task and any exception that
+	// it throws are added to the specified lists in the order of the tasks; the entry for a task that fails or is
+	// cancelled is null in the list of results, and the entry for a task that succeeds or is cancelled is null in the
+	// list of exceptions.  A task that fails does not stop the other tasks, but if a task is cancelled, the tasks that
+	// have not started are abandoned.  If the calling thread is interrupted while it is waiting, the tasks that have
+	// not finished are cancelled and a TaskCancelledException is thrown.
+	private <T> void runConcurrently(List<Callable<T>>  tasks,
+									 List<T>            results,
+									 List<AppException> exceptions)
 		throws AppException
 	{
-		// Parse field: string table offset
-		int offset = 0;
-		int length = STRING_TABLE_OFFSET_FIELD_SIZE;
-		int stringTableOffset = NumberCodec.bytesToUIntLE(data, offset, length);
-		offset += length;
-		if (stringTableOffset >= data.length)
-			throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
-
-		// Parse field: number of elements
-		length = NUM_ELEMENTS_FIELD_SIZE;
-		int numElements = NumberCodec.bytesToUIntLE(data, offset, length);
-		offset += length;
+		// Create pool of worker threads
+		int numThreads = Math.max(1, Math.min(AppConfig.INSTANCE.getArchiveNumThreads(), tasks.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads, runnable ->
+				DaemonFactory.create(getClass().getSimpleName() + "-" + threadIndex.getAndIncrement(), runnable));
 
-		// Extract field: hash value
-		length = HASH_VALUE_FIELD_SIZE;
-		byte[] hashValue = Arrays.copyOfRange(data, offset, offset + length);
-		offset += length;
+		// Perform tasks
+		workersCancelled = false;
+		try
+		{
+			// Submit tasks, each of which is bound to the task context of this thread
+			TaskContext context = Task.getContext();
+			List<Future<T>> futures = new ArrayList<>();
+			for (Callable<T> task : tasks)
+			{
+				futures.add(executor.submit(() -> context.call(() ->
+				{
+					if (workersCancelled || Task.isCancelled())
+						throw new TaskCancelledException();
+					return task.call();
+				})));
+			}
 
-		// Test hash value
-		if (!Arrays.equals(hashValue, new HmacSha256(key).getValue(data, offset, data.length - offset)))
-			throw new AppException(ErrorId.INCORRECT_ENCRYPTION_KEY);
+			// Wait for tasks to finish, and collect their results in order
+			for (Future<T> future : futures)
+			{
+				T result = null;
+				AppException exception = null;
+				try
+				{
+					result = future.get();
+				}
+				catch (InterruptedException e)
+				{
+					// Cancel the tasks that have not finished
+					workersCancelled = true;
+					for (Future<T> f : futures)
+						f.cancel(true);
+					throw new TaskCancelledException();
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					if (cause instanceof TaskCancelledException)
+						workersCancelled = true;
+					else if (cause instanceof AppException appException)
+						exception = appException;
+					else if (cause instanceof RuntimeException runtimeException)
+						throw runtimeException;
+					else if (cause instanceof Error error)
+						throw error;
+					else
+						throw new UnexpectedRuntimeException(cause);
+				}
+				results.add(result);
+				exceptions.add(exception);
+			}
+		}
+		finally
+		{
+			workersCancelled = true;
+			executor.shutdownNow();
+		}
+	}
 
-		// Parse string table
-		StringTable stringTable = new StringTable(data, stringTableOffset, data.length - stringTableOffset);
+	//------------------------------------------------------------------
 
-		// Parse elements
-		for (int i = 0; i < numElements; i++)
+	// Displays a single summary of the specified exceptions, each of which is labelled with the archive path of the
+	// file to which it relates.  Entries of exceptions that are null are ignored.
+	private void showErrors(String             title,
+							List<String>       paths,
+							List<AppException> exceptions)
+	{
+		StringBuilder buffer = new StringBuilder(256);
+		int numErrors = 0;
+		for (int i = 0; i < exceptions.size(); i++)
+		{
+			AppException exception = exceptions.get(i);
+			if (exception != null)
+			{
+				if (!buffer.isEmpty())
+					buffer.append("\n\n");
+				buffer.append(paths.get(i));
+				buffer.append('\n');
+				buffer.append(exception);
+				++numErrors;
+			}
+		}
+		if (numErrors > 0)
 		{
-			elements.add(new Element(data, offset, stringTable));
-			offset += Element.SIZE;
+			QanaApp.INSTANCE.showErrorMessage(title, String.format(NUM_ERRORS_STR, numErrors));
+			TextAreaDialog.showDialog(getWindow(), ERRORS_STR, buffer.toString());
 		}
 	}
 
 	//------------------------------------------------------------------
 
-	private byte[] createHeader()
+	private byte[] createHeader(boolean packFields,
+								int     chunkTableLength)
 	{
 		byte[] buffer = new byte[HEADER_SIZE];
 		int offset = 0;
 
 		// Set field: string table offset
 		int length = STRING_TABLE_OFFSET_FIELD_SIZE;
-		NumberCodec.uIntToBytesLE(METADATA_SIZE + elements.size() * Element.SIZE, buffer, offset, length);
+		NumberCodec.uIntToBytesLE(METADATA_SIZE + elements.size() * Element.getRecordSize(packFields)
+										+ chunkTableLength, buffer, offset, length);
 		offset += length;
 
 		// Set field: number of elements
@@ -1210,12 +2666,14 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	private byte[] encryptFile(File   inFile,
-							   File   outDirectory,
-							   byte[] key,
-							   long   fileOffset,
-							   long   totalFileLength,
-							   byte[] salt)
+	private byte[] encryptFile(File              inFile,
+							   File              outDirectory,
+							   byte[]            key,
+							   Fortuna           prng,
+							   byte[]            salt,
+							   Set<Long>         hashValueKeys,
+							   Set<Long>         newHashValueKeys,
+							   IProgressListener progressListener)
 		throws AppException
 	{
 		// Encrypt file
@@ -1289,15 +2747,12 @@ class ArchiveDocument
 				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
 			}
 
-			// Initialise overall progress in progress view
-			TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
-			progressView.initOverallProgress(fileOffset, inFile.length(), totalFileLength);
-
 			// Encrypt data
 			StreamEncrypter encrypter = new StreamEncrypter(Utils.getCipher(getKey()));
-			encrypter.addProgressListener(progressView);
-			encrypter.encrypt(inStream, outStream, inFile.length(), QanaApp.INSTANCE.getRandomLong(), key,
-							  QanaApp.INSTANCE.getRandomKey(), QanaApp.INSTANCE::generateKey);
+			encrypter.setParallelCompression(true);
+			encrypter.addProgressListener(progressListener);
+			encrypter.encrypt(inStream, outStream, inFile.length(), prng.getRandomLong(), key,
+							  prng.getRandomBytes(FortunaAes256.KEY_SIZE), QanaApp.INSTANCE::generateKey);
 
 			// Close input file
 			try
@@ -1321,24 +2776,25 @@ class ArchiveDocument
 				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, tempFile, e);
 			}
 
-			// Generate hash value from hash value of file content and random salt
+			// Generate hash value from hash value of file content and random salt.  The key of the hash value must not
+			// be that of an element of the archive, and it is reserved in the set of new keys, which is shared with any
+			// other files that are being encrypted concurrently.  Hash values are compared by their keys, so a hash
+			// value is occasionally rejected although it is unique, which is harmless.
 			byte[] hashValue = null;
 			while (hashValue == null)
 			{
-				System.arraycopy(QanaApp.INSTANCE.getRandomBytes(salt.length), 0, salt, 0, salt.length);
+				prng.getRandomBytes(salt, 0, salt.length);
 				hashValue = new HashGenerator().generate(encrypter, salt);
-				for (Element element : elements)
-				{
-					if (Arrays.equals(hashValue, element.hashValue))
-					{
-						hashValue = null;
-						break;
-					}
-				}
+				long hashValueKey = Element.getHashValueKey(hashValue, 0);
+				if (hashValueKeys.contains(hashValueKey) || !newHashValueKeys.add(hashValueKey))
+					hashValue = null;
 			}
 
 			// Create output file object
-			File outFile = new File(outDirectory, hashValueToString(hashValue));
+			File outFile = getMemberFile(hashValueToString(hashValue), sharded);
+
+			// Create parent directory of output file
+			createParentDirectory(outFile);
 
 			// Delete any existing file
 			try
@@ -1408,78 +2864,103 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	private boolean decryptFile(File   inFile,
-								File   outFile,
-								byte[] key,
-								byte[] salt,
-								long   timestamp,
-								long   fileOffset,
-								long   totalFileLength)
+	// Encrypts the specified file in memory with the specified key, and appends the encrypted file to the current pack
+	// file of the specified pack writer.
+	private PackLocation encryptPackedFile(File              inFile,
+										   byte[]            key,
+										   Fortuna           prng,
+										   PackWriter        packWriter,
+										   IProgressListener progressListener)
 		throws AppException
 	{
-		// Create output directory
-		File outDirectory = outFile.getAbsoluteFile().getParentFile();
-		if ((outDirectory != null) && !outDirectory.exists() && !outDirectory.mkdirs())
-			throw new FileException(ErrorId.FAILED_TO_CREATE_OUTPUT_DIRECTORY, outDirectory);
-
-		// Decrypt file
-		File tempFile = null;
 		FileInputStream inStream = null;
-		FileOutputStream outStream = null;
-		boolean oldFileDeleted = false;
 		try
 		{
-			// Create parent directory of output file
-			File directory = outFile.getAbsoluteFile().getParentFile();
-			if ((directory != null) && !directory.exists())
+			// Open input stream on input file
+			try
 			{
-				try
-				{
-					if (!directory.mkdirs())
-						throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory);
-				}
-				catch (SecurityException e)
-				{
-					throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory, e);
-				}
+				inStream = new FileInputStream(inFile);
 			}
-
-			// Create temporary file
-			try
+			catch (FileNotFoundException e)
 			{
-				tempFile = FilenameUtils.tempLocation(outFile);
-				tempFile.createNewFile();
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, inFile, e);
 			}
-			catch (Exception e)
+			catch (SecurityException e)
 			{
-				throw new AppException(ErrorId.FAILED_TO_CREATE_TEMPORARY_FILE, e);
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, inFile, e);
 			}
 
-			// Open output stream on temporary file
+			// Lock input file
 			try
 			{
-				outStream = new FileOutputStream(tempFile);
+				if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile);
 			}
-			catch (FileNotFoundException e)
+			catch (OverlappingFileLockException e)
 			{
-				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, tempFile, e);
+				// ignore
 			}
-			catch (SecurityException e)
+			catch (IOException e)
 			{
-				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, tempFile, e);
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
 			}
 
-			// Lock output file
+			// Encrypt data
+			ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+			StreamEncrypter encrypter = new StreamEncrypter(Utils.getCipher(getKey()));
+			encrypter.addProgressListener(progressListener);
+			encrypter.encrypt(inStream, outStream, inFile.length(), prng.getRandomLong(), key,
+							  prng.getRandomBytes(FortunaAes256.KEY_SIZE), QanaApp.INSTANCE::generateKey);
+
+			// Close input file
 			try
 			{
-				if (outStream.getChannel().tryLock() == null)
-					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, tempFile);
+				inStream.close();
+				inStream = null;
 			}
 			catch (IOException e)
 			{
-				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, tempFile, e);
+				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
+			}
+
+			// Append encrypted file to pack file
+			return packWriter.append(outStream.toByteArray());
+		}
+		catch (AppException e)
+		{
+			// Close input file
+			try
+			{
+				if (inStream != null)
+					inStream.close();
 			}
+			catch (IOException e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
 
+	// Encrypts the specified file as a sequence of content-defined chunks, and returns an element for the file.  Only
+	// the chunks that are not already in the table of chunks are encrypted; each of them is encrypted in memory with a
+	// key that is derived from its identifier, appended to the current pack file of the specified pack writer and added
+	// to the table.
+	private Element encryptChunkedFile(InputFile         inputFile,
+									   byte[]            key,
+									   Fortuna           prng,
+									   PackWriter        packWriter,
+									   IProgressListener progressListener)
+		throws AppException
+	{
+		File inFile = inputFile.file;
+		FileInputStream inStream = null;
+		try
+		{
 			// Open input stream on input file
 			try
 			{
@@ -1509,14 +2990,59 @@ class ArchiveDocument
 				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
 			}
 
-			// Initialise overall progress in progress view
-			TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
-			progressView.initOverallProgress(fileOffset, inFile.length(), totalFileLength);
+			// Split file into chunks
+			FortunaCipher cipher = Utils.getCipher(getKey());
+			ContentChunker chunker = chunkTable.createChunker(inStream);
+			long length = inFile.length();
+			long size = 0;
+			List<byte[]> ids = new ArrayList<>();
+			int[] chunkIndices = new int[1];
+			while (true)
+			{
+				// Test whether task has been cancelled
+				if (progressListener.isTaskCancelled())
+					throw new TaskCancelledException();
 
-			// Decrypt file
-			StreamEncrypter decrypter = new StreamEncrypter(null);
-			decrypter.addProgressListener(progressView);
-			decrypter.decrypt(inStream, outStream, inFile.length(), key, QanaApp.INSTANCE::generateKey);
+				// Get next chunk
+				byte[] data = null;
+				try
+				{
+					data = chunker.next();
+				}
+				catch (IOException e)
+				{
+					throw new FileException(ErrorId.ERROR_READING_FILE, inFile, e);
+				}
+				if (data == null)
+					break;
+
+				// If the chunk is not in the table of chunks, encrypt it, append it to a pack file and add it to the
+				// table.  If the same chunk is added concurrently by another task, the chunk that is added first is
+				// kept and the other one becomes unused space in its pack file.
+				byte[] id = chunkTable.getChunkId(data);
+				int index = chunkTable.find(id);
+				if (index < 0)
+				{
+					ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+					StreamEncrypter encrypter = new StreamEncrypter(cipher);
+					encrypter.encrypt(new ByteArrayInputStream(data), outStream, data.length, prng.getRandomLong(),
+									  chunkTable.getChunkKey(id), prng.getRandomBytes(FortunaAes256.KEY_SIZE),
+									  QanaApp.INSTANCE::generateKey);
+					PackLocation location = packWriter.append(outStream.toByteArray());
+					index = chunkTable.add(new Chunk(id, location, data.length), false);
+				}
+
+				// Add chunk to list
+				int numChunks = ids.size();
+				if (numChunks == chunkIndices.length)
+					chunkIndices = Arrays.copyOf(chunkIndices, numChunks + (numChunks >> 1) + 1);
+				chunkIndices[numChunks] = index;
+				ids.add(id);
+				size += data.length;
+
+				// Update progress
+				progressListener.setProgress((size < length) ? (double)size / (double)length : 1.0);
+			}
 
 			// Close input file
 			try
@@ -1529,6 +3055,230 @@ class ArchiveDocument
 				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
 			}
 
+			// Create element.  The hash value is generated from the identifiers of the chunks and a random salt.
+			byte[] salt = prng.getRandomBytes(Element.SALT_FIELD_SIZE);
+			return new Element(inputFile.path, size, inFile.lastModified(), key, salt,
+							   chunkTable.getFileHashValue(salt, ids), Arrays.copyOf(chunkIndices, ids.size()));
+		}
+		catch (AppException e)
+		{
+			// Close input file
+			try
+			{
+				if (inStream != null)
+					inStream.close();
+			}
+			catch (IOException e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	// Decrypts the chunks at the specified indices in the table of chunks, and writes their content to the specified
+	// output stream.  The content of each chunk is verified against the identifier of the chunk.
+	private void decryptChunks(int[]             chunkIndices,
+							   OutputStream      outStream,
+							   File              outFile,
+							   IProgressListener progressListener)
+		throws AppException
+	{
+		// Get total length of encrypted chunks
+		long length = 0;
+		for (int index : chunkIndices)
+			length += chunkTable.get(index).packLength;
+
+		// Decrypt chunks
+		long offset = 0;
+		for (int index : chunkIndices)
+		{
+			// Test whether task has been cancelled
+			if (progressListener.isTaskCancelled())
+				throw new TaskCancelledException();
+
+			// Read encrypted chunk from pack file
+			Chunk chunk = chunkTable.get(index);
+			File inFile = findMemberFile(chunk.getHashValueString());
+			byte[] data = readFile(inFile, chunk.packOffset, chunk.packLength);
+
+			// Decrypt chunk
+			ByteArrayOutputStream chunkStream = new ByteArrayOutputStream(chunk.size);
+			StreamEncrypter decrypter = new StreamEncrypter(null);
+			decrypter.decrypt(new ByteArrayInputStream(data), chunkStream, data.length,
+							  chunkTable.getChunkKey(chunk.id), QanaApp.INSTANCE::generateKey);
+			byte[] content = chunkStream.toByteArray();
+
+			// Test content of chunk against its identifier
+			if ((content.length != chunk.size) || !Arrays.equals(chunkTable.getChunkId(content), chunk.id))
+				throw new FileException(ErrorId.INVALID_CHUNK, inFile);
+
+			// Write content of chunk to output stream
+			try
+			{
+				outStream.write(content);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_WRITING_FILE, outFile, e);
+			}
+
+			// Update progress
+			offset += chunk.packLength;
+			progressListener.setProgress((double)offset / (double)length);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private boolean decryptFile(File              inFile,
+								long              packOffset,
+								long              packLength,
+								int[]             chunkIndices,
+								File              outFile,
+								byte[]            key,
+								byte[]            salt,
+								long              timestamp,
+								IProgressListener progressListener)
+		throws AppException
+	{
+		// Create output directory
+		File outDirectory = outFile.getAbsoluteFile().getParentFile();
+		if ((outDirectory != null) && !outDirectory.exists() && !outDirectory.mkdirs())
+			throw new FileException(ErrorId.FAILED_TO_CREATE_OUTPUT_DIRECTORY, outDirectory);
+
+		// Decrypt file
+		File tempFile = null;
+		FileInputStream inStream = null;
+		FileOutputStream outStream = null;
+		boolean oldFileDeleted = false;
+		try
+		{
+			// Create parent directory of output file
+			File directory = outFile.getAbsoluteFile().getParentFile();
+			if ((directory != null) && !directory.exists())
+			{
+				try
+				{
+					if (!directory.mkdirs())
+						throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory);
+				}
+				catch (SecurityException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory, e);
+				}
+			}
+
+			// Create temporary file
+			try
+			{
+				tempFile = FilenameUtils.tempLocation(outFile);
+				tempFile.createNewFile();
+			}
+			catch (Exception e)
+			{
+				throw new AppException(ErrorId.FAILED_TO_CREATE_TEMPORARY_FILE, e);
+			}
+
+			// Open output stream on temporary file
+			try
+			{
+				outStream = new FileOutputStream(tempFile);
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, tempFile, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, tempFile, e);
+			}
+
+			// Lock output file
+			try
+			{
+				if (outStream.getChannel().tryLock() == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, tempFile);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, tempFile, e);
+			}
+
+			// Decrypt the chunks of a deduplicated file ...
+			boolean valid = true;
+			if (chunkIndices != null)
+				decryptChunks(chunkIndices, outStream, tempFile, progressListener);
+
+			// ... or decrypt a file of its own or a file in a pack file
+			else
+			{
+				// Open input stream on input file
+				try
+				{
+					inStream = new FileInputStream(inFile);
+				}
+				catch (FileNotFoundException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, inFile, e);
+				}
+				catch (SecurityException e)
+				{
+					throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, inFile, e);
+				}
+
+				// Lock input file
+				try
+				{
+					if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+						throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile);
+				}
+				catch (OverlappingFileLockException e)
+				{
+					// ignore
+				}
+				catch (IOException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
+				}
+
+				// Position input stream at start of encrypted file in pack file
+				long length = inFile.length();
+				if (packLength > 0)
+				{
+					setPosition(inStream, packOffset, inFile);
+					length = packLength;
+				}
+
+				// Decrypt file
+				StreamEncrypter decrypter = new StreamEncrypter(null);
+				decrypter.setPipelined(true);
+				decrypter.addProgressListener(progressListener);
+				decrypter.decrypt(inStream, outStream, length, key, QanaApp.INSTANCE::generateKey);
+
+				// Close input file
+				try
+				{
+					inStream.close();
+					inStream = null;
+				}
+				catch (IOException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
+				}
+
+				// Generate hash value from hash value of file content and salt
+				byte[] hashValue = new HashGenerator().generate(decrypter, salt);
+
+				// Test hash value.  The hash value of a file in a pack file is not tested because the name of the pack
+				// file is not derived from it; the file has been authenticated by the decrypter.
+				valid = (packLength > 0) || inFile.getName().equals(hashValueToString(hashValue));
+			}
+
 			// Close output file
 			try
 			{
@@ -1540,11 +3290,7 @@ class ArchiveDocument
 				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, tempFile, e);
 			}
 
-			// Generate hash value from hash value of file content and salt
-			byte[] hashValue = new HashGenerator().generate(decrypter, salt);
-
-			// Test hash value
-			if (inFile.getName().equals(hashValueToString(hashValue)))
+			if (valid)
 			{
 				// Delete any existing file
 				try
@@ -1630,13 +3376,23 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	private boolean validateFile(File   inFile,
-								 byte[] key,
-								 byte[] salt,
-								 long   fileOffset,
-								 long   totalFileLength)
+	private boolean validateFile(File              inFile,
+								 long              packOffset,
+								 long              packLength,
+								 int[]             chunkIndices,
+								 byte[]            key,
+								 byte[]            salt,
+								 IProgressListener progressListener)
 		throws AppException
 	{
+		// Validate the chunks of a deduplicated file
+		if (chunkIndices != null)
+		{
+			decryptChunks(chunkIndices, new NullOutputStream(), null, progressListener);
+			return true;
+		}
+
+		// Validate a file of its own or a file in a pack file
 		FileInputStream inStream = null;
 		try
 		{
@@ -1669,14 +3425,19 @@ class ArchiveDocument
 				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
 			}
 
-			// Initialise overall progress in progress view
-			TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
-			progressView.initOverallProgress(fileOffset, inFile.length(), totalFileLength);
+			// Position input stream at start of encrypted file in pack file
+			long length = inFile.length();
+			if (packLength > 0)
+			{
+				setPosition(inStream, packOffset, inFile);
+				length = packLength;
+			}
 
 			// Decrypt file
 			StreamEncrypter decrypter = new StreamEncrypter(null);
-			decrypter.addProgressListener(progressView);
-			decrypter.decrypt(inStream, new NullOutputStream(), inFile.length(), key, QanaApp.INSTANCE::generateKey);
+			decrypter.setPipelined(true);
+			decrypter.addProgressListener(progressListener);
+			decrypter.decrypt(inStream, new NullOutputStream(), length, key, QanaApp.INSTANCE::generateKey);
 
 			// Close input file
 			try
@@ -1692,8 +3453,9 @@ class ArchiveDocument
 			// Generate hash value from hash value of file content and salt
 			byte[] hashValue = new HashGenerator().generate(decrypter, salt);
 
-			// Test hash value
-			return inFile.getName().equals(hashValueToString(hashValue));
+			// Test hash value.  The hash value of a file in a pack file is not tested because the name of the pack file
+			// is not derived from it; the file has been authenticated by the decrypter.
+			return (packLength > 0) || inFile.getName().equals(hashValueToString(hashValue));
 		}
 		catch (AppException e)
 		{
@@ -1736,18 +3498,28 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	private void onAddFiles()
+	// Adds the files that the user selects to this archive.  In update mode, a selected file whose path, size and
+	// timestamp match those of an element of the archive is skipped, and an element whose file has changed is replaced
+	// without prompting.
+	private void onAddFiles(boolean update)
 		throws AppException
 	{
 		// Select files
+		String title = update ? UPDATE_FILES_STR : ADD_FILES_STR;
 		List<FileSelectionPanel.SelectedFile> selectedFiles =
-				FileSelectionDialog.showDialog(getWindow(), ADD_FILES_STR, MAX_NUM_ELEMENTS);
+				FileSelectionDialog.showDialog(getWindow(), title, MAX_NUM_ELEMENTS);
 
 		// Add files to archive
 		if (selectedFiles != null)
 		{
-			// Test whether size of archive has been exceeded
-			int numFiles = selectedFiles.size();
+			// Test whether size of archive has been exceeded.  In update mode, only the files that are not in the
+			// archive are counted.
+			int numFiles = 0;
+			for (FileSelectionPanel.SelectedFile selectedFile : selectedFiles)
+			{
+				if (!update || (findElement(selectedFile.relativePathname) < 0))
+					++numFiles;
+			}
 			if (elements.size() + numFiles > MAX_NUM_ELEMENTS)
 			{
 				throw new AppException(ErrorId.TOO_MANY_FILES, Integer.toString(numFiles),
@@ -1755,7 +3527,7 @@ class ArchiveDocument
 			}
 
 			// Get key
-			KeyList.Key key = getKey(ADD_FILES_STR);
+			KeyList.Key key = getKey(title);
 
 			// Add files
 			if (key != null)
@@ -1767,7 +3539,7 @@ class ArchiveDocument
 				List<InputFile> files = new ArrayList<>();
 				for (FileSelectionPanel.SelectedFile selectedFile : selectedFiles)
 					files.add(new InputFile(selectedFile.file, selectedFile.relativePathname));
-				TaskProgressDialog.showDialog2(getWindow(), ADD_FILES_STR, new Task.EncryptFiles(this, files));
+				TaskProgressDialog.showDialog2(getWindow(), title, new Task.EncryptFiles(this, files, update));
 			}
 		}
 	}
@@ -1818,11 +3590,36 @@ class ArchiveDocument
 
 	//------------------------------------------------------------------
 
-	private void onDisplayFileList()
+	private void onChangeLayout()
+		throws AppException
 	{
-		int[] indices = getTable().getSelectedRows();
-		if (indices.length > 0)
-		{
+		String messageStr = String.format(CONFIRM_CHANGE_LAYOUT_STR, sharded ? FLAT_STR : SHARDED_STR);
+		String[] optionStrs = Utils.getOptionStrings(AppConstants.CONTINUE_STR);
+		if (JOptionPane.showOptionDialog(getWindow(), messageStr, CHANGE_LAYOUT_STR, JOptionPane.OK_CANCEL_OPTION,
+										 JOptionPane.QUESTION_MESSAGE, null, optionStrs,
+										 optionStrs[1]) == JOptionPane.OK_OPTION)
+			TaskProgressDialog.showDialog(getWindow(), CHANGE_LAYOUT_STR, new Task.ChangeLayout(this));
+	}
+
+	//------------------------------------------------------------------
+
+	private void onRepackFiles()
+		throws AppException
+	{
+		String[] optionStrs = Utils.getOptionStrings(AppConstants.CONTINUE_STR);
+		if (JOptionPane.showOptionDialog(getWindow(), CONFIRM_REPACK_STR, REPACK_FILES_STR,
+										 JOptionPane.OK_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE, null, optionStrs,
+										 optionStrs[1]) == JOptionPane.OK_OPTION)
+			TaskProgressDialog.showDialog(getWindow(), REPACK_FILES_STR, new Task.RepackFiles(this));
+	}
+
+	//------------------------------------------------------------------
+
+	private void onDisplayFileList()
+	{
+		int[] indices = getTable().getSelectedRows();
+		if (indices.length > 0)
+		{
 			StringBuilder buffer = new StringBuilder(4096);
 			for (int index : indices)
 			{
@@ -1912,6 +3709,13 @@ class ArchiveDocument
 			KeyStroke.getKeyStroke(KeyEvent.VK_F5, 0)
 		),
 
+		UPDATE_FILES
+		(
+			"updateFiles",
+			"Update files" + AppConstants.ELLIPSIS_STR,
+			KeyStroke.getKeyStroke(KeyEvent.VK_F5, KeyEvent.SHIFT_DOWN_MASK)
+		),
+
 		EXTRACT_FILES
 		(
 			"extractFiles",
@@ -1932,6 +3736,18 @@ class ArchiveDocument
 			KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, KeyEvent.CTRL_DOWN_MASK | KeyEvent.SHIFT_DOWN_MASK)
 		),
 
+		CHANGE_LAYOUT
+		(
+			"changeLayout",
+			"Change storage layout" + AppConstants.ELLIPSIS_STR
+		),
+
+		REPACK_FILES
+		(
+			"repackFiles",
+			"Repack files" + AppConstants.ELLIPSIS_STR
+		),
+
 		DISPLAY_FILE_LIST
 		(
 			"displayFileList",
@@ -2208,6 +4024,18 @@ class ArchiveDocument
 		FAILED_TO_LOCK_FILE
 		("Failed to lock the file."),
 
+		ERROR_READING_FILE
+		("An error occurred when reading the file."),
+
+		ERROR_WRITING_FILE
+		("An error occurred when writing the file."),
+
+		PREMATURE_END_OF_FILE
+		("The end of the file was reached prematurely."),
+
+		FILE_IS_TOO_LONG
+		("The file is too long to be read into memory."),
+
 		FILE_ACCESS_NOT_PERMITTED
 		("Access to the file was not permitted."),
 
@@ -2238,12 +4066,18 @@ class ArchiveDocument
 		MALFORMED_LIST_ARCHIVE_FILE
 		("The list archive file is malformed."),
 
+		MALFORMED_ARCHIVE_JOURNAL
+		("The journal of the archive is malformed."),
+
 		INCORRECT_ENCRYPTION_KEY
 		("The current key does not match the one that was used to encrypt the file."),
 
 		INCORRECT_FILE_SIZE
 		("The size of the extracted file does not match the stored size."),
 
+		INVALID_CHUNK
+		("The content of a chunk of the file does not match the identifier of the chunk."),
+
 		TOO_MANY_FILES
 		("Adding all the selected files would exceed the maximum length of the archive.\n"
 			+ "Number of selected files = %1\n"
@@ -2352,158 +4186,1532 @@ class ArchiveDocument
 	//==================================================================
 
 
-	// CLASS: LIST ELEMENT
+	// CLASS: LOCATION IN PACK FILE
 
 
-	private static class Element
-		implements Comparable<Element>
+	// This class encapsulates the location of an encrypted file in a pack file: the hash value that is the name of the
+	// pack file, and the offset and length of the encrypted file.
+	private static class PackLocation
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	byte[]	hashValue;
+		private	long	offset;
+		private	long	length;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private PackLocation(byte[] hashValue,
+							 long   offset,
+							 long   length)
+		{
+			this.hashValue = hashValue;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: CHUNK OF DEDUPLICATED FILE
+
+
+	// This class encapsulates a chunk of the content of a deduplicated file: the keyed hash value that identifies the
+	// chunk, the location of the encrypted chunk in a pack file, the size of the chunk, and the number of references to
+	// the chunk from the elements of the archive.
+	private static class Chunk
 	{
 
 	////////////////////////////////////////////////////////////////////
 	//  Constants
 	////////////////////////////////////////////////////////////////////
 
-		private static final	int	PATH_OFFSET_FIELD_SIZE	= 4;
-		private static final	int	SIZE_FIELD_SIZE			= 8;
-		private static final	int	TIMESTAMP_FIELD_SIZE	= 8;
-		private static final	int	KEY_FIELD_SIZE			= ENCRYPTION_KEY_SIZE;
-		private static final	int	SALT_FIELD_SIZE			= FILE_HASH_VALUE_SIZE;
+		private static final	int	ID_FIELD_SIZE			= FILE_HASH_VALUE_SIZE;
 		private static final	int	HASH_VALUE_FIELD_SIZE	= FILE_HASH_VALUE_SIZE;
+		private static final	int	PACK_OFFSET_FIELD_SIZE	= 8;
+		private static final	int	PACK_LENGTH_FIELD_SIZE	= 8;
+		private static final	int	SIZE_FIELD_SIZE			= 4;
 
-		private static final	int	SIZE	= PATH_OFFSET_FIELD_SIZE + SIZE_FIELD_SIZE + TIMESTAMP_FIELD_SIZE
-												+ KEY_FIELD_SIZE + SALT_FIELD_SIZE + HASH_VALUE_FIELD_SIZE;
-
-		private static final	char	FILE_SEPARATOR_CHAR	= '/';
+		private static final	int	SIZE	= ID_FIELD_SIZE + HASH_VALUE_FIELD_SIZE + PACK_OFFSET_FIELD_SIZE
+												+ PACK_LENGTH_FIELD_SIZE + SIZE_FIELD_SIZE;
 
 	////////////////////////////////////////////////////////////////////
 	//  Instance variables
 	////////////////////////////////////////////////////////////////////
 
-		private	String	path;
-		private	long	size;
-		private	long	timestamp;
-		private	byte[]	key;
-		private	byte[]	salt;
+		private	byte[]	id;
 		private	byte[]	hashValue;
+		private	long	packOffset;
+		private	long	packLength;
+		private	int		size;
+		private	int		numReferences;
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		private Element(String path,
-						long   size,
-						long   timestamp,
-						byte[] key,
-						byte[] salt,
-						byte[] hashValue)
+		private Chunk(byte[]       id,
+					  PackLocation location,
+					  int          size)
 		{
-			this.path = path;
+			this.id = id;
+			hashValue = location.hashValue;
+			packOffset = location.offset;
+			packLength = location.length;
 			this.size = size;
-			this.timestamp = timestamp;
-			this.key = key;
-			this.salt = salt;
-			this.hashValue = hashValue;
 		}
 
 		//--------------------------------------------------------------
 
-		private Element(byte[]      data,
-						int         offset,
-						StringTable stringTable)
-			throws AppException
+		// Creates a chunk from the serialised form of a chunk that starts at the specified offset in the specified
+		// data.
+		private Chunk(byte[] data,
+					  int    offset)
 		{
-			// Test whether element extends beyond end of data
-			if (offset + SIZE > data.length)
-				throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+			// Extract field: identifier
+			int length = ID_FIELD_SIZE;
+			id = Arrays.copyOfRange(data, offset, offset + length);
+			offset += length;
 
-			// Parse field: path offset
-			int length = PATH_OFFSET_FIELD_SIZE;
-			int pathOffset = NumberCodec.bytesToUIntLE(data, offset, length);
+			// Extract field: hash value
+			length = HASH_VALUE_FIELD_SIZE;
+			hashValue = Arrays.copyOfRange(data, offset, offset + length);
 			offset += length;
 
-			// Get path from string table
-			path = stringTable.get(pathOffset);
-			if (path == null)
-				throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+			// Parse field: pack offset
+			length = PACK_OFFSET_FIELD_SIZE;
+			packOffset = NumberCodec.bytesToULongLE(data, offset, length);
+			offset += length;
+
+			// Parse field: pack length
+			length = PACK_LENGTH_FIELD_SIZE;
+			packLength = NumberCodec.bytesToULongLE(data, offset, length);
+			offset += length;
 
 			// Parse field: size
 			length = SIZE_FIELD_SIZE;
-			size = NumberCodec.bytesToULongLE(data, offset, length);
+			size = NumberCodec.bytesToUIntLE(data, offset, length);
 			offset += length;
+		}
 
-			// Parse field: timestamp
-			length = TIMESTAMP_FIELD_SIZE;
-			timestamp = NumberCodec.bytesToULongLE(data, offset, length);
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private String getHashValueString()
+		{
+			return hashValueToString(hashValue);
+		}
+
+		//--------------------------------------------------------------
+
+		private void setLocation(PackLocation location)
+		{
+			hashValue = location.hashValue;
+			packOffset = location.offset;
+			packLength = location.length;
+		}
+
+		//--------------------------------------------------------------
+
+		private void toByteArray(byte[] buffer,
+								 int    offset)
+		{
+			// Set field: identifier
+			int length = ID_FIELD_SIZE;
+			System.arraycopy(id, 0, buffer, offset, length);
 			offset += length;
 
-			// Parse field: key
-			length = KEY_FIELD_SIZE;
-			key = Arrays.copyOfRange(data, offset, offset + length);
+			// Set field: hash value
+			length = HASH_VALUE_FIELD_SIZE;
+			System.arraycopy(hashValue, 0, buffer, offset, length);
+			offset += length;
+
+			// Set field: pack offset
+			length = PACK_OFFSET_FIELD_SIZE;
+			NumberCodec.uLongToBytesLE(packOffset, buffer, offset, length);
+			offset += length;
+
+			// Set field: pack length
+			length = PACK_LENGTH_FIELD_SIZE;
+			NumberCodec.uLongToBytesLE(packLength, buffer, offset, length);
+			offset += length;
+
+			// Set field: size
+			length = SIZE_FIELD_SIZE;
+			NumberCodec.uIntToBytesLE(size, buffer, offset, length);
 			offset += length;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: TABLE OF CHUNKS
+
+
+	// This class implements the table of the chunks of the deduplicated files of an archive.  A chunk is stored once,
+	// however many files contain it, and it is removed from the table when the last reference to it is removed.  The
+	// index of a chunk in the table does not change while the table is in memory; the table is compacted when it is
+	// serialised.
+	//
+	// The keys that identify chunks, that encrypt chunks, that generate the hash values of deduplicated files and that
+	// determine the boundaries of chunks are derived from a random secret of the archive with HKDF-SHA256.  Chunks may
+	// be added concurrently.
+	private static class ChunkTable
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	int	SECRET_FIELD_SIZE		= ENCRYPTION_KEY_SIZE;
+		private static final	int	NUM_CHUNKS_FIELD_SIZE	= 4;
+		private static final	int	CHUNK_INDEX_FIELD_SIZE	= 4;
+
+		private static final	byte[]	ID_KEY_LABEL		= "qana-chunk-id".getBytes(StandardCharsets.US_ASCII);
+		private static final	byte[]	CHUNK_KEY_LABEL		= "qana-chunk-key".getBytes(StandardCharsets.US_ASCII);
+		private static final	byte[]	FILE_KEY_LABEL		= "qana-chunk-file".getBytes(StandardCharsets.US_ASCII);
+		private static final	byte[]	GEAR_TABLE_LABEL	= "qana-chunk-gear".getBytes(StandardCharsets.US_ASCII);
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	byte[]						secret;
+		private	byte[]						idKey;
+		private	byte[]						chunkKey;
+		private	byte[]						fileKey;
+		private	byte[]						gearTable;
+		private	List<Chunk>					chunks;
+		private	Map<ByteBuffer, Integer>	chunkIndices;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ChunkTable(byte[] secret)
+		{
+			this.secret = secret;
+			idKey = HmacSha256.hkdfExpand(secret, ID_KEY_LABEL, HmacSha256.HASH_VALUE_SIZE);
+			chunkKey = HmacSha256.hkdfExpand(secret, CHUNK_KEY_LABEL, HmacSha256.HASH_VALUE_SIZE);
+			fileKey = HmacSha256.hkdfExpand(secret, FILE_KEY_LABEL, HmacSha256.HASH_VALUE_SIZE);
+			gearTable = HmacSha256.hkdfExpand(secret, GEAR_TABLE_LABEL, ContentChunker.GEAR_TABLE_SIZE);
+			chunks = new ArrayList<>();
+			chunkIndices = new HashMap<>();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		// Creates a table of chunks from the specified serialised form, and sets the chunk indices of the specified
+		// elements from it.  The serialised form consists of the secret, the number of chunks, the chunks and, for each
+		// element, the number of its chunks followed by their indices.  The number of chunks of an element that is not
+		// deduplicated is zero.
+		private static ChunkTable parse(byte[]      data,
+										ElementList elements)
+			throws AppException
+		{
+			// Extract field: secret
+			int offset = 0;
+			int length = SECRET_FIELD_SIZE;
+			if (data.length < length + NUM_CHUNKS_FIELD_SIZE)
+				throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+			ChunkTable chunkTable = new ChunkTable(Arrays.copyOfRange(data, offset, offset + length));
+			offset += length;
+
+			// Parse field: number of chunks
+			length = NUM_CHUNKS_FIELD_SIZE;
+			long numChunks = NumberCodec.bytesToUIntLE(data, offset, length) & 0xFFFFFFFFL;
+			offset += length;
+
+			// Parse chunks
+			if ((data.length - offset) / Chunk.SIZE < numChunks)
+				throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+			for (int i = 0; i < numChunks; i++)
+			{
+				Chunk chunk = new Chunk(data, offset);
+				if (chunkTable.chunkIndices.putIfAbsent(ByteBuffer.wrap(chunk.id), i) != null)
+					throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+				chunkTable.chunks.add(chunk);
+				offset += Chunk.SIZE;
+			}
+
+			// Parse chunk indices of elements
+			for (int i = 0; i < elements.size(); i++)
+			{
+				// Parse field: number of chunks of element
+				length = NUM_CHUNKS_FIELD_SIZE;
+				if (data.length - offset < length)
+					throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+				long numElementChunks = NumberCodec.bytesToUIntLE(data, offset, length) & 0xFFFFFFFFL;
+				offset += length;
+
+				// Parse fields: chunk indices
+				if (numElementChunks > 0)
+				{
+					length = CHUNK_INDEX_FIELD_SIZE;
+					if ((data.length - offset) / length < numElementChunks)
+						throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+					int[] indices = new int[(int)numElementChunks];
+					for (int j = 0; j < indices.length; j++)
+					{
+						long index = NumberCodec.bytesToUIntLE(data, offset, length) & 0xFFFFFFFFL;
+						if (index >= numChunks)
+							throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+						indices[j] = (int)index;
+						offset += length;
+					}
+					elements.setChunkIndices(i, indices);
+					chunkTable.addReferences(indices);
+				}
+			}
+
+			// Remove any chunks to which no element refers
+			chunkTable.removeUnreferenced();
+
+			return chunkTable;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private ContentChunker createChunker(InputStream inStream)
+		{
+			return new ContentChunker(gearTable, inStream);
+		}
+
+		//--------------------------------------------------------------
+
+		// Returns the identifier of the specified chunk data, which is its hash value keyed with a key that is derived
+		// from the secret of this table.
+		private byte[] getChunkId(byte[] data)
+		{
+			return new HmacSha256(idKey).getValue(data);
+		}
+
+		//--------------------------------------------------------------
+
+		// Returns the key with which the chunk that has the specified identifier is encrypted.
+		private byte[] getChunkKey(byte[] id)
+		{
+			return HmacSha256.hkdfExpand(chunkKey, id, ENCRYPTION_KEY_SIZE);
+		}
+
+		//--------------------------------------------------------------
+
+		// Returns the hash value of a deduplicated file that has the specified salt and the chunks with the specified
+		// identifiers.
+		private byte[] getFileHashValue(byte[]       salt,
+										List<byte[]> ids)
+		{
+			HmacSha256 hash = new HmacSha256(fileKey);
+			hash.update(salt);
+			for (byte[] id : ids)
+				hash.update(id);
+			return hash.getValue();
+		}
+
+		//--------------------------------------------------------------
+
+		private synchronized Chunk get(int index)
+		{
+			return chunks.get(index);
+		}
+
+		//--------------------------------------------------------------
+
+		private synchronized List<Chunk> getChunks()
+		{
+			List<Chunk> liveChunks = new ArrayList<>();
+			for (Chunk chunk : chunks)
+			{
+				if (chunk != null)
+					liveChunks.add(chunk);
+			}
+			return liveChunks;
+		}
+
+		//--------------------------------------------------------------
+
+		// Returns the index of the chunk with the specified identifier, or -1 if there is no such chunk in this table.
+		private synchronized int find(byte[] id)
+		{
+			Integer index = chunkIndices.get(ByteBuffer.wrap(id));
+			return (index == null) ? -1 : index;
+		}
+
+		//--------------------------------------------------------------
+
+		// Adds the specified chunk to this table if the table does not contain a chunk with the same identifier, and
+		// returns the index of the chunk in the table.  If replace is true, the location of an existing chunk with the
+		// same identifier is replaced by that of the specified chunk; otherwise, the existing chunk is kept as it is.
+		private synchronized int add(Chunk   chunk,
+									 boolean replace)
+		{
+			Integer index = chunkIndices.get(ByteBuffer.wrap(chunk.id));
+			if (index == null)
+			{
+				index = chunks.size();
+				chunks.add(chunk);
+				chunkIndices.put(ByteBuffer.wrap(chunk.id), index);
+			}
+			else if (replace)
+			{
+				Chunk oldChunk = chunks.get(index);
+				oldChunk.hashValue = chunk.hashValue;
+				oldChunk.packOffset = chunk.packOffset;
+				oldChunk.packLength = chunk.packLength;
+			}
+			return index;
+		}
+
+		//--------------------------------------------------------------
+
+		private synchronized void addReferences(int[] indices)
+		{
+			for (int index : indices)
+				++chunks.get(index).numReferences;
+		}
+
+		//--------------------------------------------------------------
+
+		// Removes a reference to each of the chunks at the specified indices, and removes from this table the chunks to
+		// which there are no longer any references.
+		private synchronized void removeReferences(int[] indices)
+		{
+			for (int index : indices)
+			{
+				Chunk chunk = chunks.get(index);
+				if ((chunk != null) && (--chunk.numReferences == 0))
+					remove(index);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		private synchronized void removeUnreferenced()
+		{
+			for (int i = 0; i < chunks.size(); i++)
+			{
+				Chunk chunk = chunks.get(i);
+				if ((chunk != null) && (chunk.numReferences == 0))
+					remove(i);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		// Returns the serialised form of this table, in which the chunks are renumbered consecutively, and the chunk
+		// indices of the specified elements.
+		private synchronized byte[] toByteArray(ElementList elements)
+		{
+			// Renumber chunks and get length of serialised form
+			int[] newIndices = new int[chunks.size()];
+			int numChunks = 0;
+			for (int i = 0; i < newIndices.length; i++)
+			{
+				if (chunks.get(i) != null)
+					newIndices[i] = numChunks++;
+			}
+			long length = SECRET_FIELD_SIZE + NUM_CHUNKS_FIELD_SIZE + (long)numChunks * Chunk.SIZE;
+			for (int i = 0; i < elements.size(); i++)
+			{
+				int[] indices = elements.getChunkIndices(i);
+				length += NUM_CHUNKS_FIELD_SIZE;
+				if (indices != null)
+					length += (long)indices.length * CHUNK_INDEX_FIELD_SIZE;
+			}
+			if (length > Integer.MAX_VALUE)
+				throw new IllegalStateException();
+			byte[] buffer = new byte[(int)length];
+
+			// Set field: secret
+			int offset = 0;
+			System.arraycopy(secret, 0, buffer, offset, SECRET_FIELD_SIZE);
+			offset += SECRET_FIELD_SIZE;
+
+			// Set field: number of chunks
+			NumberCodec.uIntToBytesLE(numChunks, buffer, offset, NUM_CHUNKS_FIELD_SIZE);
+			offset += NUM_CHUNKS_FIELD_SIZE;
+
+			// Set chunks
+			for (Chunk chunk : chunks)
+			{
+				if (chunk != null)
+				{
+					chunk.toByteArray(buffer, offset);
+					offset += Chunk.SIZE;
+				}
+			}
+
+			// Set chunk indices of elements
+			for (int i = 0; i < elements.size(); i++)
+			{
+				int[] indices = elements.getChunkIndices(i);
+				int numElementChunks = (indices == null) ? 0 : indices.length;
+				NumberCodec.uIntToBytesLE(numElementChunks, buffer, offset, NUM_CHUNKS_FIELD_SIZE);
+				offset += NUM_CHUNKS_FIELD_SIZE;
+				for (int j = 0; j < numElementChunks; j++)
+				{
+					NumberCodec.uIntToBytesLE(newIndices[indices[j]], buffer, offset, CHUNK_INDEX_FIELD_SIZE);
+					offset += CHUNK_INDEX_FIELD_SIZE;
+				}
+			}
+
+			return buffer;
+		}
+
+		//--------------------------------------------------------------
+
+		private void remove(int index)
+		{
+			chunkIndices.remove(ByteBuffer.wrap(chunks.get(index).id));
+			chunks.set(index, null);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: LIST ELEMENT
+
+
+	private static class Element
+		implements Comparable<Element>
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	int	PATH_OFFSET_FIELD_SIZE	= 4;
+		private static final	int	SIZE_FIELD_SIZE			= 8;
+		private static final	int	TIMESTAMP_FIELD_SIZE	= 8;
+		private static final	int	KEY_FIELD_SIZE			= ENCRYPTION_KEY_SIZE;
+		private static final	int	SALT_FIELD_SIZE			= FILE_HASH_VALUE_SIZE;
+		private static final	int	HASH_VALUE_FIELD_SIZE	= FILE_HASH_VALUE_SIZE;
+		private static final	int	PACK_OFFSET_FIELD_SIZE	= 8;
+		private static final	int	PACK_LENGTH_FIELD_SIZE	= 8;
+
+		private static final	int	SIZE	= PATH_OFFSET_FIELD_SIZE + SIZE_FIELD_SIZE + TIMESTAMP_FIELD_SIZE
+												+ KEY_FIELD_SIZE + SALT_FIELD_SIZE + HASH_VALUE_FIELD_SIZE;
+
+		private static final	int	PACK_FIELDS_SIZE	= PACK_OFFSET_FIELD_SIZE + PACK_LENGTH_FIELD_SIZE;
+
+		private static final	char	FILE_SEPARATOR_CHAR	= '/';
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	String	path;
+		private	long	size;
+		private	long	timestamp;
+		private	byte[]	key;
+		private	byte[]	salt;
+		private	byte[]	hashValue;
+		private	long	packOffset;
+		private	long	packLength;
+		private	int[]	chunkIndices;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Element(String path,
+						long   size,
+						long   timestamp,
+						byte[] key,
+						byte[] salt,
+						byte[] hashValue)
+		{
+			this(path, size, timestamp, key, salt, hashValue, 0, 0);
+		}
+
+		//--------------------------------------------------------------
+
+		// Creates an element.  If packLength is greater than zero, the encrypted file is the part of the pack file
+		// whose name is the hash value that starts at packOffset and has a length of packLength; otherwise, the
+		// encrypted file is the whole of the file whose name is the hash value.
+		private Element(String path,
+						long   size,
+						long   timestamp,
+						byte[] key,
+						byte[] salt,
+						byte[] hashValue,
+						long   packOffset,
+						long   packLength)
+		{
+			this(path, size, timestamp, key, salt, hashValue, packOffset, packLength, null);
+		}
+
+		//--------------------------------------------------------------
+
+		// Creates an element for a deduplicated file, whose content is the concatenation of the chunks at the specified
+		// indices in the table of chunks.  The hash value of a deduplicated file is not the name of a file.
+		private Element(String path,
+						long   size,
+						long   timestamp,
+						byte[] key,
+						byte[] salt,
+						byte[] hashValue,
+						int[]  chunkIndices)
+		{
+			this(path, size, timestamp, key, salt, hashValue, 0, 0, chunkIndices);
+		}
+
+		//--------------------------------------------------------------
+
+		private Element(String path,
+						long   size,
+						long   timestamp,
+						byte[] key,
+						byte[] salt,
+						byte[] hashValue,
+						long   packOffset,
+						long   packLength,
+						int[]  chunkIndices)
+		{
+			this.path = path;
+			this.size = size;
+			this.timestamp = timestamp;
+			this.key = key;
+			this.salt = salt;
+			this.hashValue = hashValue;
+			this.packOffset = packOffset;
+			this.packLength = packLength;
+			this.chunkIndices = chunkIndices;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		private static int comparePaths(String pathname1,
+										String pathname2)
+		{
+			List<String> path1 = getPathComponents(pathname1);
+			String name1 = path1.remove(path1.size() - 1);
+			List<String> path2 = getPathComponents(pathname2);
+			String name2 = path2.remove(path2.size() - 1);
+
+			int index = 0;
+			while (true)
+			{
+				if (path1.size() == index)
+					return (path2.size() == index) ? name1.compareTo(name2) : -1;
+				else
+				{
+					if (path2.size() == index)
+						return 1;
+				}
+				int result = path1.get(index).compareTo(path2.get(index));
+				if (result != 0)
+					return result;
+				++index;
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		private static List<String> getPathComponents(String path)
+		{
+			List<String> pathnameComponents = new ArrayList<>();
+			if (path != null)
+			{
+				int index = 0;
+				while (index < path.length())
+				{
+					int startIndex = index;
+					index = path.indexOf(FILE_SEPARATOR_CHAR, index);
+					if (index < 0)
+						index = path.length();
+					pathnameComponents.add(path.substring(startIndex, index));
+					++index;
+				}
+			}
+			return pathnameComponents;
+		}
+
+		//--------------------------------------------------------------
+
+		private static long getHashValueKey(byte[] hashValue,
+											int    offset)
+		{
+			return NumberCodec.bytesToLongLE(hashValue, offset, Long.BYTES);
+		}
+
+		//--------------------------------------------------------------
+
+		private static int getRecordSize(boolean packFields)
+		{
+			return packFields ? SIZE + PACK_FIELDS_SIZE : SIZE;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : Comparable interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public int compareTo(Element element)
+		{
+			return comparePaths(path, element.path);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+
+			return (obj instanceof Element other) && Objects.equals(path, other.path);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hashCode(path);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private String getHashValueString()
+		{
+			return hashValueToString(hashValue);
+		}
+
+		//--------------------------------------------------------------
+
+		private long getHashValueKey()
+		{
+			return getHashValueKey(hashValue, 0);
+		}
+
+		//--------------------------------------------------------------
+
+		private boolean isPacked()
+		{
+			return (packLength > 0);
+		}
+
+		//--------------------------------------------------------------
+
+		private boolean isChunked()
+		{
+			return (chunkIndices != null);
+		}
+
+		//--------------------------------------------------------------
+
+		private byte[] toByteArray(StringTable stringTable,
+								   boolean     packFields)
+		{
+			byte[] buffer = new byte[getRecordSize(packFields)];
+			int offset = 0;
+
+			// Set field: path offset
+			int length = PATH_OFFSET_FIELD_SIZE;
+			if (stringTable != null)
+				NumberCodec.uIntToBytesLE(stringTable.add(path), buffer, offset, length);
+			offset += length;
+
+			// Set field: size
+			length = SIZE_FIELD_SIZE;
+			NumberCodec.uLongToBytesLE(size, buffer, offset, length);
+			offset += length;
+
+			// Set field: timestamp
+			length = TIMESTAMP_FIELD_SIZE;
+			NumberCodec.uLongToBytesLE(timestamp, buffer, offset, length);
+			offset += length;
+
+			// Set field: key
+			length = KEY_FIELD_SIZE;
+			System.arraycopy(key, 0, buffer, offset, length);
+			offset += length;
+
+			// Set field: salt
+			length = SALT_FIELD_SIZE;
+			System.arraycopy(salt, 0, buffer, offset, length);
+			offset += length;
+
+			// Set field: hash value
+			length = HASH_VALUE_FIELD_SIZE;
+			System.arraycopy(hashValue, 0, buffer, offset, length);
+			offset += length;
+
+			// Set fields: pack offset and pack length
+			if (packFields)
+			{
+				length = PACK_OFFSET_FIELD_SIZE;
+				NumberCodec.uLongToBytesLE(packOffset, buffer, offset, length);
+				offset += length;
+
+				length = PACK_LENGTH_FIELD_SIZE;
+				NumberCodec.uLongToBytesLE(packLength, buffer, offset, length);
+				offset += length;
+			}
+
+			return buffer;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: LIST OF ELEMENTS
+
+
+	// This class implements a list of elements whose fields are stored in arrays, one array per field, rather than in
+	// an object per element.  An element is created only when it is requested with get(int); the fields of an element
+	// can be accessed individually without creating it.
+	static class ElementList
+		extends AbstractList<Element>
+		implements ElementIndex.ISource, RandomAccess
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	int	INITIAL_CAPACITY	= 16;
+
+		private static final	int	KEY_OFFSET			= 0;
+		private static final	int	SALT_OFFSET			= KEY_OFFSET + Element.KEY_FIELD_SIZE;
+		private static final	int	HASH_VALUE_OFFSET	= SALT_OFFSET + Element.SALT_FIELD_SIZE;
+		private static final	int	SECRETS_SIZE		= HASH_VALUE_OFFSET + Element.HASH_VALUE_FIELD_SIZE;
+
+		private static final	int	SECRETS_FIELD_OFFSET	=
+				Element.PATH_OFFSET_FIELD_SIZE + Element.SIZE_FIELD_SIZE + Element.TIMESTAMP_FIELD_SIZE;
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	int			numElements;
+		private	String[]	paths;
+		private	long[]		sizes;
+		private	long[]		timestamps;
+		private	byte[]		secrets;
+		private	long[]		packOffsets;
+		private	long[]		packLengths;
+		private	int[][]		chunkIndices;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ElementList()
+		{
+			this(INITIAL_CAPACITY);
+		}
+
+		//--------------------------------------------------------------
+
+		private ElementList(int capacity)
+		{
+			capacity = Math.max(INITIAL_CAPACITY, capacity);
+			paths = new String[capacity];
+			sizes = new long[capacity];
+			timestamps = new long[capacity];
+			secrets = new byte[getSecretsLength(capacity)];
+			packOffsets = new long[capacity];
+			packLengths = new long[capacity];
+			chunkIndices = new int[capacity][];
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		// Returns the capacity to which a list of the specified capacity grows so that it can hold the specified number
+		// of elements.  The capacity grows by half, but not beyond the maximum number of elements of an archive.
+		static int getNewCapacity(int capacity,
+								  int minCapacity)
+		{
+			return Math.max(minCapacity, Math.min(capacity + (capacity >> 1), MAX_NUM_ELEMENTS));
+		}
+
+		//--------------------------------------------------------------
+
+		// Returns the length of the array of the secrets of the elements of a list of the specified capacity.
+		static int getSecretsLength(int capacity)
+		{
+			long length = (long)capacity * SECRETS_SIZE;
+			if (length > Integer.MAX_VALUE)
+				throw new IllegalArgumentException();
+			return (int)length;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : List interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public int size()
+		{
+			return numElements;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public Element get(int index)
+		{
+			Objects.checkIndex(index, numElements);
+
+			int offset = index * SECRETS_SIZE;
+			return new Element(paths[index], sizes[index], timestamps[index],
+							   Arrays.copyOfRange(secrets, offset + KEY_OFFSET, offset + SALT_OFFSET),
+							   Arrays.copyOfRange(secrets, offset + SALT_OFFSET, offset + HASH_VALUE_OFFSET),
+							   Arrays.copyOfRange(secrets, offset + HASH_VALUE_OFFSET, offset + SECRETS_SIZE),
+							   packOffsets[index], packLengths[index], chunkIndices[index]);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public Element set(int     index,
+						   Element element)
+		{
+			Element oldElement = get(index);
+			store(index, element);
+			return oldElement;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void add(int     index,
+						Element element)
+		{
+			Objects.checkIndex(index, numElements + 1);
+
+			ensureCapacity(numElements + 1);
+			move(index, index + 1, numElements - index);
+			++numElements;
+			store(index, element);
+			++modCount;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public Element remove(int index)
+		{
+			Element element = get(index);
+			move(index + 1, index, numElements - index - 1);
+			paths[--numElements] = null;
+			chunkIndices[numElements] = null;
+			++modCount;
+			return element;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void clear()
+		{
+			Arrays.fill(paths, 0, numElements, null);
+			Arrays.fill(chunkIndices, 0, numElements, null);
+			numElements = 0;
+			++modCount;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : ElementIndex.ISource interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public String getPath(int index)
+		{
+			Objects.checkIndex(index, numElements);
+			return paths[index];
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public long getHashValueKey(int index)
+		{
+			Objects.checkIndex(index, numElements);
+			return Element.getHashValueKey(secrets, index * SECRETS_SIZE + HASH_VALUE_OFFSET);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private long getSize(int index)
+		{
+			Objects.checkIndex(index, numElements);
+			return sizes[index];
+		}
+
+		//--------------------------------------------------------------
+
+		private long getTimestamp(int index)
+		{
+			Objects.checkIndex(index, numElements);
+			return timestamps[index];
+		}
+
+		//--------------------------------------------------------------
+
+		private String getHashValueString(int index)
+		{
+			Objects.checkIndex(index, numElements);
+			int offset = index * SECRETS_SIZE + HASH_VALUE_OFFSET;
+			return hashValueToString(Arrays.copyOfRange(secrets, offset, offset + Element.HASH_VALUE_FIELD_SIZE));
+		}
+
+		//--------------------------------------------------------------
+
+		private long getPackLength(int index)
+		{
+			Objects.checkIndex(index, numElements);
+			return packLengths[index];
+		}
+
+		//--------------------------------------------------------------
+
+		private int[] getChunkIndices(int index)
+		{
+			Objects.checkIndex(index, numElements);
+			return chunkIndices[index];
+		}
+
+		//--------------------------------------------------------------
+
+		private boolean hasPackedElements()
+		{
+			for (int i = 0; i < numElements; i++)
+			{
+				if (packLengths[i] > 0)
+					return true;
+			}
+			return false;
+		}
+
+		//--------------------------------------------------------------
+
+		private int compareHashValues(int index1,
+									  int index2)
+		{
+			int offset1 = index1 * SECRETS_SIZE + HASH_VALUE_OFFSET;
+			int offset2 = index2 * SECRETS_SIZE + HASH_VALUE_OFFSET;
+			return Arrays.compareUnsigned(secrets, offset1, offset1 + Element.HASH_VALUE_FIELD_SIZE,
+										  secrets, offset2, offset2 + Element.HASH_VALUE_FIELD_SIZE);
+		}
+
+		//--------------------------------------------------------------
+
+		// Sorts this list with the specified comparator of the indices of elements, so that the elements do not have to
+		// be created in order to compare them.  The indices are sorted as a primitive array with a stable merge sort,
+		// so that they are not boxed.
+		private void sortByIndex(IntBinaryOperator comparator)
+		{
+			// Sort indices
+			int[] indices = new int[numElements];
+			for (int i = 0; i < indices.length; i++)
+				indices[i] = i;
+			int[] buffer = new int[numElements];
+			for (int width = 1; width < numElements; width <<= 1)
+			{
+				// Merge adjacent runs of indices
+				for (int start = 0; start < numElements; start += width << 1)
+				{
+					int mid = Math.min(start + width, numElements);
+					int end = Math.min(start + (width << 1), numElements);
+					int i = start;
+					int j = mid;
+					int k = start;
+					while ((i < mid) && (j < end))
+						buffer[k++] = (comparator.applyAsInt(indices[j], indices[i]) < 0) ? indices[j++] : indices[i++];
+					while (i < mid)
+						buffer[k++] = indices[i++];
+					while (j < end)
+						buffer[k++] = indices[j++];
+				}
+
+				// Swap runs and buffer
+				int[] temp = indices;
+				indices = buffer;
+				buffer = temp;
+			}
+
+			// Reorder elements
+			String[] newPaths = new String[paths.length];
+			long[] newSizes = new long[sizes.length];
+			long[] newTimestamps = new long[timestamps.length];
+			byte[] newSecrets = new byte[secrets.length];
+			long[] newPackOffsets = new long[packOffsets.length];
+			long[] newPackLengths = new long[packLengths.length];
+			int[][] newChunkIndices = new int[chunkIndices.length][];
+			for (int i = 0; i < indices.length; i++)
+			{
+				int index = indices[i];
+				newPaths[i] = paths[index];
+				newSizes[i] = sizes[index];
+				newTimestamps[i] = timestamps[index];
+				System.arraycopy(secrets, index * SECRETS_SIZE, newSecrets, i * SECRETS_SIZE, SECRETS_SIZE);
+				newPackOffsets[i] = packOffsets[index];
+				newPackLengths[i] = packLengths[index];
+				newChunkIndices[i] = chunkIndices[index];
+			}
+			paths = newPaths;
+			sizes = newSizes;
+			timestamps = newTimestamps;
+			secrets = newSecrets;
+			packOffsets = newPackOffsets;
+			packLengths = newPackLengths;
+			chunkIndices = newChunkIndices;
+			++modCount;
+		}
+
+		//--------------------------------------------------------------
+
+		// Appends an element to this list from the specified serialised form of the element, which includes pack fields
+		// if packFields is true.  The path of the element is not set: it must be set with setPath(int, String) when the
+		// string table is available.
+		private void addRecord(byte[]  data,
+							   int     offset,
+							   boolean packFields)
+		{
+			ensureCapacity(numElements + 1);
+			int index = numElements++;
+
+			// Parse field: size
+			offset += Element.PATH_OFFSET_FIELD_SIZE;
+			int length = Element.SIZE_FIELD_SIZE;
+			sizes[index] = NumberCodec.bytesToULongLE(data, offset, length);
+			offset += length;
+
+			// Parse field: timestamp
+			length = Element.TIMESTAMP_FIELD_SIZE;
+			timestamps[index] = NumberCodec.bytesToULongLE(data, offset, length);
+			offset += length;
+
+			// Extract fields: key, salt and hash value
+			System.arraycopy(data, offset, secrets, index * SECRETS_SIZE, SECRETS_SIZE);
+			offset += SECRETS_SIZE;
+
+			// Parse fields: pack offset and pack length
+			if (packFields)
+			{
+				length = Element.PACK_OFFSET_FIELD_SIZE;
+				packOffsets[index] = NumberCodec.bytesToULongLE(data, offset, length);
+				offset += length;
+
+				length = Element.PACK_LENGTH_FIELD_SIZE;
+				packLengths[index] = NumberCodec.bytesToULongLE(data, offset, length);
+				offset += length;
+			}
+			else
+			{
+				packOffsets[index] = 0;
+				packLengths[index] = 0;
+			}
+			chunkIndices[index] = null;
+
+			++modCount;
+		}
+
+		//--------------------------------------------------------------
+
+		private void setPath(int    index,
+							 String path)
+		{
+			Objects.checkIndex(index, numElements);
+			paths[index] = path;
+		}
+
+		//--------------------------------------------------------------
+
+		private void setChunkIndices(int   index,
+									 int[] indices)
+		{
+			Objects.checkIndex(index, numElements);
+			chunkIndices[index] = indices;
+		}
+
+		//--------------------------------------------------------------
+
+		private void store(int     index,
+						   Element element)
+		{
+			Objects.checkIndex(index, numElements);
+
+			paths[index] = element.path;
+			sizes[index] = element.size;
+			timestamps[index] = element.timestamp;
+			int offset = index * SECRETS_SIZE;
+			System.arraycopy(element.key, 0, secrets, offset + KEY_OFFSET, Element.KEY_FIELD_SIZE);
+			System.arraycopy(element.salt, 0, secrets, offset + SALT_OFFSET, Element.SALT_FIELD_SIZE);
+			System.arraycopy(element.hashValue, 0, secrets, offset + HASH_VALUE_OFFSET, Element.HASH_VALUE_FIELD_SIZE);
+			packOffsets[index] = element.packOffset;
+			packLengths[index] = element.packLength;
+			chunkIndices[index] = element.chunkIndices;
+		}
+
+		//--------------------------------------------------------------
+
+		private void move(int srcIndex,
+						  int destIndex,
+						  int length)
+		{
+			System.arraycopy(paths, srcIndex, paths, destIndex, length);
+			System.arraycopy(sizes, srcIndex, sizes, destIndex, length);
+			System.arraycopy(timestamps, srcIndex, timestamps, destIndex, length);
+			System.arraycopy(secrets, srcIndex * SECRETS_SIZE, secrets, destIndex * SECRETS_SIZE,
+							 length * SECRETS_SIZE);
+			System.arraycopy(packOffsets, srcIndex, packOffsets, destIndex, length);
+			System.arraycopy(packLengths, srcIndex, packLengths, destIndex, length);
+			System.arraycopy(chunkIndices, srcIndex, chunkIndices, destIndex, length);
+		}
+
+		//--------------------------------------------------------------
+
+		private void ensureCapacity(int capacity)
+		{
+			if (capacity > paths.length)
+			{
+				capacity = getNewCapacity(paths.length, capacity);
+				paths = Arrays.copyOf(paths, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				timestamps = Arrays.copyOf(timestamps, capacity);
+				secrets = Arrays.copyOf(secrets, getSecretsLength(capacity));
+				packOffsets = Arrays.copyOf(packOffsets, capacity);
+				packLengths = Arrays.copyOf(packLengths, capacity);
+				chunkIndices = Arrays.copyOf(chunkIndices, capacity);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: INDEX OF ELEMENTS
+
+
+	// This class implements an index of a list of elements: a map of the paths of the elements to their indices in the
+	// list, and a set of the keys of the hash values of the elements.  The map and the set are built from the list when
+	// they are first needed, and are then kept up to date by the notifications of changes to the list.  The removal of
+	// an element other than the last one changes the indices of the elements that follow it, as does the reordering of
+	// the list, so the map is invalidated and rebuilt when it is next needed.  The key of a removed element whose file
+	// is in a pack file is retained, because the element's file remains in the pack file until it is compacted.
+	static class ElementIndex
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	ISource					source;
+		private	Map<String, Integer>	pathIndices;
+		private	Set<Long>				hashValueKeys;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		ElementIndex(ISource source)
+		{
+			this.source = source;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		int find(String path)
+		{
+			// Rebuild map of paths to indices if it has been invalidated
+			if (pathIndices == null)
+			{
+				pathIndices = new HashMap<>();
+				for (int i = 0; i < source.size(); i++)
+					pathIndices.put(source.getPath(i), i);
+			}
+
+			// Look up path
+			Integer index = pathIndices.get(path);
+			return (index == null) ? -1 : index;
+		}
+
+		//--------------------------------------------------------------
+
+		Set<Long> getHashValueKeys()
+		{
+			// Rebuild set of keys of hash values if it has been invalidated
+			if (hashValueKeys == null)
+			{
+				hashValueKeys = new HashSet<>();
+				for (int i = 0; i < source.size(); i++)
+					hashValueKeys.add(source.getHashValueKey(i));
+			}
+			return hashValueKeys;
+		}
+
+		//--------------------------------------------------------------
+
+		// Updates the index after an element has been appended to the list.
+		void added(String path,
+				   long   hashValueKey)
+		{
+			if (pathIndices != null)
+				pathIndices.put(path, source.size() - 1);
+			if (hashValueKeys != null)
+				hashValueKeys.add(hashValueKey);
+		}
+
+		//--------------------------------------------------------------
+
+		// Updates the index after the element at the specified index of the list has been replaced.  The path of the
+		// new element may differ from that of the old one.
+		void replaced(int     index,
+					  String  oldPath,
+					  long    oldHashValueKey,
+					  boolean oldPacked,
+					  String  path,
+					  long    hashValueKey)
+		{
+			if (pathIndices != null)
+			{
+				pathIndices.remove(oldPath);
+				pathIndices.put(path, index);
+			}
+			if (hashValueKeys != null)
+			{
+				if (!oldPacked)
+					hashValueKeys.remove(oldHashValueKey);
+				hashValueKeys.add(hashValueKey);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		// Updates the index after the element at the specified index has been removed from the list.
+		void removed(int     index,
+					 String  path,
+					 long    hashValueKey,
+					 boolean packed)
+		{
+			if ((hashValueKeys != null) && !packed)
+				hashValueKeys.remove(hashValueKey);
+			if (pathIndices != null)
+			{
+				if (index == source.size())
+					pathIndices.remove(path);
+				else
+					pathIndices = null;
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		// Updates the index after the elements of the list have been reordered.
+		void reordered()
+		{
+			pathIndices = null;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Member interfaces
+	////////////////////////////////////////////////////////////////////
+
+		// This interface defines the methods that must be implemented by a list of elements that is indexed.
+		interface ISource
+		{
+			int size();
+
+			//----------------------------------------------------------
+
+			String getPath(int index);
+
+			//----------------------------------------------------------
+
+			long getHashValueKey(int index);
+
+			//----------------------------------------------------------
+
+		}
+
+		//==============================================================
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: ARCHIVE INDEX PARSER
+
+
+	// This class implements a parser of the decrypted content of an archive file.  The parser is the output of a
+	// StreamEncrypter: it consumes the content as it is decrypted and adds each element to an ElementList, so that the
+	// content is never held in memory as a whole.  The hash value of the content is verified, and the paths of the
+	// elements are set from the string table, when finish() is called.  If the archive contains deduplicated files, the
+	// data between the elements and the string table is the serialised form of the table of chunks.
+	private static class IndexParser
+		implements StreamEncrypter.IOutput
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
 
-			// Extract field: salt
-			length = SALT_FIELD_SIZE;
-			salt = Arrays.copyOfRange(data, offset, offset + length);
-			offset += length;
+		private static final	int	MAX_INITIAL_CAPACITY	= 1 << 16;
 
-			// Extract field: hash value
-			length = HASH_VALUE_FIELD_SIZE;
-			hashValue = Arrays.copyOfRange(data, offset, offset + length);
-			offset += length;
-		}
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
 
-		//--------------------------------------------------------------
+		private	HmacSha256				hash;
+		private	boolean					packFields;
+		private	boolean					chunkSection;
+		private	int						recordSize;
+		private	long					length;
+		private	byte[]					metadata;
+		private	byte[]					hashValue;
+		private	long					elementsEndOffset;
+		private	long					stringTableOffset;
+		private	boolean					malformed;
+		private	byte[]					record;
+		private	int						recordLength;
+		private	int[]					pathOffsets;
+		private	ElementList				elements;
+		private	ChunkTable				chunkTable;
+		private	ByteArrayOutputStream	chunkSectionStream;
+		private	ByteArrayOutputStream	stringTableStream;
 
 	////////////////////////////////////////////////////////////////////
-	//  Instance methods : Comparable interface
+	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		@Override
-		public int compareTo(Element element)
+		private IndexParser(byte[]  key,
+							boolean packFields,
+							boolean chunkSection)
 		{
-			List<String> path1 = getPathComponents();
-			String name1 = path1.remove(path1.size() - 1);
-			List<String> path2 = element.getPathComponents();
-			String name2 = path2.remove(path2.size() - 1);
-
-			int index = 0;
-			while (true)
-			{
-				if (path1.size() == index)
-					return (path2.size() == index) ? name1.compareTo(name2) : -1;
-				else
-				{
-					if (path2.size() == index)
-						return 1;
-				}
-				int result = path1.get(index).compareTo(path2.get(index));
-				if (result != 0)
-					return result;
-				++index;
-			}
+			hash = new HmacSha256(key);
+			this.packFields = packFields;
+			this.chunkSection = chunkSection;
+			recordSize = Element.getRecordSize(packFields);
+			metadata = new byte[METADATA_SIZE];
+			record = new byte[recordSize];
+			if (chunkSection)
+				chunkSectionStream = new ByteArrayOutputStream();
+			stringTableStream = new ByteArrayOutputStream();
 		}
 
 		//--------------------------------------------------------------
 
 	////////////////////////////////////////////////////////////////////
-	//  Instance methods : overriding methods
+	//  Instance methods : StreamEncrypter.IOutput interface
 	////////////////////////////////////////////////////////////////////
 
 		@Override
-		public boolean equals(Object obj)
+		public void write(byte[] data,
+						  int    offset,
+						  int    length)
 		{
-			if (this == obj)
-				return true;
+			while (length > 0)
+			{
+				int blockLength = 0;
 
-			return (obj instanceof Element other) && Objects.equals(path, other.path);
-		}
+				// Metadata
+				if (this.length < METADATA_SIZE)
+				{
+					blockLength = Math.min(length, METADATA_SIZE - (int)this.length);
+					System.arraycopy(data, offset, metadata, (int)this.length, blockLength);
+					if (this.length + blockLength == METADATA_SIZE)
+						parseMetadata();
+				}
 
-		//--------------------------------------------------------------
+				// Elements, string table and any data between them, all of which are covered by the hash value
+				else
+				{
+					if (this.length < elementsEndOffset)
+					{
+						blockLength = (int)Math.min(length, elementsEndOffset - this.length);
+						parseElements(data, offset, blockLength);
+					}
+					else if (this.length < stringTableOffset)
+					{
+						blockLength = (int)Math.min(length, stringTableOffset - this.length);
+						if (chunkSection && !malformed)
+							chunkSectionStream.write(data, offset, blockLength);
+					}
+					else
+					{
+						blockLength = length;
+						if (!malformed)
+							stringTableStream.write(data, offset, blockLength);
+					}
+					hash.update(data, offset, blockLength);
+				}
 
-		@Override
-		public int hashCode()
-		{
-			return Objects.hashCode(path);
+				this.length += blockLength;
+				offset += blockLength;
+				length -= blockLength;
+			}
 		}
 
 		//--------------------------------------------------------------
@@ -2512,70 +5720,114 @@ class ArchiveDocument
 	//  Instance methods
 	////////////////////////////////////////////////////////////////////
 
-		private String getHashValueString()
+		private void parseMetadata()
 		{
-			return hashValueToString(hashValue);
+			// Parse field: string table offset
+			int offset = 0;
+			int length = STRING_TABLE_OFFSET_FIELD_SIZE;
+			stringTableOffset = NumberCodec.bytesToUIntLE(metadata, offset, length) & 0xFFFFFFFFL;
+			offset += length;
+
+			// Parse field: number of elements
+			length = NUM_ELEMENTS_FIELD_SIZE;
+			long numElements = NumberCodec.bytesToUIntLE(metadata, offset, length) & 0xFFFFFFFFL;
+			offset += length;
+
+			// Extract field: hash value
+			length = HASH_VALUE_FIELD_SIZE;
+			hashValue = Arrays.copyOfRange(metadata, offset, offset + length);
+			offset += length;
+
+			// Test whether elements extend beyond start of string table.  If they do, the rest of the data is
+			// hashed but not parsed.
+			elementsEndOffset = METADATA_SIZE + numElements * recordSize;
+			if (elementsEndOffset > stringTableOffset)
+			{
+				malformed = true;
+				elementsEndOffset = stringTableOffset = Long.MAX_VALUE;
+			}
+
+			// Allocate storage for elements
+			int capacity = (int)Math.min(numElements, MAX_INITIAL_CAPACITY);
+			elements = new ElementList(capacity);
+			pathOffsets = new int[capacity];
 		}
 
 		//--------------------------------------------------------------
 
-		private List<String> getPathComponents()
+		private void parseElements(byte[] data,
+								   int    offset,
+								   int    length)
 		{
-			List<String> pathnameComponents = new ArrayList<>();
-			if (path != null)
+			int endOffset = offset + length;
+			while (offset < endOffset)
 			{
-				int index = 0;
-				while (index < path.length())
+				// Parse element directly from data if it is complete ...
+				int recordOffset = offset;
+				byte[] recordData = data;
+				if ((recordLength == 0) && (endOffset - offset >= recordSize))
+					offset += recordSize;
+
+				// ... otherwise, accumulate element in buffer
+				else
 				{
-					int startIndex = index;
-					index = path.indexOf(FILE_SEPARATOR_CHAR, index);
-					if (index < 0)
-						index = path.length();
-					pathnameComponents.add(path.substring(startIndex, index));
-					++index;
+					int blockLength = Math.min(endOffset - offset, recordSize - recordLength);
+					System.arraycopy(data, offset, record, recordLength, blockLength);
+					recordLength += blockLength;
+					offset += blockLength;
+					if (recordLength < recordSize)
+						break;
+					recordOffset = 0;
+					recordData = record;
+					recordLength = 0;
 				}
+
+				// Add element to list
+				int index = elements.size();
+				if (index == pathOffsets.length)
+					pathOffsets = Arrays.copyOf(pathOffsets, index + (index >> 1) + 1);
+				pathOffsets[index] =
+						NumberCodec.bytesToUIntLE(recordData, recordOffset, Element.PATH_OFFSET_FIELD_SIZE);
+				elements.addRecord(recordData, recordOffset, packFields);
 			}
-			return pathnameComponents;
 		}
 
 		//--------------------------------------------------------------
 
-		private byte[] toByteArray(StringTable stringTable)
+		private ElementList finish()
+			throws AppException
 		{
-			byte[] buffer = new byte[SIZE];
-			int offset = 0;
-
-			// Set field: path offset
-			int length = PATH_OFFSET_FIELD_SIZE;
-			NumberCodec.uIntToBytesLE(stringTable.add(path), buffer, offset, length);
-			offset += length;
-
-			// Set field: size
-			length = SIZE_FIELD_SIZE;
-			NumberCodec.uLongToBytesLE(size, buffer, offset, length);
-			offset += length;
+			// Test whether string table is present
+			if ((length < METADATA_SIZE) || (length <= stringTableOffset))
+				throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
 
-			// Set field: timestamp
-			length = TIMESTAMP_FIELD_SIZE;
-			NumberCodec.uLongToBytesLE(timestamp, buffer, offset, length);
-			offset += length;
+			// Test hash value
+			if (!Arrays.equals(hashValue, hash.getValue()))
+				throw new AppException(ErrorId.INCORRECT_ENCRYPTION_KEY);
 
-			// Set field: key
-			length = KEY_FIELD_SIZE;
-			System.arraycopy(key, 0, buffer, offset, length);
-			offset += length;
+			// Parse string table
+			byte[] data = stringTableStream.toByteArray();
+			stringTableStream = null;
+			StringTable stringTable = new StringTable(data, 0, data.length);
 
-			// Set field: salt
-			length = SALT_FIELD_SIZE;
-			System.arraycopy(salt, 0, buffer, offset, length);
-			offset += length;
+			// Set paths of elements from string table
+			for (int i = 0; i < elements.size(); i++)
+			{
+				String path = stringTable.get(pathOffsets[i]);
+				if (path == null)
+					throw new AppException(ErrorId.MALFORMED_LIST_ARCHIVE_FILE);
+				elements.setPath(i, path);
+			}
 
-			// Set field: hash value
-			length = HASH_VALUE_FIELD_SIZE;
-			System.arraycopy(hashValue, 0, buffer, offset, length);
-			offset += length;
+			// Parse table of chunks and set chunk indices of elements
+			if (chunkSection)
+			{
+				data = chunkSectionStream.toByteArray();
+				chunkSectionStream = null;
+				chunkTable = ChunkTable.parse(data, elements);
+			}
 
-			return buffer;
+			return elements;
 		}
 
 		//--------------------------------------------------------------
@@ -2744,23 +5996,22 @@ class ArchiveDocument
 			Object value = null;
 			if (row < elements.size())
 			{
-				Element element = elements.get(row);
 				switch (columns.get(column))
 				{
 					case PATH:
-						value = element.path;
+						value = elements.getPath(row);
 						break;
 
 					case SIZE:
-						value = Long.toString(element.size);
+						value = Long.toString(elements.getSize(row));
 						break;
 
 					case TIMESTAMP:
-						value = CalendarTime.timeToString(element.timestamp, "  ");
+						value = CalendarTime.timeToString(elements.getTimestamp(row), "  ");
 						break;
 
 					case HASH_VALUE:
-						value = element.getHashValueString();
+						value = elements.getHashValueString(row);
 						break;
 				}
 			}
@@ -2773,6 +6024,222 @@ class ArchiveDocument
 
 	//==================================================================
 
+
+	// CLASS: PACK-FILE WRITER
+
+
+	// This class implements a writer of pack files, each of which is a file in the archive directory that contains the
+	// encrypted forms of several small files, one after another.  Encrypted files are appended to the current pack file
+	// until its length reaches a threshold, when it is closed and a new pack file is started by the next append.  The
+	// name of a pack file is a random hash value whose key is not that of an element of the archive.  Encrypted files
+	// may be appended concurrently.
+	private class PackWriter
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	Fortuna				prng;
+		private	Set<Long>			hashValueKeys;
+		private	Set<Long>			newHashValueKeys;
+		private	List<String>		hashValueStrs;
+		private	byte[]				hashValue;
+		private	File				file;
+		private	FileOutputStream	outStream;
+		private	long				length;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private PackWriter(Fortuna   prng,
+						   Set<Long> hashValueKeys,
+						   Set<Long> newHashValueKeys)
+		{
+			this.prng = prng;
+			this.hashValueKeys = hashValueKeys;
+			this.newHashValueKeys = newHashValueKeys;
+			hashValueStrs = new ArrayList<>();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private synchronized PackLocation append(byte[] data)
+			throws AppException
+		{
+			// Start a new pack file if there is no current one
+			if (outStream == null)
+				open();
+
+			// Write data to pack file.  If the data cannot be written, the pack file is closed, so that the data of
+			// the next append does not follow a partial write.
+			try
+			{
+				outStream.write(data);
+			}
+			catch (IOException e)
+			{
+				File file = this.file;
+				try
+				{
+					close();
+				}
+				catch (AppException e1)
+				{
+					// ignore
+				}
+				throw new FileException(ErrorId.ERROR_WRITING_FILE, file, e);
+			}
+
+			// Get location of data in pack file
+			PackLocation location = new PackLocation(hashValue, length, data.length);
+			length += data.length;
+
+			// Close pack file if it has reached its maximum length
+			if (length >= PACK_FILE_LENGTH)
+				close();
+
+			return location;
+		}
+
+		//--------------------------------------------------------------
+
+		// Returns the hash-value strings of the pack files that have been created by this writer.
+		private synchronized List<String> getHashValueStrings()
+		{
+			return new ArrayList<>(hashValueStrs);
+		}
+
+		//--------------------------------------------------------------
+
+		private synchronized void close()
+			throws AppException
+		{
+			if (outStream != null)
+			{
+				try
+				{
+					outStream.close();
+				}
+				catch (IOException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, file, e);
+				}
+				finally
+				{
+					outStream = null;
+				}
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		private void open()
+			throws AppException
+		{
+			// Generate a random hash value whose key is not that of an element of the archive.  The key is reserved in
+			// the set of new keys, which is shared with any other files that are being encrypted concurrently.
+			byte[] hashValue = null;
+			while (hashValue == null)
+			{
+				hashValue = prng.getRandomBytes(FILE_HASH_VALUE_SIZE);
+				long hashValueKey = Element.getHashValueKey(hashValue, 0);
+				if (hashValueKeys.contains(hashValueKey) || !newHashValueKeys.add(hashValueKey))
+					hashValue = null;
+			}
+
+			// Create parent directory of pack file
+			String hashValueStr = hashValueToString(hashValue);
+			File file = getMemberFile(hashValueStr, sharded);
+			createParentDirectory(file);
+
+			// Open output stream on pack file
+			try
+			{
+				outStream = new FileOutputStream(file);
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+			}
+
+			// Initialise instance variables
+			hashValueStrs.add(hashValueStr);
+			this.hashValue = hashValue;
+			this.file = file;
+			length = 0;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: PROGRESS LISTENER OF WORKER
+
+
+	// This class implements a progress listener for a file that is processed by a worker thread.  The progress of the
+	// file is folded into the overall progress of the task, and the file is abandoned if the task is cancelled or if
+	// the workers are cancelled.
+	private class WorkerProgressListener
+		implements IProgressListener
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	TaskProgressDialog	progressView;
+		private	int					index;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private WorkerProgressListener(TaskProgressDialog progressView,
+									   int                index)
+		{
+			this.progressView = progressView;
+			this.index = index;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IProgressListener interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setProgress(double fractionDone)
+		{
+			progressView.setPartProgress(index, fractionDone);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public boolean isTaskCancelled()
+		{
+			return workersCancelled || progressView.isTaskCancelled();
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
 }
 
 //----------------------------------------------------------------------
@@ -0,0 +1,748 @@
+/*====================================================================*\
+
+ArchiveJournal.java
+
+Archive journal class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.channels.OverlappingFileLockException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.List;
+
+import uk.blankaspect.common.crypto.HmacSha256;
+import uk.blankaspect.common.crypto.StreamEncrypter;
+
+import uk.blankaspect.common.exception.AppException;
+import uk.blankaspect.common.exception.FileException;
+
+import uk.blankaspect.common.number.NumberCodec;
+
+//----------------------------------------------------------------------
+
+
+// ARCHIVE JOURNAL CLASS
+
+
+// This class implements an encrypted, append-only journal of changes to the index of an archive.  A journal is stored
+// in a file next to the archive file, and it is bound to the content of the archive file by the hash value of that
+// content.
+//
+// The header of the journal contains the salt and the parameters of the key-derivation function from which the master
+// key of the journal is derived, so the KDF is run once when a journal is created or opened, and not when records are
+// appended.  Each append adds a block of records that is encrypted with a StreamEncrypter with a key that is derived
+// from the master key and a random nonce with HKDF-SHA256.  A block starts with its sequence number, so that blocks
+// cannot be reordered or removed from the middle of the journal.  The header contains the number of blocks, and it is
+// authenticated again after each append, so that removing blocks from the end of the journal is detected as truncation.
+//
+// The archive file ends with an anchor that records the state of the journal: the salt of the journal, which
+// identifies it, and the number of blocks in it.  The anchor is authenticated with a key that is derived from the hash
+// value of the content of the archive file, which is stored only in the encrypted part of the archive file, and it is
+// rewritten in place after each append.  A journal that has been deleted, or that has been replaced by another journal
+// or by an earlier copy of itself, does not match the anchor.  A journal that has more blocks than the anchor records
+// matches it, because the anchor is written after the block.  The journal and the archive file can still be replaced
+// together by earlier copies of both.
+//
+// The content of a record is opaque to the journal.
+class ArchiveJournal
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	public static final		String	FILENAME_SUFFIX	= ".journal";
+
+	private static final	int		ID	= 0x4A2E91C7;
+
+	private static final	int		VERSION					= 0;
+	private static final	int		MIN_SUPPORTED_VERSION	= VERSION;
+	private static final	int		MAX_SUPPORTED_VERSION	= VERSION;
+
+	private static final	int		ID_FIELD_SIZE				= 4;
+	private static final	int		VERSION_FIELD_SIZE			= 2;
+	private static final	int		SALT_FIELD_SIZE				= StreamEncrypter.SALT_SIZE;
+	private static final	int		KDF_PARAMETERS_FIELD_SIZE	= 4;
+	private static final	int		INDEX_HASH_VALUE_FIELD_SIZE	= HmacSha256.HASH_VALUE_SIZE;
+	private static final	int		NUM_BLOCKS_FIELD_SIZE		= 8;
+	private static final	int		HASH_VALUE_FIELD_SIZE		= HmacSha256.HASH_VALUE_SIZE;
+
+	private static final	int		SALT_OFFSET				= ID_FIELD_SIZE + VERSION_FIELD_SIZE;
+	private static final	int		INDEX_HASH_VALUE_OFFSET	= SALT_OFFSET + SALT_FIELD_SIZE + KDF_PARAMETERS_FIELD_SIZE;
+	private static final	int		NUM_BLOCKS_OFFSET		= INDEX_HASH_VALUE_OFFSET + INDEX_HASH_VALUE_FIELD_SIZE;
+	private static final	int		HASH_VALUE_OFFSET		= NUM_BLOCKS_OFFSET + NUM_BLOCKS_FIELD_SIZE;
+	private static final	int		HEADER_SIZE				= HASH_VALUE_OFFSET + HASH_VALUE_FIELD_SIZE;
+
+	private static final	int		ANCHOR_NUM_BLOCKS_OFFSET	= SALT_FIELD_SIZE;
+	private static final	int		ANCHOR_HASH_VALUE_OFFSET	= ANCHOR_NUM_BLOCKS_OFFSET + NUM_BLOCKS_FIELD_SIZE;
+	public static final		int		ANCHOR_SIZE					= ANCHOR_HASH_VALUE_OFFSET + HASH_VALUE_FIELD_SIZE;
+
+	private static final	int		NONCE_FIELD_SIZE		= 16;
+	private static final	int		BLOCK_LENGTH_FIELD_SIZE	= 4;
+	private static final	int		BLOCK_HEADER_SIZE		= NONCE_FIELD_SIZE + BLOCK_LENGTH_FIELD_SIZE;
+
+	private static final	int		SEQUENCE_NUMBER_FIELD_SIZE	= 8;
+	private static final	int		RECORD_LENGTH_FIELD_SIZE	= 4;
+
+	private static final	byte[]	HEADER_KEY_LABEL	= "qana-journal-header".getBytes(StandardCharsets.US_ASCII);
+	private static final	byte[]	BLOCK_KEY_LABEL		= "qana-journal-block".getBytes(StandardCharsets.US_ASCII);
+	private static final	byte[]	ANCHOR_KEY_LABEL	= "qana-journal-anchor".getBytes(StandardCharsets.US_ASCII);
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	File		file;
+	private	KeyList.Key	key;
+	private	byte[]		header;
+	private	byte[]		masterKey;
+	private	long		length;
+	private	long		numBlocks;
+	private	boolean		truncated;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private ArchiveJournal(File        file,
+						   KeyList.Key key,
+						   byte[]      header,
+						   byte[]      masterKey)
+	{
+		this.file = file;
+		this.key = key;
+		this.header = header;
+		this.masterKey = masterKey;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	public static File getFile(File archiveFile)
+	{
+		return new File(archiveFile.getPath() + FILENAME_SUFFIX);
+	}
+
+	//------------------------------------------------------------------
+
+	// Creates a journal for the archive file whose content has the specified hash value.  The journal file is not
+	// written until records are first appended to the journal; any existing file is then replaced.
+	public static ArchiveJournal create(File        file,
+										KeyList.Key key,
+										byte[]      indexHashValue)
+		throws AppException
+	{
+		// Generate salt
+		byte[] salt = QanaApp.INSTANCE.getRandomBytes(SALT_FIELD_SIZE);
+
+		// Set fields of header
+		StreamEncrypter.KdfParams kdfParams = key.getKdfParamsGen();
+		byte[] header = new byte[HEADER_SIZE];
+		int offset = 0;
+
+		int length = ID_FIELD_SIZE;
+		NumberCodec.uIntToBytesLE(ID, header, offset, length);
+		offset += length;
+
+		length = VERSION_FIELD_SIZE;
+		NumberCodec.uIntToBytesLE(VERSION, header, offset, length);
+		offset += length;
+
+		length = SALT_FIELD_SIZE;
+		System.arraycopy(salt, 0, header, offset, length);
+		offset += length;
+
+		length = KDF_PARAMETERS_FIELD_SIZE;
+		NumberCodec.uIntToBytesLE(kdfParams.getEncodedValue(false), header, offset, length);
+		for (int i = 0; i < length; i++)
+			header[offset + i] ^= salt[i];
+		offset += length;
+
+		length = INDEX_HASH_VALUE_FIELD_SIZE;
+		System.arraycopy(indexHashValue, 0, header, offset, length);
+		offset += length;
+
+		length = NUM_BLOCKS_FIELD_SIZE;
+		NumberCodec.uLongToBytesLE(0, header, offset, length);
+		offset += length;
+
+		// Derive master key
+		byte[] masterKey = StreamEncrypter.deriveKey(key.getKey(), salt, kdfParams, QanaApp.INSTANCE::generateKey);
+
+		// Set hash value of header
+		System.arraycopy(getHeaderHashValue(header, masterKey), 0, header, offset, HASH_VALUE_FIELD_SIZE);
+
+		return new ArchiveJournal(file, key, header, masterKey);
+	}
+
+	//------------------------------------------------------------------
+
+	// Opens the specified journal file and adds the records in it to the specified list.  If the journal belongs to a
+	// different version of the archive file (ie, the hash value of the archive file is not the one with which the
+	// journal was created), the records are ignored and null is returned.  If the journal ends with a block that is
+	// incomplete or invalid, the block and anything that follows it are ignored, and the journal is marked as
+	// truncated.  The journal is also marked as truncated if it has fewer valid blocks than the number that is recorded
+	// in its header, or if it has data after that number of blocks.
+	public static ArchiveJournal open(File         file,
+									  KeyList.Key  key,
+									  byte[]       indexHashValue,
+									  List<byte[]> records)
+		throws AppException
+	{
+		RandomAccessFile raFile = null;
+		try
+		{
+			// Open file
+			try
+			{
+				raFile = new RandomAccessFile(file, "r");
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+			}
+
+			// Lock file
+			try
+			{
+				if (raFile.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
+			}
+			catch (OverlappingFileLockException e)
+			{
+				// ignore
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+			}
+
+			// Read header
+			long fileLength = 0;
+			byte[] header = new byte[HEADER_SIZE];
+			try
+			{
+				fileLength = raFile.length();
+				if (fileLength < HEADER_SIZE)
+					throw new FileException(ErrorId.NOT_A_JOURNAL_FILE, file);
+				raFile.readFully(header);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+			}
+
+			// Parse field: ID
+			int offset = 0;
+			int length = ID_FIELD_SIZE;
+			if (NumberCodec.bytesToUIntLE(header, offset, length) != ID)
+				throw new FileException(ErrorId.NOT_A_JOURNAL_FILE, file);
+			offset += length;
+
+			// Parse field: version
+			length = VERSION_FIELD_SIZE;
+			int version = NumberCodec.bytesToUIntLE(header, offset, length);
+			offset += length;
+			if ((version < MIN_SUPPORTED_VERSION) || (version > MAX_SUPPORTED_VERSION))
+				throw new FileException(ErrorId.UNSUPPORTED_JOURNAL_VERSION, file, Integer.toString(version));
+
+			// Extract field: salt
+			length = SALT_FIELD_SIZE;
+			byte[] salt = Arrays.copyOfRange(header, offset, offset + length);
+			offset += length;
+
+			// Parse field: KDF parameters
+			length = KDF_PARAMETERS_FIELD_SIZE;
+			byte[] paramData = Arrays.copyOfRange(header, offset, offset + length);
+			for (int i = 0; i < paramData.length; i++)
+				paramData[i] ^= salt[i];
+			StreamEncrypter.KdfParams kdfParams = new StreamEncrypter.KdfParams(NumberCodec.bytesToUIntLE(paramData));
+			kdfParams.maxNumThreads = key.getKdfParamsGen().maxNumThreads;
+			offset += length;
+
+			// Test field: hash value of archive file
+			length = INDEX_HASH_VALUE_FIELD_SIZE;
+			if (!Arrays.equals(header, offset, offset + length, indexHashValue, 0, indexHashValue.length))
+				return null;
+			offset += length;
+
+			// Parse field: number of blocks
+			length = NUM_BLOCKS_FIELD_SIZE;
+			long numBlocks = NumberCodec.bytesToULongLE(header, offset, length);
+			offset += length;
+
+			// Derive master key
+			byte[] masterKey = StreamEncrypter.deriveKey(key.getKey(), salt, kdfParams,
+														 QanaApp.INSTANCE::generateKey);
+			if (masterKey == null)
+				throw new FileException(ErrorId.INVALID_KEY_DERIVATION_PARAMETERS, file);
+
+			// Test field: hash value of header
+			length = HASH_VALUE_FIELD_SIZE;
+			if (!Arrays.equals(header, offset, offset + length, getHeaderHashValue(header, masterKey), 0, length))
+				throw new FileException(ErrorId.INCORRECT_KEY, file);
+			offset += length;
+
+			// Create journal
+			ArchiveJournal journal = new ArchiveJournal(file, key, header, masterKey);
+			journal.length = HEADER_SIZE;
+
+			// Read blocks
+			try
+			{
+				while ((journal.numBlocks < numBlocks) && (journal.length < fileLength))
+				{
+					// Read block header
+					if (fileLength - journal.length < BLOCK_HEADER_SIZE)
+						break;
+					byte[] blockHeader = new byte[BLOCK_HEADER_SIZE];
+					raFile.readFully(blockHeader);
+					byte[] nonce = Arrays.copyOf(blockHeader, NONCE_FIELD_SIZE);
+					long blockLength = NumberCodec.bytesToUIntLE(blockHeader, NONCE_FIELD_SIZE, BLOCK_LENGTH_FIELD_SIZE)
+											& 0xFFFFFFFFL;
+					if (blockLength > fileLength - journal.length - BLOCK_HEADER_SIZE)
+						break;
+
+					// Read and decrypt block
+					byte[] data = new byte[(int)blockLength];
+					raFile.readFully(data);
+					byte[] content = journal.decryptBlock(nonce, data);
+					if (content == null)
+						break;
+
+					// Add records of block to list
+					if (!journal.parseBlock(content, records))
+						break;
+
+					// Update journal
+					journal.length += BLOCK_HEADER_SIZE + blockLength;
+					++journal.numBlocks;
+				}
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_READING_FILE, file, e);
+			}
+			journal.truncated = (journal.numBlocks < numBlocks) || (journal.length < fileLength);
+
+			// Close file
+			try
+			{
+				raFile.close();
+				raFile = null;
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, file, e);
+			}
+
+			return journal;
+		}
+		catch (AppException e)
+		{
+			// Close file
+			try
+			{
+				if (raFile != null)
+					raFile.close();
+			}
+			catch (IOException e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the anchor of an archive file whose content has the specified hash value and which has no journal.
+	public static byte[] createAnchor(byte[] indexHashValue)
+	{
+		return createAnchor(new byte[SALT_FIELD_SIZE], 0, indexHashValue);
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns true if the specified anchor of the archive file whose content has the specified hash value is authentic
+	// and matches the specified journal, which may be null if the archive file has no journal.  An anchor that records
+	// no blocks matches any journal, including a missing one.
+	public static boolean matchesAnchor(ArchiveJournal journal,
+										byte[]         anchor,
+										byte[]         indexHashValue)
+	{
+		// Test hash value of anchor
+		if ((anchor.length != ANCHOR_SIZE)
+				|| !Arrays.equals(anchor, ANCHOR_HASH_VALUE_OFFSET, ANCHOR_SIZE,
+								  getAnchorHashValue(anchor, indexHashValue), 0, HASH_VALUE_FIELD_SIZE))
+			return false;
+
+		// Test salt and number of blocks of journal
+		long numBlocks = NumberCodec.bytesToULongLE(anchor, ANCHOR_NUM_BLOCKS_OFFSET, NUM_BLOCKS_FIELD_SIZE);
+		return (numBlocks == 0)
+				|| ((journal != null) && (journal.numBlocks >= numBlocks)
+						&& Arrays.equals(journal.header, SALT_OFFSET, SALT_OFFSET + SALT_FIELD_SIZE,
+										 anchor, 0, SALT_FIELD_SIZE));
+	}
+
+	//------------------------------------------------------------------
+
+	private static byte[] createAnchor(byte[] salt,
+									   long   numBlocks,
+									   byte[] indexHashValue)
+	{
+		byte[] anchor = new byte[ANCHOR_SIZE];
+		System.arraycopy(salt, 0, anchor, 0, SALT_FIELD_SIZE);
+		NumberCodec.uLongToBytesLE(numBlocks, anchor, ANCHOR_NUM_BLOCKS_OFFSET, NUM_BLOCKS_FIELD_SIZE);
+		System.arraycopy(getAnchorHashValue(anchor, indexHashValue), 0, anchor, ANCHOR_HASH_VALUE_OFFSET,
+						 HASH_VALUE_FIELD_SIZE);
+		return anchor;
+	}
+
+	//------------------------------------------------------------------
+
+	private static byte[] getAnchorHashValue(byte[] anchor,
+											 byte[] indexHashValue)
+	{
+		return new HmacSha256(HmacSha256.hkdfExpand(indexHashValue, ANCHOR_KEY_LABEL, HmacSha256.HASH_VALUE_SIZE))
+				.getValue(anchor, 0, ANCHOR_HASH_VALUE_OFFSET);
+	}
+
+	//------------------------------------------------------------------
+
+	private static byte[] getHeaderHashValue(byte[] header,
+											 byte[] masterKey)
+	{
+		return new HmacSha256(HmacSha256.hkdfExpand(masterKey, HEADER_KEY_LABEL, HmacSha256.HASH_VALUE_SIZE))
+				.getValue(header, 0, HASH_VALUE_OFFSET);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	// Returns the length of the valid part of the journal file.
+	public long getLength()
+	{
+		return length;
+	}
+
+	//------------------------------------------------------------------
+
+	public boolean isTruncated()
+	{
+		return truncated;
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the anchor of the archive file to which the journal belongs, which records the current state of the
+	// journal.
+	public byte[] getAnchor()
+	{
+		return createAnchor(Arrays.copyOfRange(header, SALT_OFFSET, SALT_OFFSET + SALT_FIELD_SIZE), numBlocks,
+							Arrays.copyOfRange(header, INDEX_HASH_VALUE_OFFSET, NUM_BLOCKS_OFFSET));
+	}
+
+	//------------------------------------------------------------------
+
+	// Appends a block that contains the specified records to the journal file.  If the journal file has not been
+	// written, it is created; otherwise, any invalid data at the end of the file is overwritten.  The header is written
+	// after the block, with the new number of blocks, so that a journal whose header was not written is treated as
+	// truncated when it is opened.
+	public void append(List<byte[]> records)
+		throws AppException
+	{
+		// Create content of block
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[SEQUENCE_NUMBER_FIELD_SIZE];
+		NumberCodec.uLongToBytesLE(numBlocks, buffer, 0, SEQUENCE_NUMBER_FIELD_SIZE);
+		outStream.write(buffer, 0, SEQUENCE_NUMBER_FIELD_SIZE);
+		for (byte[] record : records)
+		{
+			NumberCodec.uIntToBytesLE(record.length, buffer, 0, RECORD_LENGTH_FIELD_SIZE);
+			outStream.write(buffer, 0, RECORD_LENGTH_FIELD_SIZE);
+			outStream.write(record, 0, record.length);
+		}
+		byte[] content = outStream.toByteArray();
+
+		// Encrypt block
+		byte[] nonce = QanaApp.INSTANCE.getRandomBytes(NONCE_FIELD_SIZE);
+		outStream = new ByteArrayOutputStream();
+		outStream.write(nonce, 0, nonce.length);
+		outStream.write(new byte[BLOCK_LENGTH_FIELD_SIZE], 0, BLOCK_LENGTH_FIELD_SIZE);
+		new StreamEncrypter(Utils.getCipher(key)).encrypt(new ByteArrayInputStream(content), outStream,
+														  content.length, 0, getBlockKey(nonce),
+														  QanaApp.INSTANCE.getRandomKey(), null);
+		byte[] block = outStream.toByteArray();
+		NumberCodec.uIntToBytesLE(block.length - BLOCK_HEADER_SIZE, block, NONCE_FIELD_SIZE, BLOCK_LENGTH_FIELD_SIZE);
+
+		// Update number of blocks and hash value of header
+		byte[] newHeader = header.clone();
+		NumberCodec.uLongToBytesLE(numBlocks + 1, newHeader, NUM_BLOCKS_OFFSET, NUM_BLOCKS_FIELD_SIZE);
+		System.arraycopy(getHeaderHashValue(newHeader, masterKey), 0, newHeader, HASH_VALUE_OFFSET,
+						 HASH_VALUE_FIELD_SIZE);
+
+		// Write block
+		RandomAccessFile raFile = null;
+		try
+		{
+			// Open file
+			try
+			{
+				raFile = new RandomAccessFile(file, "rw");
+			}
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, file, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, file, e);
+			}
+
+			// Lock file
+			try
+			{
+				if (raFile.getChannel().tryLock() == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file);
+			}
+			catch (OverlappingFileLockException e)
+			{
+				// ignore
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, file, e);
+			}
+
+			// Write block, then header
+			long newLength = length;
+			try
+			{
+				if (length == 0)
+				{
+					raFile.setLength(0);
+					newLength = HEADER_SIZE;
+				}
+				raFile.seek(newLength);
+				raFile.write(block);
+				newLength += block.length;
+				raFile.setLength(newLength);
+				raFile.seek(0);
+				raFile.write(newHeader);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.ERROR_WRITING_FILE, file, e);
+			}
+
+			// Close file
+			try
+			{
+				raFile.close();
+				raFile = null;
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, file, e);
+			}
+
+			// Update journal
+			header = newHeader;
+			length = newLength;
+			++numBlocks;
+			truncated = false;
+		}
+		catch (AppException e)
+		{
+			// Close file
+			try
+			{
+				if (raFile != null)
+					raFile.close();
+			}
+			catch (IOException e1)
+			{
+				// ignore
+			}
+
+			// Rethrow exception
+			throw e;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private byte[] getBlockKey(byte[] nonce)
+	{
+		byte[] info = Arrays.copyOf(BLOCK_KEY_LABEL, BLOCK_KEY_LABEL.length + nonce.length);
+		System.arraycopy(nonce, 0, info, BLOCK_KEY_LABEL.length, nonce.length);
+		return HmacSha256.hkdfExpand(masterKey, info, StreamEncrypter.DERIVED_KEY_SIZE);
+	}
+
+	//------------------------------------------------------------------
+
+	private byte[] decryptBlock(byte[] nonce,
+								byte[] data)
+	{
+		try
+		{
+			ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+			new StreamEncrypter(null).decrypt(new ByteArrayInputStream(data), outStream, data.length,
+											  getBlockKey(nonce), null);
+			return outStream.toByteArray();
+		}
+		catch (AppException e)
+		{
+			return null;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private boolean parseBlock(byte[]       content,
+							   List<byte[]> records)
+	{
+		// Test sequence number
+		if ((content.length < SEQUENCE_NUMBER_FIELD_SIZE)
+				|| (NumberCodec.bytesToULongLE(content, 0, SEQUENCE_NUMBER_FIELD_SIZE) != numBlocks))
+			return false;
+
+		// Split content into records
+		int numRecords = records.size();
+		int offset = SEQUENCE_NUMBER_FIELD_SIZE;
+		while (offset < content.length)
+		{
+			int length = (content.length - offset < RECORD_LENGTH_FIELD_SIZE)
+								? -1
+								: NumberCodec.bytesToUIntLE(content, offset, RECORD_LENGTH_FIELD_SIZE);
+			offset += RECORD_LENGTH_FIELD_SIZE;
+			if ((length < 0) || (length > content.length - offset))
+			{
+				records.subList(numRecords, records.size()).clear();
+				return false;
+			}
+			records.add(Arrays.copyOfRange(content, offset, offset + length));
+			offset += length;
+		}
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Enumerated types
+////////////////////////////////////////////////////////////////////////
+
+
+	// ENUMERATION: ERROR IDENTIFIERS
+
+
+	private enum ErrorId
+		implements AppException.IId
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		FAILED_TO_OPEN_FILE
+		("Failed to open the journal file."),
+
+		FAILED_TO_CLOSE_FILE
+		("Failed to close the journal file."),
+
+		FAILED_TO_LOCK_FILE
+		("Failed to lock the journal file."),
+
+		ERROR_READING_FILE
+		("An error occurred when reading the journal file."),
+
+		ERROR_WRITING_FILE
+		("An error occurred when writing the journal file."),
+
+		FILE_ACCESS_NOT_PERMITTED
+		("Access to the journal file was not permitted."),
+
+		NOT_A_JOURNAL_FILE
+		("The file is not an archive journal."),
+
+		UNSUPPORTED_JOURNAL_VERSION
+		("The version of the archive journal (%1) is not supported by this version of " + QanaApp.SHORT_NAME + "."),
+
+		INVALID_KEY_DERIVATION_PARAMETERS
+		("The parameters of the key-derivation function of the archive journal are invalid."),
+
+		INCORRECT_KEY
+		("The current key does not match the one that was used to create the archive journal.");
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	String	message;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ErrorId(String message)
+		{
+			this.message = message;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : AppException.IId interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public String getMessage()
+		{
+			return message;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
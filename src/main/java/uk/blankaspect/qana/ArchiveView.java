@@ -541,6 +541,7 @@ class ArchiveView
 				menu.addSeparator();
 
 				menu.add(new FMenuItem(ArchiveDocument.Command.ADD_FILES));
+				menu.add(new FMenuItem(ArchiveDocument.Command.UPDATE_FILES));
 				menu.add(new FMenuItem(ArchiveDocument.Command.EXTRACT_FILES));
 				menu.add(new FMenuItem(ArchiveDocument.Command.VALIDATE_FILES));
 				menu.add(new FMenuItem(ArchiveDocument.Command.DELETE_FILES));
@@ -0,0 +1,505 @@
+/*====================================================================*\
+
+BatchProcessor.java
+
+Batch processor class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.blankaspect.common.crypto.FortunaCipher;
+
+import uk.blankaspect.common.exception.AppException;
+import uk.blankaspect.common.exception.TaskCancelledException;
+
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
+
+import uk.blankaspect.common.misc.IProgressListener;
+import uk.blankaspect.common.misc.TaskContext;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.common.ui.progress.IProgressView;
+
+//----------------------------------------------------------------------
+
+
+// BATCH PROCESSOR CLASS
+
+
+// This class encrypts, decrypts or validates a set of files with a single key.  The files are processed concurrently on
+// a pool of threads, and the progress of each file is folded into the overall progress of the task, weighted by the
+// length of the file.  The failure of one file does not stop the processing of the others; the outcome of each file is
+// returned to the caller.
+class BatchProcessor
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	int				numThreads;
+	private	AtomicInteger	threadIndex;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	public BatchProcessor(int numThreads)
+	{
+		this.numThreads = numThreads;
+		threadIndex = new AtomicInteger();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	// Returns those of the specified jobs whose output file is the input file or output file of another job, or whose
+	// input file is the output file of another job, in the order of the jobs.  (For example, if the files 'x' and
+	// 'x.qana' are processed together, the encryption of 'x' would replace 'x.qana' and the decryption of 'x.qana'
+	// would replace 'x'.)  The outcome of such jobs would depend on the order in which they were performed, so they
+	// should not be processed.
+	public static List<Job> getConflictingJobs(List<Job> jobs)
+	{
+		// Count the jobs that read or write each file
+		Map<File, Integer> inFileCounts = new HashMap<>();
+		Map<File, Integer> outFileCounts = new HashMap<>();
+		for (Job job : jobs)
+		{
+			inFileCounts.merge(getNormalisedFile(job.inFile()), 1, Integer::sum);
+			if (job.outFile() != null)
+				outFileCounts.merge(getNormalisedFile(job.outFile()), 1, Integer::sum);
+		}
+
+		// Find the jobs that write a file that is read or written by another job, or read a file that another job
+		// writes
+		List<Job> conflictingJobs = new ArrayList<>();
+		for (Job job : jobs)
+		{
+			File inFile = getNormalisedFile(job.inFile());
+			boolean conflicting = outFileCounts.containsKey(inFile);
+			if (!conflicting && (job.outFile() != null))
+			{
+				File outFile = getNormalisedFile(job.outFile());
+				conflicting = inFileCounts.containsKey(outFile) || (outFileCounts.get(outFile) > 1);
+			}
+			if (conflicting)
+				conflictingJobs.add(job);
+		}
+		return conflictingJobs;
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the canonical form of the specified file, or its absolute form if the canonical form cannot be
+	// determined.
+	private static File getNormalisedFile(File file)
+	{
+		try
+		{
+			return file.getCanonicalFile();
+		}
+		catch (IOException e)
+		{
+			return file.getAbsoluteFile();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	// Processes the specified jobs with the specified key, and returns the results of the jobs in the order of the
+	// jobs.  A TaskCancelledException is thrown if the task is interrupted.
+	public List<Result> process(List<Job>   jobs,
+								KeyList.Key key)
+		throws AppException
+	{
+		// Initialise progress of jobs, weighted by the lengths of their input files
+		ITaskProgressView progressView = (ITaskProgressView)Task.getProgressView();
+		long[] lengths = new long[jobs.size()];
+		for (int i = 0; i < lengths.length; i++)
+			lengths[i] = Math.max(1, jobs.get(i).inFile.length());
+		progressView.initPartProgress(lengths);
+
+		// Perform jobs on pool of threads
+		TaskContext context = Task.getContext();
+		FortunaCipher cipher = Utils.getCipher(key);
+		Result[] results = new Result[jobs.size()];
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, jobs.size()), runnable ->
+				DaemonFactory.create(getClass().getSimpleName() + "-" + threadIndex.getAndIncrement(), runnable));
+		try
+		{
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < results.length; i++)
+			{
+				int index = i;
+				futures.add(executor.submit(() -> context.call(() ->
+				{
+					PartProgressView partProgressView = new PartProgressView(progressView, index, context);
+					results[index] = performJob(jobs.get(index), key, cipher, partProgressView);
+					progressView.setPartProgress(index, 1.0);
+					return null;
+				})));
+			}
+
+			// Wait for all jobs to finish
+			for (Future<?> future : futures)
+			{
+				try
+				{
+					future.get();
+				}
+				catch (InterruptedException e)
+				{
+					context.cancel();
+					throw new TaskCancelledException();
+				}
+				catch (ExecutionException e)
+				{
+					context.cancel();
+					throw new UnexpectedRuntimeException(e.getCause());
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		// Return results
+		return Arrays.asList(results);
+	}
+
+	//------------------------------------------------------------------
+
+	private Result performJob(Job              job,
+							  KeyList.Key      key,
+							  FortunaCipher    cipher,
+							  PartProgressView progressView)
+	{
+		// Test whether task was cancelled before job started
+		if (progressView.isTaskCancelled())
+			return new Result(job, Status.CANCELLED, null);
+
+		// Perform job in its own context, so that the progress of the job is reported to its own view
+		AppException[] exception = new AppException[1];
+		TaskContext jobContext = new TaskContext();
+		jobContext.setProgressView(progressView);
+		jobContext.run(() ->
+		{
+			try
+			{
+				switch (job.operation)
+				{
+					case ENCRYPT:
+						key.getFileEncrypter(cipher, QanaApp.getEncryptionHeader())
+								.encrypt(job.inFile, job.outFile, key.getKey(), QanaApp.INSTANCE.getRandomKey(),
+										 QanaApp.INSTANCE::generateKey);
+						break;
+
+					case DECRYPT:
+						key.getFileEncrypter(null, QanaApp.getEncryptionHeader())
+								.decrypt(job.inFile, job.outFile, key.getKey(), QanaApp.INSTANCE::generateKey);
+						break;
+
+					case VALIDATE:
+						key.getFileEncrypter(null, QanaApp.getEncryptionHeader())
+								.validate(job.inFile, key.getKey(), QanaApp.INSTANCE::generateKey);
+						break;
+				}
+			}
+			catch (AppException e)
+			{
+				exception[0] = e;
+			}
+		});
+
+		// Return result of job
+		if (exception[0] instanceof TaskCancelledException)
+			return new Result(job, Status.CANCELLED, null);
+		if (exception[0] != null)
+			return new Result(job, Status.FAILED, exception[0].toString());
+		return new Result(job, Status.SUCCEEDED, null);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Enumerated types
+////////////////////////////////////////////////////////////////////////
+
+
+	// OPERATIONS
+
+
+	enum Operation
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		ENCRYPT   ("Encrypt"),
+		DECRYPT   ("Decrypt"),
+		VALIDATE  ("Validate");
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Operation(String text)
+		{
+			this.text = text;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public String toString()
+		{
+			return text;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	String	text;
+
+	}
+
+	//==================================================================
+
+
+	// STATUSES OF JOBS
+
+
+	enum Status
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		SUCCEEDED ("OK"),
+		FAILED    ("Failed"),
+		CANCELLED ("Cancelled"),
+		SKIPPED   ("Skipped");
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Status(String text)
+		{
+			this.text = text;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public String toString()
+		{
+			return text;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	String	text;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// JOB RECORD
+
+
+	record Job(Operation operation,
+			   File      inFile,
+			   File      outFile)
+	{ }
+
+	//==================================================================
+
+
+	// RESULT RECORD
+
+
+	record Result(Job    job,
+				  Status status,
+				  String message)
+	{ }
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// PART PROGRESS VIEW CLASS
+
+
+	// This class implements the progress view of a single job.  It folds the progress of the job into the overall
+	// progress of the batch, and reports the task as cancelled when the batch is cancelled.
+	private static class PartProgressView
+		implements IProgressListener, IProgressView
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private PartProgressView(ITaskProgressView progressView,
+								 int               index,
+								 TaskContext       context)
+		{
+			this.progressView = progressView;
+			this.index = index;
+			this.context = context;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IProgressListener interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setProgress(double fractionDone)
+		{
+			progressView.setPartProgress(index, fractionDone);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public boolean isTaskCancelled()
+		{
+			return context.isCancelled();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IProgressView interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setInfo(String str)
+		{
+			progressView.setInfo(str);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setInfo(String str,
+							File   file)
+		{
+			progressView.setInfo(str, file);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public int getNumProgressIndicators()
+		{
+			return 1;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setProgress(int    index,
+								double value)
+		{
+			if (index == 0)
+				setProgress(value);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void waitForIdle()
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void close()
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	ITaskProgressView	progressView;
+		private	int					index;
+		private	TaskContext			context;
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
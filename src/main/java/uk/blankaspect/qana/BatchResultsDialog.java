@@ -0,0 +1,383 @@
+/*====================================================================*\
+
+BatchResultsDialog.java
+
+Batch results dialog class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.GridLayout;
+import java.awt.Insets;
+import java.awt.Point;
+import java.awt.Window;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.KeyStroke;
+
+import javax.swing.table.AbstractTableModel;
+
+import uk.blankaspect.ui.swing.action.KeyAction;
+
+import uk.blankaspect.ui.swing.button.FButton;
+
+import uk.blankaspect.ui.swing.label.FLabel;
+
+import uk.blankaspect.ui.swing.misc.GuiUtils;
+
+import uk.blankaspect.ui.swing.workaround.LinuxWorkarounds;
+
+//----------------------------------------------------------------------
+
+
+// BATCH RESULTS DIALOG CLASS
+
+
+// This class implements a dialog that shows the outcome of each file of a batch that was processed by a BatchProcessor,
+// with a summary of the outcomes above the table of files.
+class BatchResultsDialog
+	extends JDialog
+	implements ActionListener
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		TABLE_WIDTH			= 640;
+	private static final	int		TABLE_NUM_ROWS		= 16;
+	private static final	int		FILE_COLUMN_WIDTH	= 320;
+
+	private static final	String	FILES_STR	= "Files: ";
+
+	private static final	String[]	COLUMN_NAMES	=
+	{
+		"File",
+		"Operation",
+		"Result"
+	};
+
+	// Commands
+	private interface Command
+	{
+		String	CLOSE	= "close";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	Point	location;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private BatchResultsDialog(
+		Window						owner,
+		String						title,
+		List<BatchProcessor.Result>	results)
+	{
+		// Call superclass constructor
+		super(owner, title, ModalityType.APPLICATION_MODAL);
+
+		// Set icons
+		setIconImages(owner.getIconImages());
+
+
+		//----  Summary label
+
+		Map<BatchProcessor.Status, Integer> statusCounts = new EnumMap<>(BatchProcessor.Status.class);
+		for (BatchProcessor.Result result : results)
+			statusCounts.merge(result.status(), 1, Integer::sum);
+
+		StringBuilder buffer = new StringBuilder(64);
+		buffer.append(FILES_STR);
+		buffer.append(results.size());
+		for (BatchProcessor.Status status : statusCounts.keySet())
+		{
+			buffer.append(",  ");
+			buffer.append(status);
+			buffer.append(": ");
+			buffer.append(statusCounts.get(status));
+		}
+		JLabel summaryLabel = new FLabel(buffer.toString());
+
+
+		//----  Results table
+
+		JTable table = new JTable(new ResultsTableModel(results));
+		AppFont.MAIN.apply(table.getTableHeader());
+		AppFont.MAIN.apply(table);
+		table.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+		table.getColumnModel().getColumn(0).setPreferredWidth(FILE_COLUMN_WIDTH);
+		table.setPreferredScrollableViewportSize(new Dimension(TABLE_WIDTH, TABLE_NUM_ROWS * table.getRowHeight()));
+
+		JScrollPane tableScrollPane = new JScrollPane(table);
+
+
+		//----  Button panel
+
+		JPanel buttonPanel = new JPanel(new GridLayout(1, 0, 8, 0));
+		buttonPanel.setBorder(BorderFactory.createEmptyBorder(3, 8, 3, 8));
+
+		// Button: close
+		JButton closeButton = new FButton(AppConstants.CLOSE_STR);
+		closeButton.setActionCommand(Command.CLOSE);
+		closeButton.addActionListener(this);
+		buttonPanel.add(closeButton);
+
+
+		//----  Main panel
+
+		GridBagLayout gridBag = new GridBagLayout();
+		GridBagConstraints gbc = new GridBagConstraints();
+
+		JPanel mainPanel = new JPanel(gridBag);
+		mainPanel.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
+
+		int gridY = 0;
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(summaryLabel, gbc);
+		mainPanel.add(summaryLabel);
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 1.0;
+		gbc.weighty = 1.0;
+		gbc.anchor = GridBagConstraints.NORTH;
+		gbc.fill = GridBagConstraints.BOTH;
+		gbc.insets = new Insets(0, 0, 0, 0);
+		gridBag.setConstraints(tableScrollPane, gbc);
+		mainPanel.add(tableScrollPane);
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.NORTH;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = new Insets(3, 0, 0, 0);
+		gridBag.setConstraints(buttonPanel, gbc);
+		mainPanel.add(buttonPanel);
+
+		// Add commands to action map
+		KeyAction.create(mainPanel, JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT,
+						 KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), Command.CLOSE, this);
+
+
+		//----  Window
+
+		// Set content pane
+		setContentPane(mainPanel);
+
+		// Dispose of window explicitly
+		setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+		// Handle window events
+		addWindowListener(new WindowAdapter()
+		{
+			@Override
+			public void windowOpened(
+				WindowEvent	event)
+			{
+				// WORKAROUND for a bug that has been observed on Linux/GNOME whereby a window is displaced downwards
+				// when its location is set.  The error in the y coordinate is the height of the title bar of the
+				// window.  The workaround is to set the location of the window again with an adjustment for the error.
+				LinuxWorkarounds.fixWindowYCoord(event.getWindow(), location);
+			}
+
+			@Override
+			public void windowClosing(
+				WindowEvent	event)
+			{
+				onClose();
+			}
+		});
+
+		// Resize dialog to its preferred size
+		pack();
+
+		// Set location of dialog
+		if (location == null)
+			location = GuiUtils.getComponentLocation(this, owner);
+		setLocation(location);
+
+		// Set default button
+		getRootPane().setDefaultButton(closeButton);
+
+		// Show dialog
+		setVisible(true);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	public static void showDialog(
+		Component					parent,
+		String						title,
+		List<BatchProcessor.Result>	results)
+	{
+		new BatchResultsDialog(GuiUtils.getWindow(parent), title, results);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods : ActionListener interface
+////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public void actionPerformed(ActionEvent event)
+	{
+		if (event.getActionCommand().equals(Command.CLOSE))
+			onClose();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	private void onClose()
+	{
+		location = getLocation();
+		setVisible(false);
+		dispose();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: RESULTS TABLE MODEL
+
+
+	private static class ResultsTableModel
+		extends AbstractTableModel
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	List<BatchProcessor.Result>	results;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ResultsTableModel(
+			List<BatchProcessor.Result>	results)
+		{
+			this.results = results;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : TableModel interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public int getRowCount()
+		{
+			return results.size();
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public int getColumnCount()
+		{
+			return COLUMN_NAMES.length;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public String getColumnName(
+			int	column)
+		{
+			return COLUMN_NAMES[column];
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public Object getValueAt(
+			int	row,
+			int	column)
+		{
+			BatchProcessor.Result result = results.get(row);
+			return switch (column)
+			{
+				case 0  -> Utils.getPathname(result.job().inFile());
+				case 1  -> result.job().operation();
+				case 2  -> (result.message() == null) ? result.status()
+													  : result.status() + " : " + result.message().replace('\n', ' ');
+				default -> null;
+			};
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
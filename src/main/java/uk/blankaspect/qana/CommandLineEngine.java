@@ -0,0 +1,1188 @@
+/*====================================================================*\
+
+CommandLineEngine.java
+
+Command-line engine class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.blankaspect.common.crypto.FortunaCipher;
+import uk.blankaspect.common.crypto.StreamEncrypter;
+
+import uk.blankaspect.common.exception.AppException;
+import uk.blankaspect.common.exception.FileException;
+import uk.blankaspect.common.exception.TaskCancelledException;
+
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
+
+import uk.blankaspect.common.filesystem.PathnameUtils;
+
+import uk.blankaspect.common.misc.TaskContext;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+//----------------------------------------------------------------------
+
+
+// COMMAND-LINE ENGINE CLASS
+
+
+// This class implements the file operations of this application without a graphical user interface, so that they can be
+// performed by scripts and scheduled jobs on a machine that has no display.  The engine is run by starting the
+// application with BATCH_ARG as the first command-line argument; the remaining arguments are a command, its options and
+// its inputs, as described in USAGE_STR.
+//
+// The key of a command is selected by name from the key database, and its passphrase is read from an environment
+// variable or from the first line of a file.  The input files of a command are processed concurrently on a pool of
+// threads.  If the only input of an encrypt, decrypt or validate command is "-", the data is read from standard input
+// and the result is written to standard output; the data is encrypted in frames, so that its length need not be known
+// in advance.
+//
+// For each input, a line of statistics is written to standard output (or to standard error if the result of the command
+// is written to standard output), followed by a line that summarises all the inputs.  A line consists of name=value
+// fields separated by tab characters.
+class CommandLineEngine
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	public static final		String	BATCH_ARG	= "--batch";
+
+	private static final	int		EXIT_SUCCESS	= 0;
+	private static final	int		EXIT_FAILURE	= 1;
+	private static final	int		EXIT_USAGE		= 2;
+
+	private static final	String	OPTION_PREFIX				= "--";
+	private static final	String	STANDARD_STREAM_PATHNAME	= "-";
+	private static final	String	DEFAULT_PASSPHRASE_VARIABLE	= "QANA_PASSPHRASE";
+
+	private static final	char	FIELD_SEPARATOR_CHAR	= '\t';
+
+	private static final	String	STATUS_OK		= "ok";
+	private static final	String	STATUS_ERROR	= "error";
+	private static final	String	STATUS_SUMMARY	= "summary";
+
+	private static final	String	USAGE_STR	= """
+			Usage:
+			  --batch encrypt  [options] file ...
+			  --batch decrypt  [options] file ...
+			  --batch validate [options] file ...
+			  --batch split    [options] file ...
+			  --batch join     [options] --output file directory
+			  --batch erase    [options] pathname ...
+			The input of encrypt, decrypt and validate may be "-" for standard input.
+			Options:
+			  --key name              the name of the key in the key database
+			  --key-database file     the key database (default: the one in the configuration)
+			  --passphrase-env name   the environment variable that contains the passphrase
+			                          (default: QANA_PASSPHRASE)
+			  --passphrase-file file  the file whose first line is the passphrase
+			  --output pathname       the output directory, or the output file of join
+			  --threads n             the number of files that are processed concurrently
+			  --overwrite             replace existing output files
+			""";
+
+	// Options
+	private interface Option
+	{
+		String	KEY				= "--key";
+		String	KEY_DATABASE	= "--key-database";
+		String	PASSPHRASE_ENV	= "--passphrase-env";
+		String	PASSPHRASE_FILE	= "--passphrase-file";
+		String	OUTPUT			= "--output";
+		String	THREADS			= "--threads";
+		String	OVERWRITE		= "--overwrite";
+		String	END				= "--";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	Command			command;
+	private	String			keyName;
+	private	File			keyDatabaseFile;
+	private	String			passphraseVariable;
+	private	File			passphraseFile;
+	private	File			output;
+	private	int				numThreads;
+	private	boolean			overwrite;
+	private	List<String>	inputs;
+	private	PrintStream		statsStream;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	public CommandLineEngine()
+	{
+		passphraseVariable = DEFAULT_PASSPHRASE_VARIABLE;
+		numThreads = Runtime.getRuntime().availableProcessors();
+		inputs = new ArrayList<>();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	private static File getFile(String pathname)
+	{
+		return new File(PathnameUtils.parsePathname(pathname));
+	}
+
+	//------------------------------------------------------------------
+
+	private static String getOptionValue(String[] args,
+										 int      index)
+		throws AppException
+	{
+		if (index >= args.length)
+			throw new AppException(ErrorId.NO_OPTION_VALUE, args[index - 1]);
+		return args[index];
+	}
+
+	//------------------------------------------------------------------
+
+	private static void checkInputFile(File file)
+		throws AppException
+	{
+		if (!file.exists())
+			throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, file);
+		if (!file.isFile())
+			throw new FileException(ErrorId.NOT_A_FILE, file);
+	}
+
+	//------------------------------------------------------------------
+
+	private static String toFieldValue(String str)
+	{
+		return str.replaceAll("[\\t\\r\\n]+", " ").trim();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	// Performs the command that is specified by the command-line arguments, and returns the exit status of the
+	// application: 0 if the command succeeded for all its inputs, 1 if it failed for any input, and 2 if the arguments
+	// were invalid.
+	public int run(String[] args)
+	{
+		// Parse command-line arguments
+		try
+		{
+			parseArgs(args);
+		}
+		catch (AppException e)
+		{
+			System.err.println(e);
+			System.err.print(USAGE_STR);
+			return EXIT_USAGE;
+		}
+
+		// Perform command
+		try
+		{
+			// Initialise application
+			QanaApp.INSTANCE.initHeadless();
+			Task.setProgressView(new NullProgressView());
+
+			// Get key
+			KeyList.Key key = (command == Command.ERASE) ? null : getKey();
+
+			// Perform command on inputs
+			return (process(key) == 0) ? EXIT_SUCCESS : EXIT_FAILURE;
+		}
+		catch (AppException e)
+		{
+			System.err.println(e);
+			return EXIT_FAILURE;
+		}
+		finally
+		{
+			QanaApp.INSTANCE.exitHeadless();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private void parseArgs(String[] args)
+		throws AppException
+	{
+		// Parse command
+		if (args.length == 0)
+			throw new AppException(ErrorId.NO_COMMAND);
+		command = Command.forKey(args[0]);
+		if (command == null)
+			throw new AppException(ErrorId.UNKNOWN_COMMAND, args[0]);
+
+		// Parse options and inputs
+		boolean endOfOptions = false;
+		for (int i = 1; i < args.length; i++)
+		{
+			String arg = args[i];
+			if (endOfOptions || !arg.startsWith(OPTION_PREFIX))
+			{
+				inputs.add(arg);
+				continue;
+			}
+
+			switch (arg)
+			{
+				case Option.KEY:
+					keyName = getOptionValue(args, ++i);
+					break;
+
+				case Option.KEY_DATABASE:
+					keyDatabaseFile = getFile(getOptionValue(args, ++i));
+					break;
+
+				case Option.PASSPHRASE_ENV:
+					passphraseVariable = getOptionValue(args, ++i);
+					break;
+
+				case Option.PASSPHRASE_FILE:
+					passphraseFile = getFile(getOptionValue(args, ++i));
+					break;
+
+				case Option.OUTPUT:
+					output = getFile(getOptionValue(args, ++i));
+					break;
+
+				case Option.THREADS:
+				{
+					String value = getOptionValue(args, ++i);
+					try
+					{
+						numThreads = Integer.parseInt(value);
+					}
+					catch (NumberFormatException e)
+					{
+						numThreads = 0;
+					}
+					if (numThreads < 1)
+						throw new AppException(ErrorId.INVALID_NUMBER_OF_THREADS, value);
+					break;
+				}
+
+				case Option.OVERWRITE:
+					overwrite = true;
+					break;
+
+				case Option.END:
+					endOfOptions = true;
+					break;
+
+				default:
+					throw new AppException(ErrorId.UNKNOWN_OPTION, arg);
+			}
+		}
+
+		// Validate arguments
+		if (inputs.isEmpty())
+			throw new AppException(ErrorId.NO_INPUTS);
+		if ((command != Command.ERASE) && (keyName == null))
+			throw new AppException(ErrorId.NO_KEY_NAME);
+		if (inputs.contains(STANDARD_STREAM_PATHNAME) && (!command.canStream || (inputs.size() > 1)))
+			throw new AppException(ErrorId.STANDARD_INPUT_NOT_ALLOWED);
+		if ((command == Command.JOIN) && ((inputs.size() > 1) || (output == null)))
+			throw new AppException(ErrorId.INVALID_JOIN_ARGUMENTS);
+
+		// Write statistics to standard error if the result is written to standard output
+		statsStream = inputs.contains(STANDARD_STREAM_PATHNAME) ? System.err : System.out;
+	}
+
+	//------------------------------------------------------------------
+
+	private KeyList.Key getKey()
+		throws AppException
+	{
+		// Get location of key database
+		File file = (keyDatabaseFile == null) ? AppConfig.INSTANCE.getKeyDatabaseFile() : keyDatabaseFile;
+		if (file == null)
+			throw new AppException(ErrorId.NO_KEY_DATABASE);
+
+		// Read key database
+		KeyList keyList = new KeyList();
+		keyList.read(file);
+
+		// Find key
+		KeyList.Key key = keyList.getKeys().stream()
+				.filter(key0 -> keyName.equals(key0.getName()))
+				.findFirst()
+				.orElse(null);
+		if (key == null)
+			throw new FileException(ErrorId.NO_SUCH_KEY, file, keyName);
+
+		// Verify passphrase
+		if (!key.verify(getPassphrase()))
+			throw new AppException(ErrorId.INCORRECT_PASSPHRASE, key.getQuotedName());
+
+		return key;
+	}
+
+	//------------------------------------------------------------------
+
+	private String getPassphrase()
+		throws AppException
+	{
+		// Read passphrase from file
+		if (passphraseFile != null)
+		{
+			List<String> lines = null;
+			try
+			{
+				lines = Files.readAllLines(passphraseFile.toPath(), StandardCharsets.UTF_8);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_READ_PASSPHRASE_FILE, passphraseFile, e);
+			}
+			if (lines.isEmpty() || lines.get(0).isEmpty())
+				throw new FileException(ErrorId.NO_PASSPHRASE_IN_FILE, passphraseFile);
+			return lines.get(0);
+		}
+
+		// Get passphrase from environment variable
+		String passphrase = System.getenv(passphraseVariable);
+		if ((passphrase == null) || passphrase.isEmpty())
+			throw new AppException(ErrorId.NO_PASSPHRASE_VARIABLE, passphraseVariable);
+		return passphrase;
+	}
+
+	//------------------------------------------------------------------
+
+	// Performs the command on its inputs, writes the statistics of each input and a summary of all the inputs, and
+	// returns the number of inputs for which the command failed.
+	private int process(KeyList.Key key)
+		throws AppException
+	{
+		// Create jobs
+		List<Job> jobs = inputs.get(0).equals(STANDARD_STREAM_PATHNAME) ? List.of(createStreamJob(key))
+																		: createJobs(key);
+
+		// Perform jobs on a pool of threads, each of which is bound to the task context of this thread, and write their
+		// statistics in the order of the inputs
+		TaskContext context = Task.getContext();
+		int numFailed = 0;
+		long totalLength = 0;
+		long startTime = System.nanoTime();
+		AtomicInteger threadIndex = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, jobs.size()), runnable ->
+				DaemonFactory.create(getClass().getSimpleName() + "-" + threadIndex.getAndIncrement(), runnable));
+		try
+		{
+			List<Future<Result>> futures = new ArrayList<>();
+			for (Job job : jobs)
+				futures.add(executor.submit(() -> context.call(job::perform)));
+			for (Future<Result> future : futures)
+			{
+				Result result = future.get();
+				if (result.exception() == null)
+					totalLength += result.length();
+				else
+					++numFailed;
+				writeStats(result);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			context.cancel();
+			throw new TaskCancelledException();
+		}
+		catch (ExecutionException e)
+		{
+			context.cancel();
+			throw new UnexpectedRuntimeException(e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+
+		// Write summary
+		long time = System.nanoTime() - startTime;
+		StringJoiner fields = createStats(STATUS_SUMMARY);
+		fields.add("files=" + jobs.size());
+		fields.add("failed=" + numFailed);
+		addThroughput(fields, totalLength, time);
+		statsStream.println(fields);
+		statsStream.flush();
+
+		return numFailed;
+	}
+
+	//------------------------------------------------------------------
+
+	private List<Job> createJobs(KeyList.Key key)
+		throws AppException
+	{
+		List<Job> jobs = new ArrayList<>();
+		switch (command)
+		{
+			case ENCRYPT:
+			{
+				FortunaCipher cipher = Utils.getCipher(key);
+				key.checkAllowedCipher(cipher);
+				for (String input : inputs)
+				{
+					File inFile = getFile(input);
+					File outFile = new File(getOutputDirectory(inFile),
+											inFile.getName() + FileKind.ENCRYPTED.getFilenameSuffix());
+					jobs.add(new Job(input, outFile.getPath(), () ->
+					{
+						checkInputFile(inFile);
+						checkOutputFile(outFile);
+						long length = inFile.length();
+						key.getFileEncrypter(cipher, QanaApp.getEncryptionHeader())
+								.encrypt(inFile, outFile, key.getKey(), QanaApp.INSTANCE.getRandomKey(),
+										 QanaApp.INSTANCE::generateKey);
+						return length;
+					}));
+				}
+				break;
+			}
+
+			case DECRYPT:
+				for (String input : inputs)
+				{
+					File inFile = getFile(input);
+					File outFile = Utils.getPlaintextFile(getOutputDirectory(inFile), inFile.getName());
+					jobs.add(new Job(input, outFile.getPath(), () ->
+					{
+						checkInputFile(inFile);
+						checkOutputFile(outFile);
+						long length = inFile.length();
+						key.getFileEncrypter(null, QanaApp.getEncryptionHeader())
+								.decrypt(inFile, outFile, key.getKey(), QanaApp.INSTANCE::generateKey);
+						return length;
+					}));
+				}
+				break;
+
+			case VALIDATE:
+				for (String input : inputs)
+				{
+					File file = getFile(input);
+					jobs.add(new Job(input, null, () ->
+					{
+						checkInputFile(file);
+						long length = file.length();
+						key.getFileEncrypter(null, QanaApp.getEncryptionHeader())
+								.validate(file, key.getKey(), QanaApp.INSTANCE::generateKey);
+						return length;
+					}));
+				}
+				break;
+
+			case SPLIT:
+			{
+				// Check cipher
+				key.checkAllowedCipher(Utils.getCipher(key));
+
+				// Prepare each output directory once, before any file is split into it
+				Set<File> outDirectories = new LinkedHashSet<>();
+				for (String input : inputs)
+					outDirectories.add(getOutputDirectory(getFile(input)));
+				for (File outDirectory : outDirectories)
+					prepareSplitDirectory(outDirectory);
+
+				// Create jobs
+				AppConfig config = AppConfig.INSTANCE;
+				int lowerBound = config.getSplitFilePartLengthLowerBound().value;
+				int upperBound = config.getSplitFilePartLengthUpperBound().value;
+				for (String input : inputs)
+				{
+					File inFile = getFile(input);
+					File outDirectory = getOutputDirectory(inFile);
+					jobs.add(new Job(input, outDirectory.getPath(), () ->
+					{
+						checkInputFile(inFile);
+						long length = inFile.length();
+						new FileSplitter(config.getSplitNumThreads())
+								.split(inFile, outDirectory, lowerBound, upperBound, key);
+						return length;
+					}));
+				}
+				break;
+			}
+
+			case JOIN:
+			{
+				File inDirectory = getFile(inputs.get(0));
+				File outFile = output;
+				jobs.add(new Job(inputs.get(0), outFile.getPath(), () ->
+				{
+					checkOutputFile(outFile);
+					File outDirectory = outFile.getAbsoluteFile().getParentFile();
+					if (!outDirectory.exists() && !outDirectory.mkdirs())
+						throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, outDirectory);
+					new FileSplitter(AppConfig.INSTANCE.getSplitNumThreads()).join(inDirectory, outFile, key);
+					return outFile.length();
+				}));
+				break;
+			}
+
+			case ERASE:
+			{
+				// The eraser orders the pathnames so that the contents of a directory are erased before the directory
+				// itself, so all the pathnames are erased by a single job
+				String input = String.join(File.pathSeparator, inputs);
+				jobs.add(new Job(input, null, () ->
+				{
+					int numPasses = AppConfig.INSTANCE.getFileErasureNumPasses();
+					long length = 0;
+					for (String pathname : inputs)
+					{
+						File file = getFile(pathname);
+						if (file.isFile())
+							length += numPasses * file.length();
+					}
+					new FileEraser().erase(inputs);
+					return length;
+				}));
+				break;
+			}
+		}
+		return jobs;
+	}
+
+	//------------------------------------------------------------------
+
+	private Job createStreamJob(KeyList.Key key)
+		throws AppException
+	{
+		// Check cipher
+		FortunaCipher cipher = Utils.getCipher(key);
+		if (command == Command.ENCRYPT)
+			key.checkAllowedCipher(cipher);
+
+		// Create job
+		String outPathname = (command == Command.VALIDATE) ? null : STANDARD_STREAM_PATHNAME;
+		return new Job(STANDARD_STREAM_PATHNAME, outPathname, () ->
+		{
+			ByteCountInputStream inStream = new ByteCountInputStream(System.in);
+			OutputStream outStream = (command == Command.VALIDATE)
+											? OutputStream.nullOutputStream()
+											: new BufferedOutputStream(new FileOutputStream(FileDescriptor.out));
+			if (command == Command.ENCRYPT)
+			{
+				key.getStreamEncrypter(cipher, QanaApp.getFramedEncryptionHeader())
+						.encrypt(inStream, outStream, StreamEncrypter.UNKNOWN_LENGTH, System.currentTimeMillis(),
+								 key.getKey(), QanaApp.INSTANCE.getRandomKey(), QanaApp.INSTANCE::generateKey);
+			}
+			else
+			{
+				key.getStreamEncrypter(null, QanaApp.getEncryptionHeader())
+						.decrypt(inStream, outStream, StreamEncrypter.UNKNOWN_LENGTH, key.getKey(),
+								 QanaApp.INSTANCE::generateKey);
+			}
+			try
+			{
+				outStream.flush();
+			}
+			catch (IOException e)
+			{
+				throw new AppException(ErrorId.ERROR_WRITING_STANDARD_OUTPUT, e);
+			}
+			return inStream.count;
+		});
+	}
+
+	//------------------------------------------------------------------
+
+	private File getOutputDirectory(File inFile)
+	{
+		return (output == null) ? inFile.getAbsoluteFile().getParentFile() : output;
+	}
+
+	//------------------------------------------------------------------
+
+	private void checkOutputFile(File file)
+		throws AppException
+	{
+		if (file.exists() && !overwrite)
+			throw new FileException(ErrorId.OUTPUT_FILE_EXISTS, file);
+	}
+
+	//------------------------------------------------------------------
+
+	private void prepareSplitDirectory(File directory)
+		throws AppException
+	{
+		// Create directory
+		if (!directory.exists() && !directory.mkdirs())
+			throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, directory);
+
+		// Delete existing file parts
+		List<File> fileParts = FileSplitter.getFileParts(directory);
+		if (!fileParts.isEmpty())
+		{
+			if (!overwrite)
+				throw new FileException(ErrorId.FILE_PARTS_EXIST, directory);
+			for (File filePart : fileParts)
+			{
+				if (!filePart.getAbsoluteFile().delete())
+					throw new FileException(ErrorId.FAILED_TO_DELETE_FILE_PART, filePart);
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private StringJoiner createStats(String status)
+	{
+		StringJoiner fields = new StringJoiner(Character.toString(FIELD_SEPARATOR_CHAR));
+		fields.add("op=" + command.key);
+		fields.add("status=" + status);
+		return fields;
+	}
+
+	//------------------------------------------------------------------
+
+	private void addThroughput(StringJoiner fields,
+							   long         length,
+							   long         time)
+	{
+		double seconds = (double)time * 1.0e-9;
+		fields.add("bytes=" + length);
+		fields.add(String.format(Locale.ROOT, "seconds=%.3f", seconds));
+		fields.add("bytesPerSecond=" + ((seconds > 0.0) ? Math.round((double)length / seconds) : 0));
+	}
+
+	//------------------------------------------------------------------
+
+	private void writeStats(Result result)
+	{
+		Job job = result.job();
+		StringJoiner fields = createStats((result.exception() == null) ? STATUS_OK : STATUS_ERROR);
+		fields.add("in=" + toFieldValue(job.input()));
+		if (job.output() != null)
+			fields.add("out=" + toFieldValue(job.output()));
+		addThroughput(fields, result.length(), result.time());
+		if (result.exception() != null)
+			fields.add("message=" + toFieldValue(result.exception().toString()));
+		statsStream.println(fields);
+		statsStream.flush();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Enumerated types
+////////////////////////////////////////////////////////////////////////
+
+
+	// ENUMERATION: COMMANDS
+
+
+	private enum Command
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		ENCRYPT
+		(
+			"encrypt",
+			true
+		),
+
+		DECRYPT
+		(
+			"decrypt",
+			true
+		),
+
+		VALIDATE
+		(
+			"validate",
+			true
+		),
+
+		SPLIT
+		(
+			"split",
+			false
+		),
+
+		JOIN
+		(
+			"join",
+			false
+		),
+
+		ERASE
+		(
+			"erase",
+			false
+		);
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	String	key;
+		private	boolean	canStream;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Command(String  key,
+						boolean canStream)
+		{
+			this.key = key;
+			this.canStream = canStream;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		private static Command forKey(String key)
+		{
+			for (Command value : values())
+			{
+				if (value.key.equals(key))
+					return value;
+			}
+			return null;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// ENUMERATION: ERROR IDENTIFIERS
+
+
+	private enum ErrorId
+		implements AppException.IId
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		NO_COMMAND
+		("No command was specified."),
+
+		UNKNOWN_COMMAND
+		("'%1' is not a recognised command."),
+
+		UNKNOWN_OPTION
+		("'%1' is not a recognised option."),
+
+		NO_OPTION_VALUE
+		("No value was specified for the option '%1'."),
+
+		INVALID_NUMBER_OF_THREADS
+		("'%1' is not a valid number of threads."),
+
+		NO_INPUTS
+		("No inputs were specified."),
+
+		NO_KEY_NAME
+		("No key was specified."),
+
+		STANDARD_INPUT_NOT_ALLOWED
+		("Standard input can be the only input of an encrypt, decrypt or validate command."),
+
+		INVALID_JOIN_ARGUMENTS
+		("A join command requires one input directory and an output file."),
+
+		NO_KEY_DATABASE
+		("No key database was specified."),
+
+		NO_SUCH_KEY
+		("The key database does not contain a key named '%1'."),
+
+		INCORRECT_PASSPHRASE
+		("The passphrase of the key %1 is incorrect."),
+
+		FAILED_TO_READ_PASSPHRASE_FILE
+		("Failed to read the passphrase file."),
+
+		NO_PASSPHRASE_IN_FILE
+		("The passphrase file does not contain a passphrase."),
+
+		NO_PASSPHRASE_VARIABLE
+		("The environment variable %1 does not contain a passphrase."),
+
+		FILE_DOES_NOT_EXIST
+		("The file does not exist."),
+
+		NOT_A_FILE
+		("The pathname does not denote a normal file."),
+
+		OUTPUT_FILE_EXISTS
+		("The output file already exists."),
+
+		FILE_PARTS_EXIST
+		("The output directory already contains file parts."),
+
+		FAILED_TO_CREATE_DIRECTORY
+		("Failed to create the directory."),
+
+		FAILED_TO_DELETE_FILE_PART
+		("Failed to delete the existing file part."),
+
+		ERROR_WRITING_STANDARD_OUTPUT
+		("An error occurred when writing to standard output.");
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	String	message;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ErrorId(String message)
+		{
+			this.message = message;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : AppException.IId interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public String getMessage()
+		{
+			return message;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// INTERFACE: OPERATION
+
+
+	@FunctionalInterface
+	private interface IOperation
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		// Performs the operation and returns the length of the data that it processed.
+		long perform()
+			throws AppException;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: JOB
+
+
+	private record Job(
+		String		input,
+		String		output,
+		IOperation	operation)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private Result perform()
+		{
+			long startTime = System.nanoTime();
+			try
+			{
+				return new Result(this, operation.perform(), System.nanoTime() - startTime, null);
+			}
+			catch (AppException | RuntimeException e)
+			{
+				return new Result(this, 0, System.nanoTime() - startTime, e);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: RESULT OF JOB
+
+
+	private record Result(
+		Job			job,
+		long		length,
+		long		time,
+		Exception	exception)
+	{ }
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: BYTE-COUNT INPUT STREAM
+
+
+	// This class implements an input stream that counts the bytes that are read from an underlying input stream.
+	private static class ByteCountInputStream
+		extends FilterInputStream
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	long	count;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private ByteCountInputStream(InputStream inStream)
+		{
+			super(inStream);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public int read()
+			throws IOException
+		{
+			int value = super.read();
+			if (value >= 0)
+				++count;
+			return value;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public int read(byte[] buffer,
+						int    offset,
+						int    length)
+			throws IOException
+		{
+			int readLength = super.read(buffer, offset, length);
+			if (readLength > 0)
+				count += readLength;
+			return readLength;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: NULL PROGRESS VIEW
+
+
+	// This class implements a view of the progress of a task that displays nothing, for use when the application has no
+	// graphical user interface.
+	static class NullProgressView
+		implements ITaskProgressView
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	int	NUM_PROGRESS_INDICATORS	= 2;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		NullProgressView()
+		{
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : ITaskProgressView interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setInfo(String str)
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setInfo(String str,
+							File   file)
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public int getNumProgressIndicators()
+		{
+			return NUM_PROGRESS_INDICATORS;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setProgress(int    index,
+								double value)
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setProgress(double fractionDone)
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public boolean isTaskCancelled()
+		{
+			return Task.isCancelled();
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void waitForIdle()
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void close()
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void initOverallProgress(long offset,
+										long length,
+										long totalLength)
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void initPartProgress(long[] lengths)
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setPartProgress(int    index,
+									double fractionDone)
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
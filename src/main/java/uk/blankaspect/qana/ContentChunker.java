@@ -0,0 +1,147 @@
+/*====================================================================*\
+
+ContentChunker.java
+
+Content-defined chunker class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.Arrays;
+
+import uk.blankaspect.common.number.NumberCodec;
+
+//----------------------------------------------------------------------
+
+
+// CONTENT-DEFINED CHUNKER CLASS
+
+
+// This class implements a splitter of a stream of data into content-defined chunks.  The boundaries of chunks are found
+// with a gear hash, a rolling hash in which each byte shifts the hash left by one bit and adds a value from a table of
+// 256 random values.  The most-significant bits of the hash depend on the last 64 bytes, and a chunk ends after a byte
+// at which those bits are all zero, so a boundary depends only on the data near it: an insertion or deletion in the
+// data changes the chunks around it, but not the chunks elsewhere.
+//
+// The table of the gear hash is derived from a key, so that the boundaries of chunks, and hence their lengths, do not
+// reveal the content of the data to anyone who does not know the key.
+class ContentChunker
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	public static final		int		MIN_CHUNK_SIZE	= 1 << 14;
+	public static final		int		MAX_CHUNK_SIZE	= 1 << 18;
+
+	// The mean distance from the minimum size of a chunk to its end.  The search for a boundary starts at the minimum
+	// size, so the average length of a chunk is about MIN_CHUNK_SIZE + BOUNDARY_INTERVAL (80 KiB).
+	public static final		int		BOUNDARY_INTERVAL	= 1 << 16;
+
+	public static final		int		GEAR_TABLE_SIZE	= 256 * Long.BYTES;
+
+	// The boundary mask selects the most-significant bits of the hash, because they depend on the most bytes
+	private static final	long	BOUNDARY_MASK	=
+			(long)(BOUNDARY_INTERVAL - 1) << (Long.SIZE - Integer.numberOfTrailingZeros(BOUNDARY_INTERVAL));
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	long[]		gear;
+	private	InputStream	inStream;
+	private	byte[]		buffer;
+	private	int			length;
+	private	boolean		endOfInput;
+	private	long		numChunks;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	// Creates a chunker that splits the data from the specified input stream.  The table of the gear hash is read from
+	// gearTable, which must have a length of GEAR_TABLE_SIZE.
+	public ContentChunker(byte[]      gearTable,
+						  InputStream inStream)
+	{
+		if (gearTable.length != GEAR_TABLE_SIZE)
+			throw new IllegalArgumentException();
+
+		gear = new long[256];
+		for (int i = 0; i < gear.length; i++)
+			gear[i] = NumberCodec.bytesToLongLE(gearTable, i * Long.BYTES, Long.BYTES);
+		this.inStream = inStream;
+		buffer = new byte[MAX_CHUNK_SIZE];
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	// Returns the next chunk of the input data, or null if the end of the input has been reached.  Every chunk except
+	// the last one has a length of at least MIN_CHUNK_SIZE, and no chunk is longer than MAX_CHUNK_SIZE.  Empty input
+	// data has a single chunk, which is empty, so that all data has at least one chunk.
+	public byte[] next()
+		throws IOException
+	{
+		// Fill buffer
+		while (!endOfInput && (length < buffer.length))
+		{
+			int readLength = inStream.read(buffer, length, buffer.length - length);
+			if (readLength < 0)
+				endOfInput = true;
+			else
+				length += readLength;
+		}
+
+		// Test for end of input
+		if ((length == 0) && (numChunks > 0))
+			return null;
+
+		// Find end of chunk
+		int chunkLength = length;
+		if (chunkLength > MIN_CHUNK_SIZE)
+		{
+			long hash = 0;
+			for (int i = MIN_CHUNK_SIZE; i < length; i++)
+			{
+				hash = (hash << 1) + gear[buffer[i] & 0xFF];
+				if ((hash & BOUNDARY_MASK) == 0)
+				{
+					chunkLength = i + 1;
+					break;
+				}
+			}
+		}
+
+		// Remove chunk from buffer
+		byte[] chunk = Arrays.copyOf(buffer, chunkLength);
+		length -= chunkLength;
+		System.arraycopy(buffer, chunkLength, buffer, 0, length);
+		++numChunks;
+
+		return chunk;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -159,7 +159,7 @@ class FileEraser
 		Arrays.sort(files, PATHNAME_COMPARATOR);
 
 		// Reset progress in progress view
-		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
+		ITaskProgressView progressView = (ITaskProgressView)Task.getProgressView();
 		progressView.setProgress(0, 0.0);
 		progressView.setProgress(1, 0.0);
 
@@ -197,6 +197,11 @@ class FileEraser
 			}
 			catch (AppException e)
 			{
+				// If there is no window in which the user can choose to retry or skip the file, fail
+				if (QanaApp.INSTANCE.getMainWindow() == null)
+					throw e;
+
+				// Ask user whether to retry or skip the file
 				String[] optionStrs = Utils.getOptionStrings(RETRY_STR, SKIP_STR);
 				int result = JOptionPane.showOptionDialog(QanaApp.INSTANCE.getMainWindow(), e, ERASE_FILES_STR,
 														  JOptionPane.YES_NO_CANCEL_OPTION,
@@ -249,7 +254,7 @@ class FileEraser
 		}
 
 		// Update progress of task
-		((TaskProgressDialog)Task.getProgressView()).setProgress(1.0);
+		((ITaskProgressView)Task.getProgressView()).setProgress(1.0);
 	}
 
 	//------------------------------------------------------------------
@@ -397,7 +402,7 @@ class FileEraser
 				offset += blockLength;
 
 				// Update progress of task
-				((TaskProgressDialog)Task.getProgressView()).
+				((ITaskProgressView)Task.getProgressView()).
 							setProgress((double)(pass * length + offset) / (double)(numPasses * length));
 			}
 		}
@@ -18,6 +18,8 @@ package uk.blankaspect.qana;
 // IMPORTS
 
 
+import java.awt.Window;
+
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
@@ -25,13 +27,29 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
 import java.nio.channels.OverlappingFileLockException;
 
+import java.nio.charset.StandardCharsets;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
 import uk.blankaspect.common.crypto.Fortuna;
 import uk.blankaspect.common.crypto.FortunaAes256;
+import uk.blankaspect.common.crypto.HmacSha256;
 import uk.blankaspect.common.crypto.StreamEncrypter;
 
 import uk.blankaspect.common.exception.AppException;
@@ -39,13 +57,19 @@ import uk.blankaspect.common.exception.FileException;
 import uk.blankaspect.common.exception.TaskCancelledException;
 import uk.blankaspect.common.exception.TempFileException;
 
+import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
+
 import uk.blankaspect.common.filesystem.FilenameUtils;
 
 import uk.blankaspect.common.misc.BinaryFile;
+import uk.blankaspect.common.misc.IProgressListener;
+import uk.blankaspect.common.misc.TaskContext;
 
 import uk.blankaspect.common.number.NumberCodec;
 import uk.blankaspect.common.number.NumberUtils;
 
+import uk.blankaspect.common.thread.DaemonFactory;
+
 //----------------------------------------------------------------------
 
 
@@ -66,12 +90,29 @@ class FileSplitter
 
 	public static final		int	MAX_NUM_FILE_PARTS	= 1 << NUM_FILE_PARTS_SHIFT;    // 65536
 
-	private static final	int	VERSION					= 0;
-	private static final	int	MIN_SUPPORTED_VERSION	= VERSION;
-	private static final	int	MAX_SUPPORTED_VERSION	= VERSION;
+	public static final		int	MIN_NUM_THREADS		= 1;
+	public static final		int	MAX_NUM_THREADS		= 64;
+	public static final		int	DEFAULT_NUM_THREADS	=
+			Math.min(Runtime.getRuntime().availableProcessors(), MAX_NUM_THREADS);
+
+	private static final	int	VERSION					= 1;
+	private static final	int	MIN_SUPPORTED_VERSION	= 0;
+	private static final	int	MAX_SUPPORTED_VERSION	= 1;
+
+	// The minimum version in which the keys of the file parts are derived from a master key and the header of a file
+	// part contains the offset of its plaintext in the joined file
+	private static final	int	MIN_MASTER_KEY_VERSION	= 1;
 
 	private static final	int	FILENAME_LENGTH	= 40;
 
+	private static final	int	SALT_FIELD_SIZE				= StreamEncrypter.SALT_SIZE;
+	private static final	int	KDF_PARAMETERS_FIELD_SIZE	= 4;
+	private static final	int	MASTER_KEY_DATA_SIZE		= SALT_FIELD_SIZE + KDF_PARAMETERS_FIELD_SIZE;
+	private static final	int	OFFSET_FIELD_SIZE			= 8;
+	private static final	int	SUPPLEMENTARY_DATA_SIZE		= MASTER_KEY_DATA_SIZE + OFFSET_FIELD_SIZE;
+
+	private static final	byte[]	PART_KEY_LABEL	= "qana-file-part".getBytes(StandardCharsets.US_ASCII);
+
 	private static final	String	FILE_STR	= "file";
 	private static final	String	READING_STR	= "Reading";
 	private static final	String	WRITING_STR	= "Writing";
@@ -146,8 +187,14 @@ class FileSplitter
 		NO_SETS_OF_FILE_PARTS
 		("The directory contains no valid sets of file parts."),
 
+		MULTIPLE_SETS_OF_FILE_PARTS
+		("The directory contains more than one set of file parts."),
+
 		INCONSISTENT_FILE_PARTS
-		("The set of file parts is inconsistent.");
+		("The set of file parts is inconsistent."),
+
+		INVALID_KEY_DERIVATION_PARAMETERS
+		("The key-derivation parameters of the set of file parts are invalid.");
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
@@ -368,186 +415,256 @@ class FileSplitter
 
 	//==================================================================
 
-////////////////////////////////////////////////////////////////////////
-//  Constructors
-////////////////////////////////////////////////////////////////////////
 
-	public FileSplitter()
+	// MASTER KEY CLASS
+
+
+	// This class encapsulates the master key of a set of file parts.  The master key is derived once per set from the
+	// user's key and a salt with the key-derivation function; the content-encryption key of each file part is derived
+	// cheaply from the master key and the index of the file part with HKDF-SHA256.  The salt and the parameters of the
+	// KDF are stored in the supplementary data of the header of each file part.
+	private static class MasterKey
 	{
-	}
 
-	//------------------------------------------------------------------
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
 
-////////////////////////////////////////////////////////////////////////
-//  Class methods
-////////////////////////////////////////////////////////////////////////
+		private MasterKey(byte[] data,
+						  byte[] key)
+		{
+			this.data = data;
+			this.key = key;
+		}
 
-	public static List<File> getFileParts(File directory)
-		throws AppException
-	{
-		File[] files = directory.listFiles(new FilePartFilter());
-		if (files == null)
-			throw new FileException(ErrorId.FAILED_TO_LIST_DIRECTORY_ENTRIES, directory);
-		return List.of(files);
-	}
+		//--------------------------------------------------------------
 
-	//------------------------------------------------------------------
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
 
-	private static StreamEncrypter.Header createHeader(String filename,
-													   int    index,
-													   int    numFileParts)
-	{
-		int id = (numFileParts << NUM_FILE_PARTS_SHIFT) | index;
-		id ^= new FortunaAes256(filename).getRandomInt();
-		return new StreamEncrypter.Header(id, VERSION, MIN_SUPPORTED_VERSION, MAX_SUPPORTED_VERSION);
-	}
+		private static MasterKey create(KeyList.Key key)
+			throws AppException
+		{
+			// Generate salt
+			byte[] salt = QanaApp.INSTANCE.getRandomBytes(SALT_FIELD_SIZE);
+
+			// Encode salt and KDF parameters
+			StreamEncrypter.KdfParams kdfParams = key.getKdfParamsGen();
+			byte[] data = new byte[MASTER_KEY_DATA_SIZE];
+			System.arraycopy(salt, 0, data, 0, SALT_FIELD_SIZE);
+			NumberCodec.uIntToBytesLE(kdfParams.getEncodedValue(false), data, SALT_FIELD_SIZE,
+									  KDF_PARAMETERS_FIELD_SIZE);
+			for (int i = 0; i < KDF_PARAMETERS_FIELD_SIZE; i++)
+				data[SALT_FIELD_SIZE + i] ^= salt[i];
+
+			// Derive master key
+			return new MasterKey(data, StreamEncrypter.deriveKey(key.getKey(), salt, kdfParams,
+																 QanaApp.INSTANCE::generateKey));
+		}
 
-	//------------------------------------------------------------------
+		//--------------------------------------------------------------
+
+		private static MasterKey derive(KeyList.Key key,
+										byte[]      data)
+			throws AppException
+		{
+			// Decode salt and KDF parameters
+			byte[] salt = Arrays.copyOf(data, SALT_FIELD_SIZE);
+			byte[] paramData = Arrays.copyOfRange(data, SALT_FIELD_SIZE, MASTER_KEY_DATA_SIZE);
+			for (int i = 0; i < paramData.length; i++)
+				paramData[i] ^= salt[i];
+			StreamEncrypter.KdfParams kdfParams = new StreamEncrypter.KdfParams(NumberCodec.bytesToUIntLE(paramData));
+			kdfParams.maxNumThreads = key.getKdfParamsGen().maxNumThreads;
+
+			// Derive master key
+			byte[] masterKey = StreamEncrypter.deriveKey(key.getKey(), salt, kdfParams, QanaApp.INSTANCE::generateKey);
+			if (masterKey == null)
+				throw new AppException(ErrorId.INVALID_KEY_DERIVATION_PARAMETERS);
+			return new MasterKey(data, masterKey);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private byte[] getPartKey(int index)
+		{
+			byte[] info = Arrays.copyOf(PART_KEY_LABEL, PART_KEY_LABEL.length + Integer.BYTES);
+			NumberCodec.uIntToBytesLE(index, info, PART_KEY_LABEL.length, Integer.BYTES);
+			return HmacSha256.hkdfExpand(key, info, StreamEncrypter.DERIVED_KEY_SIZE);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	byte[]	data;
+		private	byte[]	key;
 
-	private static int[] parseHeader(byte[] data,
-									 String filename)
-	{
-		int id = NumberCodec.bytesToUIntLE(data, 0, StreamEncrypter.Header.ID_FIELD_SIZE);
-		id ^= new FortunaAes256(filename).getRandomInt();
-		return new int[] { id & (1 << NUM_FILE_PARTS_SHIFT) - 1, id >>> NUM_FILE_PARTS_SHIFT };
 	}
 
-	//------------------------------------------------------------------
+	//==================================================================
 
-////////////////////////////////////////////////////////////////////////
-//  Instance methods
-////////////////////////////////////////////////////////////////////////
 
-	public void split(File        inFile,
-					  File        outDirectory,
-					  int         filePartLengthLowerBound,
-					  int         filePartLengthUpperBound,
-					  KeyList.Key key)
-		throws AppException
+	// CONCURRENT CONTEXT CLASS
+
+
+	// This class encapsulates the state that is shared by the tasks that process the file parts of a set concurrently.
+	// The shared file is the input file when splitting and the temporary output file when joining.
+	private static class ConcurrentContext
 	{
-		// Validate arguments
-		if ((filePartLengthLowerBound < MIN_FILE_PART_LENGTH) ||(filePartLengthUpperBound > MAX_FILE_PART_LENGTH)
-				|| (filePartLengthLowerBound > filePartLengthUpperBound))
-			throw new IllegalArgumentException();
 
-		// Reset progress in progress view
-		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
-		progressView.setProgress(0, 0.0);
-		progressView.setProgress(1, 0.0);
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
 
-		// Test file length
-		long inFileLength = inFile.length();
-		if (inFileLength == 0)
-			throw new FileException(ErrorId.FILE_IS_EMPTY, inFile);
-		long meanFilePartLength = (filePartLengthLowerBound + filePartLengthUpperBound) / 2;
-		if ((inFileLength + meanFilePartLength - 1) / meanFilePartLength > MAX_NUM_FILE_PARTS)
-			throw new FileException(ErrorId.FILE_IS_TOO_LONG, inFile);
+		private ConcurrentContext(File               file,
+								  FileChannel        channel,
+								  long               timestamp,
+								  ITaskProgressView  progressView,
+								  List<File>         writtenFiles)
+		{
+			this.file = file;
+			this.channel = channel;
+			this.timestamp = timestamp;
+			this.progressView = progressView;
+			this.writtenFiles = writtenFiles;
+		}
 
-		// Create output directory
-		if (!outDirectory.exists())
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private boolean isAborted()
 		{
-			try
-			{
-				if (!outDirectory.mkdirs())
-					throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, outDirectory);
-			}
-			catch (SecurityException e)
-			{
-				throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, outDirectory, e);
-			}
+			return aborted || progressView.isTaskCancelled();
 		}
 
-		// Create list of names of existing file parts in output directory
-		File[] files = outDirectory.listFiles(new FilePartFilter());
-		if (files == null)
-			throw new FileException(ErrorId.FAILED_TO_LIST_DIRECTORY_ENTRIES, outDirectory);
-		List<String> filenames = new ArrayList<>();
-		for (File file : files)
-			filenames.add(file.getName());
+		//--------------------------------------------------------------
 
-		// Create list of file parts
-		List<FilePart> fileParts = new ArrayList<>();
-		while (fileParts.isEmpty())
+		// Waits for all the specified tasks to finish.  If a task fails, the remaining tasks are aborted, and the
+		// exception that caused the failure is rethrown after all the tasks have finished, so that the caller can
+		// safely clean up any files that the tasks have written.
+		private void awaitCompletion(List<Future<Void>> futures)
+			throws AppException
 		{
-			FilenameGenerator filenameGenerator = new FilenameGenerator();
-			long remainingLength = inFileLength;
-			while (remainingLength > 0)
+			Throwable exception = null;
+			for (Future<Void> future : futures)
 			{
-				int lengthRange = filePartLengthUpperBound - filePartLengthLowerBound + 1;
-				int length = (int)Math.min(filePartLengthLowerBound + getRandomInt(lengthRange),
-										   remainingLength);
-				String filename = filenameGenerator.getNextName(fileParts);
-				if (filenames.contains(filename))
+				while (true)
 				{
-					fileParts.clear();
-					break;
+					try
+					{
+						future.get();
+						break;
+					}
+					catch (InterruptedException e)
+					{
+						aborted = true;
+						if (exception == null)
+							exception = new TaskCancelledException();
+					}
+					catch (ExecutionException e)
+					{
+						aborted = true;
+						Throwable cause = e.getCause();
+						if ((exception == null)
+								|| ((exception instanceof TaskCancelledException)
+										&& !(cause instanceof TaskCancelledException)))
+							exception = cause;
+						break;
+					}
 				}
-				fileParts.add(new FilePart(filename, length));
-				remainingLength -= length;
 			}
+
+			if (exception instanceof AppException appException)
+				throw appException;
+			if (exception instanceof RuntimeException runtimeException)
+				throw runtimeException;
+			if (exception instanceof Error error)
+				throw error;
+			if (exception != null)
+				throw new UnexpectedRuntimeException(exception);
 		}
 
-		// Read input file and write output files
-		List<File> writtenFiles = new ArrayList<>();
-		File tempFile = null;
-		FileInputStream inStream = null;
-		FileOutputStream outStream = null;
-		try
-		{
-			// Open input stream on input file
-			try
-			{
-				inStream = new FileInputStream(inFile);
-			}
-			catch (FileNotFoundException e)
-			{
-				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, inFile, e);
-			}
-			catch (SecurityException e)
-			{
-				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, inFile, e);
-			}
+		//--------------------------------------------------------------
 
-			// Lock input file
-			try
-			{
-				if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
-					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile);
-			}
-			catch (OverlappingFileLockException e)
-			{
-				// ignore
-			}
-			catch (IOException e)
-			{
-				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
-			}
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
 
-			// Get timestamp
-			long timestamp = inFile.lastModified();
-			if (timestamp == 0)
-				throw new FileException(ErrorId.FAILED_TO_GET_FILE_TIMESTAMP, inFile);
+		private	File				file;
+		private	FileChannel			channel;
+		private	long				timestamp;
+		private	ITaskProgressView	progressView;
+		private	List<File>			writtenFiles;
+		private	volatile boolean	aborted;
 
-			// Write file parts
-			long inOffset = 0;
-			for (int i = 0; i < fileParts.size(); i++)
-			{
-				// Test whether task has been cancelled
-				Task.throwIfCancelled();
+	}
 
-				// Initialise output file
-				FilePart filePart = fileParts.get(i);
-				File outFile = new File(outDirectory, filePart.name);
+	//==================================================================
 
-				// Update information in progress view
-				if (progressView != null)
-				{
-					progressView.setInfo(WRITING_STR, outFile);
-					progressView.setProgress(0, 0.0);
-					progressView.initOverallProgress(inOffset, filePart.length, inFileLength);
-					progressView.waitForIdle();
-				}
 
+	// FILE-PART ENCRYPTER CLASS
+
+
+	// This class implements a task that encrypts a range of the input file to a file part.  The input is read with
+	// positional reads from a channel that is shared with the tasks for the other file parts, and the output is written
+	// to a temporary file that is renamed to the file part when the encryption has completed successfully.
+	private static class FilePartEncrypter
+		implements Callable<Void>, IProgressListener
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private FilePartEncrypter(ConcurrentContext context,
+								  int               index,
+								  File              outFile,
+								  long              inOffset,
+								  long              length,
+								  StreamEncrypter   encrypter,
+								  long              timestamp,
+								  byte[]            key,
+								  byte[]            randomKey)
+		{
+			this.context = context;
+			this.index = index;
+			this.outFile = outFile;
+			this.inOffset = inOffset;
+			this.length = length;
+			this.encrypter = encrypter;
+			this.timestamp = timestamp;
+			this.key = key;
+			this.randomKey = randomKey;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : Callable interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public Void call()
+			throws AppException
+		{
+			// Test whether task has been aborted
+			if (context.isAborted())
+				throw new TaskCancelledException();
+
+			File tempFile = null;
+			FileOutputStream outStream = null;
+			try
+			{
 				// Create temporary file
 				try
 				{
@@ -587,18 +704,13 @@ class FileSplitter
 				// Encrypt file
 				try
 				{
-					long tstamp = (i == 0) ? timestamp : QanaApp.INSTANCE.getRandomLong();
-					StreamEncrypter encrypter =
-							key.getStreamEncrypter(Utils.getCipher(key),
-												   createHeader(filePart.name, i, fileParts.size()));
-					encrypter.addProgressListener(progressView);
-					encrypter.encrypt(inStream, outStream, filePart.length, tstamp, key.getKey(),
-									  QanaApp.INSTANCE.getRandomKey(), QanaApp.INSTANCE::generateKey);
+					encrypter.addProgressListener(this);
+					encrypter.encrypt(this::read, outStream::write, length, timestamp, key, randomKey, null);
 				}
 				catch (StreamEncrypter.InputException e)
 				{
 					e.setDataDescription(FILE_STR);
-					throw new FileException(e, inFile);
+					throw new FileException(e, context.file);
 				}
 				catch (StreamEncrypter.OutputException e)
 				{
@@ -641,71 +753,596 @@ class FileSplitter
 				}
 
 				// Add file to list
-				writtenFiles.add(outFile);
+				context.writtenFiles.add(outFile);
 
 				// Set timestamp of output file
-				outFile.setLastModified(timestamp);
-
-				// Increment offset
-				inOffset += filePart.length;
+				outFile.setLastModified(context.timestamp);
 			}
-
-			// Close input file
-			try
+			catch (AppException e)
 			{
-				inStream.close();
-				inStream = null;
+				// Close output file
+				try
+				{
+					if (outStream != null)
+						outStream.close();
+				}
+				catch (Exception e1)
+				{
+					// ignore
+				}
+
+				// Delete temporary file
+				try
+				{
+					if ((tempFile != null) && tempFile.exists())
+						tempFile.delete();
+				}
+				catch (Exception e1)
+				{
+					// ignore
+				}
+
+				// Rethrow exception
+				throw e;
 			}
-			catch (IOException e)
+
+			return null;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IProgressListener interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setProgress(double fractionDone)
+		{
+			context.progressView.setPartProgress(index, fractionDone);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public boolean isTaskCancelled()
+		{
+			return context.isAborted();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		// Reads data from the range of the input file that is encrypted by this task, starting at the position that
+		// follows the data that was read previously.
+		private int read(byte[] buffer,
+						 int    offset,
+						 int    length)
+			throws IOException
+		{
+			long remainingLength = this.length - inLength;
+			if (remainingLength <= 0)
+				return -1;
+			int readLength = context.channel.read(ByteBuffer.wrap(buffer, offset,
+																	(int)Math.min(length, remainingLength)),
+													inOffset + inLength);
+			if (readLength > 0)
+				inLength += readLength;
+			return readLength;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	ConcurrentContext	context;
+		private	int					index;
+		private	File				outFile;
+		private	long				inOffset;
+		private	long				inLength;
+		private	long				length;
+		private	StreamEncrypter		encrypter;
+		private	long				timestamp;
+		private	byte[]				key;
+		private	byte[]				randomKey;
+
+	}
+
+	//==================================================================
+
+
+	// FILE-PART DECRYPTER CLASS
+
+
+	// This class implements a task that decrypts a file part and writes the plaintext to its offset in the output file.
+	// The output is written with positional writes to a channel that is shared with the tasks for the other file parts.
+	private static class FilePartDecrypter
+		implements Callable<Void>, IProgressListener
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private FilePartDecrypter(ConcurrentContext context,
+								  int               index,
+								  File              inFile,
+								  long              length,
+								  StreamEncrypter   encrypter,
+								  byte[]            key,
+								  long              outOffset,
+								  long              expectedOutLength)
+		{
+			this.context = context;
+			this.index = index;
+			this.inFile = inFile;
+			this.length = length;
+			this.encrypter = encrypter;
+			this.key = key;
+			this.outOffset = outOffset;
+			this.expectedOutLength = expectedOutLength;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : Callable interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public Void call()
+			throws AppException
+		{
+			// Test whether task has been aborted
+			if (context.isAborted())
+				throw new TaskCancelledException();
+
+			FileInputStream inStream = null;
+			try
 			{
-				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
+				// Open input stream on input file
+				try
+				{
+					inStream = new FileInputStream(inFile);
+				}
+				catch (FileNotFoundException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, inFile, e);
+				}
+				catch (SecurityException e)
+				{
+					throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, inFile, e);
+				}
+
+				// Lock input file
+				try
+				{
+					if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+						throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile);
+				}
+				catch (OverlappingFileLockException e)
+				{
+					// ignore
+				}
+				catch (IOException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
+				}
+
+				// Decrypt file
+				try
+				{
+					encrypter.addProgressListener(this);
+					timestamp = encrypter.decrypt(inStream::read, this::write, length, key, null);
+				}
+				catch (StreamEncrypter.InputException e)
+				{
+					e.setDataDescription(FILE_STR);
+					throw new FileException(e, inFile);
+				}
+				catch (StreamEncrypter.OutputException e)
+				{
+					e.setDataDescription(FILE_STR);
+					throw new FileException(e, context.file);
+				}
+
+				// Test that length of plaintext is consistent with offset of next file part
+				if ((expectedOutLength >= 0) && (outLength != expectedOutLength))
+					throw new AppException(ErrorId.INCONSISTENT_FILE_PARTS);
+
+				// Close input file
+				try
+				{
+					inStream.close();
+					inStream = null;
+				}
+				catch (IOException e)
+				{
+					throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
+				}
+			}
+			catch (AppException e)
+			{
+				// Close input file
+				try
+				{
+					if (inStream != null)
+						inStream.close();
+				}
+				catch (IOException e1)
+				{
+					// ignore
+				}
+
+				// Rethrow exception
+				throw e;
 			}
+
+			return null;
 		}
-		catch (AppException e)
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IProgressListener interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setProgress(double fractionDone)
+		{
+			context.progressView.setPartProgress(index, fractionDone);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public boolean isTaskCancelled()
+		{
+			return context.isAborted();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		// Writes data to the output file at the position that follows the data that was written previously by this
+		// task.
+		private void write(byte[] data,
+						   int    offset,
+						   int    length)
+			throws IOException
+		{
+			if ((expectedOutLength >= 0) && (outLength + length > expectedOutLength))
+				throw new IOException(ErrorId.INCONSISTENT_FILE_PARTS.getMessage());
+			ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+			while (buffer.hasRemaining())
+				outLength += context.channel.write(buffer, outOffset + outLength);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	ConcurrentContext	context;
+		private	int					index;
+		private	File				inFile;
+		private	long				length;
+		private	StreamEncrypter		encrypter;
+		private	byte[]				key;
+		private	long				outOffset;
+		private	long				outLength;
+		private	long				expectedOutLength;
+		private	long				timestamp;
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	AtomicInteger	threadIndex	= new AtomicInteger();
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	int	numThreads;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	public FileSplitter()
+	{
+		this(DEFAULT_NUM_THREADS);
+	}
+
+	//------------------------------------------------------------------
+
+	// Creates a new instance of a file splitter that processes at most the specified number of file parts concurrently.
+	public FileSplitter(int numThreads)
+	{
+		this.numThreads = Math.max(MIN_NUM_THREADS, Math.min(numThreads, MAX_NUM_THREADS));
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	public static List<File> getFileParts(File directory)
+		throws AppException
+	{
+		File[] files = directory.listFiles(new FilePartFilter());
+		if (files == null)
+			throw new FileException(ErrorId.FAILED_TO_LIST_DIRECTORY_ENTRIES, directory);
+		return List.of(files);
+	}
+
+	//------------------------------------------------------------------
+
+	private static StreamEncrypter.Header createHeader(String filename,
+													   int    index,
+													   int    numFileParts,
+													   byte[] supplementaryData)
+	{
+		int id = (numFileParts << NUM_FILE_PARTS_SHIFT) | index;
+		id ^= new FortunaAes256(filename).getRandomInt();
+		return new StreamEncrypter.Header(id, VERSION, MIN_SUPPORTED_VERSION, MAX_SUPPORTED_VERSION,
+										  supplementaryData);
+	}
+
+	//------------------------------------------------------------------
+
+	// Parses the header of a file part and returns an array of the index of the file part, the number of file parts in
+	// the set and the version number of the file part.
+	private static int[] parseHeader(byte[] data,
+									 String filename)
+	{
+		int id = NumberCodec.bytesToUIntLE(data, 0, StreamEncrypter.Header.ID_FIELD_SIZE);
+		id ^= new FortunaAes256(filename).getRandomInt();
+		int version = NumberCodec.bytesToUIntLE(data, StreamEncrypter.Header.ID_FIELD_SIZE,
+												StreamEncrypter.Header.VERSION_FIELD_SIZE);
+		return new int[] { id & (1 << NUM_FILE_PARTS_SHIFT) - 1, id >>> NUM_FILE_PARTS_SHIFT, version };
+	}
+
+	//------------------------------------------------------------------
+
+	private static boolean isMasterKeyVersion(int version)
+	{
+		return (version >= MIN_MASTER_KEY_VERSION) && (version <= MAX_SUPPORTED_VERSION);
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the mask that is applied to the plaintext offset in the header of the file part with the specified name.
+	// Like the identifier of the header, the offset is masked with random data that is generated from the filename.
+	private static long getOffsetMask(String filename)
+	{
+		Fortuna prng = new FortunaAes256(filename);
+		prng.getRandomInt();
+		return prng.getRandomLong();
+	}
+
+	//------------------------------------------------------------------
+
+	private static byte[] createSupplementaryData(String filename,
+												  byte[] masterKeyData,
+												  long   offset)
+	{
+		byte[] data = Arrays.copyOf(masterKeyData, SUPPLEMENTARY_DATA_SIZE);
+		NumberCodec.longToBytesLE(offset ^ getOffsetMask(filename), data, MASTER_KEY_DATA_SIZE, OFFSET_FIELD_SIZE);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	private static long parseOffset(byte[] data,
+									int    offset,
+									String filename)
+	{
+		return NumberCodec.bytesToLongLE(data, offset, OFFSET_FIELD_SIZE) ^ getOffsetMask(filename);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	public void split(File        inFile,
+					  File        outDirectory,
+					  int         filePartLengthLowerBound,
+					  int         filePartLengthUpperBound,
+					  KeyList.Key key)
+		throws AppException
+	{
+		// Validate arguments
+		if ((filePartLengthLowerBound < MIN_FILE_PART_LENGTH) ||(filePartLengthUpperBound > MAX_FILE_PART_LENGTH)
+				|| (filePartLengthLowerBound > filePartLengthUpperBound))
+			throw new IllegalArgumentException();
+
+		// Reset progress in progress view
+		ITaskProgressView progressView = (ITaskProgressView)Task.getProgressView();
+		progressView.setProgress(0, 0.0);
+		progressView.setProgress(1, 0.0);
+
+		// Test file length
+		long inFileLength = inFile.length();
+		if (inFileLength == 0)
+			throw new FileException(ErrorId.FILE_IS_EMPTY, inFile);
+		long meanFilePartLength = (filePartLengthLowerBound + filePartLengthUpperBound) / 2;
+		if ((inFileLength + meanFilePartLength - 1) / meanFilePartLength > MAX_NUM_FILE_PARTS)
+			throw new FileException(ErrorId.FILE_IS_TOO_LONG, inFile);
+
+		// Create output directory
+		if (!outDirectory.exists())
 		{
-			// Close input file
 			try
 			{
-				if (inStream != null)
-					inStream.close();
+				if (!outDirectory.mkdirs())
+					throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, outDirectory);
 			}
-			catch (IOException e1)
+			catch (SecurityException e)
 			{
-				// ignore
+				throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, outDirectory, e);
 			}
+		}
 
-			// Close output file
+		// Create list of names of existing file parts in output directory
+		File[] files = outDirectory.listFiles(new FilePartFilter());
+		if (files == null)
+			throw new FileException(ErrorId.FAILED_TO_LIST_DIRECTORY_ENTRIES, outDirectory);
+		List<String> filenames = new ArrayList<>();
+		for (File file : files)
+			filenames.add(file.getName());
+
+		// Create list of file parts
+		List<FilePart> fileParts = new ArrayList<>();
+		while (fileParts.isEmpty())
+		{
+			FilenameGenerator filenameGenerator = new FilenameGenerator();
+			long remainingLength = inFileLength;
+			while (remainingLength > 0)
+			{
+				int lengthRange = filePartLengthUpperBound - filePartLengthLowerBound + 1;
+				int length = (int)Math.min(filePartLengthLowerBound + getRandomInt(lengthRange),
+										   remainingLength);
+				String filename = filenameGenerator.getNextName(fileParts);
+				if (filenames.contains(filename))
+				{
+					fileParts.clear();
+					break;
+				}
+				fileParts.add(new FilePart(filename, length));
+				remainingLength -= length;
+			}
+		}
+
+		// Read input file and write output files
+		List<File> writtenFiles = Collections.synchronizedList(new ArrayList<>());
+		FileInputStream inStream = null;
+		try
+		{
+			// Open input stream on input file
 			try
 			{
-				if (outStream != null)
-					outStream.close();
+				inStream = new FileInputStream(inFile);
 			}
-			catch (Exception e1)
+			catch (FileNotFoundException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, inFile, e);
+			}
+			catch (SecurityException e)
+			{
+				throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, inFile, e);
+			}
+
+			// Lock input file
+			try
+			{
+				if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile);
+			}
+			catch (OverlappingFileLockException e)
 			{
 				// ignore
 			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
+			}
 
-			// Delete temporary file
+			// Get timestamp
+			long timestamp = inFile.lastModified();
+			if (timestamp == 0)
+				throw new FileException(ErrorId.FAILED_TO_GET_FILE_TIMESTAMP, inFile);
+
+			// Derive master key of set of file parts
+			MasterKey masterKey = MasterKey.create(key);
+
+			// Initialise progress of file parts
+			long[] lengths = new long[fileParts.size()];
+			for (int i = 0; i < lengths.length; i++)
+				lengths[i] = fileParts.get(i).length;
+			progressView.initPartProgress(lengths);
+			progressView.setInfo(WRITING_STR, outDirectory);
+
+			// Create the tasks that will encrypt the file parts.
+			// The random data for each file part is generated on this thread, so that the workers do not share the
+			// application's PRNG.
+			ConcurrentContext context = new ConcurrentContext(inFile, inStream.getChannel(), timestamp, progressView,
+															  writtenFiles);
+			List<FilePartEncrypter> tasks = new ArrayList<>();
+			long inOffset = 0;
+			for (int i = 0; i < fileParts.size(); i++)
+			{
+				FilePart filePart = fileParts.get(i);
+				long tstamp = (i == 0) ? timestamp : QanaApp.INSTANCE.getRandomLong();
+				StreamEncrypter encrypter =
+						new StreamEncrypter(Utils.getCipher(key),
+											createHeader(filePart.name, i, fileParts.size(),
+														 createSupplementaryData(filePart.name, masterKey.data,
+																				 inOffset)));
+				tasks.add(new FilePartEncrypter(context, i, new File(outDirectory, filePart.name), inOffset,
+												filePart.length, encrypter, tstamp, masterKey.getPartKey(i),
+												QanaApp.INSTANCE.getRandomKey()));
+				inOffset += filePart.length;
+			}
+
+			// Encrypt the file parts concurrently.
+			// Each file part is an independent encrypted stream that is read from its own range of the input file with
+			// positional reads and written to its own temporary file, so the parts can be processed in any order.
+			runConcurrently(tasks, context);
+
+			// Close input file
 			try
 			{
-				if ((tempFile != null) && tempFile.exists())
-					tempFile.delete();
+				inStream.close();
+				inStream = null;
 			}
-			catch (Exception e1)
+			catch (IOException e)
+			{
+				throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
+			}
+		}
+		catch (AppException e)
+		{
+			// Close input file
+			try
+			{
+				if (inStream != null)
+					inStream.close();
+			}
+			catch (IOException e1)
 			{
 				// ignore
 			}
 
 			// Delete written files
-			for (File file : writtenFiles)
+			synchronized (writtenFiles)
 			{
-				try
+				for (File file : writtenFiles)
 				{
-					file.delete();
-				}
-				catch (Exception e1)
-				{
-					// ignore
+					try
+					{
+						file.delete();
+					}
+					catch (Exception e1)
+					{
+						// ignore
+					}
 				}
 			}
 
@@ -722,7 +1359,7 @@ class FileSplitter
 		throws AppException
 	{
 		// Reset progress in progress view
-		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
+		ITaskProgressView progressView = (ITaskProgressView)Task.getProgressView();
 		progressView.setProgress(0, 0.0);
 		progressView.setProgress(1, 0.0);
 
@@ -766,8 +1403,14 @@ class FileSplitter
 		FirstFilePart firstFilePart = firstFileParts.get(0);
 		if (firstFileParts.size() > 1)
 		{
-			firstFilePart = FilePartSetSelectionDialog.showDialog(progressView.getOwner(),
-																  firstFileParts);
+			// If there is no window from which a set can be selected, fail
+			Window owner = (progressView instanceof Window window) ? window.getOwner()
+																	: QanaApp.INSTANCE.getMainWindow();
+			if (owner == null)
+				throw new FileException(ErrorId.MULTIPLE_SETS_OF_FILE_PARTS, inDirectory);
+
+			// Select set of file parts
+			firstFilePart = FilePartSetSelectionDialog.showDialog(owner, firstFileParts);
 			if (firstFilePart == null)
 				throw new TaskCancelledException();
 		}
@@ -777,6 +1420,9 @@ class FileSplitter
 		fileParts.clear();
 		long totalInFileLengths = 0;
 		int numFileParts = firstFilePart.numFileParts;
+		int version = 0;
+		byte[] masterKeyData = null;
+		long[] offsets = new long[numFileParts];
 		for (int i = 0; i < numFileParts; i++)
 		{
 			// Test whether task has been cancelled
@@ -786,13 +1432,13 @@ class FileSplitter
 			String filename = filenameGenerator.getNextName(fileParts);
 			File file = new File(inDirectory, filename);
 			long length = file.length();
-			if (length < key.getStreamEncrypter(null, createHeader(filename, i, numFileParts)).
+			if (length < key.getStreamEncrypter(null, createHeader(filename, i, numFileParts, null)).
 																					getMinOverheadSize())
 				throw new FileException(ErrorId.FILE_IS_TOO_SHORT, inDirectory);
 			totalInFileLengths += length;
 
-			// Read file header
-			byte[] buffer = new byte[StreamEncrypter.Header.SIZE];
+			// Read file header and any supplementary data
+			byte[] buffer = new byte[StreamEncrypter.Header.SIZE + SUPPLEMENTARY_DATA_SIZE];
 			BinaryFile.read(file, buffer);
 
 			// Test file header
@@ -800,12 +1446,37 @@ class FileSplitter
 			if ((values[0] != i) || (values[1] != numFileParts))
 				throw new AppException(ErrorId.INCONSISTENT_FILE_PARTS);
 
+			// Test that version and master key of file part are the same as those of first file part
+			int dataOffset = StreamEncrypter.Header.SIZE;
+			byte[] data = isMasterKeyVersion(values[2])
+								? Arrays.copyOfRange(buffer, dataOffset, dataOffset + MASTER_KEY_DATA_SIZE)
+								: null;
+			if (i == 0)
+			{
+				version = values[2];
+				masterKeyData = data;
+			}
+			else if ((values[2] != version) || !Arrays.equals(data, masterKeyData))
+				throw new AppException(ErrorId.INCONSISTENT_FILE_PARTS);
+
+			// Test that plaintext offset of file part follows that of previous file part
+			if (isMasterKeyVersion(version))
+			{
+				long offset = parseOffset(buffer, dataOffset + MASTER_KEY_DATA_SIZE, filename);
+				if ((i == 0) ? (offset != 0) : (offset < offsets[i - 1]))
+					throw new AppException(ErrorId.INCONSISTENT_FILE_PARTS);
+				offsets[i] = offset;
+			}
+
 			// Add file part to list
 			fileParts.add(new FilePart(filename, length));
 		}
 		if (fileParts.size() != numFileParts)
 			throw new AppException(ErrorId.INCONSISTENT_FILE_PARTS);
 
+		// Derive master key of set of file parts
+		MasterKey masterKey = (masterKeyData == null) ? null : MasterKey.derive(key, masterKeyData);
+
 		// Read input files and write output file
 		File tempFile = null;
 		FileInputStream inStream = null;
@@ -866,90 +1537,123 @@ class FileSplitter
 
 			// Read input files and write output file
 			long timestamp = 0;
-			long inOffset = 0;
-			for (int i = 0; i < fileParts.size(); i++)
+			if (isMasterKeyVersion(version))
 			{
-				// Test whether task has been cancelled
-				Task.throwIfCancelled();
-
-				// Initialise input file
-				FilePart filePart = fileParts.get(i);
-				File inFile = new File(inDirectory, filePart.name);
-
-				// Update information in progress view
-				if (progressView != null)
+				// Initialise progress of file parts
+				long[] lengths = new long[fileParts.size()];
+				for (int i = 0; i < lengths.length; i++)
+					lengths[i] = fileParts.get(i).length;
+				progressView.initPartProgress(lengths);
+				progressView.setInfo(READING_STR, inDirectory);
+
+				// Create the tasks that will decrypt the file parts
+				ConcurrentContext context = new ConcurrentContext(tempFile, outStream.getChannel(), 0, progressView,
+																  null);
+				List<FilePartDecrypter> tasks = new ArrayList<>();
+				for (int i = 0; i < fileParts.size(); i++)
 				{
-					progressView.setInfo(READING_STR, inFile);
-					progressView.setProgress(0, 0.0);
-					progressView.initOverallProgress(inOffset, filePart.length, totalInFileLengths);
-					progressView.waitForIdle();
+					FilePart filePart = fileParts.get(i);
+					StreamEncrypter encrypter =
+							new StreamEncrypter(null, createHeader(filePart.name, i, fileParts.size(),
+																   new byte[SUPPLEMENTARY_DATA_SIZE]));
+					long outLength = (i < fileParts.size() - 1) ? offsets[i + 1] - offsets[i] : -1;
+					tasks.add(new FilePartDecrypter(context, i, new File(inDirectory, filePart.name),
+													filePart.length, encrypter, masterKey.getPartKey(i), offsets[i],
+													outLength));
 				}
 
-				// Open input stream on input file
-				try
-				{
-					inStream = new FileInputStream(inFile);
-				}
-				catch (FileNotFoundException e)
-				{
-					throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, inFile, e);
-				}
-				catch (SecurityException e)
+				// Decrypt the file parts concurrently.
+				// The plaintext of each file part is written directly to its offset in the output file with positional
+				// writes, so the parts can be processed in any order.
+				runConcurrently(tasks, context);
+				timestamp = tasks.get(0).timestamp;
+			}
+			else
+			{
+				long inOffset = 0;
+				for (int i = 0; i < fileParts.size(); i++)
 				{
-					throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, inFile, e);
-				}
+					// Test whether task has been cancelled
+					Task.throwIfCancelled();
 
-				// Lock input file
-				try
-				{
-					if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
-						throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile);
-				}
-				catch (OverlappingFileLockException e)
-				{
-					// ignore
-				}
-				catch (IOException e)
-				{
-					throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
-				}
+					// Initialise input file
+					FilePart filePart = fileParts.get(i);
+					File inFile = new File(inDirectory, filePart.name);
 
-				// Decrypt file
-				try
-				{
-					StreamEncrypter encrypter = key.getStreamEncrypter(null,
-																	   createHeader(filePart.name, i,
-																					fileParts.size()));
-					encrypter.addProgressListener(progressView);
-					long tstamp = encrypter.decrypt(inStream, outStream, filePart.length, key.getKey(),
-													QanaApp.INSTANCE::generateKey);
-					if (i == 0)
-						timestamp = tstamp;
-				}
-				catch (StreamEncrypter.InputException e)
-				{
-					e.setDataDescription(FILE_STR);
-					throw new FileException(e, inFile);
-				}
-				catch (StreamEncrypter.OutputException e)
-				{
-					e.setDataDescription(FILE_STR);
-					throw new FileException(e, tempFile);
-				}
+					// Update information in progress view
+					if (progressView != null)
+					{
+						progressView.setInfo(READING_STR, inFile);
+						progressView.setProgress(0, 0.0);
+						progressView.initOverallProgress(inOffset, filePart.length, totalInFileLengths);
+						progressView.waitForIdle();
+					}
 
-				// Close input file
-				try
-				{
-					inStream.close();
-					inStream = null;
-				}
-				catch (IOException e)
-				{
-					throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
-				}
+					// Open input stream on input file
+					try
+					{
+						inStream = new FileInputStream(inFile);
+					}
+					catch (FileNotFoundException e)
+					{
+						throw new FileException(ErrorId.FAILED_TO_OPEN_FILE, inFile, e);
+					}
+					catch (SecurityException e)
+					{
+						throw new FileException(ErrorId.FILE_ACCESS_NOT_PERMITTED, inFile, e);
+					}
 
-				// Increment offset
-				inOffset += filePart.length;
+					// Lock input file
+					try
+					{
+						if (inStream.getChannel().tryLock(0, Long.MAX_VALUE, true) == null)
+							throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile);
+					}
+					catch (OverlappingFileLockException e)
+					{
+						// ignore
+					}
+					catch (IOException e)
+					{
+						throw new FileException(ErrorId.FAILED_TO_LOCK_FILE, inFile, e);
+					}
+
+					// Decrypt file
+					try
+					{
+						StreamEncrypter encrypter =
+								key.getStreamEncrypter(null, createHeader(filePart.name, i, fileParts.size(), null));
+						encrypter.addProgressListener(progressView);
+						long tstamp = encrypter.decrypt(inStream, outStream, filePart.length, key.getKey(),
+														QanaApp.INSTANCE::generateKey);
+						if (i == 0)
+							timestamp = tstamp;
+					}
+					catch (StreamEncrypter.InputException e)
+					{
+						e.setDataDescription(FILE_STR);
+						throw new FileException(e, inFile);
+					}
+					catch (StreamEncrypter.OutputException e)
+					{
+						e.setDataDescription(FILE_STR);
+						throw new FileException(e, tempFile);
+					}
+
+					// Close input file
+					try
+					{
+						inStream.close();
+						inStream = null;
+					}
+					catch (IOException e)
+					{
+						throw new FileException(ErrorId.FAILED_TO_CLOSE_FILE, inFile, e);
+					}
+
+					// Increment offset
+					inOffset += filePart.length;
+				}
 			}
 
 			// Close output file
@@ -1032,6 +1736,30 @@ class FileSplitter
 
 	//------------------------------------------------------------------
 
+	// Performs the specified tasks on a pool of at most numThreads threads, and waits for all of them to finish.
+	private void runConcurrently(List<? extends Callable<Void>> tasks,
+								 ConcurrentContext              context)
+		throws AppException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, tasks.size()), runnable ->
+				DaemonFactory.create(getClass().getSimpleName() + "-" + threadIndex.getAndIncrement(), runnable));
+		try
+		{
+			// Submit tasks, each of which is bound to the task context of this thread
+			TaskContext taskContext = Task.getContext();
+			List<Future<Void>> futures = new ArrayList<>();
+			for (Callable<Void> task : tasks)
+				futures.add(executor.submit(() -> taskContext.call(task)));
+			context.awaitCompletion(futures);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private int getRandomInt(int range)
 	{
 		long value = (long)(QanaApp.INSTANCE.getRandomInt() & 0x7FFFFFFF) * (long)range;
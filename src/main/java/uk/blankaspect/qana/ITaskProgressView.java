@@ -0,0 +1,59 @@
+/*====================================================================*\
+
+ITaskProgressView.java
+
+Interface: task progress view.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import uk.blankaspect.common.misc.IProgressListener;
+
+import uk.blankaspect.common.ui.progress.IProgressView;
+
+//----------------------------------------------------------------------
+
+
+// INTERFACE: TASK PROGRESS VIEW
+
+
+// This interface defines the methods of a view of the progress of a task that are used by the file operations of this
+// application, so that the operations can be performed with either a TaskProgressDialog or a view that does not require
+// a display.
+interface ITaskProgressView
+	extends IProgressListener, IProgressView
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Methods
+////////////////////////////////////////////////////////////////////////
+
+	void initOverallProgress(long offset,
+							 long length,
+							 long totalLength);
+
+	//------------------------------------------------------------------
+
+	void initPartProgress(long[] lengths);
+
+	//------------------------------------------------------------------
+
+	void setPartProgress(int    index,
+						 double fractionDone);
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
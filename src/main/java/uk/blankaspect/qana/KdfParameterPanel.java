@@ -41,14 +41,18 @@ import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import uk.blankaspect.common.crypto.Fortuna;
+import uk.blankaspect.common.crypto.KdfCalibrator;
 import uk.blankaspect.common.crypto.Scrypt;
 import uk.blankaspect.common.crypto.ScryptSalsa20;
 import uk.blankaspect.common.crypto.StreamEncrypter;
 
 import uk.blankaspect.common.exception.AppException;
 
+import uk.blankaspect.common.thread.DaemonFactory;
+
 import uk.blankaspect.ui.swing.button.FButton;
 import uk.blankaspect.ui.swing.button.FRadioButton;
 
@@ -83,6 +87,13 @@ class KdfParameterPanel
 	private static final	int		NUM_BLOCKS_FIELD_LENGTH			= 3;
 	private static final	int		NUM_SUPERBLOCKS_FIELD_LENGTH	= 2;
 	private static final	int		MAX_NUM_THREADS_FIELD_LENGTH	= 2;
+	private static final	int		TARGET_TIME_FIELD_LENGTH		= 5;
+
+	private static final	int		MIN_TARGET_TIME		= 100;
+	private static final	int		MAX_TARGET_TIME		= 60000;
+	private static final	int		DEFAULT_TARGET_TIME	= 1000;
+
+	private static final	double	BYTES_PER_MIB	= 1 << 20;
 
 	private static final	Color	PANEL_BORDER_COLOUR	= new Color(160, 184, 160);
 
@@ -95,12 +106,21 @@ class KdfParameterPanel
 	private static final	String	GENERATING_KEY_STR		= "Generating a test key " + AppConstants.ELLIPSIS_STR;
 	private static final	String	KEY_GENERATION_TIME_STR	= "Key generation time";
 	private static final	String	MS_STR					= "ms";
+	private static final	String	MIB_STR					= "MiB";
+	private static final	String	MEMORY_FORMAT			= "%.1f";
+	private static final	String	PREDICTED_TIME_STR		= "Predicted time";
+	private static final	String	MEMORY_STR				= "Memory";
+	private static final	String	CALIBRATE_STR			= "Calibrate";
+	private static final	String	TARGET_TIME_STR			= "Target time";
+	private static final	String	MEASURING_SPEED_STR		= "Measuring the speed of the key derivation function "
+																+ AppConstants.ELLIPSIS_STR;
 
 	// Commands
 	private interface Command
 	{
 		String	SELECT_PARAMETER_KIND	= "selectParameterKind";
 		String	GENERATE_KEY			= "generateKey";
+		String	CALIBRATE				= "calibrate";
 	}
 
 ////////////////////////////////////////////////////////////////////////
@@ -120,7 +140,10 @@ class KdfParameterPanel
 	////////////////////////////////////////////////////////////////////
 
 		NOT_ENOUGH_MEMORY
-		("There was not enough memory to generate the key.");
+		("There was not enough memory to generate the key."),
+
+		NOT_ENOUGH_MEMORY_TO_MEASURE_SPEED
+		("There was not enough memory to measure the speed of the key derivation function.");
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
@@ -212,10 +235,10 @@ class KdfParameterPanel
 	//==================================================================
 
 
-	// TIME FIELD CLASS
+	// VALUE FIELD CLASS
 
 
-	private static class TimeField
+	private static class ValueField
 		extends JComponent
 	{
 
@@ -236,7 +259,7 @@ class KdfParameterPanel
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		private TimeField()
+		private ValueField()
 		{
 			// Set font
 			AppFont.TEXT_FIELD.apply(this);
@@ -597,13 +620,117 @@ class KdfParameterPanel
 		paramPanel.add(maxNumThreadsSpinner);
 
 
+		// Update prediction when a parameter changes
+		numRoundsComboBox.addActionListener(event -> updatePrediction());
+		costSpinner.addChangeListener(event -> updatePrediction());
+		numBlocksSpinner.addChangeListener(event -> updatePrediction());
+		numSuperblocksSpinner.addChangeListener(event -> updatePrediction());
+		maxNumThreadsSpinner.addChangeListener(event -> updatePrediction());
+
+
+		//----  Prediction panel
+
+		JPanel predictionPanel = new JPanel(gridBag);
+		GuiUtils.setPaddedLineBorder(predictionPanel, PANEL_BORDER_COLOUR);
+
+		gridY = 0;
+
+		// Label: predicted time
+		JLabel predictedTimeLabel = new FLabel(PREDICTED_TIME_STR);
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_END;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(predictedTimeLabel, gbc);
+		predictionPanel.add(predictedTimeLabel);
+
+		// Field: predicted time
+		predictedTimeField = new ValueField();
+
+		gbc.gridx = 1;
+		gbc.gridy = gridY;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(predictedTimeField, gbc);
+		predictionPanel.add(predictedTimeField);
+
+		// Label: ms
+		JLabel predictedTimeUnitLabel = new FLabel(MS_STR);
+
+		gbc.gridx = 2;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(predictedTimeUnitLabel, gbc);
+		predictionPanel.add(predictedTimeUnitLabel);
+
+		// Label: memory
+		JLabel memoryLabel = new FLabel(MEMORY_STR);
+
+		gbc.gridx = 0;
+		gbc.gridy = gridY;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_END;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(memoryLabel, gbc);
+		predictionPanel.add(memoryLabel);
+
+		// Field: memory
+		memoryField = new ValueField();
+
+		gbc.gridx = 1;
+		gbc.gridy = gridY;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(memoryField, gbc);
+		predictionPanel.add(memoryField);
+
+		// Label: MiB
+		JLabel memoryUnitLabel = new FLabel(MIB_STR);
+
+		gbc.gridx = 2;
+		gbc.gridy = gridY++;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = AppConstants.COMPONENT_INSETS;
+		gridBag.setConstraints(memoryUnitLabel, gbc);
+		predictionPanel.add(memoryUnitLabel);
+
+
 		//----  Control panel
 
 		JPanel controlPanel = new JPanel(gridBag);
 
-		int gridX = 0;
-
-		gbc.gridx = gridX++;
+		gbc.gridx = 0;
 		gbc.gridy = 0;
 		gbc.gridwidth = 1;
 		gbc.gridheight = 1;
@@ -615,10 +742,22 @@ class KdfParameterPanel
 		gridBag.setConstraints(kdfUsePanel, gbc);
 		controlPanel.add(kdfUsePanel);
 
-		gbc.gridx = gridX++;
-		gbc.gridy = 0;
+		gbc.gridx = 0;
+		gbc.gridy = 1;
 		gbc.gridwidth = 1;
 		gbc.gridheight = 1;
+		gbc.weightx = 1.0;
+		gbc.weighty = 1.0;
+		gbc.anchor = GridBagConstraints.SOUTH;
+		gbc.fill = GridBagConstraints.HORIZONTAL;
+		gbc.insets = new Insets(4, 0, 0, 0);
+		gridBag.setConstraints(predictionPanel, gbc);
+		controlPanel.add(predictionPanel);
+
+		gbc.gridx = 1;
+		gbc.gridy = 0;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 2;
 		gbc.weightx = 0.0;
 		gbc.weighty = 0.0;
 		gbc.anchor = GridBagConstraints.NORTH;
@@ -633,7 +772,7 @@ class KdfParameterPanel
 		JPanel testPanel = new JPanel(gridBag);
 		GuiUtils.setPaddedLineBorder(testPanel, PANEL_BORDER_COLOUR);
 
-		gridX = 0;
+		int gridX = 0;
 
 		// Button: generate key
 		JButton generateButton = new FButton(GENERATE_KEY_STR);
@@ -647,7 +786,7 @@ class KdfParameterPanel
 		gbc.weightx = 0.0;
 		gbc.weighty = 0.0;
 		gbc.anchor = GridBagConstraints.LINE_START;
-		gbc.fill = GridBagConstraints.NONE;
+		gbc.fill = GridBagConstraints.HORIZONTAL;
 		gbc.insets = new Insets(0, 0, 0, 0);
 		gridBag.setConstraints(generateButton, gbc);
 		testPanel.add(generateButton);
@@ -661,14 +800,14 @@ class KdfParameterPanel
 		gbc.gridheight = 1;
 		gbc.weightx = 0.0;
 		gbc.weighty = 0.0;
-		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.anchor = GridBagConstraints.LINE_END;
 		gbc.fill = GridBagConstraints.NONE;
 		gbc.insets = new Insets(0, 12, 0, 0);
 		gridBag.setConstraints(generationTimeLabel, gbc);
 		testPanel.add(generationTimeLabel);
 
 		// Field: key generation time
-		generationTimeField = new TimeField();
+		generationTimeField = new ValueField();
 
 		gbc.gridx = gridX++;
 		gbc.gridy = 0;
@@ -697,6 +836,70 @@ class KdfParameterPanel
 		gridBag.setConstraints(msLabel, gbc);
 		testPanel.add(msLabel);
 
+		gridX = 0;
+
+		// Button: calibrate
+		JButton calibrateButton = new FButton(CALIBRATE_STR);
+		calibrateButton.setActionCommand(Command.CALIBRATE);
+		calibrateButton.addActionListener(this);
+
+		gbc.gridx = gridX++;
+		gbc.gridy = 1;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.HORIZONTAL;
+		gbc.insets = new Insets(3, 0, 0, 0);
+		gridBag.setConstraints(calibrateButton, gbc);
+		testPanel.add(calibrateButton);
+
+		// Label: target time
+		JLabel targetTimeLabel = new FLabel(TARGET_TIME_STR);
+
+		gbc.gridx = gridX++;
+		gbc.gridy = 1;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_END;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = new Insets(3, 12, 0, 0);
+		gridBag.setConstraints(targetTimeLabel, gbc);
+		testPanel.add(targetTimeLabel);
+
+		// Spinner: target time
+		targetTimeSpinner = new FIntegerSpinner(targetTime, MIN_TARGET_TIME, MAX_TARGET_TIME, TARGET_TIME_FIELD_LENGTH);
+
+		gbc.gridx = gridX++;
+		gbc.gridy = 1;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = new Insets(3, 6, 0, 0);
+		gridBag.setConstraints(targetTimeSpinner, gbc);
+		testPanel.add(targetTimeSpinner);
+
+		// Label: ms
+		JLabel targetTimeUnitLabel = new FLabel(MS_STR);
+
+		gbc.gridx = gridX++;
+		gbc.gridy = 1;
+		gbc.gridwidth = 1;
+		gbc.gridheight = 1;
+		gbc.weightx = 0.0;
+		gbc.weighty = 0.0;
+		gbc.anchor = GridBagConstraints.LINE_START;
+		gbc.fill = GridBagConstraints.NONE;
+		gbc.insets = new Insets(3, 4, 0, 0);
+		gridBag.setConstraints(targetTimeUnitLabel, gbc);
+		testPanel.add(targetTimeUnitLabel);
+
 
 		//----  Outer panel
 
@@ -728,6 +931,9 @@ class KdfParameterPanel
 		gbc.insets = new Insets(4, 0, 0, 0);
 		gridBag.setConstraints(testPanel, gbc);
 		add(testPanel);
+
+		// Show prediction for initial parameters
+		updatePrediction();
 	}
 
 	//------------------------------------------------------------------
@@ -743,6 +949,7 @@ class KdfParameterPanel
 		{
 			case Command.SELECT_PARAMETER_KIND -> onSelectParameterKind();
 			case Command.GENERATE_KEY          -> onGenerateKey();
+			case Command.CALIBRATE             -> onCalibrate();
 		}
 	}
 
@@ -818,6 +1025,94 @@ class KdfParameterPanel
 
 	//------------------------------------------------------------------
 
+	private void onCalibrate()
+	{
+		try
+		{
+			// Measure speed of KDF if it has not already been measured
+			StreamEncrypter.KdfParams params = getParams();
+			if (!calibrator.isBenchmarked(params.numRounds))
+			{
+				boolean[] outOfMemory = new boolean[1];
+				RunnableMessageDialog.showDialog(this, MEASURING_SPEED_STR, () ->
+				{
+					try
+					{
+						calibrator.benchmark(params.numRounds);
+					}
+					catch (OutOfMemoryError e)
+					{
+						outOfMemory[0] = true;
+					}
+				});
+				if (outOfMemory[0])
+					throw new AppException(ErrorId.NOT_ENOUGH_MEMORY_TO_MEASURE_SPEED);
+			}
+
+			// Select parameters that meet target time within memory budget
+			targetTime = targetTimeSpinner.getIntValue();
+			StreamEncrypter.KdfParams newParams =
+					calibrator.calibrate(params, targetTime, KdfCalibrator.getDefaultMemoryBudget());
+			costSpinner.setIntValue(newParams.getCost());
+			numSuperblocksSpinner.setIntValue(newParams.getNumSuperblocks());
+			updatePrediction();
+		}
+		catch (AppException e)
+		{
+			JOptionPane.showMessageDialog(this, e, QanaApp.SHORT_NAME, JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	// Updates the predicted time and memory of a derivation with the current parameters.  If the speed of the KDF with
+	// the current number of rounds has not been measured, the predicted time is cleared and the speed is measured on a
+	// background thread, after which the prediction is updated again.
+	private void updatePrediction()
+	{
+		StreamEncrypter.KdfParams params = getParams();
+		memoryField.setText(String.format(MEMORY_FORMAT,
+										  (double)KdfCalibrator.getMemoryUsage(params) / BYTES_PER_MIB));
+		if (calibrator.isBenchmarked(params.numRounds))
+			predictedTimeField.setText(Long.toString(calibrator.getPredictedTime(params)));
+		else
+		{
+			predictedTimeField.setText(null);
+			if (!benchmarking)
+			{
+				benchmarking = true;
+				DaemonFactory.create(getClass().getSimpleName() + "-benchmark", () ->
+				{
+					try
+					{
+						calibrator.benchmark(params.numRounds);
+					}
+					catch (OutOfMemoryError e)
+					{
+						// ignore
+					}
+					SwingUtilities.invokeLater(() ->
+					{
+						benchmarking = false;
+						Scrypt.CoreHashNumRounds numRounds = numRoundsComboBox.getSelectedValue();
+						if (calibrator.isBenchmarked(numRounds) || (numRounds != params.numRounds))
+							updatePrediction();
+					});
+				})
+				.start();
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	KdfCalibrator	calibrator	= new KdfCalibrator();
+	private static	int				targetTime	= DEFAULT_TARGET_TIME;
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
@@ -830,7 +1125,11 @@ class KdfParameterPanel
 	private	FIntegerSpinner							numBlocksSpinner;
 	private	FIntegerSpinner							numSuperblocksSpinner;
 	private	FIntegerSpinner							maxNumThreadsSpinner;
-	private	TimeField								generationTimeField;
+	private	FIntegerSpinner							targetTimeSpinner;
+	private	ValueField								generationTimeField;
+	private	ValueField								predictedTimeField;
+	private	ValueField								memoryField;
+	private	boolean									benchmarking;
 
 }
 
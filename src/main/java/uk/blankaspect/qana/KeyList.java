@@ -660,7 +660,7 @@ class KeyList
 		throws AppException
 	{
 		// Initialise progress view
-		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
+		ITaskProgressView progressView = (ITaskProgressView)Task.getProgressView();
 		progressView.setInfo(READING_STR, file);
 		progressView.setProgress(0, 0.0);
 
@@ -706,7 +706,7 @@ class KeyList
 		dataBlocks.add(stringTable.toByteArray());
 
 		// Initialise progress view
-		TaskProgressDialog progressView = (TaskProgressDialog)Task.getProgressView();
+		ITaskProgressView progressView = (ITaskProgressView)Task.getProgressView();
 		progressView.setInfo(WRITING_STR, file);
 		progressView.setProgress(0, 0.0);
 
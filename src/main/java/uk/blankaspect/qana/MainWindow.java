@@ -99,8 +99,9 @@ class MainWindow
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
 
-	private	TabbedPane	tabbedPanel;
-	private	StatusPanel	statusPanel;
+	private	TabbedPane		tabbedPanel;
+	private	TaskQueuePanel	taskQueuePanel;
+	private	StatusPanel		statusPanel;
 
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
@@ -176,9 +177,12 @@ class MainWindow
 		menu.addSeparator();
 
 		menu.add(new FMenuItem(ArchiveDocument.Command.ADD_FILES, KeyEvent.VK_A));
+		menu.add(new FMenuItem(ArchiveDocument.Command.UPDATE_FILES, KeyEvent.VK_U));
 		menu.add(new FMenuItem(ArchiveDocument.Command.EXTRACT_FILES, KeyEvent.VK_E));
 		menu.add(new FMenuItem(ArchiveDocument.Command.VALIDATE_FILES, KeyEvent.VK_V));
 		menu.add(new FMenuItem(ArchiveDocument.Command.DELETE_FILES, KeyEvent.VK_D));
+		menu.add(new FMenuItem(ArchiveDocument.Command.CHANGE_LAYOUT, KeyEvent.VK_S));
+		menu.add(new FMenuItem(ArchiveDocument.Command.REPACK_FILES, KeyEvent.VK_R));
 
 		menu.addSeparator();
 
@@ -268,6 +272,11 @@ class MainWindow
 		tabbedPanel.addMouseListener(this);
 
 
+		//----  Task queue panel
+
+		taskQueuePanel = new TaskQueuePanel();
+
+
 		//----  Status panel
 
 		statusPanel = new StatusPanel();
@@ -498,6 +507,13 @@ class MainWindow
 //  Instance methods
 ////////////////////////////////////////////////////////////////////////
 
+	public TaskQueuePanel getTaskQueuePanel()
+	{
+		return taskQueuePanel;
+	}
+
+	//------------------------------------------------------------------
+
 	public int getTabIndex()
 	{
 		return tabbedPanel.getSelectedIndex();
@@ -1081,6 +1097,7 @@ class MainWindow
 
 			// Add components
 			add(tabbedPanel);
+			add(taskQueuePanel);
 			add(statusPanel);
 		}
 
@@ -1096,7 +1113,10 @@ class MainWindow
 			int width = tabbedPanel.getMinimumSize().width;
 			int height = -VERTICAL_GAP;
 			for (Component component : getComponents())
-				height += component.getMinimumSize().height + VERTICAL_GAP;
+			{
+				if (component.isVisible())
+					height += component.getMinimumSize().height + VERTICAL_GAP;
+			}
 			return new Dimension(width, height);
 		}
 
@@ -1108,7 +1128,10 @@ class MainWindow
 			int width = tabbedPanel.getPreferredSize().width;
 			int height = -VERTICAL_GAP;
 			for (Component component : getComponents())
-				height += component.getPreferredSize().height + VERTICAL_GAP;
+			{
+				if (component.isVisible())
+					height += component.getPreferredSize().height + VERTICAL_GAP;
+			}
 			return new Dimension(width, height);
 		}
 
@@ -1120,13 +1143,22 @@ class MainWindow
 			int width = getWidth();
 			Dimension statusPanelSize = statusPanel.getPreferredSize();
 			Dimension tabbedPanelSize = tabbedPanel.getFrameSize();
+			int taskQueuePanelHeight = taskQueuePanel.isVisible()
+												? taskQueuePanel.getPreferredSize().height + VERTICAL_GAP
+												: 0;
 
 			int y = 0;
 			tabbedPanel.setBounds(0, y, Math.max(tabbedPanelSize.width, width),
 								  Math.max(tabbedPanelSize.height,
-										   getHeight() - statusPanelSize.height - VERTICAL_GAP));
+										   getHeight() - taskQueuePanelHeight - statusPanelSize.height
+												- VERTICAL_GAP));
 
 			y += tabbedPanel.getHeight() + VERTICAL_GAP;
+			if (taskQueuePanel.isVisible())
+			{
+				taskQueuePanel.setBounds(0, y, width, taskQueuePanelHeight - VERTICAL_GAP);
+				y += taskQueuePanelHeight;
+			}
 			statusPanel.setBounds(0, y, Math.min(width, statusPanelSize.width), statusPanelSize.height);
 		}
 
@@ -78,6 +78,8 @@ import uk.blankaspect.common.misc.BinaryFile;
 import uk.blankaspect.common.misc.DataTxChannel;
 import uk.blankaspect.common.misc.IFileImporter;
 import uk.blankaspect.common.misc.ImportQueue;
+import uk.blankaspect.common.misc.TaskContext;
+import uk.blankaspect.common.misc.TaskScheduler;
 
 import uk.blankaspect.common.number.NumberCodec;
 import uk.blankaspect.common.number.NumberUtils;
@@ -89,6 +91,8 @@ import uk.blankaspect.common.resource.ResourceUtils;
 
 import uk.blankaspect.common.string.StringUtils;
 
+import uk.blankaspect.common.ui.progress.IProgressView;
+
 import uk.blankaspect.ui.swing.dialog.RunnableMessageDialog;
 
 import uk.blankaspect.ui.swing.misc.GuiUtils;
@@ -120,14 +124,21 @@ public class QanaApp
 
 	private static final	int		ENCRYPTION_ID	= 0x7E391D06;
 
-	private static final	int		ENCRYPTION_VERSION					= 0;
+	private static final	int		ENCRYPTION_VERSION					= 1;
+	private static final	int		ENCRYPTION_FRAMED_VERSION			= 2;
 	private static final	int		ENCRYPTION_MIN_SUPPORTED_VERSION	= 0;
-	private static final	int		ENCRYPTION_MAX_SUPPORTED_VERSION	= 0;
+	private static final	int		ENCRYPTION_MAX_SUPPORTED_VERSION	= 2;
+	private static final	int		ENCRYPTION_MIN_CHUNKED_VERSION		= 1;
+	private static final	int		ENCRYPTION_MIN_FRAMED_VERSION		= 2;
 
 	private static final	int		MAX_NUM_DOCUMENTS	= 64;
 
 	private static final	int		TIMER_INTERVAL	= 500;
 
+	private static final	int		CANCEL_TASKS_TIMEOUT	= 5000;
+
+	private static final	int		MAX_NUM_WAITING_TASKS	= 64;
+
 	private static final	String	BUILD_PROPERTIES_FILENAME	= "build.properties";
 
 	private static final	String	RX_ID	= MethodHandles.lookup().lookupClass().getCanonicalName();
@@ -170,7 +181,12 @@ public class QanaApp
 	private static final	String	DISCARD_STR				= "Discard";
 	private static final	String	PROCEED_STR				= "Proceed";
 	private static final	String	KEEP_STR				= "Keep";
+	private static final	String	SKIP_STR				= "Skip";
 	private static final	String	EXIT_STR				= "Exit";
+	private static final	String	TASKS_IN_PROGRESS_STR	=
+			"%d task%s in progress.\nDo you want to cancel %s and exit?";
+	private static final	String	TASKS_NOT_ENDED_STR		=
+			"Not all the cancelled tasks have ended.\n" + SHORT_NAME + " will not exit while a task is running.";
 	private static final	String	REVERT_MESSAGE_STR		=
 			"\nDo you want discard the changes to the current document and reopen the original file?";
 	private static final	String	MODIFIED_MESSAGE_STR	=
@@ -180,6 +196,10 @@ public class QanaApp
 	private static final	String	CHANGED_MESSAGE2_STR	= " has changed.\nDo you want to save the changed file?";
 	private static final	String	CLOSE_MESSAGE_STR		= "Do you want to close the text document?";
 	private static final	String	REMAINING_IMPORTS_STR	= "Do you want to continue to process the remaining files?";
+	private static final	String	CONFLICTING_FILES_STR	=
+			"Conflicts with the input or output file of another file in the batch";
+	private static final	String	OUTPUT_FILES_EXIST_STR	=
+			"%d output file%s already exist%s.\nDo you want to replace %s or skip the input file%s?";
 	private static final	String	PRNG_NOT_SEEDED_STR		= """
 		The pseudo-random number generator was not seeded.
 		You should wait until enough entropy has accumulated before performing encryption.""";
@@ -238,11 +258,13 @@ public class QanaApp
 	private	KeyList.Key			globalKey;
 	private	List<DocumentView>	documentsViews;
 	private	ImportQueue			importQueue;
+	private	TaskScheduler		taskScheduler;
 	private	StandardCsprng		prng;
 	private	int					newArchiveDocumentIndex;
 	private	int					newTextDocumentIndex;
 	private	boolean				exiting;
 	private	boolean				executingCommand;
+	private	boolean				headless;
 	private	List<File>			pendingFiles;
 
 ////////////////////////////////////////////////////////////////////////
@@ -262,7 +284,16 @@ public class QanaApp
 	public static void main(
 		String[]	args)
 	{
-		INSTANCE.init(args);
+		// Run command-line engine without a GUI ...
+		if ((args.length > 0) && args[0].equals(CommandLineEngine.BATCH_ARG))
+		{
+			System.setProperty("java.awt.headless", "true");
+			System.exit(new CommandLineEngine().run(Arrays.copyOfRange(args, 1, args.length)));
+		}
+
+		// ... or initialise GUI
+		else
+			INSTANCE.init(args);
 	}
 
 	//------------------------------------------------------------------
@@ -270,7 +301,19 @@ public class QanaApp
 	public static StreamEncrypter.Header getEncryptionHeader()
 	{
 		return new StreamEncrypter.Header(ENCRYPTION_ID, ENCRYPTION_VERSION, ENCRYPTION_MIN_SUPPORTED_VERSION,
-										  ENCRYPTION_MAX_SUPPORTED_VERSION);
+										  ENCRYPTION_MAX_SUPPORTED_VERSION)
+				.setMinChunkedVersion(ENCRYPTION_MIN_CHUNKED_VERSION)
+				.setMinFramedVersion(ENCRYPTION_MIN_FRAMED_VERSION);
+	}
+
+	//------------------------------------------------------------------
+
+	public static StreamEncrypter.Header getFramedEncryptionHeader()
+	{
+		return new StreamEncrypter.Header(ENCRYPTION_ID, ENCRYPTION_FRAMED_VERSION, ENCRYPTION_MIN_SUPPORTED_VERSION,
+										  ENCRYPTION_MAX_SUPPORTED_VERSION)
+				.setMinChunkedVersion(ENCRYPTION_MIN_CHUNKED_VERSION)
+				.setMinFramedVersion(ENCRYPTION_MIN_FRAMED_VERSION);
 	}
 
 	//------------------------------------------------------------------
@@ -417,7 +460,7 @@ public class QanaApp
 
 	//------------------------------------------------------------------
 
-	public byte[] getRandomBytes(
+	public synchronized byte[] getRandomBytes(
 		int	length)
 	{
 		return prng.getRandomBytes(length);
@@ -425,21 +468,21 @@ public class QanaApp
 
 	//------------------------------------------------------------------
 
-	public int getRandomInt()
+	public synchronized int getRandomInt()
 	{
 		return prng.getRandomInt();
 	}
 
 	//------------------------------------------------------------------
 
-	public long getRandomLong()
+	public synchronized long getRandomLong()
 	{
 		return prng.getRandomLong();
 	}
 
 	//------------------------------------------------------------------
 
-	public byte[] getRandomKey()
+	public synchronized byte[] getRandomKey()
 	{
 		return prng.getRandomBytes(FortunaAes256.KEY_SIZE);
 	}
@@ -522,8 +565,11 @@ public class QanaApp
 	public void generateKey(
 		Runnable	generator)
 	{
-		// Get window
-		Window window = (Task.getProgressView() instanceof Window progressWindow) ? progressWindow : mainWindow;
+		// Get window; a task that was submitted to the task scheduler shows its progress in the main window
+		IProgressView progressView = Task.getProgressView();
+		Window window = (progressView instanceof Window progressWindow)
+								? progressWindow
+								: (progressView == null) ? mainWindow : null;
 
 		// If there is no window, run generator ...
 		if (window == null)
@@ -568,7 +614,10 @@ public class QanaApp
 		Object	message,
 		int		messageKind)
 	{
-		JOptionPane.showMessageDialog(mainWindow, message, title, messageKind);
+		if (headless)
+			System.err.println(title + " : " + message);
+		else
+			JOptionPane.showMessageDialog(mainWindow, message, title, messageKind);
 	}
 
 	//------------------------------------------------------------------
@@ -1144,6 +1193,60 @@ public class QanaApp
 
 	//------------------------------------------------------------------
 
+	void initHeadless()
+		throws AppException
+	{
+		// Initialise instance variables
+		headless = true;
+		persistentKeyList = new KeyList();
+		temporaryKeyList = new KeyList();
+
+		// Read configuration
+		AppConfig config = AppConfig.INSTANCE;
+		config.read();
+
+		// Initialise PRNG and entropy accumulator
+		prng = new StandardCsprng(config.getPrngDefaultCipher(), config.getEntropySourceParams(),
+								  config.getEntropyTimerDivisor());
+
+		// Read seed file
+		try
+		{
+			int randomDataLength = 0;
+			File directory = config.getSeedFileDirectory();
+			if (directory != null)
+				randomDataLength = prng.readSeedFile(directory);
+			if ((randomDataLength < Fortuna.RESEED_ENTROPY_THRESHOLD) && config.isWarnNotSeeded())
+				showWarningMessage(SHORT_NAME + " : " + READ_SEED_FILE_STR, PRNG_NOT_SEEDED_STR);
+		}
+		catch (AppException e)
+		{
+			showErrorMessage(SHORT_NAME + " : " + READ_SEED_FILE_STR, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	void exitHeadless()
+	{
+		// Write seed file
+		try
+		{
+			File directory = AppConfig.INSTANCE.getSeedFileDirectory();
+			if ((prng != null) && (directory != null))
+			{
+				directory.mkdirs();
+				prng.writeSeedFile(directory);
+			}
+		}
+		catch (AppException e)
+		{
+			showWarningMessage(SHORT_NAME + " : " + WRITE_SEED_FILE_STR, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private void init(
 		String[]	args)
 	{
@@ -1280,6 +1383,10 @@ public class QanaApp
 			// Create main window
 			mainWindow = new MainWindow();
 
+			// Create scheduler for tasks that are performed in the background
+			taskScheduler = new TaskScheduler(NAME_KEY + "-task", Runtime.getRuntime().availableProcessors(),
+											  MAX_NUM_WAITING_TASKS);
+
 			// Read seed file
 			try
 			{
@@ -1406,6 +1513,24 @@ public class QanaApp
 	private void processFiles(
 		List<File>	files)
 	{
+		// If several files are to be encrypted, decrypted or validated, open any archives and process the other files
+		// as a batch
+		if (!ActionSource.DRAG_AND_DROP.isSelectEncryptDecryptOutputFile())
+		{
+			List<File> batchFiles = files.stream()
+					.filter(file -> file.isFile() && !file.getName().endsWith(FileKind.ARCHIVE.getFilenameSuffix()))
+					.toList();
+			if (batchFiles.size() > 1)
+			{
+				List<File> archiveFiles = new ArrayList<>(files);
+				archiveFiles.removeAll(batchFiles);
+				if (!archiveFiles.isEmpty())
+					processFiles(archiveFiles);
+				processBatch(batchFiles);
+				return;
+			}
+		}
+
 		// Process files according to filename suffix
 		FileOperation.initCounts();
 		int numValidated = 0;
@@ -1556,6 +1681,100 @@ public class QanaApp
 
 	//------------------------------------------------------------------
 
+	private void processBatch(
+		List<File>	files)
+	{
+		try
+		{
+			// Create a job for each file according to its filename suffix
+			List<BatchProcessor.Job> jobs = new ArrayList<>();
+			for (File file : files)
+			{
+				File directory = file.getAbsoluteFile().getParentFile();
+				String filename = file.getName();
+				if (filename.endsWith(FileKind.ENCRYPTED.getFilenameSuffix()))
+				{
+					jobs.add(switch (AppConfig.INSTANCE.getEncryptedFileDragAndDropAction())
+					{
+						case DECRYPT  -> new BatchProcessor.Job(BatchProcessor.Operation.DECRYPT, file,
+																Utils.getPlaintextFile(directory, filename));
+						case VALIDATE -> new BatchProcessor.Job(BatchProcessor.Operation.VALIDATE, file, null);
+					});
+				}
+				else
+				{
+					jobs.add(new BatchProcessor.Job(BatchProcessor.Operation.ENCRYPT, file,
+													new File(directory,
+															 filename + FileKind.ENCRYPTED.getFilenameSuffix())));
+				}
+			}
+
+			// Skip jobs whose output file is the input or output file of another job
+			List<BatchProcessor.Result> skippedResults = new ArrayList<>();
+			List<BatchProcessor.Job> conflictingJobs = BatchProcessor.getConflictingJobs(jobs);
+			jobs.removeAll(conflictingJobs);
+			for (BatchProcessor.Job job : conflictingJobs)
+			{
+				skippedResults.add(new BatchProcessor.Result(job, BatchProcessor.Status.SKIPPED,
+															 CONFLICTING_FILES_STR));
+			}
+
+			// Ask once whether to replace existing output files or skip their input files
+			List<BatchProcessor.Job> existingJobs = jobs.stream()
+					.filter(job -> (job.outFile() != null) && job.outFile().exists())
+					.toList();
+			if (!existingJobs.isEmpty())
+			{
+				int numFiles = existingJobs.size();
+				String messageStr = String.format(OUTPUT_FILES_EXIST_STR, numFiles, (numFiles == 1) ? "" : "s",
+												  (numFiles == 1) ? "s" : "", (numFiles == 1) ? "it" : "them",
+												  (numFiles == 1) ? "" : "s");
+				String[] optionStrs = Utils.getOptionStrings(AppConstants.REPLACE_STR, SKIP_STR);
+				int result = JOptionPane.showOptionDialog(mainWindow, messageStr, PROCESS_FILES_STR,
+														  JOptionPane.YES_NO_CANCEL_OPTION,
+														  JOptionPane.WARNING_MESSAGE, null, optionStrs,
+														  optionStrs[2]);
+				if (result == JOptionPane.NO_OPTION)
+				{
+					jobs.removeAll(existingJobs);
+					for (BatchProcessor.Job job : existingJobs)
+						skippedResults.add(new BatchProcessor.Result(job, BatchProcessor.Status.SKIPPED, null));
+				}
+				else if (result != JOptionPane.YES_OPTION)
+					return;
+			}
+
+			// If all files were skipped, show results
+			if (jobs.isEmpty())
+			{
+				BatchResultsDialog.showDialog(mainWindow, PROCESS_FILES_STR, skippedResults);
+				return;
+			}
+
+			// Get key once for all files
+			KeyList.Key key = getKey(PROCESS_FILES_STR, null);
+			if ((key == null) || !confirmUseTemporaryKey(key))
+				return;
+			if (jobs.stream().anyMatch(job -> job.operation() == BatchProcessor.Operation.ENCRYPT))
+				key.checkAllowedCipher(Utils.getCipher(key));
+
+			// Process files in background; show results
+			Task.ProcessFiles task = new Task.ProcessFiles(jobs, key);
+			scheduleTask(PROCESS_FILES_STR, 2, task, () ->
+			{
+				List<BatchProcessor.Result> results = new ArrayList<>(task.getResults());
+				results.addAll(skippedResults);
+				BatchResultsDialog.showDialog(mainWindow, PROCESS_FILES_STR, results);
+			});
+		}
+		catch (AppException e)
+		{
+			showErrorMessage(PROCESS_FILES_STR, e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private boolean encryptFile(
 		File	inFile,
 		File	outFile)
@@ -1649,6 +1868,36 @@ public class QanaApp
 
 	//------------------------------------------------------------------
 
+	private void scheduleTask(
+		String		title,
+		int			numProgressIndicators,
+		Task		task,
+		Runnable	onSuccess)
+	{
+		// Add task to queue view
+		TaskContext context = new TaskContext(title);
+		context.setProgressView(mainWindow.getTaskQueuePanel().addTask(context, numProgressIndicators));
+
+		// Perform task in background; when it has ended, remove it from queue view and report outcome
+		boolean accepted = taskScheduler.submit(task, context, endedContext -> SwingUtilities.invokeLater(() ->
+		{
+			mainWindow.getTaskQueuePanel().removeTask(context);
+			if (context.isException())
+				showErrorMessage(title, context.getException());
+			else if (!context.isCancelled() && (onSuccess != null))
+				onSuccess.run();
+		}));
+
+		// If the queue of waiting tasks is full, remove task from queue view and report failure
+		if (!accepted)
+		{
+			mainWindow.getTaskQueuePanel().removeTask(context);
+			showErrorMessage(title, new AppException(ErrorId.TOO_MANY_TASKS));
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private void onTimerExpired()
 		throws AppException
 	{
@@ -1869,12 +2118,23 @@ public class QanaApp
 		// Validate file
 		if (fileChooser.showOpenDialog(mainWindow) == JFileChooser.APPROVE_OPTION)
 		{
-			// Process file
+			// Test for input file
 			File file = fileChooser.getSelectedFile();
-			validateFile(file);
+			if (!file.exists())
+				throw new FileException(ErrorId.FILE_DOES_NOT_EXIST, file);
+			if (!file.isFile())
+				throw new FileException(ErrorId.NOT_A_FILE, file);
 
-			// Report success
-			showInfoMessage(VALIDATE_FILE_STR, Utils.getPathname(file) + "\n" + FILE_VALID_STR);
+			// Get key
+			KeyList.Key key = getKey(VALIDATE_FILE_STR, file.getName());
+
+			// Validate file in background; report success
+			if ((key != null) && confirmUseTemporaryKey(key))
+			{
+				scheduleTask(VALIDATE_FILE_STR, 1, new Task.Validate(file, key),
+							 () -> showInfoMessage(VALIDATE_FILE_STR,
+												   Utils.getPathname(file) + "\n" + FILE_VALID_STR));
+			}
 		}
 	}
 
@@ -1999,11 +2259,11 @@ public class QanaApp
 						return;
 				}
 
-				// Split file
-				TaskProgressDialog.showDialog2(mainWindow, SPLIT_FILE_STR,
-											   new Task.SplitFile(result.inFile(), outDirectory,
-																  result.filePartLengthLowerBound(),
-																  result.filePartLengthUpperBound(), key));
+				// Split file in background
+				scheduleTask(SPLIT_FILE_STR, 2,
+							 new Task.SplitFile(result.inFile(), outDirectory, result.filePartLengthLowerBound(),
+												result.filePartLengthUpperBound(), key),
+							 null);
 			}
 		}
 	}
@@ -2031,9 +2291,9 @@ public class QanaApp
 					if (!outDirectory.exists() && !outDirectory.mkdirs())
 						throw new FileException(ErrorId.FAILED_TO_CREATE_DIRECTORY, outDirectory);
 
-					// Join files
-					TaskProgressDialog.showDialog2(mainWindow, JOIN_FILES_STR,
-												   new Task.JoinFiles(result.inDirectory, result.outFile, key));
+					// Join files in background
+					scheduleTask(JOIN_FILES_STR, 2, new Task.JoinFiles(result.inDirectory, result.outFile, key),
+								 null);
 				}
 			}
 		}
@@ -2046,7 +2306,7 @@ public class QanaApp
 	{
 		List<String> pathnames = EraseDialog.showDialog(mainWindow);
 		if (pathnames != null)
-			TaskProgressDialog.showDialog2(mainWindow, ERASE_FILES_STR, new Task.EraseFiles(pathnames));
+			scheduleTask(ERASE_FILES_STR, 2, new Task.EraseFiles(pathnames), null);
 	}
 
 	//------------------------------------------------------------------
@@ -2060,6 +2320,27 @@ public class QanaApp
 				// Prevent re-entry to this method
 				exiting = true;
 
+				// Cancel tasks that are being performed in the background
+				int numTasks = taskScheduler.getNumTasks();
+				if (numTasks > 0)
+				{
+					String[] optionStrs = Utils.getOptionStrings(EXIT_STR);
+					String messageStr = String.format(TASKS_IN_PROGRESS_STR, numTasks,
+													  (numTasks == 1) ? " is" : "s are",
+													  (numTasks == 1) ? "it" : "them");
+					if (JOptionPane.showOptionDialog(mainWindow, messageStr, SHORT_NAME, JOptionPane.OK_CANCEL_OPTION,
+													 JOptionPane.WARNING_MESSAGE, null, optionStrs, optionStrs[1])
+							!= JOptionPane.OK_OPTION)
+						return;
+
+					// Don't exit if any cancelled task is still running, because it may be writing a file
+					if (!taskScheduler.cancelAll(CANCEL_TASKS_TIMEOUT))
+					{
+						showWarningMessage(SHORT_NAME, TASKS_NOT_ENDED_STR);
+						return;
+					}
+				}
+
 				// Close all open documents
 				while (hasDocuments())
 				{
@@ -2521,7 +2802,10 @@ public class QanaApp
 		("There was not enough memory to perform the command."),
 
 		NOT_ENOUGH_MEMORY_TO_GENERATE_CARRIER_IMAGE
-		("There was not enough memory to generate a carrier image of the required size.");
+		("There was not enough memory to generate a carrier image of the required size."),
+
+		TOO_MANY_TASKS
+		("Too many tasks are waiting to be performed.\nTry again when some of them have ended.");
 
 	////////////////////////////////////////////////////////////////////
 	//  Instance variables
@@ -23,7 +23,10 @@ import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import uk.blankaspect.common.exception2.UnexpectedRuntimeException;
 
@@ -42,11 +45,13 @@ class StringTable
 
 	public StringTable()
 	{
-		// Initialise list of strings
+		// Initialise collections
 		strings = new ArrayList<>();
+		offsetStrings = new HashMap<>();
+		stringOffsets = new HashMap<>();
 
 		// Add empty string
-		strings.add("");
+		append("");
 	}
 
 	//------------------------------------------------------------------
@@ -55,14 +60,19 @@ class StringTable
 					   int    offset,
 					   int    length)
 	{
+		// Initialise collections
 		strings = new ArrayList<>();
+		offsetStrings = new HashMap<>();
+		stringOffsets = new HashMap<>();
+
+		// Parse strings
 		int endOffset = offset + length;
 		while (offset < endOffset)
 		{
 			int startOffset = offset;
 			while (data[offset] != 0)
 				++offset;
-			strings.add(new String(data, startOffset, offset - startOffset, StandardCharsets.UTF_8));
+			append(new String(data, startOffset, offset - startOffset, StandardCharsets.UTF_8));
 			++offset;
 		}
 	}
@@ -76,47 +86,61 @@ class StringTable
 	public void clear()
 	{
 		strings.clear();
-		strings.add("");
+		offsetStrings.clear();
+		stringOffsets.clear();
+		startOffsets = null;
+		length = 0;
+		append("");
 	}
 
 	//------------------------------------------------------------------
 
 	public String get(int offset)
 	{
-		int startOffset = 0;
-		for (String str : strings)
+		// Look up string that starts at offset
+		String str = offsetStrings.get(offset);
+		if (str != null)
+			return str;
+
+		// A string table that was written by an earlier version may refer to the suffix of a string, so search for the
+		// string that contains the offset
+		if (startOffsets == null)
 		{
-			if (offset <= startOffset + str.length())
-				return (offset == startOffset) ? str : str.substring(offset - startOffset);
-			startOffset += str.length() + 1;
+			startOffsets = new int[strings.size()];
+			int startOffset = 0;
+			for (int i = 0; i < startOffsets.length; i++)
+			{
+				startOffsets[i] = startOffset;
+				startOffset += strings.get(i).length() + 1;
+			}
 		}
-		return null;
+		int index = Arrays.binarySearch(startOffsets, offset);
+		if (index < 0)
+			index = -index - 2;
+		if (index < 0)
+			return null;
+		str = strings.get(index);
+		int startOffset = startOffsets[index];
+		return (offset <= startOffset + str.length()) ? str.substring(offset - startOffset) : null;
 	}
 
 	//------------------------------------------------------------------
 
 	public int find(String str)
 	{
-		int offset = 0;
-		for (String s : strings)
-		{
-			offset += s.length();
-			if (s.endsWith(str))
-				return offset - str.length();
-			++offset;
-		}
-		return -offset;
+		Integer offset = stringOffsets.get(str);
+		return (offset == null) ? -length : offset;
 	}
 
 	//------------------------------------------------------------------
 
 	public int add(String str)
 	{
-		int offset = find(str);
-		if (offset < 0)
+		Integer offset = stringOffsets.get(str);
+		if (offset == null)
 		{
-			strings.add(str);
-			offset = -offset;
+			offset = length;
+			append(str);
 		}
 		return offset;
 	}
@@ -125,7 +149,15 @@ class StringTable
 
 	public void sort()
 	{
-		strings.sort(null);
+		List<String> sortedStrings = new ArrayList<>(strings);
+		sortedStrings.sort(null);
+		strings.clear();
+		offsetStrings.clear();
+		stringOffsets.clear();
+		startOffsets = null;
+		length = 0;
+		for (String str : sortedStrings)
+			append(str);
 	}
 
 	//------------------------------------------------------------------
@@ -150,11 +182,26 @@ class StringTable
 
 	//------------------------------------------------------------------
 
+	private void append(String str)
+	{
+		strings.add(str);
+		offsetStrings.put(length, str);
+		stringOffsets.putIfAbsent(str, length);
+		startOffsets = null;
+		length += str.length() + 1;
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
 
-	private	List<String>	strings;
+	private	List<String>			strings;
+	private	Map<Integer, String>	offsetStrings;
+	private	Map<String, Integer>	stringOffsets;
+	private	int[]					startOffsets;
+	private	int						length;
 
 }
 
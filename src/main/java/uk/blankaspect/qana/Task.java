@@ -412,10 +412,12 @@ abstract class Task
 	////////////////////////////////////////////////////////////////////
 
 		public EncryptFiles(ArchiveDocument                 document,
-							List<ArchiveDocument.InputFile> files)
+							List<ArchiveDocument.InputFile> files,
+							boolean                         update)
 		{
 			this.document = document;
 			this.files = files;
+			this.update = update;
 		}
 
 		//--------------------------------------------------------------
@@ -430,7 +432,7 @@ abstract class Task
 			// Perform task
 			try
 			{
-				document.encryptFiles(files);
+				document.encryptFiles(files, update);
 			}
 			catch (TaskCancelledException e)
 			{
@@ -453,6 +455,7 @@ abstract class Task
 
 		private	ArchiveDocument					document;
 		private	List<ArchiveDocument.InputFile>	files;
+		private	boolean							update;
 
 	}
 
@@ -639,6 +642,118 @@ abstract class Task
 	//==================================================================
 
 
+	// CHANGE LAYOUT TASK CLASS
+
+
+	public static class ChangeLayout
+		extends Task
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		public ChangeLayout(ArchiveDocument document)
+		{
+			this.document = document;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : Runnable interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void run()
+		{
+			// Perform task
+			try
+			{
+				document.changeLayout();
+			}
+			catch (TaskCancelledException e)
+			{
+				// ignore
+			}
+			catch (AppException e)
+			{
+				setException(e, false);
+			}
+
+			// Remove thread
+			removeThread();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	ArchiveDocument	document;
+
+	}
+
+	//==================================================================
+
+
+	// REPACK FILES TASK CLASS
+
+
+	public static class RepackFiles
+		extends Task
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		public RepackFiles(ArchiveDocument document)
+		{
+			this.document = document;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : Runnable interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void run()
+		{
+			// Perform task
+			try
+			{
+				document.repackFiles();
+			}
+			catch (TaskCancelledException e)
+			{
+				// ignore
+			}
+			catch (AppException e)
+			{
+				setException(e, false);
+			}
+
+			// Remove thread
+			removeThread();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	ArchiveDocument	document;
+
+	}
+
+	//==================================================================
+
+
 	// ENCRYPT TASK CLASS
 
 
@@ -1256,8 +1371,8 @@ abstract class Task
 			// Perform task
 			try
 			{
-				new FileSplitter().split(inFile, outDirectory, filePartLengthLowerBound,
-										 filePartLengthUpperBound, key);
+				new FileSplitter(AppConfig.INSTANCE.getSplitNumThreads())
+						.split(inFile, outDirectory, filePartLengthLowerBound, filePartLengthUpperBound, key);
 			}
 			catch (TaskCancelledException e)
 			{
@@ -1321,7 +1436,7 @@ abstract class Task
 			// Perform task
 			try
 			{
-				new FileSplitter().join(inDirectory, outFile, key);
+				new FileSplitter(AppConfig.INSTANCE.getSplitNumThreads()).join(inDirectory, outFile, key);
 			}
 			catch (TaskCancelledException e)
 			{
@@ -1407,6 +1522,77 @@ abstract class Task
 	//==================================================================
 
 
+	// PROCESS FILES TASK CLASS
+
+
+	public static class ProcessFiles
+		extends Task
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		public ProcessFiles(List<BatchProcessor.Job> jobs,
+							KeyList.Key              key)
+		{
+			this.jobs = jobs;
+			this.key = key;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : Runnable interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void run()
+		{
+			// Perform task
+			try
+			{
+				results = new BatchProcessor(Runtime.getRuntime().availableProcessors()).process(jobs, key);
+			}
+			catch (TaskCancelledException e)
+			{
+				// ignore
+			}
+			catch (AppException e)
+			{
+				setException(e, false);
+			}
+
+			// Remove thread
+			removeThread();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public List<BatchProcessor.Result> getResults()
+		{
+			return results;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	List<BatchProcessor.Job>	jobs;
+		private	KeyList.Key					key;
+		private	List<BatchProcessor.Result>	results;
+
+	}
+
+	//==================================================================
+
+
 	// SET FILE ASSOCIATIONS TASK CLASS
 
 
@@ -35,6 +35,7 @@ import uk.blankaspect.ui.swing.misc.GuiUtils;
 
 class TaskProgressDialog
 	extends uk.blankaspect.ui.swing.dialog.TaskProgressDialog
+	implements ITaskProgressView
 {
 
 ////////////////////////////////////////////////////////////////////////
@@ -47,8 +48,12 @@ class TaskProgressDialog
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
 
-	private	double	overallProgressOffset;
-	private	double	overallProgressLength;
+	private	double		overallProgressOffset;
+	private	double		overallProgressLength;
+	private	long[]		partLengths;
+	private	double[]	partProgresses;
+	private	double		totalPartLength;
+	private	double		partProgressSum;
 
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
@@ -113,9 +118,10 @@ class TaskProgressDialog
 	//------------------------------------------------------------------
 
 ////////////////////////////////////////////////////////////////////////
-//  Instance methods
+//  Instance methods : ITaskProgressView interface
 ////////////////////////////////////////////////////////////////////////
 
+	@Override
 	public void initOverallProgress(long offset,
 									long length,
 									long totalLength)
@@ -126,6 +132,42 @@ class TaskProgressDialog
 
 	//------------------------------------------------------------------
 
+	// Initialises the progress of a set of parts of a task that are performed concurrently.  The overall progress is
+	// the sum of the progress of each part weighted by its length.
+	@Override
+	public synchronized void initPartProgress(long[] lengths)
+	{
+		partLengths = lengths.clone();
+		partProgresses = new double[lengths.length];
+		totalPartLength = 0.0;
+		for (long length : lengths)
+			totalPartLength += (double)length;
+		partProgressSum = 0.0;
+	}
+
+	//------------------------------------------------------------------
+
+	// Sets the progress of a part of a task that is performed concurrently with other parts.  The progress bars show
+	// only the combined progress of the parts.  This method may be called from any thread.
+	@Override
+	public synchronized void setPartProgress(int    index,
+											 double fractionDone)
+	{
+		double length = (double)partLengths[index];
+		partProgressSum += (fractionDone - partProgresses[index]) * length;
+		partProgresses[index] = fractionDone;
+		if (totalPartLength > 0.0)
+		{
+			// The parts are performed concurrently, so only their combined progress is shown
+			double progress = Math.min(partProgressSum / totalPartLength, 1.0);
+			setProgress(0, progress);
+			if (getNumProgressBars() > 1)
+				setProgress(1, progress);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 }
 
 //----------------------------------------------------------------------
@@ -0,0 +1,402 @@
+/*====================================================================*\
+
+TaskQueuePanel.java
+
+Task queue panel class.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.GridLayout;
+
+import java.io.File;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+import uk.blankaspect.common.misc.TaskContext;
+
+import uk.blankaspect.ui.swing.button.FButton;
+
+import uk.blankaspect.ui.swing.label.FLabel;
+
+//----------------------------------------------------------------------
+
+
+// TASK QUEUE PANEL CLASS
+
+
+// This class implements a panel that shows a row for each task that has been submitted to the task scheduler of the
+// application and has not yet ended.  Each row shows the progress of its task and has a button that cancels the task.
+// The panel is hidden when there are no tasks.
+class TaskQueuePanel
+	extends JPanel
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int	PROGRESS_BAR_MAX_VALUE	= 10000;
+	private static final	int	PROGRESS_BAR_WIDTH		= 160;
+	private static final	int	PROGRESS_BAR_HEIGHT		= 14;
+
+	private static final	String	QUEUED_STR		= "Waiting";
+	private static final	String	CANCELLING_STR	= "Cancelling";
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	public TaskQueuePanel()
+	{
+		// Lay out rows in a single column
+		super(new GridLayout(0, 1, 0, 0));
+
+		// Hide panel until a task is added
+		setVisible(false);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	// Adds a row for the task that has the specified context, and returns the progress view of the task.  Only the last
+	// of the progress indicators that the task expects is displayed, because it shows the overall progress of the
+	// task.  This method must be called on the event dispatching thread.
+	public ITaskProgressView addTask(TaskContext context,
+									 int         numProgressIndicators)
+	{
+		TaskRow row = new TaskRow(context, numProgressIndicators);
+		add(row);
+		update();
+		return row;
+	}
+
+	//------------------------------------------------------------------
+
+	// Removes the row of the task that has the specified context.  This method must be called on the event dispatching
+	// thread.
+	public void removeTask(TaskContext context)
+	{
+		for (Component component : getComponents())
+		{
+			if ((component instanceof TaskRow row) && (row.context == context))
+			{
+				remove(row);
+				break;
+			}
+		}
+		update();
+	}
+
+	//------------------------------------------------------------------
+
+	private void update()
+	{
+		setVisible(getComponentCount() > 0);
+		revalidate();
+		repaint();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// TASK ROW CLASS
+
+
+	private class TaskRow
+		extends JPanel
+		implements ITaskProgressView
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	TaskContext		context;
+		private	int				numProgressIndicators;
+		private	double			overallProgressOffset;
+		private	double			overallProgressLength;
+		private	long[]			partLengths;
+		private	double[]		partProgresses;
+		private	double			totalPartLength;
+		private	double			partProgressSum;
+		private	String			infoText;
+		private	double			progress;
+		private	boolean			updatePending;
+		private	JLabel			infoLabel;
+		private	JProgressBar	progressBar;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private TaskRow(TaskContext context,
+						int         numProgressIndicators)
+		{
+			// Call superclass constructor
+			super(new GridBagLayout());
+
+			// Initialise instance variables
+			this.context = context;
+			this.numProgressIndicators = numProgressIndicators;
+			infoText = QUEUED_STR;
+
+			// Set border
+			setBorder(BorderFactory.createCompoundBorder(
+					BorderFactory.createMatteBorder(1, 0, 0, 0, getBackground().darker()),
+					BorderFactory.createEmptyBorder(1, 2, 1, 2)));
+
+			GridBagConstraints gbc = new GridBagConstraints();
+
+			// Label: title
+			JLabel titleLabel = new FLabel(context.getTitle());
+
+			gbc.gridx = 0;
+			gbc.gridy = 0;
+			gbc.gridwidth = 1;
+			gbc.gridheight = 1;
+			gbc.weightx = 0.0;
+			gbc.weighty = 0.0;
+			gbc.anchor = GridBagConstraints.LINE_START;
+			gbc.fill = GridBagConstraints.NONE;
+			gbc.insets = AppConstants.COMPONENT_INSETS;
+			add(titleLabel, gbc);
+
+			// Label: information
+			infoLabel = new FLabel(infoText);
+			infoLabel.setMinimumSize(new Dimension(0, infoLabel.getPreferredSize().height));
+
+			gbc.gridx = 1;
+			gbc.weightx = 1.0;
+			gbc.fill = GridBagConstraints.HORIZONTAL;
+			add(infoLabel, gbc);
+
+			// Progress bar
+			progressBar = new JProgressBar(0, PROGRESS_BAR_MAX_VALUE);
+			progressBar.setPreferredSize(new Dimension(PROGRESS_BAR_WIDTH, PROGRESS_BAR_HEIGHT));
+
+			gbc.gridx = 2;
+			gbc.weightx = 0.0;
+			gbc.fill = GridBagConstraints.NONE;
+			add(progressBar, gbc);
+
+			// Button: cancel
+			JButton cancelButton = new FButton(AppConstants.CANCEL_STR);
+			cancelButton.addActionListener(event ->
+			{
+				context.cancel();
+				cancelButton.setEnabled(false);
+				synchronized (this)
+				{
+					infoText = CANCELLING_STR;
+				}
+				scheduleUpdate();
+			});
+
+			gbc.gridx = 3;
+			add(cancelButton, gbc);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IProgressListener interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setProgress(double fractionDone)
+		{
+			setProgress(0, fractionDone);
+			if ((numProgressIndicators > 1) && (overallProgressLength > 0.0))
+				setProgress(1, overallProgressOffset + fractionDone * overallProgressLength);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public boolean isTaskCancelled()
+		{
+			return context.isCancelled();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : IProgressView interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void setInfo(String str)
+		{
+			setInfo(str, null);
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setInfo(String str,
+							File   file)
+		{
+			synchronized (this)
+			{
+				if (!context.isCancelled())
+					infoText = (file == null) ? str : str + " " + Utils.getPathname(file);
+			}
+			scheduleUpdate();
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public int getNumProgressIndicators()
+		{
+			return numProgressIndicators;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void setProgress(int    index,
+								double value)
+		{
+			if (index == numProgressIndicators - 1)
+			{
+				synchronized (this)
+				{
+					progress = value;
+				}
+				scheduleUpdate();
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void waitForIdle()
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public void close()
+		{
+			// do nothing
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : ITaskProgressView interface
+	////////////////////////////////////////////////////////////////////
+
+		@Override
+		public void initOverallProgress(long offset,
+										long length,
+										long totalLength)
+		{
+			overallProgressOffset = (double)offset / (double)totalLength;
+			overallProgressLength = (double)length / (double)totalLength;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public synchronized void initPartProgress(long[] lengths)
+		{
+			partLengths = lengths.clone();
+			partProgresses = new double[lengths.length];
+			totalPartLength = 0.0;
+			for (long length : lengths)
+				totalPartLength += (double)length;
+			partProgressSum = 0.0;
+		}
+
+		//--------------------------------------------------------------
+
+		@Override
+		public synchronized void setPartProgress(int    index,
+												 double fractionDone)
+		{
+			double length = (double)partLengths[index];
+			partProgressSum += (fractionDone - partProgresses[index]) * length;
+			partProgresses[index] = fractionDone;
+			if (totalPartLength > 0.0)
+			{
+				// The parts are performed concurrently, so only their combined progress is shown
+				double progress = Math.min(partProgressSum / totalPartLength, 1.0);
+				setProgress(0, progress);
+				if (numProgressIndicators > 1)
+					setProgress(1, progress);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		// Schedules an update of the components of this row on the event dispatching thread.  An update is not
+		// scheduled if one is already pending, so that a task that reports its progress frequently does not flood the
+		// event queue.
+		private void scheduleUpdate()
+		{
+			synchronized (this)
+			{
+				if (updatePending)
+					return;
+				updatePending = true;
+			}
+			SwingUtilities.invokeLater(() ->
+			{
+				String text = null;
+				double value = 0.0;
+				synchronized (this)
+				{
+					text = infoText;
+					value = progress;
+					updatePending = false;
+				}
+				infoLabel.setText(text);
+				progressBar.setValue((int)Math.round(value * (double)PROGRESS_BAR_MAX_VALUE));
+			});
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
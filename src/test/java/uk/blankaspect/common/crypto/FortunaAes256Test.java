@@ -0,0 +1,146 @@
+/*====================================================================*\
+
+FortunaAes256Test.java
+
+Class: tests of the Fortuna PRNG with an AES-256 cipher.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE FORTUNA PRNG WITH AN AES-256 CIPHER
+
+
+class FortunaAes256Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	byte[]	SEED	= { 9, 8, 7, 6, 5, 4, 3, 2, 1 };
+
+	// The lengths of successive requests for random data.  A request of more than 4096 bytes carries the counter into
+	// its second byte, and the largest request is the maximum that a PRNG allows.
+	private static final	int[]	LENGTHS	=
+	{
+		0, 1, 15, 16, 17, 31, 32, 33, 1000, 4096, 4096 + 5, 65_536 + 3, Fortuna.MAX_BLOCK_SIZE, 7
+	};
+
+	private static final	int		SEED_LENGTH	= 1000;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static FortunaAes256 prng(
+		FortunaAes256.Backend	backend)
+	{
+		FortunaAes256.setDefaultBackend(backend);
+		FortunaAes256 prng = new FortunaAes256(SEED);
+		assertEquals(backend, prng.getBackend());
+		return prng;
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the concatenation of the random data that the specified PRNG generates for the requests in LENGTHS.
+	static byte[] keystream(
+		Fortuna	prng)
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		for (int length : LENGTHS)
+			outStream.writeBytes(prng.getRandomBytes(length));
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@AfterEach
+	void resetDefaultBackend()
+	{
+		FortunaAes256.setDefaultBackend(null);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void jcaKeystreamMatchesSoftwareKeystream()
+	{
+		assertArrayEquals(keystream(prng(FortunaAes256.Backend.SOFTWARE)),
+						  keystream(prng(FortunaAes256.Backend.JCA)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void jcaKeystreamMatchesSoftwareKeystreamAfterInit()
+	{
+		// Reinitialising a PRNG resets its cipher and counter
+		FortunaAes256 softwarePrng = prng(FortunaAes256.Backend.SOFTWARE);
+		FortunaAes256 jcaPrng = prng(FortunaAes256.Backend.JCA);
+		byte[] seed = softwarePrng.getRandomBytes(SEED_LENGTH);
+		jcaPrng.getRandomBytes(SEED_LENGTH);
+
+		softwarePrng.init(seed);
+		jcaPrng.init(seed);
+		assertArrayEquals(keystream(softwarePrng), keystream(jcaPrng));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void cloneOfJcaPrngMatchesOriginal()
+	{
+		FortunaAes256 prng = prng(FortunaAes256.Backend.JCA);
+		prng.getRandomBytes(100);
+		FortunaAes256 copy = prng.clone();
+		assertEquals(FortunaAes256.Backend.JCA, copy.getBackend());
+		assertArrayEquals(keystream(prng), keystream(copy));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void jcaCombinerMatchesSoftwareCombiner()
+	{
+		byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte)i;
+		byte[] softwareData = data.clone();
+		byte[] jcaData = data.clone();
+		prng(FortunaAes256.Backend.SOFTWARE).createCombiner(Fortuna.MAX_BLOCK_SIZE >> 4).combine(softwareData);
+		prng(FortunaAes256.Backend.JCA).createCombiner(Fortuna.MAX_BLOCK_SIZE >> 4).combine(jcaData);
+		assertArrayEquals(softwareData, jcaData);
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
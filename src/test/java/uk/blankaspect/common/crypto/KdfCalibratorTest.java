@@ -0,0 +1,227 @@
+/*====================================================================*\
+
+KdfCalibratorTest.java
+
+Class: tests of the calibrator of the parameters of the scrypt KDF.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE CALIBRATOR OF THE PARAMETERS OF THE SCRYPT KDF
+
+
+class KdfCalibratorTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	Scrypt.CoreHashNumRounds	NUM_ROUNDS	= Scrypt.CoreHashNumRounds._8;
+
+	// The speed of the KDF, which is set rather than measured so that the tests do not depend on the machine
+	private static final	double	SINGLE_THREAD_UNIT_TIME	= 10.0;
+	private static final	double	ALL_THREADS_UNIT_TIME	= 15.0;
+	private static final	int		MAX_NUM_THREADS			= 4;
+
+	private static final	int		NUM_BLOCKS	= 8;
+
+	private static final	long	MEMORY_BUDGET	= 1L << 40;
+
+	private static final	int		MIN_COST			= StreamEncrypter.KdfParams.MIN_COST;
+	private static final	int		MAX_COST			= StreamEncrypter.KdfParams.MAX_COST;
+	private static final	int		MIN_NUM_SUPERBLOCKS	= StreamEncrypter.KdfParams.MIN_NUM_SUPERBLOCKS;
+	private static final	int		MAX_NUM_SUPERBLOCKS	= StreamEncrypter.KdfParams.MAX_NUM_SUPERBLOCKS;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static KdfCalibrator calibrator(
+		double	singleThreadUnitTime,
+		double	allThreadsUnitTime)
+	{
+		KdfCalibrator calibrator = new KdfCalibrator();
+		calibrator.setSpeed(NUM_ROUNDS, singleThreadUnitTime, allThreadsUnitTime, MAX_NUM_THREADS);
+		return calibrator;
+	}
+
+	//------------------------------------------------------------------
+
+	static KdfCalibrator calibrator()
+	{
+		return calibrator(SINGLE_THREAD_UNIT_TIME, ALL_THREADS_UNIT_TIME);
+	}
+
+	//------------------------------------------------------------------
+
+	static StreamEncrypter.KdfParams params(
+		int	cost,
+		int	numBlocks,
+		int	numSuperblocks,
+		int	maxNumThreads)
+	{
+		return new StreamEncrypter.KdfParams(NUM_ROUNDS, cost, numBlocks, numSuperblocks, maxNumThreads);
+	}
+
+	//------------------------------------------------------------------
+
+	static void assertMinParams(
+		StreamEncrypter.KdfParams	params)
+	{
+		assertEquals(MIN_COST, params.getCost());
+		assertEquals(MIN_NUM_SUPERBLOCKS, params.getNumSuperblocks());
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void predictedTimeOfSingleThread()
+	{
+		// 2^20 iterations of 8 blocks at 10 ns each take 83.9 ms
+		assertEquals(84, calibrator().getPredictedTime(params(20, NUM_BLOCKS, 1, 1)));
+
+		// Three superblocks on one thread are mixed in three waves
+		assertEquals(252, calibrator().getPredictedTime(params(20, NUM_BLOCKS, 3, 1)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void predictedTimeIsMonotonic()
+	{
+		KdfCalibrator calibrator = calibrator();
+		for (int maxNumThreads : new int[] { 1, MAX_NUM_THREADS })
+		{
+			for (int numBlocks = 1; numBlocks <= 16; numBlocks *= 2)
+			{
+				for (int numSuperblocks = 1; numSuperblocks <= 16; numSuperblocks++)
+				{
+					long prevTime = 0;
+					for (int cost = 10; cost <= 22; cost++)
+					{
+						StreamEncrypter.KdfParams params = params(cost, numBlocks, numSuperblocks, maxNumThreads);
+						long time = calibrator.getPredictedTime(params);
+						assertTrue(time >= prevTime);
+						assertTrue(time <= calibrator.getPredictedTime(params(cost, 2 * numBlocks, numSuperblocks,
+																			  maxNumThreads)));
+						assertTrue(time <= calibrator.getPredictedTime(params(cost, numBlocks, numSuperblocks + 1,
+																			  maxNumThreads)));
+						prevTime = time;
+					}
+				}
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void calibrationIsMonotonicInTargetTime()
+	{
+		KdfCalibrator calibrator = calibrator();
+		StreamEncrypter.KdfParams params = params(MIN_COST, NUM_BLOCKS, 1, MAX_NUM_THREADS);
+		int prevCost = MIN_COST;
+		long prevTime = 0;
+		for (long targetTime = 1; targetTime <= 1_000_000; targetTime = targetTime * 5 / 4 + 1)
+		{
+			StreamEncrypter.KdfParams result = calibrator.calibrate(params, targetTime, MEMORY_BUDGET);
+			long time = calibrator.getPredictedTime(result);
+			assertTrue(result.getCost() >= prevCost, "Target time: " + targetTime);
+			assertTrue(time >= prevTime, "Target time: " + targetTime);
+			assertTrue(time <= targetTime, "Target time: " + targetTime);
+
+			// The number of rounds, number of blocks and maximum number of threads are retained
+			assertEquals(NUM_ROUNDS, result.numRounds);
+			assertEquals(NUM_BLOCKS, result.getNumBlocks());
+			assertEquals(MAX_NUM_THREADS, result.maxNumThreads);
+
+			prevCost = result.getCost();
+			prevTime = time;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void calibrationIsMonotonicInMemoryBudget()
+	{
+		KdfCalibrator calibrator = calibrator();
+		StreamEncrypter.KdfParams params = params(MIN_COST, NUM_BLOCKS, 1, MAX_NUM_THREADS);
+		long targetTime = 10_000;
+		int prevCost = MIN_COST;
+		for (long memoryBudget = 1L << 16; memoryBudget <= MEMORY_BUDGET; memoryBudget <<= 1)
+		{
+			StreamEncrypter.KdfParams result = calibrator.calibrate(params, targetTime, memoryBudget);
+			assertTrue(result.getCost() >= prevCost, "Memory budget: " + memoryBudget);
+			assertTrue(KdfCalibrator.getMemoryUsage(result) <= memoryBudget, "Memory budget: " + memoryBudget);
+			assertTrue(calibrator.getPredictedTime(result) <= targetTime, "Memory budget: " + memoryBudget);
+			prevCost = result.getCost();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void calibrationIsClampedToMinimum()
+	{
+		KdfCalibrator calibrator = calibrator();
+		StreamEncrypter.KdfParams params = params(20, NUM_BLOCKS, 8, MAX_NUM_THREADS);
+
+		// Neither a target time nor a memory budget can be met
+		assertMinParams(calibrator.calibrate(params, 0, MEMORY_BUDGET));
+		assertMinParams(calibrator.calibrate(params, 1000, 0));
+
+		// A KDF that is too slow for any cost to meet the target time
+		assertMinParams(calibrator(1.0e9, 1.0e9).calibrate(params, 1000, MEMORY_BUDGET));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void calibrationIsClampedToMaximum()
+	{
+		// A KDF that is fast enough for the highest cost to meet any target time
+		KdfCalibrator calibrator = calibrator(1.0e-6, 1.0e-6);
+		StreamEncrypter.KdfParams params = params(MIN_COST, NUM_BLOCKS, 1, MAX_NUM_THREADS);
+		for (long targetTime : new long[] { 1, 1000, Integer.MAX_VALUE, Integer.MAX_VALUE + 1L, Long.MAX_VALUE })
+		{
+			StreamEncrypter.KdfParams result = calibrator.calibrate(params, targetTime, Long.MAX_VALUE);
+			assertEquals(MAX_COST, result.getCost(), "Target time: " + targetTime);
+			assertTrue(result.getNumSuperblocks() >= MIN_NUM_SUPERBLOCKS, "Target time: " + targetTime);
+			assertTrue(result.getNumSuperblocks() <= MAX_NUM_SUPERBLOCKS, "Target time: " + targetTime);
+		}
+
+		// A long target time is filled with the maximum number of superblocks
+		assertEquals(MAX_NUM_SUPERBLOCKS,
+					 calibrator.calibrate(params, Long.MAX_VALUE, Long.MAX_VALUE).getNumSuperblocks());
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,107 @@
+/*====================================================================*\
+
+Salsa20Test.java
+
+Class: tests of the Salsa20 stream cipher.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE SALSA20 STREAM CIPHER
+
+
+class Salsa20Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		NUM_ROUNDS	= 20;
+
+	private static final	int		KEY_SIZE	= 32;
+	private static final	int		NONCE_SIZE	= 8;
+
+	private static final	int		MAX_NUM_BLOCKS	= 70;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	private static Salsa20 cipher()
+	{
+		Random prng = new Random(1);
+		byte[] key = new byte[KEY_SIZE];
+		prng.nextBytes(key);
+		byte[] nonce = new byte[NONCE_SIZE];
+		prng.nextBytes(nonce);
+		return new Salsa20(NUM_ROUNDS, key, nonce);
+	}
+
+	//------------------------------------------------------------------
+
+	private static void assertBlocksMatchSingleBlocks(
+		Salsa20	cipher,
+		long	blockCounter)
+	{
+		for (int numBlocks = 0; numBlocks <= MAX_NUM_BLOCKS; numBlocks++)
+		{
+			// Generate blocks one at a time
+			byte[] expected = new byte[numBlocks * Salsa20.BLOCK_SIZE + 1];
+			for (int i = 0; i < numBlocks; i++)
+				cipher.getBlock(blockCounter + i, expected, 1 + i * Salsa20.BLOCK_SIZE);
+
+			// Generate blocks together
+			byte[] actual = new byte[expected.length];
+			cipher.getBlocks(blockCounter, numBlocks, actual, 1);
+
+			assertArrayEquals(expected, actual, "Number of blocks: " + numBlocks);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void getBlocksMatchesGetBlock()
+	{
+		assertBlocksMatchSingleBlocks(cipher(), 0);
+		assertBlocksMatchSingleBlocks(cipher(), 12345);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void getBlocksMatchesGetBlockAcrossCounterWrap()
+	{
+		assertBlocksMatchSingleBlocks(cipher(), 0xFFFFFFFFL - MAX_NUM_BLOCKS / 2);
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,132 @@
+/*====================================================================*\
+
+ScryptTest.java
+
+Class: tests of the scrypt key-derivation function.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE SCRYPT KEY-DERIVATION FUNCTION
+
+
+class ScryptTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		KEY_LENGTH	= 64;
+
+	private static final	int		MAX_NUM_THREADS	= 4;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static Scrypt scrypt()
+	{
+		return new Scrypt(Scrypt.CoreHashNumRounds._8, Salsa20::hash);
+	}
+
+	//------------------------------------------------------------------
+
+	// Asserts that the key that is derived from the specified passphrase and salt with the specified parameters is the
+	// specified test vector of RFC 7914, section 12.  The cost is the binary logarithm of N.
+	static void assertTestVector(
+		String	passphrase,
+		String	salt,
+		int		cost,
+		int		numBlocks,
+		int		numSuperblocks,
+		String	expected)
+	{
+		byte[] key = scrypt().deriveKey(passphrase.getBytes(StandardCharsets.US_ASCII),
+										salt.getBytes(StandardCharsets.US_ASCII), cost, numBlocks, numSuperblocks,
+										MAX_NUM_THREADS, KEY_LENGTH);
+		assertArrayEquals(HexFormat.of().parseHex(expected.replace(" ", "")), key);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void rfc7914TestVector1()
+	{
+		assertTestVector("", "", 4, 1, 1,
+						 "77 d6 57 62 38 65 7b 20 3b 19 ca 42 c1 8a 04 97 f1 6b 48 44 e3 07 4a e8 df df fa 3f ed e2 14 42"
+						 + "fc d0 06 9d ed 09 48 f8 32 6a 75 3a 0f c8 1f 17 e8 d3 e0 fb 2e 0d 36 28 cf 35 e2 0c 38 d1 89 06");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void rfc7914TestVector2()
+	{
+		assertTestVector("password", "NaCl", 10, 8, 16,
+						 "fd ba be 1c 9d 34 72 00 78 56 e7 19 0d 01 e9 fe 7c 6a d7 cb c8 23 78 30 e7 73 76 63 4b 37 31 62"
+						 + "2e af 30 d9 2e 22 a3 88 6f f1 09 27 9d 98 30 da c7 27 af b9 4a 83 ee 6d 83 60 cb df a2 cc 06 40");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void rfc7914TestVector3()
+	{
+		assertTestVector("pleaseletmein", "SodiumChloride", 14, 8, 1,
+						 "70 23 bd cb 3a fd 73 48 46 1c 06 cd 81 fd 38 eb fd a8 fb ba 90 4f 8e 3e a9 b5 43 f6 54 5d a1 f2"
+						 + "d5 43 29 55 61 3f 0f cf 62 d4 97 05 24 2a 9a f9 e6 1e 85 dc 0d 65 1e 40 df cf 01 7b 45 57 58 87");
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void keyDoesNotDependOnNumberOfThreads()
+	{
+		byte[] passphrase = "passphrase".getBytes(StandardCharsets.US_ASCII);
+		byte[] salt = "salt".getBytes(StandardCharsets.US_ASCII);
+		assertArrayEquals(scrypt().deriveKey(passphrase, salt, 8, 2, 8, 1, KEY_LENGTH),
+						  scrypt().deriveKey(passphrase, salt, 8, 2, 8, MAX_NUM_THREADS, KEY_LENGTH));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void invalidKeyLengthIsRejected()
+	{
+		assertThrows(IllegalArgumentException.class,
+					 () -> scrypt().deriveKey(new byte[0], new byte[0], 4, 1, 1, 1, KEY_LENGTH - 1));
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,125 @@
+/*====================================================================*\
+
+ShaD256Test.java
+
+Class: tests of the double-iteration SHA-256 hash function.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.security.MessageDigest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE DOUBLE-ITERATION SHA-256 HASH FUNCTION
+
+
+class ShaD256Test
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		NUM_THREADS		= 8;
+	private static final	int		NUM_DIGESTS		= 20_000;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static byte[] expectedDigest(
+		byte[]	data)
+		throws Exception
+	{
+		MessageDigest hash = MessageDigest.getInstance("SHA-256");
+		return hash.digest(hash.digest(data));
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] data(
+		int	index)
+	{
+		return new byte[] { (byte)index, (byte)(index >>> 8), (byte)(index >>> 16) };
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void digestIsDoubleSha256()
+		throws Exception
+	{
+		for (int i = 0; i < 100; i++)
+			assertArrayEquals(expectedDigest(data(i)), new ShaD256().digest(data(i)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void instancesMayBeUsedConcurrently()
+		throws Exception
+	{
+		// Compute digests with a separate instance on each thread, as the PRNGs of the chunks of a stream do
+		ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+		try
+		{
+			List<Future<Boolean>> futures = new ArrayList<>();
+			for (int i = 0; i < NUM_THREADS; i++)
+			{
+				int threadIndex = i;
+				Callable<Boolean> task = () ->
+				{
+					ShaD256 hash = new ShaD256();
+					for (int j = threadIndex; j < NUM_DIGESTS; j += NUM_THREADS)
+					{
+						if (!MessageDigest.isEqual(expectedDigest(data(j)), hash.digest(data(j))))
+							return false;
+					}
+					return true;
+				};
+				futures.add(executor.submit(task));
+			}
+			for (Future<Boolean> future : futures)
+				assertTrue(future.get());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,508 @@
+/*====================================================================*\
+
+StreamEncrypterTest.java
+
+Class: tests of the stream encrypter.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import uk.blankaspect.common.misc.ParallelDeflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE STREAM ENCRYPTER
+
+
+class StreamEncrypterTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		HEADER_ID	= 0x7A3C91E5;
+
+	private static final	int		PLAIN_VERSION	= 0;
+	private static final	int		CHUNKED_VERSION	= 1;
+	private static final	int		FRAMED_VERSION	= 2;
+
+	private static final	int		KEY_SIZE	= 256;
+
+	private static final	int		MAX_PADDING_LENGTH	= 255;
+
+	private static final	long	TIMESTAMP	= 0x0123456789ABCDEFL;
+
+	// Lengths of a payload around the length of a buffer of a pipeline (64 KiB), and of a payload that fills many
+	// buffers
+	private static final	int[]	PIPELINE_LENGTHS	= { 0, 1, 65_535, 65_536, 65_537, 1_000_003 };
+
+	// Lengths of a payload around the length of a block of a parallel compressor, and of a payload that fills many
+	// blocks
+	private static final	int[]	PARALLEL_LENGTHS	=
+	{
+		0,
+		1,
+		ParallelDeflater.DEFAULT_BLOCK_SIZE - 1,
+		ParallelDeflater.DEFAULT_BLOCK_SIZE,
+		ParallelDeflater.DEFAULT_BLOCK_SIZE + 1,
+		7 * ParallelDeflater.DEFAULT_BLOCK_SIZE + 12_345
+	};
+
+	private static final	int		NUM_THREADS	= 4;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static StreamEncrypter.Header header(
+		int	version)
+	{
+		return new StreamEncrypter.Header(HEADER_ID, version, PLAIN_VERSION, FRAMED_VERSION)
+				.setMinChunkedVersion(CHUNKED_VERSION)
+				.setMinFramedVersion(FRAMED_VERSION);
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] randomBytes(
+		int		length,
+		long	seed)
+	{
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] encrypt(
+		StreamEncrypter.Header	header,
+		byte[]					plaintext,
+		byte[]					key)
+		throws Exception
+	{
+		return encrypt(header, plaintext, plaintext.length, key);
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] encrypt(
+		StreamEncrypter.Header	header,
+		byte[]					plaintext,
+		long					length,
+		byte[]					key)
+		throws Exception
+	{
+		return encrypt(new StreamEncrypter(FortunaCipher.AES256, header), plaintext, length, key);
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] encrypt(
+		StreamEncrypter	encrypter,
+		byte[]			plaintext,
+		long			length,
+		byte[]			key)
+		throws Exception
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		encrypter.encrypt(new ByteArrayInputStream(plaintext), outStream, length, TIMESTAMP, key,
+						  randomBytes(KEY_SIZE, 1), null);
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] decrypt(
+		StreamEncrypter.Header	header,
+		byte[]					ciphertext,
+		byte[]					key)
+		throws Exception
+	{
+		return decrypt(header, ciphertext, ciphertext.length, key);
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] decrypt(
+		StreamEncrypter.Header	header,
+		byte[]					ciphertext,
+		long					length,
+		byte[]					key)
+		throws Exception
+	{
+		return decrypt(new StreamEncrypter(null, header), ciphertext, length, key);
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] decrypt(
+		StreamEncrypter	decrypter,
+		byte[]			ciphertext,
+		long			length,
+		byte[]			key)
+		throws Exception
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		long timestamp = decrypter.decrypt(new ByteArrayInputStream(ciphertext), outStream, length, key, null);
+		assertEquals(TIMESTAMP, timestamp);
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	static StreamEncrypter pipelined(
+		StreamEncrypter	encrypter)
+	{
+		encrypter.setPipelined(true);
+		return encrypter;
+	}
+
+	//------------------------------------------------------------------
+
+	static StreamEncrypter parallel(
+		StreamEncrypter	encrypter,
+		ForkJoinPool	pool)
+	{
+		encrypter.setParallelCompression(true);
+		encrypter.setChunkPool(pool);
+		return encrypter;
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns data that is compressible, because its bytes are drawn from a small alphabet.
+	static byte[] compressibleBytes(
+		int		length,
+		long	seed)
+	{
+		Random prng = new Random(seed);
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (byte)('a' + prng.nextInt(8));
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void plainRoundTrip()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 2);
+		byte[] plaintext = randomBytes(100_000, 3);
+		byte[] ciphertext = encrypt(header(PLAIN_VERSION), plaintext, key);
+		assertArrayEquals(plaintext, decrypt(header(PLAIN_VERSION), ciphertext, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void pipelinedEncryptionMatchesSequentialEncryption()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 40);
+		for (int length : PIPELINE_LENGTHS)
+		{
+			for (byte[] plaintext : List.of(randomBytes(length, length), compressibleBytes(length, length)))
+			{
+				StreamEncrypter encrypter = pipelined(new StreamEncrypter(FortunaCipher.AES256, header(PLAIN_VERSION)));
+				assertArrayEquals(encrypt(header(PLAIN_VERSION), plaintext, key),
+								  encrypt(encrypter, plaintext, length, key), "Length: " + length);
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void pipelinedDecryptionMatchesSequentialDecryption()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 41);
+		for (int length : PIPELINE_LENGTHS)
+		{
+			byte[] plaintext = compressibleBytes(length, length);
+			byte[] ciphertext = encrypt(header(PLAIN_VERSION), plaintext, key);
+			StreamEncrypter decrypter = pipelined(new StreamEncrypter(null, header(PLAIN_VERSION)));
+			assertArrayEquals(plaintext, decrypt(decrypter, ciphertext, ciphertext.length, key), "Length: " + length);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void pipelinedDecryptionOfTamperedDataThrowsInputException()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 42);
+		byte[] plaintext = compressibleBytes(1_000_000, 43);
+		byte[] ciphertext = encrypt(header(PLAIN_VERSION), plaintext, key);
+		ciphertext[ciphertext.length / 2] ^= 1;
+		StreamEncrypter decrypter = pipelined(new StreamEncrypter(null, header(PLAIN_VERSION)));
+		assertThrows(StreamEncrypter.InputException.class,
+					 () -> decrypt(decrypter, ciphertext, ciphertext.length, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void parallelCompressionRoundTrip()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 44);
+		ForkJoinPool pool = new ForkJoinPool(NUM_THREADS);
+		try
+		{
+			for (int length : PARALLEL_LENGTHS)
+			{
+				for (byte[] plaintext : List.of(randomBytes(length, length), compressibleBytes(length, length)))
+				{
+					StreamEncrypter encrypter = new StreamEncrypter(FortunaCipher.AES256, header(PLAIN_VERSION));
+					byte[] ciphertext = encrypt(parallel(encrypter, pool), plaintext, length, key);
+
+					// The payload is decompressed by a sequential decrypter and by a pipelined decrypter
+					assertArrayEquals(plaintext, decrypt(header(PLAIN_VERSION), ciphertext, key),
+									  "Length: " + length);
+					StreamEncrypter decrypter = pipelined(new StreamEncrypter(null, header(PLAIN_VERSION)));
+					assertArrayEquals(plaintext, decrypt(decrypter, ciphertext, ciphertext.length, key),
+									  "Length: " + length);
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void parallelCompressionInCommonPoolRoundTrip()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 45);
+		byte[] plaintext = compressibleBytes(3 * ParallelDeflater.DEFAULT_BLOCK_SIZE + 1, 46);
+		StreamEncrypter encrypter = parallel(new StreamEncrypter(FortunaCipher.AES256, header(PLAIN_VERSION)), null);
+		byte[] ciphertext = encrypt(encrypter, plaintext, plaintext.length, key);
+		assertArrayEquals(plaintext, decrypt(header(PLAIN_VERSION), ciphertext, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void chunkedRoundTrip()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 4);
+		for (int length : new int[] { 0, 1, StreamEncrypter.CHUNK_SIZE, 3 * StreamEncrypter.CHUNK_SIZE + 12345 })
+		{
+			byte[] plaintext = randomBytes(length, length);
+			byte[] ciphertext = encrypt(header(CHUNKED_VERSION), plaintext, key);
+			assertArrayEquals(plaintext, decrypt(header(CHUNKED_VERSION), ciphertext, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void chunkedTamperedChunkThrowsInputException()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 5);
+		byte[] plaintext = randomBytes(3 * StreamEncrypter.CHUNK_SIZE, 6);
+		byte[] ciphertext = encrypt(header(CHUNKED_VERSION), plaintext, key);
+
+		// Flip a byte in the data of the second chunk
+		ciphertext[StreamEncrypter.CHUNK_SIZE + StreamEncrypter.CHUNK_SIZE / 2] ^= 0x01;
+
+		assertThrows(StreamEncrypter.InputException.class, () -> decrypt(header(CHUNKED_VERSION), ciphertext, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void chunkedWrongKeyThrowsInputException()
+		throws Exception
+	{
+		byte[] plaintext = randomBytes(2 * StreamEncrypter.CHUNK_SIZE, 7);
+		byte[] ciphertext = encrypt(header(CHUNKED_VERSION), plaintext, randomBytes(KEY_SIZE, 8));
+
+		assertThrows(StreamEncrypter.InputException.class,
+					 () -> decrypt(header(CHUNKED_VERSION), ciphertext, randomBytes(KEY_SIZE, 9)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void chunkedTruncationThrowsInputException()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 10);
+		byte[] plaintext = randomBytes(2 * StreamEncrypter.CHUNK_SIZE, 11);
+		byte[] ciphertext = encrypt(header(CHUNKED_VERSION), plaintext, key);
+
+		// The length of a chunked payload is found from the length of the stream, so any truncation is detected
+		for (int length : new int[] { ciphertext.length - 1, ciphertext.length - MAX_PADDING_LENGTH - 1,
+									  ciphertext.length - StreamEncrypter.CHUNK_SIZE })
+		{
+			byte[] truncated = Arrays.copyOf(ciphertext, length);
+			assertThrows(StreamEncrypter.InputException.class,
+						 () -> decrypt(header(CHUNKED_VERSION), truncated, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void framedRoundTrip()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 12);
+		for (int length : new int[] { 0, 1, StreamEncrypter.CHUNK_SIZE, 3 * StreamEncrypter.CHUNK_SIZE + 12345 })
+		{
+			byte[] plaintext = randomBytes(length, length);
+			byte[] ciphertext = encrypt(header(FRAMED_VERSION), plaintext, key);
+			assertArrayEquals(plaintext, decrypt(header(FRAMED_VERSION), ciphertext, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void framedRoundTripOfUnknownLength()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 13);
+		for (int length : new int[] { 0, 1, StreamEncrypter.CHUNK_SIZE, 2 * StreamEncrypter.CHUNK_SIZE + 54321 })
+		{
+			byte[] plaintext = randomBytes(length, length);
+			byte[] ciphertext = encrypt(header(FRAMED_VERSION), plaintext, StreamEncrypter.UNKNOWN_LENGTH, key);
+			assertArrayEquals(plaintext, decrypt(header(FRAMED_VERSION), ciphertext, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void framedTamperedChunkThrowsInputException()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 14);
+		byte[] plaintext = randomBytes(3 * StreamEncrypter.CHUNK_SIZE, 15);
+		byte[] ciphertext = encrypt(header(FRAMED_VERSION), plaintext, key);
+
+		// Flip a byte in the data of the second chunk
+		ciphertext[StreamEncrypter.CHUNK_SIZE + StreamEncrypter.CHUNK_SIZE / 2] ^= 0x01;
+
+		assertThrows(StreamEncrypter.InputException.class, () -> decrypt(header(FRAMED_VERSION), ciphertext, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void framedTruncationOfPayloadThrowsInputException()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 16);
+		byte[] plaintext = randomBytes(2 * StreamEncrypter.CHUNK_SIZE + 100, 17);
+		byte[] ciphertext = encrypt(header(FRAMED_VERSION), plaintext, key);
+
+		// Remove the final frame, and then some of the data of the last full chunk
+		for (int length : new int[] { ciphertext.length - MAX_PADDING_LENGTH - 1,
+									  ciphertext.length - StreamEncrypter.CHUNK_SIZE / 2 })
+		{
+			byte[] truncated = Arrays.copyOf(ciphertext, length);
+			assertThrows(StreamEncrypter.InputException.class, () -> decrypt(header(FRAMED_VERSION), truncated, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void framedKnownLengthEndsPayload()
+		throws Exception
+	{
+		// If the length of a framed payload is known, any input that follows it is not encrypted
+		byte[] key = randomBytes(KEY_SIZE, 18);
+		byte[] plaintext = randomBytes(2 * StreamEncrypter.CHUNK_SIZE + 100, 19);
+		for (int length : new int[] { 0, StreamEncrypter.CHUNK_SIZE, StreamEncrypter.CHUNK_SIZE + 1 })
+		{
+			byte[] ciphertext = encrypt(header(FRAMED_VERSION), plaintext, length, key);
+			assertArrayEquals(Arrays.copyOf(plaintext, length), decrypt(header(FRAMED_VERSION), ciphertext, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void framedTruncationOfTrailingPaddingThrowsInputException()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 20);
+		byte[] plaintext = randomBytes(StreamEncrypter.CHUNK_SIZE + 100, 21);
+		byte[] ciphertext = encrypt(header(FRAMED_VERSION), plaintext, key);
+
+		// The padding that follows the hash value is read, so its truncation is detected whether or not the length of
+		// the stream is known
+		for (int i = 1; i <= MAX_PADDING_LENGTH + 1; i++)
+		{
+			byte[] truncated = Arrays.copyOf(ciphertext, ciphertext.length - i);
+			assertThrows(StreamEncrypter.InputException.class, () -> decrypt(header(FRAMED_VERSION), truncated, key));
+			assertThrows(StreamEncrypter.InputException.class,
+						 () -> decrypt(header(FRAMED_VERSION), truncated, StreamEncrypter.UNKNOWN_LENGTH, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void framedTrailingDataOfKnownLengthThrowsInputException()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 22);
+		byte[] plaintext = randomBytes(StreamEncrypter.CHUNK_SIZE + 100, 23);
+		byte[] ciphertext = encrypt(header(FRAMED_VERSION), plaintext, key);
+
+		byte[] extended = Arrays.copyOf(ciphertext, ciphertext.length + 1);
+		assertThrows(StreamEncrypter.InputException.class, () -> decrypt(header(FRAMED_VERSION), extended, key));
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
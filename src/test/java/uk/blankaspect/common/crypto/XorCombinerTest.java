@@ -0,0 +1,202 @@
+/*====================================================================*\
+
+XorCombinerTest.java
+
+Class: tests of the exclusive-OR combiner of a Fortuna PRNG.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.crypto;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.nio.ByteBuffer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE EXCLUSIVE-OR COMBINER OF A FORTUNA PRNG
+
+
+class XorCombinerTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	byte[]	SEED	= { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+	// The block size is not a power of two, so the buffer of the combiner is larger than a block
+	private static final	int		BLOCK_SIZE	= 100;
+	private static final	int		BUFFER_SIZE	= 128;
+
+	// The lengths of successive pieces of data, which start at offsets that are not aligned with the keystream
+	private static final	int[]	LENGTHS	= { 0, 1, 7, 8, 9, 15, 16, 17, 63, 64, 65, 127, 128, 129, 1000, 3, 5000 };
+
+	private static final	int		DATA_OFFSET	= 3;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static byte[] randomBytes(
+		int		length,
+		long	seed)
+	{
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	static int totalLength()
+	{
+		return Arrays.stream(LENGTHS).sum();
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the specified data combined with the keystream of a PRNG that is seeded with SEED, one byte at a time.
+	// The keystream is generated in requests for the size of the buffer of a combiner, as a combiner generates it.
+	static byte[] combineBytes(
+		byte[]	data,
+		int		offset,
+		int		length)
+	{
+		FortunaAes256 prng = new FortunaAes256(SEED);
+		byte[] keystream = new byte[BUFFER_SIZE];
+		byte[] result = Arrays.copyOfRange(data, offset, offset + length);
+		for (int i = 0; i < length; i++)
+		{
+			if (i % BUFFER_SIZE == 0)
+				prng.getRandomBytes(keystream);
+			result[i] ^= keystream[i % BUFFER_SIZE];
+		}
+		return result;
+	}
+
+	//------------------------------------------------------------------
+
+	static Fortuna.XorCombiner combiner()
+	{
+		return FortunaAes256.combiner(SEED, BLOCK_SIZE);
+	}
+
+	//------------------------------------------------------------------
+
+	// Combines the remaining data of the specified buffer in pieces of the lengths in LENGTHS, and returns the result.
+	static byte[] combineBuffer(
+		ByteBuffer	buffer)
+	{
+		Fortuna.XorCombiner combiner = combiner();
+		int start = buffer.position();
+		int offset = start;
+		for (int length : LENGTHS)
+		{
+			buffer.limit(offset + length);
+			combiner.combine(buffer);
+			assertEquals(offset + length, buffer.position());
+			offset += length;
+		}
+		byte[] result = new byte[offset - start];
+		buffer.get(start, result);
+		return result;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void combineArrayMatchesByteLoop()
+	{
+		int length = totalLength();
+		byte[] data = randomBytes(DATA_OFFSET + length, 1);
+		byte[] expected = combineBytes(data, DATA_OFFSET, length);
+
+		Fortuna.XorCombiner combiner = combiner();
+		byte[] actual = data.clone();
+		int offset = DATA_OFFSET;
+		for (int pieceLength : LENGTHS)
+		{
+			combiner.combine(actual, offset, pieceLength);
+			offset += pieceLength;
+		}
+		assertArrayEquals(expected, Arrays.copyOfRange(actual, DATA_OFFSET, offset));
+
+		// The bytes outside the combined range are unchanged
+		assertArrayEquals(Arrays.copyOf(data, DATA_OFFSET), Arrays.copyOf(actual, DATA_OFFSET));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void combineHeapBufferMatchesByteLoop()
+	{
+		int length = totalLength();
+		byte[] data = randomBytes(DATA_OFFSET + length, 2);
+		byte[] expected = combineBytes(data, DATA_OFFSET, length);
+
+		// The buffer is a slice, so its array offset is not zero
+		ByteBuffer buffer = ByteBuffer.wrap(data.clone()).position(1).slice().position(DATA_OFFSET - 1);
+		assertArrayEquals(expected, combineBuffer(buffer));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void combineDirectBufferMatchesByteLoop()
+	{
+		int length = totalLength();
+		byte[] data = randomBytes(DATA_OFFSET + length, 3);
+		byte[] expected = combineBytes(data, DATA_OFFSET, length);
+
+		// Start at an offset that is not a multiple of eight
+		ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).put(data).position(DATA_OFFSET);
+		assertArrayEquals(expected, combineBuffer(buffer));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void combineDirectBufferAtEachAlignmentMatchesByteLoop()
+	{
+		int length = 1000;
+		for (int offset = 0; offset < 8; offset++)
+		{
+			byte[] data = randomBytes(offset + length, 4 + offset);
+			byte[] expected = combineBytes(data, offset, length);
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).put(data).position(offset);
+			combiner().combine(buffer);
+			byte[] actual = new byte[length];
+			buffer.get(offset, actual);
+			assertArrayEquals(expected, actual, "Offset: " + offset);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
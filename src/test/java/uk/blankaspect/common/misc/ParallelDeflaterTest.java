@@ -0,0 +1,240 @@
+/*====================================================================*\
+
+ParallelDeflaterTest.java
+
+Class: tests of the parallel DEFLATE compressor.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayOutputStream;
+
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import uk.blankaspect.common.exception.AppException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE PARALLEL DEFLATE COMPRESSOR
+
+
+class ParallelDeflaterTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	// The minimum block size is the size of the DEFLATE window
+	private static final	int		BLOCK_SIZE	= 1 << 15;
+
+	private static final	int[]	LENGTHS	=
+	{
+		0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 5 * BLOCK_SIZE + 123
+	};
+
+	private static final	int		INPUT_LENGTH	= 1000;
+
+	private static final	int		DEFAULT_LEVEL	= 6;
+
+	private static final	int		NUM_THREADS	= 4;
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	ForkJoinPool	pool;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	@BeforeAll
+	static void init()
+	{
+		pool = new ForkJoinPool(NUM_THREADS);
+	}
+
+	//------------------------------------------------------------------
+
+	@AfterAll
+	static void shutDown()
+	{
+		pool.shutdown();
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns data that is compressible and that repeats at a distance within the DEFLATE window, so that the
+	// compression of a block benefits from the dictionary of the preceding block.
+	static byte[] compressibleBytes(
+		int		length,
+		long	seed)
+	{
+		Random prng = new Random(seed);
+		byte[] phrase = new byte[200];
+		for (int i = 0; i < phrase.length; i++)
+			phrase[i] = (byte)('a' + prng.nextInt(26));
+		byte[] data = new byte[length];
+		for (int i = 0; i < length; i++)
+			data[i] = (prng.nextInt(16) == 0) ? (byte)prng.nextInt() : phrase[i % phrase.length];
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	// Compresses the specified data with a parallel compressor, passing the data to the compressor in pieces of the
+	// specified length, and returns the compressed data.
+	static byte[] deflate(
+		byte[]	data,
+		int		level,
+		int		inputLength)
+		throws AppException
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		ParallelDeflater deflater = new ParallelDeflater(level, BLOCK_SIZE, pool, outStream::write);
+		for (int offset = 0; offset < data.length; offset += inputLength)
+			deflater.deflate(data, offset, Math.min(inputLength, data.length - offset));
+		deflater.finish();
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	// Decompresses the specified raw DEFLATE stream with a plain inflater, and returns the decompressed data.  The
+	// stream must end with a final block and have no trailing data.
+	static byte[] inflate(
+		byte[]	data)
+		throws DataFormatException
+	{
+		Inflater inflater = new Inflater(true);
+		try
+		{
+			inflater.setInput(data);
+			ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1 << 12];
+			while (!inflater.finished())
+			{
+				int length = inflater.inflate(buffer);
+				if ((length == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				outStream.write(buffer, 0, length);
+			}
+			assertTrue(inflater.finished());
+			assertEquals(0, inflater.getRemaining());
+			return outStream.toByteArray();
+		}
+		finally
+		{
+			inflater.end();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void outputInflatesWithPlainInflater()
+		throws Exception
+	{
+		for (int length : LENGTHS)
+		{
+			byte[] data = compressibleBytes(length, length);
+			assertArrayEquals(data, inflate(deflate(data, Deflater.BEST_COMPRESSION, INPUT_LENGTH)),
+							  "Length: " + length);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void outputInflatesWithPlainInflaterAtEachLevel()
+		throws Exception
+	{
+		byte[] data = compressibleBytes(3 * BLOCK_SIZE + 7, 1);
+		for (int level = Deflater.NO_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++)
+			assertArrayEquals(data, inflate(deflate(data, level, INPUT_LENGTH)), "Level: " + level);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void outputDoesNotDependOnLengthsOfInput()
+		throws Exception
+	{
+		byte[] data = compressibleBytes(4 * BLOCK_SIZE + 99, 2);
+		byte[] expected = deflate(data, DEFAULT_LEVEL, data.length + 1);
+		for (int inputLength : new int[] { 1, 999, BLOCK_SIZE, BLOCK_SIZE + 1 })
+			assertArrayEquals(expected, deflate(data, DEFAULT_LEVEL, inputLength));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void compressibleDataIsCompressed()
+		throws Exception
+	{
+		byte[] data = compressibleBytes(8 * BLOCK_SIZE, 3);
+		assertTrue(deflate(data, Deflater.BEST_COMPRESSION, INPUT_LENGTH).length < data.length / 2);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void deflateAfterFinishIsRejected()
+		throws Exception
+	{
+		ParallelDeflater deflater =
+				new ParallelDeflater(Deflater.BEST_SPEED, BLOCK_SIZE, pool, (data, offset, length) -> { });
+		deflater.finish();
+		assertThrows(IllegalStateException.class, () -> deflater.deflate(new byte[1], 0, 1));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void invalidArgumentsAreRejected()
+	{
+		assertThrows(IllegalArgumentException.class,
+					 () -> new ParallelDeflater(Deflater.DEFAULT_COMPRESSION, BLOCK_SIZE, pool, null));
+		assertThrows(IllegalArgumentException.class,
+					 () -> new ParallelDeflater(Deflater.BEST_COMPRESSION + 1, BLOCK_SIZE, pool, null));
+		assertThrows(IllegalArgumentException.class,
+					 () -> new ParallelDeflater(Deflater.BEST_SPEED, BLOCK_SIZE - 1, pool, null));
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,284 @@
+/*====================================================================*\
+
+TaskSchedulerTest.java
+
+Class: tests of the task scheduler.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.common.misc;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE TASK SCHEDULER
+
+
+class TaskSchedulerTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	String	NAME	= "test";
+
+	private static final	long	TIMEOUT	= 10_000;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static Task task(
+		Runnable	action)
+	{
+		return new Task()
+		{
+			@Override
+			public void run()
+			{
+				action.run();
+			}
+		};
+	}
+
+	//------------------------------------------------------------------
+
+	static void await(
+		CountDownLatch	latch)
+	{
+		try
+		{
+			assertTrue(latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		}
+		catch (InterruptedException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns a task that signals that it has started and then waits for the specified latch to be released.
+	static Task blockingTask(
+		CountDownLatch	started,
+		CountDownLatch	release)
+	{
+		return task(() ->
+		{
+			started.countDown();
+			await(release);
+		});
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void taskIsRejectedWhenQueueIsFull()
+	{
+		// One task is performed and one task waits, so a third task is rejected
+		TaskScheduler scheduler = new TaskScheduler(NAME, 1, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch ended = new CountDownLatch(2);
+		TaskContext context1 = new TaskContext();
+		TaskContext context2 = new TaskContext();
+		TaskContext context3 = new TaskContext();
+		AtomicBoolean rejectedTaskPerformed = new AtomicBoolean();
+		AtomicBoolean rejectedTaskEnded = new AtomicBoolean();
+
+		assertTrue(scheduler.submit(blockingTask(started, release), context1, context -> ended.countDown()));
+		await(started);
+		assertTrue(scheduler.submit(task(() -> { }), context2, context -> ended.countDown()));
+		assertFalse(scheduler.submit(task(() -> rejectedTaskPerformed.set(true)), context3,
+									 context -> rejectedTaskEnded.set(true)));
+
+		// The rejected task is not among the tasks that have not ended
+		assertEquals(List.of(context1, context2), scheduler.getContexts());
+
+		// When a thread becomes free, the waiting task is performed and a task is accepted again
+		release.countDown();
+		await(ended);
+		assertFalse(rejectedTaskPerformed.get());
+		assertFalse(rejectedTaskEnded.get());
+
+		CountDownLatch endedAgain = new CountDownLatch(1);
+		assertTrue(scheduler.submit(task(() -> { }), context3, context -> endedAgain.countDown()));
+		await(endedAgain);
+		assertEquals(0, scheduler.getNumTasks());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void eachTaskIsPerformedWithItsOwnContext()
+	{
+		// The tasks are performed in turn on the same pooled thread
+		TaskScheduler scheduler = new TaskScheduler(NAME, 1, 2);
+		Map<TaskContext, TaskContext> contexts = new ConcurrentHashMap<>();
+		Map<TaskContext, Thread> threads = new ConcurrentHashMap<>();
+		CountDownLatch ended = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++)
+		{
+			TaskContext context = new TaskContext();
+			scheduler.submit(task(() ->
+			{
+				contexts.put(context, Task.getContext());
+				threads.put(context, Thread.currentThread());
+			}), context, endedContext -> ended.countDown());
+		}
+		await(ended);
+
+		assertEquals(2, contexts.size());
+		contexts.forEach((expected, actual) -> assertSame(expected, actual));
+		List<Thread> pooledThreads = List.copyOf(threads.values());
+		assertSame(pooledThreads.get(0), pooledThreads.get(1));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void contextIsInheritedByThreadsThatTaskCreates()
+		throws Exception
+	{
+		TaskScheduler scheduler = new TaskScheduler(NAME, 1, 1);
+		TaskContext context = new TaskContext();
+		Map<String, TaskContext> contexts = new ConcurrentHashMap<>();
+		CountDownLatch ended = new CountDownLatch(1);
+
+		// A pool whose threads are created before the task is performed does not inherit the context of the task, so
+		// work that is submitted to it must be bound to the context explicitly
+		ExecutorService prestartedExecutor = Executors.newSingleThreadExecutor();
+		try
+		{
+			prestartedExecutor.submit(() -> { }).get();
+			scheduler.submit(task(() ->
+			{
+				ExecutorService executor = Executors.newSingleThreadExecutor();
+				try
+				{
+					contexts.put("thread", executor.submit(Task::getContext).get());
+					contexts.put("unbound", prestartedExecutor.submit(Task::getContext).get());
+					contexts.put("bound", prestartedExecutor.submit(() -> context.call(Task::getContext)).get());
+				}
+				catch (Exception e)
+				{
+					throw new AssertionError(e);
+				}
+				finally
+				{
+					executor.shutdown();
+				}
+			}), context, endedContext -> ended.countDown());
+			await(ended);
+		}
+		finally
+		{
+			prestartedExecutor.shutdown();
+		}
+
+		assertSame(context, contexts.get("thread"));
+		assertNotSame(context, contexts.get("unbound"));
+		assertSame(context, contexts.get("bound"));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void cancellationOfTaskDoesNotAffectOtherTasks()
+	{
+		TaskScheduler scheduler = new TaskScheduler(NAME, 1, 2);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch ended = new CountDownLatch(3);
+		TaskContext context1 = new TaskContext();
+		TaskContext context2 = new TaskContext();
+		TaskContext context3 = new TaskContext();
+		AtomicBoolean cancelledTaskPerformed = new AtomicBoolean();
+		AtomicBoolean otherTaskCancelled = new AtomicBoolean(true);
+
+		scheduler.submit(blockingTask(started, release), context1, context -> ended.countDown());
+		await(started);
+		scheduler.submit(task(() -> cancelledTaskPerformed.set(true)), context2, context -> ended.countDown());
+		scheduler.submit(task(() -> otherTaskCancelled.set(Task.isCancelled())), context3,
+						 context -> ended.countDown());
+
+		// A waiting task that is cancelled is not performed, but its listener is notified
+		context2.cancel();
+		release.countDown();
+		await(ended);
+		assertFalse(cancelledTaskPerformed.get());
+		assertFalse(otherTaskCancelled.get());
+		assertFalse(Task.isCancelled());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void cancelAllEndsTasks()
+	{
+		TaskScheduler scheduler = new TaskScheduler(NAME, 2, 2);
+		CountDownLatch started = new CountDownLatch(2);
+		for (int i = 0; i < 2; i++)
+		{
+			scheduler.submit(task(() ->
+			{
+				started.countDown();
+				while (!Task.isCancelled())
+					Thread.onSpinWait();
+			}), new TaskContext(), null);
+		}
+		await(started);
+		assertEquals(2, scheduler.getNumTasks());
+		assertTrue(scheduler.cancelAll(TIMEOUT));
+		assertEquals(0, scheduler.getNumTasks());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void invalidArgumentsAreRejected()
+	{
+		assertThrows(IllegalArgumentException.class, () -> new TaskScheduler(NAME, 0, 1));
+		assertThrows(IllegalArgumentException.class, () -> new TaskScheduler(NAME, 1, 0));
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,431 @@
+/*====================================================================*\
+
+ArchiveDocumentTest.java
+
+Class: tests of an archive document.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.blankaspect.common.crypto.FortunaCipher;
+import uk.blankaspect.common.crypto.StreamEncrypter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF AN ARCHIVE DOCUMENT
+
+
+class ArchiveDocumentTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		KEY_SIZE	= 256;
+
+	private static final	int		BASE_VERSION	= ArchiveDocument.getVersion(false, false, false, false);
+	private static final	int		MAX_VERSION		= ArchiveDocument.getVersion(true, true, true, true);
+
+	private static final	int		MAX_NUM_ELEMENTS	= (1 << 24) - 1;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	@TempDir
+	private	File	directory;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static byte[] randomBytes(
+		int		length,
+		long	seed)
+	{
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	static void encrypt(
+		int		version,
+		byte[]	plaintext,
+		byte[]	key,
+		File	file)
+		throws Exception
+	{
+		try (OutputStream outStream = new FileOutputStream(file))
+		{
+			new StreamEncrypter(FortunaCipher.AES256, ArchiveDocument.getOuterHeader(version))
+					.encrypt(new ByteArrayInputStream(plaintext), outStream, plaintext.length, 0, key,
+							 randomBytes(KEY_SIZE, 1), null);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] decrypt(
+		File	file,
+		byte[]	key)
+		throws Exception
+	{
+		return decrypt(file, file.length(), key);
+	}
+
+	//------------------------------------------------------------------
+
+	static byte[] decrypt(
+		File	file,
+		long	length,
+		byte[]	key)
+		throws Exception
+	{
+		// The version number of the header of the decrypter is not used for decryption
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		try (FileInputStream inStream = new FileInputStream(file))
+		{
+			new StreamEncrypter(null, ArchiveDocument.getOuterHeader(BASE_VERSION))
+					.decrypt(inStream, outStream, length, key, null);
+		}
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns a source of an index of elements whose paths are the specified list and whose keys of hash values are
+	// looked up by path in the specified map.
+	static ArchiveDocument.ElementIndex.ISource indexSource(
+		List<String>		paths,
+		Map<String, Long>	hashValueKeys)
+	{
+		return new ArchiveDocument.ElementIndex.ISource()
+		{
+			@Override
+			public int size()
+			{
+				return paths.size();
+			}
+
+			@Override
+			public String getPath(int index)
+			{
+				return paths.get(index);
+			}
+
+			@Override
+			public long getHashValueKey(int index)
+			{
+				return hashValueKeys.get(paths.get(index));
+			}
+		};
+	}
+
+	//------------------------------------------------------------------
+
+	static void assertIndex(
+		ArchiveDocument.ElementIndex	index,
+		List<String>					paths,
+		Map<String, Long>				hashValueKeys,
+		Set<String>						removedPaths)
+	{
+		for (int i = 0; i < paths.size(); i++)
+			assertEquals(i, index.find(paths.get(i)), paths.get(i));
+		for (String path : removedPaths)
+			assertEquals(-1, index.find(path), path);
+		assertEquals(new HashSet<>(hashValueKeys.values()), index.getHashValueKeys());
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void flagsOfVersionAreIndependent()
+	{
+		Set<Integer> versions = new HashSet<>();
+		for (int i = 0; i < 16; i++)
+		{
+			boolean sharded = (i & 1) != 0;
+			boolean packFields = (i & 2) != 0;
+			boolean chunkTable = (i & 4) != 0;
+			boolean journalAnchor = (i & 8) != 0;
+			int version = ArchiveDocument.getVersion(sharded, packFields, chunkTable, journalAnchor);
+			assertEquals(sharded, ArchiveDocument.isShardedLayout(version));
+			assertEquals(packFields, ArchiveDocument.hasPackFields(version));
+			assertEquals(chunkTable, ArchiveDocument.hasChunkTable(version));
+			assertEquals(journalAnchor, ArchiveDocument.hasJournalAnchor(version));
+			versions.add(version);
+		}
+		assertEquals(16, versions.size());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void everyCombinationOfFlagsIsSupported()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 2);
+		byte[] plaintext = randomBytes(1000, 3);
+		for (int i = 0; i < 16; i++)
+		{
+			int version = ArchiveDocument.getVersion((i & 1) != 0, (i & 2) != 0, (i & 4) != 0, (i & 8) != 0);
+			File file = new File(directory, "archive" + i);
+			encrypt(version, plaintext, key, file);
+
+			try (FileInputStream inStream = new FileInputStream(file))
+			{
+				assertEquals(version, ArchiveDocument.readVersion(inStream, file));
+				assertEquals(0, inStream.getChannel().position());
+			}
+			assertArrayEquals(plaintext, decrypt(file, key));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void unknownFlagIsNotSupported()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 4);
+		File file = new File(directory, "archive");
+		encrypt(Integer.highestOneBit(MAX_VERSION) << 1, randomBytes(1000, 5), key, file);
+
+		assertThrows(StreamEncrypter.InputException.class, () -> decrypt(file, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void journalAnchorIsReadFromEndOfFile()
+		throws Exception
+	{
+		byte[] key = randomBytes(KEY_SIZE, 6);
+		byte[] plaintext = randomBytes(1000, 7);
+		File file = new File(directory, "archive");
+		encrypt(MAX_VERSION, plaintext, key, file);
+		byte[] anchor = ArchiveJournal.createAnchor(randomBytes(32, 8));
+		try (OutputStream outStream = new FileOutputStream(file, true))
+		{
+			outStream.write(anchor);
+		}
+
+		try (FileInputStream inStream = new FileInputStream(file))
+		{
+			assertTrue(ArchiveDocument.hasJournalAnchor(ArchiveDocument.readVersion(inStream, file)));
+			assertArrayEquals(anchor, ArchiveDocument.readJournalAnchor(inStream, file));
+			assertEquals(0, inStream.getChannel().position());
+		}
+
+		// The encrypted data ends before the anchor
+		assertArrayEquals(plaintext, decrypt(file, file.length() - anchor.length, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void capacityOfElementListGrowsToMaxNumElements()
+	{
+		// Grow a list one element at a time from its initial capacity, as elements are added to an archive
+		int capacity = 16;
+		while (capacity < MAX_NUM_ELEMENTS)
+		{
+			int newCapacity = ArchiveDocument.ElementList.getNewCapacity(capacity, capacity + 1);
+			assertTrue(newCapacity > capacity);
+			assertTrue(newCapacity <= MAX_NUM_ELEMENTS);
+			assertTrue(ArchiveDocument.ElementList.getSecretsLength(newCapacity) > 0);
+			capacity = newCapacity;
+		}
+		assertEquals(MAX_NUM_ELEMENTS, capacity);
+
+		// A capacity of more than 15.4 million elements would grow by half to a capacity whose secrets overflow an int
+		assertEquals(MAX_NUM_ELEMENTS, ArchiveDocument.ElementList.getNewCapacity(15_354_379, 15_354_380));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void secretsOfElementListThatOverflowAnIntAreRejected()
+	{
+		assertThrows(IllegalArgumentException.class,
+					 () -> ArchiveDocument.ElementList.getSecretsLength(Integer.MAX_VALUE / 2));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void indexOfElementsFollowsChangesToList()
+	{
+		// The paths and keys of hash values of the elements, and the paths that are no longer in the list
+		List<String> paths = new ArrayList<>();
+		Map<String, Long> hashValueKeys = new HashMap<>();
+		Set<String> removedPaths = new HashSet<>();
+
+		ArchiveDocument.ElementIndex index = new ArchiveDocument.ElementIndex(indexSource(paths, hashValueKeys));
+		Random prng = new Random(1);
+		long nextKey = 0;
+		for (int i = 0; i < 5000; i++)
+		{
+			// Add an element while the list is small, so that the other changes apply to a list that is not empty
+			int change = (paths.size() < 4) ? 0 : prng.nextInt(7);
+			int elementIndex = paths.isEmpty() ? 0 : prng.nextInt(paths.size());
+			switch (change)
+			{
+				// Add
+				case 0:
+				{
+					String path = "file" + nextKey;
+					paths.add(path);
+					hashValueKeys.put(path, nextKey);
+					removedPaths.remove(path);
+					index.added(path, nextKey++);
+					break;
+				}
+
+				// Update: replace an element with one that has the same path
+				case 1:
+				{
+					String path = paths.get(elementIndex);
+					long oldKey = hashValueKeys.put(path, nextKey);
+					index.replaced(elementIndex, path, oldKey, false, path, nextKey++);
+					break;
+				}
+
+				// Rename: replace an element with one that has a new path
+				case 2:
+				{
+					String oldPath = paths.get(elementIndex);
+					String path = "renamed" + nextKey;
+					long oldKey = hashValueKeys.remove(oldPath);
+					paths.set(elementIndex, path);
+					hashValueKeys.put(path, nextKey);
+					removedPaths.add(oldPath);
+					index.replaced(elementIndex, oldPath, oldKey, false, path, nextKey++);
+					break;
+				}
+
+				// Delete an element
+				case 3:
+				{
+					String path = paths.remove(elementIndex);
+					removedPaths.add(path);
+					index.removed(elementIndex, path, hashValueKeys.remove(path), false);
+					break;
+				}
+
+				// Delete the last element
+				case 4:
+				{
+					elementIndex = paths.size() - 1;
+					String path = paths.remove(elementIndex);
+					removedPaths.add(path);
+					index.removed(elementIndex, path, hashValueKeys.remove(path), false);
+					break;
+				}
+
+				// Reorder the list
+				case 5:
+					Collections.shuffle(paths, prng);
+					index.reordered();
+					break;
+
+				// Move an element to the end of the list by deleting it and adding it again
+				case 6:
+				{
+					String path = paths.remove(elementIndex);
+					long key = hashValueKeys.remove(path);
+					index.removed(elementIndex, path, key, false);
+					paths.add(path);
+					hashValueKeys.put(path, key);
+					index.added(path, key);
+					break;
+				}
+			}
+
+			// Check the index after some of the changes, so that changes are made both while the map and set are
+			// built and while they are invalid
+			if (prng.nextInt(4) == 0)
+				assertIndex(index, paths, hashValueKeys, removedPaths);
+		}
+		assertIndex(index, paths, hashValueKeys, removedPaths);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void keyOfPackedElementIsRetained()
+	{
+		List<String> paths = new ArrayList<>(List.of("a", "b", "c"));
+		Map<String, Long> hashValueKeys = new HashMap<>(Map.of("a", 1L, "b", 2L, "c", 3L));
+		ArchiveDocument.ElementIndex index = new ArchiveDocument.ElementIndex(indexSource(paths, hashValueKeys));
+		assertEquals(Set.of(1L, 2L, 3L), index.getHashValueKeys());
+
+		// The key of a packed element that is replaced is retained
+		hashValueKeys.put("a", 4L);
+		index.replaced(0, "a", 1L, true, "a", 4L);
+		assertEquals(Set.of(1L, 2L, 3L, 4L), index.getHashValueKeys());
+
+		// The key of a packed element that is removed is retained
+		paths.remove(1);
+		index.removed(1, "b", hashValueKeys.remove("b"), true);
+		assertTrue(index.getHashValueKeys().contains(2L));
+		assertEquals(-1, index.find("b"));
+		assertEquals(1, index.find("c"));
+
+		// The key of an element that is not packed is removed
+		paths.remove(1);
+		index.removed(1, "c", hashValueKeys.remove("c"), false);
+		assertFalse(index.getHashValueKeys().contains(3L));
+		assertEquals(Set.of(1L, 2L, 4L), index.getHashValueKeys());
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
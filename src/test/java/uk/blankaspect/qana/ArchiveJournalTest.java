@@ -0,0 +1,411 @@
+/*====================================================================*\
+
+ArchiveJournalTest.java
+
+Class: tests of the journal of an archive.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.blankaspect.common.crypto.FortunaCipher;
+import uk.blankaspect.common.crypto.Scrypt;
+import uk.blankaspect.common.crypto.StreamEncrypter;
+
+import uk.blankaspect.common.exception.AppException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE JOURNAL OF AN ARCHIVE
+
+
+class ArchiveJournalTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	StreamEncrypter.KdfParams	KDF_PARAMS	=
+			new StreamEncrypter.KdfParams(Scrypt.CoreHashNumRounds._8, 1, 1, 1, 1);
+
+	private static final	int		HEADER_SALT_OFFSET	= 6;
+
+	private static final	byte[]	INDEX_HASH_VALUE	= new byte[32];
+
+	private static final	List<byte[]>	RECORDS1	= List.of(new byte[] { 1, 2, 3 }, new byte[0]);
+	private static final	List<byte[]>	RECORDS2	= List.of(new byte[1000]);
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	KeyList.Key	key;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	@TempDir
+	private	File	directory;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	@BeforeAll
+	static void init()
+		throws AppException
+	{
+		QanaApp.INSTANCE.initHeadless();
+		key = createKey("passphrase");
+	}
+
+	//------------------------------------------------------------------
+
+	static KeyList.Key createKey(
+		String	passphrase)
+	{
+		return KeyList.createKey(null, passphrase, KDF_PARAMS, KDF_PARAMS, EnumSet.allOf(FortunaCipher.class),
+								 FortunaCipher.AES256);
+	}
+
+	//------------------------------------------------------------------
+
+	static void assertRecordsEqual(
+		List<byte[]>	expected,
+		List<byte[]>	actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertArrayEquals(expected.get(i), actual.get(i));
+	}
+
+	//------------------------------------------------------------------
+
+	static ArchiveJournal open(
+		File	file)
+		throws AppException
+	{
+		return ArchiveJournal.open(file, key, INDEX_HASH_VALUE, new ArrayList<>());
+	}
+
+	//------------------------------------------------------------------
+
+	static void truncate(
+		File	file,
+		long	length)
+		throws Exception
+	{
+		try (RandomAccessFile raFile = new RandomAccessFile(file, "rw"))
+		{
+			raFile.setLength(length);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	// Creates a journal to which two blocks of records are appended, and returns the length of the journal after the
+	// first block.
+	private long createJournal(
+		File	file)
+		throws AppException
+	{
+		ArchiveJournal journal = ArchiveJournal.create(file, key, INDEX_HASH_VALUE);
+		journal.append(RECORDS1);
+		long length = journal.getLength();
+		journal.append(RECORDS2);
+		return length;
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void fileIsNotWrittenUntilRecordsAreAppended()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		ArchiveJournal.create(file, key, INDEX_HASH_VALUE);
+		assertFalse(file.exists());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void roundTrip()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		createJournal(file);
+
+		List<byte[]> records = new ArrayList<>();
+		ArchiveJournal journal = ArchiveJournal.open(file, key, INDEX_HASH_VALUE, records);
+		assertNotNull(journal);
+		assertFalse(journal.isTruncated());
+		assertEquals(file.length(), journal.getLength());
+
+		List<byte[]> expectedRecords = new ArrayList<>(RECORDS1);
+		expectedRecords.addAll(RECORDS2);
+		assertRecordsEqual(expectedRecords, records);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void journalOfOtherVersionOfArchiveIsIgnored()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		createJournal(file);
+
+		byte[] indexHashValue = INDEX_HASH_VALUE.clone();
+		indexHashValue[0] ^= 1;
+		List<byte[]> records = new ArrayList<>();
+		assertNull(ArchiveJournal.open(file, key, indexHashValue, records));
+		assertTrue(records.isEmpty());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void wrongKeyThrowsException()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		createJournal(file);
+
+		assertThrows(AppException.class,
+					 () -> ArchiveJournal.open(file, createKey("other"), INDEX_HASH_VALUE, new ArrayList<>()));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void truncationWithinBlockIsDetected()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		createJournal(file);
+		truncate(file, file.length() - 1);
+
+		List<byte[]> records = new ArrayList<>();
+		ArchiveJournal journal = ArchiveJournal.open(file, key, INDEX_HASH_VALUE, records);
+		assertTrue(journal.isTruncated());
+		assertRecordsEqual(RECORDS1, records);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void truncationAtEndOfBlockIsDetected()
+		throws Exception
+	{
+		// The removal of whole blocks is detected from the number of blocks in the authenticated header
+		File file = new File(directory, "archive.journal");
+		long length = createJournal(file);
+		truncate(file, length);
+
+		List<byte[]> records = new ArrayList<>();
+		ArchiveJournal journal = ArchiveJournal.open(file, key, INDEX_HASH_VALUE, records);
+		assertTrue(journal.isTruncated());
+		assertEquals(length, journal.getLength());
+		assertRecordsEqual(RECORDS1, records);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void tamperedBlockIsIgnored()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		long length = createJournal(file);
+
+		// Flip a bit in the nonce of the second block, from which the key of the block is derived
+		try (RandomAccessFile raFile = new RandomAccessFile(file, "rw"))
+		{
+			raFile.seek(length);
+			int b = raFile.read();
+			raFile.seek(length);
+			raFile.write(b ^ 1);
+		}
+
+		List<byte[]> records = new ArrayList<>();
+		ArchiveJournal journal = ArchiveJournal.open(file, key, INDEX_HASH_VALUE, records);
+		assertTrue(journal.isTruncated());
+		assertRecordsEqual(RECORDS1, records);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void tamperedHeaderThrowsException()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		createJournal(file);
+
+		// Flip a bit in the salt, which follows the ID and version of the journal
+		try (RandomAccessFile raFile = new RandomAccessFile(file, "rw"))
+		{
+			raFile.seek(HEADER_SALT_OFFSET);
+			int b = raFile.read();
+			raFile.seek(HEADER_SALT_OFFSET);
+			raFile.write(b ^ 1);
+		}
+
+		assertThrows(AppException.class, () -> ArchiveJournal.open(file, key, INDEX_HASH_VALUE, new ArrayList<>()));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void anchorOfArchiveWithoutJournalMatchesAnyJournal()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		createJournal(file);
+
+		byte[] anchor = ArchiveJournal.createAnchor(INDEX_HASH_VALUE);
+		assertEquals(ArchiveJournal.ANCHOR_SIZE, anchor.length);
+		assertTrue(ArchiveJournal.matchesAnchor(null, anchor, INDEX_HASH_VALUE));
+		assertTrue(ArchiveJournal.matchesAnchor(open(file), anchor, INDEX_HASH_VALUE));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void anchorMatchesJournal()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		ArchiveJournal journal = ArchiveJournal.create(file, key, INDEX_HASH_VALUE);
+		journal.append(RECORDS1);
+		byte[] anchor = journal.getAnchor();
+		assertTrue(ArchiveJournal.matchesAnchor(open(file), anchor, INDEX_HASH_VALUE));
+
+		// The anchor is written after a block is appended, so a journal that is ahead of its anchor matches it
+		journal.append(RECORDS2);
+		assertTrue(ArchiveJournal.matchesAnchor(open(file), anchor, INDEX_HASH_VALUE));
+		assertTrue(ArchiveJournal.matchesAnchor(open(file), journal.getAnchor(), INDEX_HASH_VALUE));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void missingJournalDoesNotMatchAnchor()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		ArchiveJournal journal = ArchiveJournal.create(file, key, INDEX_HASH_VALUE);
+		journal.append(RECORDS1);
+
+		assertFalse(ArchiveJournal.matchesAnchor(null, journal.getAnchor(), INDEX_HASH_VALUE));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void earlierCopyOfJournalDoesNotMatchAnchor()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		File copy = new File(directory, "copy.journal");
+		ArchiveJournal journal = ArchiveJournal.create(file, key, INDEX_HASH_VALUE);
+		journal.append(RECORDS1);
+		Files.copy(file.toPath(), copy.toPath());
+		journal.append(RECORDS2);
+		byte[] anchor = journal.getAnchor();
+
+		// Replace the journal with its earlier copy, which is complete and valid in itself
+		Files.copy(copy.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		ArchiveJournal earlierJournal = open(file);
+		assertFalse(earlierJournal.isTruncated());
+		assertFalse(ArchiveJournal.matchesAnchor(earlierJournal, anchor, INDEX_HASH_VALUE));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void otherJournalDoesNotMatchAnchor()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		ArchiveJournal journal = ArchiveJournal.create(file, key, INDEX_HASH_VALUE);
+		journal.append(RECORDS1);
+		byte[] anchor = journal.getAnchor();
+
+		// Replace the journal with another journal of the same archive file that has more blocks
+		createJournal(file);
+		assertFalse(ArchiveJournal.matchesAnchor(open(file), anchor, INDEX_HASH_VALUE));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void tamperedAnchorDoesNotMatchJournal()
+		throws Exception
+	{
+		File file = new File(directory, "archive.journal");
+		createJournal(file);
+		ArchiveJournal journal = open(file);
+
+		// Flip a bit in each byte of the anchor in turn
+		byte[] anchor = journal.getAnchor();
+		for (int i = 0; i < anchor.length; i++)
+		{
+			byte[] tamperedAnchor = anchor.clone();
+			tamperedAnchor[i] ^= 1;
+			assertFalse(ArchiveJournal.matchesAnchor(journal, tamperedAnchor, INDEX_HASH_VALUE));
+		}
+
+		// An anchor belongs to a single version of the archive file
+		byte[] indexHashValue = INDEX_HASH_VALUE.clone();
+		indexHashValue[0] ^= 1;
+		assertFalse(ArchiveJournal.matchesAnchor(journal, anchor, indexHashValue));
+		assertFalse(ArchiveJournal.matchesAnchor(null, ArchiveJournal.createAnchor(indexHashValue), INDEX_HASH_VALUE));
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,112 @@
+/*====================================================================*\
+
+BatchProcessorTest.java
+
+Class: tests of the batch processor.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.File;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE BATCH PROCESSOR
+
+
+class BatchProcessorTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static BatchProcessor.Job encryptJob(
+		String	filename)
+	{
+		return new BatchProcessor.Job(BatchProcessor.Operation.ENCRYPT, new File(filename),
+									  new File(filename + ".qana"));
+	}
+
+	//------------------------------------------------------------------
+
+	static BatchProcessor.Job decryptJob(
+		String	filename)
+	{
+		return new BatchProcessor.Job(BatchProcessor.Operation.DECRYPT, new File(filename + ".qana"),
+									  new File(filename));
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void independentJobsDoNotConflict()
+	{
+		List<BatchProcessor.Job> jobs = List.of(encryptJob("a"), decryptJob("b"),
+												new BatchProcessor.Job(BatchProcessor.Operation.VALIDATE,
+																	   new File("c.qana"), null));
+		assertEquals(List.of(), BatchProcessor.getConflictingJobs(jobs));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void encryptionAndDecryptionOfSameFileConflict()
+	{
+		BatchProcessor.Job encryptJob = encryptJob("x");
+		BatchProcessor.Job decryptJob = decryptJob("x");
+		BatchProcessor.Job otherJob = encryptJob("y");
+		assertEquals(List.of(encryptJob, decryptJob),
+					 BatchProcessor.getConflictingJobs(List.of(encryptJob, otherJob, decryptJob)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void jobThatReadsOutputFileConflicts()
+	{
+		BatchProcessor.Job encryptJob = encryptJob("x");
+		BatchProcessor.Job validateJob = new BatchProcessor.Job(BatchProcessor.Operation.VALIDATE,
+																new File("x.qana"), null);
+		assertEquals(List.of(encryptJob, validateJob),
+					 BatchProcessor.getConflictingJobs(List.of(encryptJob, validateJob)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void jobsWithSameOutputFileConflict()
+	{
+		BatchProcessor.Job job1 = decryptJob("x");
+		BatchProcessor.Job job2 = new BatchProcessor.Job(BatchProcessor.Operation.DECRYPT, new File("x.QANA"),
+														 new File("x"));
+		assertEquals(List.of(job1, job2), BatchProcessor.getConflictingJobs(List.of(job1, job2)));
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,191 @@
+/*====================================================================*\
+
+ContentChunkerTest.java
+
+Class: tests of the content-defined chunker.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE CONTENT-DEFINED CHUNKER
+
+
+class ContentChunkerTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	int		DATA_LENGTH	= 4 << 20;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	static byte[] randomBytes(
+		int		length,
+		long	seed)
+	{
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	static List<byte[]> split(
+		byte[]	gearTable,
+		byte[]	data)
+		throws Exception
+	{
+		ContentChunker chunker = new ContentChunker(gearTable, new ByteArrayInputStream(data));
+		List<byte[]> chunks = new ArrayList<>();
+		byte[] chunk = null;
+		while ((chunk = chunker.next()) != null)
+			chunks.add(chunk);
+		return chunks;
+	}
+
+	//------------------------------------------------------------------
+
+	static List<Integer> lengths(
+		List<byte[]>	chunks)
+	{
+		return chunks.stream().map(chunk -> chunk.length).toList();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void gearTableOfWrongSizeIsRejected()
+	{
+		assertThrows(IllegalArgumentException.class,
+					 () -> new ContentChunker(new byte[ContentChunker.GEAR_TABLE_SIZE - 1],
+											  new ByteArrayInputStream(new byte[0])));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void emptyDataHasSingleEmptyChunk()
+		throws Exception
+	{
+		List<byte[]> chunks = split(randomBytes(ContentChunker.GEAR_TABLE_SIZE, 1), new byte[0]);
+		assertEquals(1, chunks.size());
+		assertEquals(0, chunks.get(0).length);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void chunksAreWithinBoundsAndReconstructData()
+		throws Exception
+	{
+		byte[] data = randomBytes(DATA_LENGTH, 2);
+		List<byte[]> chunks = split(randomBytes(ContentChunker.GEAR_TABLE_SIZE, 3), data);
+		assertTrue(chunks.size() > 1);
+
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		for (int i = 0; i < chunks.size(); i++)
+		{
+			byte[] chunk = chunks.get(i);
+			assertTrue(chunk.length <= ContentChunker.MAX_CHUNK_SIZE);
+			if (i < chunks.size() - 1)
+				assertTrue(chunk.length >= ContentChunker.MIN_CHUNK_SIZE);
+			outStream.write(chunk);
+		}
+		assertArrayEquals(data, outStream.toByteArray());
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void insertionChangesOnlyNearbyChunks()
+		throws Exception
+	{
+		byte[] gearTable = randomBytes(ContentChunker.GEAR_TABLE_SIZE, 4);
+		byte[] data = randomBytes(DATA_LENGTH, 5);
+		List<byte[]> chunks = split(gearTable, data);
+
+		// Insert some bytes into the first chunk
+		int offset = 100;
+		byte[] insertion = randomBytes(1000, 6);
+		byte[] editedData = new byte[data.length + insertion.length];
+		System.arraycopy(data, 0, editedData, 0, offset);
+		System.arraycopy(insertion, 0, editedData, offset, insertion.length);
+		System.arraycopy(data, offset, editedData, offset + insertion.length, data.length - offset);
+		List<byte[]> editedChunks = split(gearTable, editedData);
+
+		// All chunks after the first few must be unchanged
+		int numChanged = 2;
+		assertTrue(chunks.size() > numChanged);
+		List<byte[]> tail = chunks.subList(numChanged, chunks.size());
+		List<byte[]> editedTail = editedChunks.subList(editedChunks.size() - tail.size(), editedChunks.size());
+		for (int i = 0; i < tail.size(); i++)
+			assertTrue(Arrays.equals(tail.get(i), editedTail.get(i)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void boundariesDependOnGearTable()
+		throws Exception
+	{
+		byte[] data = randomBytes(DATA_LENGTH, 7);
+		assertNotEquals(lengths(split(randomBytes(ContentChunker.GEAR_TABLE_SIZE, 8), data)),
+						lengths(split(randomBytes(ContentChunker.GEAR_TABLE_SIZE, 9), data)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void averageLengthOfChunksIsMinSizePlusBoundaryInterval()
+		throws Exception
+	{
+		byte[] data = randomBytes(4 * DATA_LENGTH, 10);
+		List<byte[]> chunks = split(randomBytes(ContentChunker.GEAR_TABLE_SIZE, 11), data);
+		double averageLength = (double)data.length / chunks.size();
+		double expectedLength = ContentChunker.MIN_CHUNK_SIZE + ContentChunker.BOUNDARY_INTERVAL;
+		assertTrue(Math.abs(averageLength - expectedLength) < 0.2 * expectedLength);
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
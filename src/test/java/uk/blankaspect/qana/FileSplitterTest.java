@@ -0,0 +1,390 @@
+/*====================================================================*\
+
+FileSplitterTest.java
+
+Class: tests of the file splitter.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import uk.blankaspect.common.crypto.FortunaCipher;
+import uk.blankaspect.common.crypto.Scrypt;
+import uk.blankaspect.common.crypto.StreamEncrypter;
+
+import uk.blankaspect.common.exception.AppException;
+import uk.blankaspect.common.exception.FileException;
+import uk.blankaspect.common.exception.TaskCancelledException;
+
+import uk.blankaspect.common.misc.TaskContext;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE FILE SPLITTER
+
+
+class FileSplitterTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	private static final	StreamEncrypter.KdfParams	KDF_PARAMS	=
+			new StreamEncrypter.KdfParams(Scrypt.CoreHashNumRounds._8, 1, 1, 1, 1);
+
+	private static final	int		FILE_LENGTH				= 100_000;
+	private static final	int		MIN_FILE_PART_LENGTH	= 10_000;
+	private static final	int		MAX_FILE_PART_LENGTH	= 20_000;
+
+	private static final	int		NUM_THREADS	= 4;
+
+	// The lengths of the many small file parts of a split that is interrupted after its first file part
+	private static final	int		MIN_SMALL_FILE_PART_LENGTH	= FileSplitter.MIN_FILE_PART_LENGTH;
+	private static final	int		MAX_SMALL_FILE_PART_LENGTH	= 2 * FileSplitter.MIN_FILE_PART_LENGTH;
+
+	private static final	String	IN_FILENAME		= "file";
+	private static final	String	PARTS_DIRNAME	= "parts";
+	private static final	String	OUT_FILENAME	= "joined";
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	KeyList.Key	key;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	@TempDir
+	private	File	directory;
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	@BeforeAll
+	static void init()
+		throws AppException
+	{
+		QanaApp.INSTANCE.initHeadless();
+		Task.setProgressView(new CommandLineEngine.NullProgressView());
+		key = KeyList.createKey(null, "passphrase", KDF_PARAMS, KDF_PARAMS, EnumSet.allOf(FortunaCipher.class),
+								FortunaCipher.AES256);
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns a progress view that performs the specified action when the progress of a file part is first reported.
+	static ITaskProgressView progressView(
+		Runnable	action)
+	{
+		AtomicBoolean done = new AtomicBoolean();
+		return new CommandLineEngine.NullProgressView()
+		{
+			@Override
+			public void setPartProgress(
+				int		index,
+				double	fractionDone)
+			{
+				if (done.compareAndSet(false, true))
+					action.run();
+			}
+		};
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns a new task context that has the specified progress view.
+	static TaskContext context(
+		ITaskProgressView	progressView)
+	{
+		TaskContext context = new TaskContext();
+		context.setProgressView(progressView);
+		return context;
+	}
+
+	//------------------------------------------------------------------
+
+	// Asserts that the specified directory contains only the files with the specified names.
+	static void assertFilenames(
+		File		directory,
+		String...	filenames)
+	{
+		String[] names = directory.exists() ? directory.list() : new String[0];
+		assertEquals(List.of(filenames), Arrays.stream(names).sorted().toList());
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	// Writes a file of random data, and returns the content of the file.
+	private byte[] writeInFile()
+		throws Exception
+	{
+		byte[] data = new byte[FILE_LENGTH];
+		new Random(1).nextBytes(data);
+		Files.write(inFile().toPath(), data);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	private File inFile()
+	{
+		return new File(directory, IN_FILENAME);
+	}
+
+	//------------------------------------------------------------------
+
+	// Splits a file of random data into a set of file parts, and returns the content of the file.
+	private byte[] split(
+		File	partDirectory)
+		throws Exception
+	{
+		byte[] data = writeInFile();
+		new FileSplitter(NUM_THREADS).split(inFile(), partDirectory, MIN_FILE_PART_LENGTH, MAX_FILE_PART_LENGTH, key);
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	// Splits a file of random data into a set of many small file parts in the specified task context.
+	private void split(
+		File		partDirectory,
+		TaskContext	context)
+		throws Exception
+	{
+		writeInFile();
+		context.call(() ->
+		{
+			new FileSplitter(NUM_THREADS).split(inFile(), partDirectory, MIN_SMALL_FILE_PART_LENGTH,
+												MAX_SMALL_FILE_PART_LENGTH, key);
+			return null;
+		});
+	}
+
+	//------------------------------------------------------------------
+
+	// Joins a set of file parts in the specified task context.
+	private void join(
+		File		partDirectory,
+		File		outFile,
+		TaskContext	context)
+		throws Exception
+	{
+		context.call(() ->
+		{
+			new FileSplitter(NUM_THREADS).join(partDirectory, outFile, key);
+			return null;
+		});
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void roundTrip()
+		throws Exception
+	{
+		File partDirectory = new File(directory, "parts");
+		byte[] data = split(partDirectory);
+		assertTrue(FileSplitter.getFileParts(partDirectory).size() > 1);
+
+		File outFile = new File(directory, "joined");
+		new FileSplitter(NUM_THREADS).join(partDirectory, outFile, key);
+		assertArrayEquals(data, Files.readAllBytes(outFile.toPath()));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void tamperedFilePartThrowsException()
+		throws Exception
+	{
+		File partDirectory = new File(directory, "parts");
+		split(partDirectory);
+
+		// Flip a bit in the middle of a file part
+		File file = FileSplitter.getFileParts(partDirectory).get(0);
+		try (RandomAccessFile raFile = new RandomAccessFile(file, "rw"))
+		{
+			long offset = raFile.length() / 2;
+			raFile.seek(offset);
+			int b = raFile.read();
+			raFile.seek(offset);
+			raFile.write(b ^ 1);
+		}
+
+		File outFile = new File(directory, "joined");
+		assertThrows(AppException.class, () -> new FileSplitter(NUM_THREADS).join(partDirectory, outFile, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void truncatedFilePartThrowsException()
+		throws Exception
+	{
+		File partDirectory = new File(directory, "parts");
+		split(partDirectory);
+
+		List<File> files = FileSplitter.getFileParts(partDirectory);
+		File file = files.get(files.size() / 2);
+		try (RandomAccessFile raFile = new RandomAccessFile(file, "rw"))
+		{
+			raFile.setLength(raFile.length() - 1);
+		}
+
+		File outFile = new File(directory, "joined");
+		assertThrows(AppException.class, () -> new FileSplitter(NUM_THREADS).join(partDirectory, outFile, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void missingFilePartThrowsException()
+		throws Exception
+	{
+		File partDirectory = new File(directory, "parts");
+		split(partDirectory);
+
+		List<File> files = FileSplitter.getFileParts(partDirectory);
+		assertTrue(files.get(files.size() - 1).delete());
+
+		File outFile = new File(directory, "joined");
+		assertThrows(AppException.class, () -> new FileSplitter(NUM_THREADS).join(partDirectory, outFile, key));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void cancelledSplitDeletesFileParts()
+		throws Exception
+	{
+		// Cancel the split when the first file part reports its progress.  The file parts that have been written are
+		// deleted, and no temporary files remain.
+		File partDirectory = new File(directory, PARTS_DIRNAME);
+		TaskContext context = new TaskContext();
+		context.setProgressView(progressView(context::cancel));
+		assertThrows(TaskCancelledException.class, () -> split(partDirectory, context));
+		assertFilenames(partDirectory);
+		assertFilenames(directory, IN_FILENAME, PARTS_DIRNAME);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void failedFilePartOfSplitDeletesFileParts()
+		throws Exception
+	{
+		// Truncate the input file when the first file part reports its progress, so that the encryption of a later
+		// file part fails.  The failure, rather than the cancellation of the remaining file parts, is reported.
+		File partDirectory = new File(directory, PARTS_DIRNAME);
+		TaskContext context = context(progressView(() ->
+		{
+			try (RandomAccessFile raFile = new RandomAccessFile(inFile(), "rw"))
+			{
+				raFile.setLength(FILE_LENGTH / 2);
+			}
+			catch (Exception e)
+			{
+				throw new AssertionError(e);
+			}
+		}));
+		AppException exception = assertThrows(AppException.class, () -> split(partDirectory, context));
+		assertInstanceOf(FileException.class, exception);
+		assertFilenames(partDirectory);
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void cancelledJoinDeletesOutputFile()
+		throws Exception
+	{
+		File partDirectory = new File(directory, PARTS_DIRNAME);
+		split(partDirectory, context(new CommandLineEngine.NullProgressView()));
+		List<File> files = FileSplitter.getFileParts(partDirectory);
+		assertTrue(files.size() > 2 * NUM_THREADS);
+
+		// Cancel the join when the first file part reports its progress.  The file parts are not changed, and neither
+		// the output file nor a temporary file remains.
+		File outFile = new File(directory, OUT_FILENAME);
+		TaskContext context = new TaskContext();
+		context.setProgressView(progressView(context::cancel));
+		assertThrows(TaskCancelledException.class, () -> join(partDirectory, outFile, context));
+		assertFilenames(directory, IN_FILENAME, PARTS_DIRNAME);
+		assertEquals(files, FileSplitter.getFileParts(partDirectory));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void failedFilePartOfJoinDeletesOutputFile()
+		throws Exception
+	{
+		File partDirectory = new File(directory, PARTS_DIRNAME);
+		split(partDirectory, context(new CommandLineEngine.NullProgressView()));
+
+		// Flip a bit in the last file part, so that its decryption fails after other file parts have been joined
+		List<File> files = FileSplitter.getFileParts(partDirectory);
+		try (RandomAccessFile raFile = new RandomAccessFile(files.get(files.size() - 1), "rw"))
+		{
+			long offset = raFile.length() / 2;
+			raFile.seek(offset);
+			int b = raFile.read();
+			raFile.seek(offset);
+			raFile.write(b ^ 1);
+		}
+
+		File outFile = new File(directory, OUT_FILENAME);
+		TaskContext context = context(new CommandLineEngine.NullProgressView());
+		AppException exception = assertThrows(AppException.class, () -> join(partDirectory, outFile, context));
+		assertFalse(exception instanceof TaskCancelledException);
+		assertFilenames(directory, IN_FILENAME, PARTS_DIRNAME);
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
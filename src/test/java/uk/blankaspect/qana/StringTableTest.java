@@ -0,0 +1,172 @@
+/*====================================================================*\
+
+StringTableTest.java
+
+Class: tests of the string table.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.qana;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.ByteArrayOutputStream;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: TESTS OF THE STRING TABLE
+
+
+class StringTableTest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	// The strings of a table that was written by an earlier version, which stored a string only once if it was the
+	// suffix of another string and referred to the suffix by its offset
+	private static final	List<String>	LEGACY_STRINGS	= List.of("", "alpha/beta.txt", "caf\u00E9/gamma", "delta");
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	// Returns the data of a string table that contains the specified strings.
+	static byte[] toByteArray(
+		List<String>	strings)
+	{
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		for (String str : strings)
+		{
+			outStream.writeBytes(str.getBytes(StandardCharsets.UTF_8));
+			outStream.write(0);
+		}
+		return outStream.toByteArray();
+	}
+
+	//------------------------------------------------------------------
+
+	// Returns the offset of the specified suffix of the specified string in a table of the specified strings, as an
+	// earlier version computed it: in characters, with a terminator after each string.
+	static int legacyOffset(
+		List<String>	strings,
+		String			str,
+		String			suffix)
+	{
+		int offset = 0;
+		for (String s : strings)
+		{
+			if (s.equals(str))
+				return offset + s.length() - suffix.length();
+			offset += s.length() + 1;
+		}
+		throw new IllegalArgumentException();
+	}
+
+	//------------------------------------------------------------------
+
+	static StringTable parse(
+		byte[]	data)
+	{
+		return new StringTable(data, 0, data.length);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	@Test
+	void roundTrip()
+	{
+		StringTable table = new StringTable();
+		int offset1 = table.add("alpha/beta.txt");
+		int offset2 = table.add("beta.txt");
+		assertEquals(offset1, table.add("alpha/beta.txt"));
+		assertEquals(offset2, table.find("beta.txt"));
+		assertTrue(table.find("gamma") < 0);
+
+		StringTable parsedTable = parse(table.toByteArray());
+		assertEquals("", parsedTable.get(0));
+		assertEquals("alpha/beta.txt", parsedTable.get(offset1));
+		assertEquals("beta.txt", parsedTable.get(offset2));
+		assertEquals(offset2, parsedTable.find("beta.txt"));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void legacyTableResolvesWholeStrings()
+	{
+		StringTable table = parse(toByteArray(LEGACY_STRINGS));
+		for (String str : LEGACY_STRINGS)
+			assertEquals(str, table.get(legacyOffset(LEGACY_STRINGS, str, str)));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void legacyTableResolvesSuffixOffsets()
+	{
+		StringTable table = parse(toByteArray(LEGACY_STRINGS));
+		assertEquals("beta.txt", table.get(legacyOffset(LEGACY_STRINGS, "alpha/beta.txt", "beta.txt")));
+		assertEquals("a.txt", table.get(legacyOffset(LEGACY_STRINGS, "alpha/beta.txt", "a.txt")));
+		assertEquals("gamma", table.get(legacyOffset(LEGACY_STRINGS, "caf\u00E9/gamma", "gamma")));
+		assertEquals("\u00E9/gamma", table.get(legacyOffset(LEGACY_STRINGS, "caf\u00E9/gamma", "\u00E9/gamma")));
+
+		// Offsets are in characters, so a string that follows a non-ASCII character is not displaced
+		assertEquals("elta", table.get(legacyOffset(LEGACY_STRINGS, "delta", "elta")));
+
+		// The offset of the terminator of a string refers to the empty suffix of the string
+		assertEquals("", table.get(legacyOffset(LEGACY_STRINGS, "delta", "")));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void legacyTableResolvesSuffixOffsetsAfterWholeStrings()
+	{
+		// Looking up the start of a string first must not prevent the fallback from resolving a suffix
+		StringTable table = parse(toByteArray(LEGACY_STRINGS));
+		assertEquals("alpha/beta.txt", table.get(legacyOffset(LEGACY_STRINGS, "alpha/beta.txt", "alpha/beta.txt")));
+		assertEquals("beta.txt", table.get(legacyOffset(LEGACY_STRINGS, "alpha/beta.txt", "beta.txt")));
+		assertEquals("delta", table.get(legacyOffset(LEGACY_STRINGS, "delta", "delta")));
+	}
+
+	//------------------------------------------------------------------
+
+	@Test
+	void offsetBeyondTableIsNotResolved()
+	{
+		StringTable table = parse(toByteArray(LEGACY_STRINGS));
+		int length = LEGACY_STRINGS.stream().mapToInt(str -> str.length() + 1).sum();
+		assertNull(table.get(length));
+		assertNull(table.get(length + 100));
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------